@@ -19,6 +19,10 @@ public class CompletionItemWrapper extends CompletionItem {
         this.item = item;
     }
 
+    public com.tyron.completion.model.CompletionItem getItem() {
+        return item;
+    }
+
     @Override
     public void performCompletion(CodeEditor editor, Content text, int line, int column) {
         if (!(editor instanceof Editor)) {
@@ -16,6 +16,9 @@ import com.tyron.completion.java.JavaCompletionProvider;
 import com.tyron.completion.java.compiler.services.NBLog;
 import com.tyron.completion.java.parse.CompilationInfo;
 import com.tyron.completion.model.CompletionList;
+import com.tyron.completion.progress.ProcessCanceledException;
+import com.tyron.completion.progress.ProgressIndicator;
+import com.tyron.completion.progress.ProgressManager;
 import com.tyron.editor.Editor;
 import com.tyron.language.api.CodeAssistLanguage;
 
@@ -64,6 +67,9 @@ public class JavaLanguage  implements Language, EditorFormatter, CodeAssistLangu
 
     private final Editor editor;
     private final TextMateLanguage delegate;
+    // kept for the lifetime of the editor so its previous results can be refined
+    private final JavaCompletionProvider completionProvider = new JavaCompletionProvider();
+    private ProgressIndicator completionIndicator;
     private final Formatter formatter = new AsyncFormatter() {
         @Nullable
         @Override
@@ -156,12 +162,37 @@ public class JavaLanguage  implements Language, EditorFormatter, CodeAssistLangu
                 .setContents(content.getReference().toString())
                 .setPrefix(prefix)
                 .build();
-        JavaCompletionProvider provider = new JavaCompletionProvider();
-        CompletionList list = provider.complete(parameters);
+
+        // the user typed another character, the previous completion is no longer needed
+        ProgressIndicator indicator = new ProgressIndicator();
+        synchronized (this) {
+            if (completionIndicator != null) {
+                completionIndicator.cancel();
+            }
+            completionIndicator = indicator;
+        }
 
         publisher.setUpdateThreshold(0);
-        publisher.addItems(list.getItems().stream().map(CompletionItemWrapper::new)
-                .collect(Collectors.toList()));
+        publisher.setComparator((first, second) -> CompletionList.ITEM_ORDERING.compare(
+                ((CompletionItemWrapper) first).getItem(),
+                ((CompletionItemWrapper) second).getItem()));
+        CompletionList.Builder.Listener listener = items -> {
+            try {
+                publisher.checkCancelled();
+            } catch (CompletionCancelledException e) {
+                throw new ProcessCanceledException();
+            }
+            publisher.addItems(items.stream()
+                    .map(CompletionItemWrapper::new)
+                    .collect(Collectors.toList()));
+            publisher.updateList();
+        };
+        try {
+            ProgressManager.getInstance().runProcess(
+                    () -> completionProvider.complete(parameters, listener), indicator);
+        } catch (ProcessCanceledException e) {
+            // a newer completion has been requested
+        }
     }
 
     @Override
@@ -286,6 +286,9 @@ public class MainFragment extends Fragment implements ProjectManager.OnProjectOp
 
         ProjectManager manager = ProjectManager.getInstance();
         manager.removeOnProjectOpenListener(this);
+        if (mProject != null) {
+            manager.closeProject(mProject);
+        }
 
         if (mLogReceiver != null) {
             requireActivity().unregisterReceiver(mLogReceiver);
@@ -478,6 +481,12 @@ public class MainFragment extends Fragment implements ProjectManager.OnProjectOp
 
     @Override
     public void onProjectOpen(Project project) {
+        // only one receiver is registered at a time, the package name may have changed
+        if (mLogReceiver != null) {
+            requireActivity().unregisterReceiver(mLogReceiver);
+            mLogReceiver = null;
+        }
+
         Module module = project.getMainModule();
         if (module instanceof AndroidModule) {
             mLogReceiver = new BroadcastReceiver() {
@@ -521,6 +530,12 @@ public class MainFragment extends Fragment implements ProjectManager.OnProjectOp
         });
     }
 
+    @Override
+    public void onProjectModelRefreshed(Project project) {
+        // the main module has been replaced, register the receiver for its package again
+        onProjectOpen(project);
+    }
+
     private void injectData(DataContext context) {
         Boolean indexing = mMainViewModel.isIndexing().getValue();
         // to please lint
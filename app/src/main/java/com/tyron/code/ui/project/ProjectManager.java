@@ -36,6 +36,7 @@ import com.tyron.code.ui.editor.log.AppLogFragment;
 import com.tyron.code.util.ProjectUtils;
 import com.tyron.common.logging.IdeLog;
 import com.tyron.common.util.DebouncerStore;
+import com.tyron.completion.java.compiler.IdentifierIndex;
 import com.tyron.completion.java.compiler.Parser;
 import com.tyron.completion.java.parse.CompilationInfo;
 import com.tyron.completion.java.provider.CompletionEngine;
@@ -59,6 +60,7 @@ import java.io.File;
 import java.io.IOException;
 import java.net.URI;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Deque;
 import java.util.HashSet;
 import java.util.LinkedList;
@@ -80,6 +82,14 @@ public class ProjectManager {
 
     public interface OnProjectOpenListener {
         void onProjectOpen(Project project);
+
+        /**
+         * Called when the modules of an open project have been replaced after its build
+         * configuration has changed, {@link #onProjectOpen(Project)} is not called again.
+         */
+        default void onProjectModelRefreshed(Project project) {
+
+        }
     }
 
     private static volatile ProjectManager INSTANCE = null;
@@ -124,6 +134,10 @@ public class ProjectManager {
                                boolean downloadLibs,
                                TaskListener mListener,
                                ILogger logger) {
+        Project previous = mCurrentProject;
+        if (previous != null && !previous.equals(project)) {
+            closeProject(previous);
+        }
         mCurrentProject = project;
 
         boolean shouldReturn = false;
@@ -188,22 +202,104 @@ public class ProjectManager {
         BuildModule.getAndroidJar();
         BuildModule.getLambdaStubs();
 
-        GradleConnector gradleConnector = GradleConnector.newConnector();
-        gradleConnector.forProjectDirectory(mCurrentProject.getRootFile());
-        gradleConnector.useDistribution(URI.create("codeAssist"));
+        ProjectModelCache modelCache = new ProjectModelCache(mCurrentProject.getRootFile());
+        ModelContainerV2 cachedModel = modelCache.load();
+        if (cachedModel != null) {
+            try {
+                mListener.onTaskStarted("Load cached model");
+                applyModel(cachedModel, project, mListener);
+            } catch (Throwable t) {
+                logger.warning("Failed to load the cached model: " + t.getMessage());
+                cachedModel = null;
+            }
+        }
 
-        try (ProjectConnection projectConnection = gradleConnector.connect()) {
-            mListener.onTaskStarted("Build model");
+        if (cachedModel == null) {
+            try {
+                ModelContainerV2 modelContainer = fetchModel(project, mListener);
+                saveModel(modelCache, modelContainer);
+                applyModel(modelContainer, project, mListener);
+            } catch (Throwable t) {
+                Throwable throwable = t;
+                if (throwable instanceof BuildException) {
+                    BuildException buildException = (BuildException) throwable;
+                    if (buildException.getCause() != null) {
+                        throwable = buildException.getCause();
+                    }
+                }
+                mListener.onComplete(mCurrentProject,
+                        false,
+                        Throwables.getStackTraceAsString(throwable) + "\n");
+                return;
+            }
+        }
 
-            // clears the logs
-            AppLogFragment.outputStream.write("\033[H\033[2J".getBytes());
+        mProjectOpenListeners.forEach(it -> it.onProjectOpen(mCurrentProject));
+
+        mCurrentProject.setIndexing(false);
+        mListener.onComplete(project, true, "Index successful");
+
+        if (cachedModel != null) {
+            ProgressManager.getInstance().runNonCancelableAsync(() ->
+                    validateCachedModel(project, modelCache, logger));
+        }
+    }
+
+    /**
+     * Runs {@link GetAndroidModelV2Action} after the project has been opened from the cached
+     * model, the project is only updated if the model from Gradle is different from the cached
+     * one.
+     */
+    private void validateCachedModel(Project project,
+                                     ProjectModelCache modelCache,
+                                     ILogger logger) {
+        try {
+            ModelContainerV2 modelContainer = fetchModel(project, null);
+            if (!saveModel(modelCache, modelContainer) || project != mCurrentProject) {
+                return;
+            }
+
+            // the project stays usable while the new modules are built and indexed, they
+            // are only swapped in once they are ready
+            project.setIndexing(true);
+            try {
+                ModelContainerV2.ModelInfo appProject = modelContainer.getProject(":app", ":");
+                AndroidModuleImpl module = buildModel(appProject);
+                module.setProject(project);
+                indexModule(module);
+                project.replaceModules(Collections.singletonList(module));
+
+                // the index listens to the snapshots of the old modules
+                IdentifierIndex.dispose(project);
+                indexResources(project, null);
+            } finally {
+                project.setIndexing(false);
+            }
+            mProjectOpenListeners.forEach(it -> it.onProjectModelRefreshed(project));
+        } catch (Throwable t) {
+            logger.warning("Failed to validate the cached model: " + t.getMessage());
+        }
+    }
 
-            ProgressListener progressListener =
-                    event -> mListener.onTaskStarted(event.getDisplayName());
+    private ModelContainerV2 fetchModel(Project project,
+                                        @Nullable TaskListener listener) throws IOException {
+        GradleConnector gradleConnector = GradleConnector.newConnector();
+        gradleConnector.forProjectDirectory(project.getRootFile());
+        gradleConnector.useDistribution(URI.create("codeAssist"));
 
+        try (ProjectConnection projectConnection = gradleConnector.connect()) {
             BuildActionExecuter<ModelContainerV2> executer =
                     projectConnection.action(new GetAndroidModelV2Action("debug"));
-            executer.addProgressListener(progressListener);
+            if (listener != null) {
+                listener.onTaskStarted("Build model");
+
+                // clears the logs
+                AppLogFragment.outputStream.write("\033[H\033[2J".getBytes());
+
+                ProgressListener progressListener =
+                        event -> listener.onTaskStarted(event.getDisplayName());
+                executer.addProgressListener(progressListener);
+            }
             executer.setColorOutput(false);
             executer.setStandardError(AppLogFragment.outputStream);
             executer.setStandardOutput(AppLogFragment.outputStream);
@@ -211,41 +307,52 @@ public class ProjectManager {
             GradleLaunchUtil.configureLauncher(executer);
             GradleLaunchUtil.addCodeAssistInitScript(executer);
 
-            ModelContainerV2 modelContainer = executer.run();
-            ModelContainerV2.ModelInfo appProject = modelContainer.getProject(":app", ":");
+            return executer.run();
+        }
+    }
 
-            // remove the previous models
-            mCurrentProject.clear();
-            buildModel(appProject, project);
+    /**
+     * @return whether the model is different from the cached one
+     */
+    private boolean saveModel(ProjectModelCache modelCache, ModelContainerV2 modelContainer) {
+        try {
+            return modelCache.save(modelContainer);
+        } catch (IOException e) {
+            IdeLog.getLogger().warning("Failed to cache the project model: " + e.getMessage());
+            return true;
+        }
+    }
 
-            project.getModuleByName("app");
-            mListener.onTaskStarted("Indexing resources");
-            ResourceRepositoryManager.getProjectResources(project.getModuleByName(":app"));
+    private void applyModel(ModelContainerV2 modelContainer,
+                            Project project,
+                            @Nullable TaskListener listener) throws IOException {
+        ModelContainerV2.ModelInfo appProject = modelContainer.getProject(":app", ":");
 
-            mListener.onTaskStarted("Inject resource classes");
-            mCurrentProject.getEventManager().dispatchEvent(new XmlReparsedEvent(null));
+        // remove the previous models
+        project.clear();
+        AndroidModuleImpl module = buildModel(appProject);
+        project.addModule(module);
+        indexModule(module);
 
-        } catch (Throwable t) {
-            Throwable throwable = t;
-            if (throwable instanceof BuildException) {
-                BuildException buildException = (BuildException) throwable;
-                if (buildException.getCause() != null) {
-                    throwable = buildException.getCause();
-                }
-            }
-            mListener.onComplete(mCurrentProject,
-                    false,
-                    Throwables.getStackTraceAsString(throwable) + "\n");
-            return;
-        }
+        indexResources(project, listener);
+    }
 
-        mProjectOpenListeners.forEach(it -> it.onProjectOpen(mCurrentProject));
+    private void indexResources(Project project, @Nullable TaskListener listener) {
+        if (listener != null) {
+            listener.onTaskStarted("Indexing resources");
+        }
+        ResourceRepositoryManager.getProjectResources(project.getModuleByName(":app"));
 
-        mCurrentProject.setIndexing(false);
-        mListener.onComplete(project, true, "Index successful");
+        if (listener != null) {
+            listener.onTaskStarted("Inject resource classes");
+        }
+        project.getEventManager().dispatchEvent(new XmlReparsedEvent(null));
     }
 
-    private void buildModel(ModelContainerV2.ModelInfo modelInfo, Project currentProject) throws IOException {
+    /**
+     * Creates the module of the given model, the module is not added to the project.
+     */
+    private AndroidModuleImpl buildModel(ModelContainerV2.ModelInfo modelInfo) {
         AndroidModuleImpl impl = new AndroidModuleImpl(modelInfo.getProjectDir());
 
         // de-structure model info fields
@@ -341,8 +448,7 @@ public class ProjectManager {
             }
         }
 
-        currentProject.addModule(impl);
-        indexModule(impl);
+        return impl;
     }
 
     /**
@@ -358,7 +464,7 @@ public class ProjectManager {
 
         JavaModule javaModule = (JavaModule) module;
         for (File value : javaModule.getJavaFiles().values()) {
-            CompilationInfo info = CompilationInfo.get(module.getProject(), value);
+            CompilationInfo info = CompilationInfo.get(module);
             if (info == null) {
                 continue;
             }
@@ -378,6 +484,7 @@ public class ProjectManager {
     }
 
     public void closeProject(@NonNull Project project) {
+        IdentifierIndex.dispose(project);
         if (project.equals(mCurrentProject)) {
             mCurrentProject = null;
         }
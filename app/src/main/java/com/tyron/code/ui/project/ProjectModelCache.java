@@ -0,0 +1,222 @@
+package com.tyron.code.ui.project;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.tyron.builder.model.v2.ide.AndroidLibraryData;
+import com.tyron.builder.model.v2.ide.Library;
+import com.tyron.builder.model.v2.models.VariantDependencies;
+import com.tyron.common.logging.IdeLog;
+
+import org.apache.commons.io.FileUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.logging.Logger;
+
+import kotlin.Pair;
+
+/**
+ * Stores the {@link ModelContainerV2} of a project on disk so the project can be opened without
+ * running {@link GetAndroidModelV2Action} through Gradle.
+ *
+ * <p>The model is stored along with a fingerprint of the settings and build scripts, the
+ * {@code gradle.properties} files and the dependency artifacts that were resolved into the
+ * model. A cached model is only returned while the fingerprint still matches.
+ */
+public class ProjectModelCache {
+
+    private static final Logger LOG = IdeLog.getCurrentLogger(ProjectModelCache.class);
+
+    private static final int VERSION = 1;
+
+    private static final String[] ROOT_BUILD_FILES = {
+            "settings.gradle",
+            "settings.gradle.kts",
+            "gradle.properties",
+            "local.properties",
+            "gradle/libs.versions.toml"
+    };
+
+    private static final String[] PROJECT_BUILD_FILES = {
+            "build.gradle",
+            "build.gradle.kts",
+            "gradle.properties"
+    };
+
+    private final File mRootDir;
+    private final File mCacheFile;
+
+    public ProjectModelCache(@NonNull File rootDir) {
+        mRootDir = rootDir;
+        mCacheFile = new File(rootDir, ".gradle/codeassist/androidModelV2.bin");
+    }
+
+    /**
+     * @return the cached model, or null if there is none or the build configuration of the
+     * project has changed since it was saved
+     */
+    @Nullable
+    public ModelContainerV2 load() {
+        if (!mCacheFile.exists()) {
+            return null;
+        }
+        try (DataInputStream input = new DataInputStream(Files.newInputStream(mCacheFile.toPath()))) {
+            if (input.readInt() != VERSION) {
+                return null;
+            }
+            String fingerprint = input.readUTF();
+            byte[] bytes = new byte[input.readInt()];
+            input.readFully(bytes);
+
+            ModelContainerV2 container = deserialize(bytes);
+            if (!fingerprint.equals(fingerprint(container))) {
+                LOG.info("Build configuration has changed, the cached model is outdated.");
+                return null;
+            }
+            return container;
+        } catch (IOException | ClassNotFoundException | RuntimeException e) {
+            LOG.warning("Unable to read the cached model: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Saves the model, replacing the cached one.
+     *
+     * @return whether the model is different from the cached one
+     */
+    public boolean save(@NonNull ModelContainerV2 container) throws IOException {
+        byte[] bytes = serialize(container);
+        if (Arrays.equals(bytes, readCachedBytes())) {
+            return false;
+        }
+
+        FileUtils.forceMkdirParent(mCacheFile);
+        File temp = new File(mCacheFile.getParentFile(), mCacheFile.getName() + ".tmp");
+        try (DataOutputStream output = new DataOutputStream(Files.newOutputStream(temp.toPath()))) {
+            output.writeInt(VERSION);
+            output.writeUTF(fingerprint(container));
+            output.writeInt(bytes.length);
+            output.write(bytes);
+        }
+        Files.move(temp.toPath(), mCacheFile.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+        return true;
+    }
+
+    @Nullable
+    private byte[] readCachedBytes() {
+        if (!mCacheFile.exists()) {
+            return null;
+        }
+        try (DataInputStream input = new DataInputStream(Files.newInputStream(mCacheFile.toPath()))) {
+            if (input.readInt() != VERSION) {
+                return null;
+            }
+            input.readUTF();
+            byte[] bytes = new byte[input.readInt()];
+            input.readFully(bytes);
+            return bytes;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private String fingerprint(ModelContainerV2 container) {
+        Hasher hasher = Hashing.sha256().newHasher();
+        for (String path : ROOT_BUILD_FILES) {
+            putFile(hasher, new File(mRootDir, path));
+        }
+
+        for (ModelContainerV2.BuildInfo buildInfo : container.getBuildMap().values()) {
+            for (Pair<String, File> project : buildInfo.getProjects()) {
+                hasher.putString(project.getFirst(), StandardCharsets.UTF_8);
+                for (String path : PROJECT_BUILD_FILES) {
+                    putFile(hasher, new File(project.getSecond(), path));
+                }
+            }
+        }
+
+        for (Map<String, ModelContainerV2.ModelInfo> infoMap : container.getInfoMaps().values()) {
+            for (ModelContainerV2.ModelInfo modelInfo : infoMap.values()) {
+                VariantDependencies variantDependencies = modelInfo.getVariantDependencies();
+                if (variantDependencies == null) {
+                    continue;
+                }
+                for (Library library : variantDependencies.getLibraries().values()) {
+                    hasher.putString(library.getKey(), StandardCharsets.UTF_8);
+                    putStamp(hasher, library.getArtifact());
+
+                    AndroidLibraryData androidLibraryData = library.getAndroidLibraryData();
+                    if (androidLibraryData != null) {
+                        for (File jar : androidLibraryData.getCompileJarFiles()) {
+                            putStamp(hasher, jar);
+                        }
+                        putStamp(hasher, androidLibraryData.getResFolder());
+                    }
+                }
+            }
+        }
+        return hasher.hash().toString();
+    }
+
+    /**
+     * Build scripts are small and can be edited without changing their length and timestamp,
+     * so their contents are hashed.
+     */
+    private static void putFile(Hasher hasher, File file) {
+        hasher.putString(file.getPath(), StandardCharsets.UTF_8);
+        if (!file.isFile()) {
+            hasher.putBoolean(false);
+            return;
+        }
+        try {
+            hasher.putBoolean(true);
+            hasher.putBytes(Files.readAllBytes(file.toPath()));
+        } catch (IOException e) {
+            hasher.putLong(file.lastModified());
+        }
+    }
+
+    /**
+     * Resolved artifacts are only checked by their length and timestamp.
+     */
+    private static void putStamp(Hasher hasher, @Nullable File file) {
+        if (file == null) {
+            hasher.putBoolean(false);
+            return;
+        }
+        hasher.putString(file.getPath(), StandardCharsets.UTF_8);
+        hasher.putBoolean(file.exists());
+        hasher.putLong(file.length());
+        hasher.putLong(file.lastModified());
+    }
+
+    private static byte[] serialize(ModelContainerV2 container) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream output = new ObjectOutputStream(bytes)) {
+            output.writeObject(container);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static ModelContainerV2 deserialize(byte[] bytes) throws IOException, ClassNotFoundException {
+        try (ObjectInputStream input = new ObjectInputStream(new ByteArrayInputStream(bytes))) {
+            return (ModelContainerV2) input.readObject();
+        }
+    }
+}
@@ -13,7 +13,7 @@ import java.io.File;
 import java.io.IOException;
 import java.io.StringWriter;
 import java.nio.charset.Charset;
-import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
@@ -54,16 +54,7 @@ public class SymbolWriter {
 
     public String getString() throws IOException {
         try (StringWriter writer = new StringWriter()) {
-            writer.write("/* AUTO-GENERATED FILE. DO NOT MODIFY. \n");
-            writer.write(" *\n");
-            writer.write(" * This class was automatically generated by the\n");
-            writer.write(" * aapt tool from the resource data it found.  It\n");
-            writer.write(" * should not be modified by hand.\n");
-            writer.write(" */\n");
-
-            writer.write("package ");
-            writer.write(mPackageName);
-            writer.write(";\n\npublic final class R {\n");
+            writer.write(getHeader(mPackageName));
 
             Table<String, String, SymbolLoader.SymbolEntry> symbols = getAllSymbols();
             Table<String, String, SymbolLoader.SymbolEntry> values = mValues.getSymbols();
@@ -73,36 +64,68 @@ public class SymbolWriter {
             Collections.sort(rowList);
 
             for (String row : rowList) {
-                writer.write("\tpublic static final class ");
-                writer.write(row);
-                writer.write(" {\n");
-
-                Map<String, SymbolLoader.SymbolEntry> rowMap = symbols.row(row);
-                Set<String> symbolSet = rowMap.keySet();
-                ArrayList<String> symbolList = Lists.newArrayList(symbolSet);
-                Collections.sort(symbolList);
-
-                for (String symbolName : symbolList) {
-                    // get the matching SymbolEntry from the values Table.
-                    SymbolLoader.SymbolEntry value = values.get(row, symbolName);
-                    if (value != null) {
-                        writer.write("\t\tpublic static final ");
-                        writer.write(value.getType());
-                        writer.write(" ");
-                        writer.write(value.getName());
-                        writer.write(" = ");
-                        writer.write(value.getValue());
-                        writer.write(";\n");
-                    }
-                }
-
-                writer.write("\t}\n");
+                writer.write(getClassString(row, symbols.row(row).keySet(), values.row(row)));
             }
-            writer.write("}\n");
+            writer.write(getFooter());
             return writer.toString();
         }
     }
 
+    /**
+     * @return the start of the R class of the given package, up to the opening brace of the
+     * R class
+     */
+    public static String getHeader(String packageName) {
+        return "/* AUTO-GENERATED FILE. DO NOT MODIFY. \n" +
+               " *\n" +
+               " * This class was automatically generated by the\n" +
+               " * aapt tool from the resource data it found.  It\n" +
+               " * should not be modified by hand.\n" +
+               " */\n" +
+               "package " + packageName + ";\n\npublic final class R {\n";
+    }
+
+    /**
+     * @return the closing brace of the R class
+     */
+    public static String getFooter() {
+        return "}\n";
+    }
+
+    /**
+     * Renders a nested class of the R class, the symbols are written in sorted order.
+     *
+     * @param row the name of the nested class, e.g. {@code string}
+     * @param symbolNames the names of the symbols to write
+     * @param values the entries of the symbols, symbols without an entry are skipped
+     */
+    public static String getClassString(String row,
+                                        Collection<String> symbolNames,
+                                        Map<String, SymbolLoader.SymbolEntry> values) {
+        StringBuilder builder = new StringBuilder();
+        builder.append("\tpublic static final class ").append(row).append(" {\n");
+
+        List<String> symbolList = Lists.newArrayList(symbolNames);
+        Collections.sort(symbolList);
+
+        for (String symbolName : symbolList) {
+            // get the matching SymbolEntry from the values Table.
+            SymbolLoader.SymbolEntry value = values.get(symbolName);
+            if (value != null) {
+                builder.append("\t\tpublic static final ")
+                        .append(value.getType())
+                        .append(" ")
+                        .append(value.getName())
+                        .append(" = ")
+                        .append(value.getValue())
+                        .append(";\n");
+            }
+        }
+
+        builder.append("\t}\n");
+        return builder.toString();
+    }
+
     public void write() throws IOException {
         Splitter splitter = Splitter.on('.');
         Iterable<String> folders = splitter.split(mPackageName);
@@ -0,0 +1,155 @@
+package org.gradle.cache.internal.btree;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares {@link FileBackedBlockStore} and {@link MappedFileBlockStore} on the block sizes
+ * written by {@link BTreePersistentIndexedCache}. Run with {@code ./gradlew :build-tools:builder-persistent-cache:jmh}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BlockStoreBenchmark {
+
+    private static final int BLOCK_COUNT = 10000;
+    private static final int BATCH_SIZE = 100;
+
+    @Param({"file", "mapped"})
+    public String store;
+
+    @Param({"64", "512", "4096"})
+    public int payloadSize;
+
+    private File dir;
+    private BlockStore blockStore;
+    private BlockPointer[] pointers;
+    private byte[] data;
+    private Random random;
+
+    @Setup(Level.Iteration)
+    public void setup() throws IOException {
+        dir = Files.createTempDirectory("block-store").toFile();
+        File cacheFile = new File(dir, "cache.bin");
+        blockStore = "mapped".equals(store)
+                ? new MappedFileBlockStore(cacheFile)
+                : new FileBackedBlockStore(cacheFile);
+        blockStore.open(() -> {}, type -> new TestPayload());
+
+        random = new Random(42);
+        data = new byte[payloadSize];
+        random.nextBytes(data);
+        pointers = new BlockPointer[BLOCK_COUNT];
+        for (int i = 0; i < BLOCK_COUNT; i++) {
+            pointers[i] = write();
+        }
+        blockStore.flush();
+    }
+
+    @TearDown(Level.Iteration)
+    public void tearDown() {
+        blockStore.close();
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        dir.delete();
+    }
+
+    @Benchmark
+    public int lookup() {
+        int total = 0;
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            BlockPointer pos = pointers[random.nextInt(BLOCK_COUNT)];
+            total += blockStore.read(pos, TestPayload.class).data.length;
+        }
+        return total;
+    }
+
+    @Benchmark
+    public BlockPointer insert() {
+        BlockPointer last = null;
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            last = write();
+        }
+        blockStore.flush();
+        return last;
+    }
+
+    @Benchmark
+    public BlockPointer update() {
+        BlockPointer pos = null;
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            pos = pointers[random.nextInt(BLOCK_COUNT)];
+            TestPayload payload = blockStore.read(pos, TestPayload.class);
+            payload.data[0]++;
+            blockStore.write(payload);
+        }
+        blockStore.flush();
+        return pos;
+    }
+
+    private BlockPointer write() {
+        TestPayload payload = new TestPayload(data);
+        blockStore.attach(payload);
+        blockStore.write(payload);
+        return payload.getPos();
+    }
+
+    private static class TestPayload extends BlockPayload {
+        private byte[] data;
+
+        TestPayload() {
+        }
+
+        TestPayload(byte[] data) {
+            this.data = data;
+        }
+
+        @Override
+        protected int getSize() {
+            return Block.INT_SIZE + data.length;
+        }
+
+        @Override
+        protected byte getType() {
+            return 0x7f;
+        }
+
+        @Override
+        protected void read(DataInputStream inputStream) throws Exception {
+            data = new byte[inputStream.readInt()];
+            inputStream.readFully(data);
+        }
+
+        @Override
+        protected void write(DataOutputStream outputStream) throws Exception {
+            outputStream.writeInt(data.length);
+            outputStream.write(data);
+        }
+    }
+}
@@ -5,6 +5,7 @@ import com.google.common.collect.ImmutableSet;
 import org.gradle.api.UncheckedIOException;
 import org.gradle.internal.UncheckedException;
 import org.gradle.internal.io.StreamByteBuffer;
+import org.gradle.internal.os.OperatingSystem;
 import org.gradle.internal.serialize.Serializer;
 import org.gradle.internal.serialize.kryo.KryoBackedDecoder;
 import org.gradle.internal.serialize.kryo.KryoBackedEncoder;
@@ -55,7 +56,7 @@ public class BTreePersistentIndexedCache<K, V> {
         this.serializer = valueSerializer;
         this.maxChildIndexEntries = maxChildIndexEntries;
         this.minIndexChildNodes = maxChildIndexEntries / 2;
-        BlockStore cachingStore = new CachingBlockStore(new FileBackedBlockStore(cacheFile), ImmutableSet
+        BlockStore cachingStore = new CachingBlockStore(createFileStore(cacheFile), ImmutableSet
                 .of(IndexBlock.class, FreeListBlockStore.FreeListBlock.class));
         this.store = new StateCheckBlockStore(new FreeListBlockStore(cachingStore, maxFreeListEntries));
         try {
@@ -65,6 +66,17 @@ public class BTreePersistentIndexedCache<K, V> {
         }
     }
 
+    /**
+     * Files that are memory mapped can not be truncated on Windows, so the mapped store is only
+     * used on the other platforms.
+     */
+    private static BlockStore createFileStore(File cacheFile) {
+        if (OperatingSystem.current().isWindows()) {
+            return new FileBackedBlockStore(cacheFile);
+        }
+        return new MappedFileBlockStore(cacheFile);
+    }
+
     @Override
     public String toString() {
         return "cache " + cacheFile.getName() + " (" + cacheFile + ")";
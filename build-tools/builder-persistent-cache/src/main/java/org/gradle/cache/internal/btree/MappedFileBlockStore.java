@@ -0,0 +1,406 @@
+package org.gradle.cache.internal.btree;
+
+import org.gradle.api.UncheckedIOException;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.Buffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A {@link BlockStore} that reads and writes blocks through memory mapped regions of the cache
+ * file, instead of seeking and reading the file for every block like {@link FileBackedBlockStore}.
+ * The file format is the same, so either store can open a file written by the other.
+ *
+ * <p>The file is mapped in regions of {@link #REGION_SIZE} bytes, which are a multiple of the page
+ * size. New blocks are allocated so they do not cross a region boundary, unless they are larger
+ * than a region, so most blocks are read from and written to a single buffer.
+ *
+ * <p>Writes are not synced to the disk until the store is closed, which happens when the unit of
+ * work that uses the cache ends. Mapping a region for writing grows the file to the end of the
+ * region, so the file is truncated to the end of the last block when it is closed.
+ */
+public class MappedFileBlockStore implements BlockStore {
+    static final int REGION_SHIFT = 20;
+    static final int REGION_SIZE = 1 << REGION_SHIFT;
+    private static final long REGION_MASK = REGION_SIZE - 1;
+
+    private final File cacheFile;
+    private RandomAccessFile file;
+    private FileChannel channel;
+    private boolean readOnly;
+    private final List<MappedByteBuffer> regions = new ArrayList<MappedByteBuffer>();
+    private final RegionInputStream input = new RegionInputStream();
+    private final RegionOutputStream output = new RegionOutputStream();
+    private long nextBlock;
+    private Factory factory;
+    private long currentFileSize;
+
+    public MappedFileBlockStore(File cacheFile) {
+        this.cacheFile = cacheFile;
+    }
+
+    @Override
+    public String toString() {
+        return "cache '" + cacheFile + "'";
+    }
+
+    @Override
+    public void open(Runnable runnable, Factory factory) {
+        this.factory = factory;
+        try {
+            cacheFile.getParentFile().mkdirs();
+            file = openRandomAccessFile();
+            channel = file.getChannel();
+            currentFileSize = file.length();
+            nextBlock = currentFileSize;
+            if (currentFileSize == 0) {
+                runnable.run();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private RandomAccessFile openRandomAccessFile() throws FileNotFoundException {
+        try {
+            readOnly = false;
+            return new RandomAccessFile(cacheFile, "rw");
+        } catch (FileNotFoundException e) {
+            readOnly = true;
+            return new RandomAccessFile(cacheFile, "r");
+        }
+    }
+
+    @Override
+    public void close() {
+        try {
+            if (!readOnly) {
+                for (MappedByteBuffer region : regions) {
+                    if (region != null) {
+                        region.force();
+                    }
+                }
+            }
+            regions.clear();
+            if (!readOnly && file.length() > currentFileSize) {
+                file.setLength(currentFileSize);
+            }
+            file.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public void clear() {
+        try {
+            regions.clear();
+            file.setLength(0);
+            currentFileSize = 0;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        nextBlock = 0;
+    }
+
+    @Override
+    public void attach(BlockPayload block) {
+        if (block.getBlock() == null) {
+            block.setBlock(new BlockImpl(block));
+        }
+    }
+
+    @Override
+    public void remove(BlockPayload block) {
+        BlockImpl blockImpl = (BlockImpl) block.getBlock();
+        blockImpl.detach();
+    }
+
+    @Override
+    public void flush() {
+        // the mapped regions are shared with other processes, they are synced to the disk on close
+    }
+
+    @Override
+    public <T extends BlockPayload> T readFirst(Class<T> payloadType) {
+        return read(BlockPointer.pos(0), payloadType);
+    }
+
+    @Override
+    public <T extends BlockPayload> T read(BlockPointer pos, Class<T> payloadType) {
+        assert !pos.isNull();
+        try {
+            T payload = payloadType.cast(factory.create(payloadType));
+            BlockImpl block = new BlockImpl(payload, pos);
+            block.read();
+            return payload;
+        } catch (CorruptedCacheException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public void write(BlockPayload block) {
+        BlockImpl blockImpl = (BlockImpl) block.getBlock();
+        try {
+            blockImpl.write();
+        } catch (CorruptedCacheException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private long alloc(long length) {
+        long pos = nextBlock;
+        long regionEnd = (pos | REGION_MASK) + 1;
+        if (pos + length > regionEnd && length <= REGION_SIZE) {
+            // start the block in the next region so it is not split between two buffers
+            pos = regionEnd;
+        }
+        nextBlock = pos + length;
+        return pos;
+    }
+
+    private MappedByteBuffer region(long pos) throws IOException {
+        int index = (int) (pos >>> REGION_SHIFT);
+        while (regions.size() <= index) {
+            regions.add(null);
+        }
+        MappedByteBuffer region = regions.get(index);
+        if (region == null) {
+            long start = (long) index << REGION_SHIFT;
+            if (readOnly) {
+                long size = Math.min(REGION_SIZE, channel.size() - start);
+                if (size <= 0) {
+                    throw new EOFException();
+                }
+                region = channel.map(FileChannel.MapMode.READ_ONLY, start, size);
+            } else {
+                region = channel.map(FileChannel.MapMode.READ_WRITE, start, REGION_SIZE);
+            }
+            regions.set(index, region);
+        }
+        return region;
+    }
+
+    /**
+     * Reads the mapped regions starting from a position, counting the bytes read.
+     */
+    private class RegionInputStream extends InputStream {
+        private long pos;
+        private long count;
+
+        DataInputStream start(long offset) {
+            pos = offset;
+            count = 0;
+            return new DataInputStream(this);
+        }
+
+        long getBytesRead() {
+            return count;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (pos >= currentFileSize) {
+                return -1;
+            }
+            int value = region(pos).get((int) (pos & REGION_MASK)) & 0xff;
+            pos++;
+            count++;
+            return value;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) throws IOException {
+            if (length == 0) {
+                return 0;
+            }
+            long available = currentFileSize - pos;
+            if (available <= 0) {
+                return -1;
+            }
+            int regionOffset = (int) (pos & REGION_MASK);
+            int toRead = (int) Math.min(Math.min(length, available), REGION_SIZE - regionOffset);
+            MappedByteBuffer region = region(pos);
+            ((Buffer) region).position(regionOffset);
+            region.get(bytes, offset, toRead);
+            pos += toRead;
+            count += toRead;
+            return toRead;
+        }
+    }
+
+    /**
+     * Writes to the mapped regions starting from a position, counting the bytes written.
+     */
+    private class RegionOutputStream extends OutputStream {
+        private long pos;
+        private long count;
+
+        DataOutputStream start(long offset) {
+            pos = offset;
+            count = 0;
+            return new DataOutputStream(this);
+        }
+
+        long getBytesWritten() {
+            return count;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            region(pos).put((int) (pos & REGION_MASK), (byte) b);
+            pos++;
+            count++;
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length) throws IOException {
+            while (length > 0) {
+                int regionOffset = (int) (pos & REGION_MASK);
+                int toWrite = Math.min(length, REGION_SIZE - regionOffset);
+                MappedByteBuffer region = region(pos);
+                ((Buffer) region).position(regionOffset);
+                region.put(bytes, offset, toWrite);
+                pos += toWrite;
+                count += toWrite;
+                offset += toWrite;
+                length -= toWrite;
+            }
+        }
+    }
+
+    private final class BlockImpl extends Block {
+        private static final int HEADER_SIZE = 1 + INT_SIZE; // type, payload size
+        private static final int TAIL_SIZE = INT_SIZE;
+
+        private BlockPointer pos;
+        private int payloadSize;
+
+        private BlockImpl(BlockPayload payload, BlockPointer pos) {
+            this(payload);
+            setPos(pos);
+        }
+
+        public BlockImpl(BlockPayload payload) {
+            super(payload);
+            pos = null;
+            payloadSize = -1;
+        }
+
+        @Override
+        public boolean hasPos() {
+            return pos != null;
+        }
+
+        @Override
+        public BlockPointer getPos() {
+            if (pos == null) {
+                pos = BlockPointer.pos(alloc(getSize()));
+            }
+            return pos;
+        }
+
+        @Override
+        public void setPos(BlockPointer pos) {
+            assert this.pos == null && !pos.isNull();
+            this.pos = pos;
+        }
+
+        @Override
+        public int getSize() {
+            if (payloadSize < 0) {
+                payloadSize = getPayload().getSize();
+            }
+            return payloadSize + HEADER_SIZE + TAIL_SIZE;
+        }
+
+        @Override
+        public void setSize(int size) {
+            int newPayloadSize = size - HEADER_SIZE - TAIL_SIZE;
+            assert newPayloadSize >= payloadSize;
+            payloadSize = newPayloadSize;
+        }
+
+        public void write() throws Exception {
+            long pos = getPos().getPos();
+
+            DataOutputStream outputStream = output.start(pos);
+
+            BlockPayload payload = getPayload();
+
+            // Write header
+            outputStream.writeByte(payload.getType());
+            outputStream.writeInt(payloadSize);
+            long finalSize = pos + HEADER_SIZE + TAIL_SIZE + payloadSize;
+
+            // Write body
+            payload.write(outputStream);
+
+            // Write count
+            long bytesWritten = output.getBytesWritten();
+            if (bytesWritten > Integer.MAX_VALUE) {
+                throw new IllegalArgumentException("Block payload exceeds maximum size");
+            }
+            outputStream.writeInt((int) bytesWritten);
+            outputStream.flush();
+
+            if (currentFileSize < finalSize) {
+                currentFileSize = finalSize;
+            }
+        }
+
+        public void read() throws Exception {
+            long pos = getPos().getPos();
+            assert pos >= 0;
+            if (pos + HEADER_SIZE >= currentFileSize) {
+                throw blockCorruptedException();
+            }
+
+            DataInputStream inputStream = input.start(pos);
+
+            BlockPayload payload = getPayload();
+
+            // Read header
+            byte type = inputStream.readByte();
+            if (type != payload.getType()) {
+                throw blockCorruptedException();
+            }
+
+            // Read body
+            payloadSize = inputStream.readInt();
+            if (pos + HEADER_SIZE + TAIL_SIZE + payloadSize > currentFileSize) {
+                throw blockCorruptedException();
+            }
+            payload.read(inputStream);
+
+            // Read and verify count
+            long actualCount = input.getBytesRead();
+            long count = inputStream.readInt();
+            if (actualCount != count) {
+                throw blockCorruptedException();
+            }
+        }
+
+        @Override
+        public RuntimeException blockCorruptedException() {
+            return new CorruptedCacheException(String.format("Corrupted %s found in %s.", this,
+                    MappedFileBlockStore.this));
+        }
+    }
+}
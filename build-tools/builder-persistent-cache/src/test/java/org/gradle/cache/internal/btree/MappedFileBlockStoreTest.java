@@ -0,0 +1,209 @@
+package org.gradle.cache.internal.btree;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class MappedFileBlockStoreTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void testBlocksSurviveReopen() throws IOException {
+        File cacheFile = new File(temporaryFolder.getRoot(), "cache.bin");
+        List<String> values = createValues();
+
+        BlockStore store = new MappedFileBlockStore(cacheFile);
+        List<BlockPointer> pointers = writeValues(store, values);
+        store.close();
+
+        // the file is truncated back to the end of the last block
+        assert cacheFile.length() < MappedFileBlockStore.REGION_SIZE * 3L;
+        assert cacheFile.length() % MappedFileBlockStore.REGION_SIZE != 0;
+
+        store = new MappedFileBlockStore(cacheFile);
+        assertValues(store, pointers, values);
+        store.close();
+    }
+
+    @Test
+    public void testFileBackedStoreReadsMappedFile() throws IOException {
+        File cacheFile = new File(temporaryFolder.getRoot(), "cache.bin");
+        List<String> values = createValues();
+
+        BlockStore store = new MappedFileBlockStore(cacheFile);
+        List<BlockPointer> pointers = writeValues(store, values);
+        store.close();
+
+        store = new FileBackedBlockStore(cacheFile);
+        assertValues(store, pointers, values);
+        store.close();
+    }
+
+    @Test
+    public void testMappedStoreReadsFileBackedFile() throws IOException {
+        File cacheFile = new File(temporaryFolder.getRoot(), "cache.bin");
+        List<String> values = createValues();
+
+        BlockStore store = new FileBackedBlockStore(cacheFile);
+        List<BlockPointer> pointers = writeValues(store, values);
+        store.close();
+        long length = cacheFile.length();
+
+        store = new MappedFileBlockStore(cacheFile);
+        assertValues(store, pointers, values);
+        store.close();
+
+        // reading does not change the file
+        assert cacheFile.length() == length;
+    }
+
+    @Test
+    public void testReopenAfterCrashBeforeClose() throws IOException {
+        File cacheFile = new File(temporaryFolder.getRoot(), "cache.bin");
+        List<String> values = Arrays.asList("first", "second", "third");
+
+        BlockStore store = new MappedFileBlockStore(cacheFile);
+        List<BlockPointer> pointers = writeValues(store, values);
+        store.close();
+
+        // a process that dies before closing the store leaves the file grown to the end of
+        // the last mapped region, with zeros after the last block
+        try (RandomAccessFile file = new RandomAccessFile(cacheFile, "rw")) {
+            file.setLength(MappedFileBlockStore.REGION_SIZE);
+        }
+
+        store = new MappedFileBlockStore(cacheFile);
+        assertValues(store, pointers, values);
+
+        // new blocks are appended after the padding and the existing blocks stay intact
+        TestBlock added = new TestBlock("added");
+        store.attach(added);
+        store.write(added);
+        BlockPointer addedPos = added.getPos();
+        assert addedPos.getPos() >= MappedFileBlockStore.REGION_SIZE;
+        store.close();
+
+        List<BlockPointer> allPointers = new ArrayList<>(pointers);
+        allPointers.add(addedPos);
+        List<String> allValues = new ArrayList<>(values);
+        allValues.add("added");
+
+        store = new MappedFileBlockStore(cacheFile);
+        assertValues(store, allPointers, allValues);
+        store.close();
+
+        store = new FileBackedBlockStore(cacheFile);
+        assertValues(store, allPointers, allValues);
+        store.close();
+    }
+
+    @Test
+    public void testClear() throws IOException {
+        File cacheFile = new File(temporaryFolder.getRoot(), "cache.bin");
+
+        BlockStore store = new MappedFileBlockStore(cacheFile);
+        writeValues(store, createValues());
+        store.clear();
+        List<BlockPointer> pointers = writeValues(store, Arrays.asList("after clear"));
+        store.close();
+
+        assert pointers.get(0).getPos() == 0;
+        store = new MappedFileBlockStore(cacheFile);
+        assertValues(store, pointers, Arrays.asList("after clear"));
+        store.close();
+    }
+
+    /**
+     * Small blocks, blocks that would straddle a region boundary and a block larger than a
+     * region.
+     */
+    private static List<String> createValues() {
+        List<String> values = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            values.add("value " + i);
+        }
+        char[] chars = new char[MappedFileBlockStore.REGION_SIZE / 3];
+        for (int i = 0; i < 4; i++) {
+            Arrays.fill(chars, (char) ('a' + i));
+            values.add(new String(chars));
+        }
+        char[] large = new char[MappedFileBlockStore.REGION_SIZE + 100];
+        Arrays.fill(large, 'z');
+        values.add(new String(large));
+        values.add("last");
+        return values;
+    }
+
+    private static List<BlockPointer> writeValues(BlockStore store, List<String> values) {
+        List<BlockPointer> pointers = new ArrayList<>();
+        store.open(() -> {}, TestBlock.FACTORY);
+        for (String value : values) {
+            TestBlock block = new TestBlock(value);
+            store.attach(block);
+            store.write(block);
+            pointers.add(block.getPos());
+        }
+        store.flush();
+        return pointers;
+    }
+
+    private static void assertValues(BlockStore store,
+                                     List<BlockPointer> pointers,
+                                     List<String> values) {
+        store.open(() -> {}, TestBlock.FACTORY);
+        // read backwards so the regions are not mapped in order
+        for (int i = pointers.size() - 1; i >= 0; i--) {
+            TestBlock block = store.read(pointers.get(i), TestBlock.class);
+            assert values.get(i).equals(block.value);
+        }
+        TestBlock first = store.readFirst(TestBlock.class);
+        assert values.get(0).equals(first.value);
+    }
+
+    private static class TestBlock extends BlockPayload {
+
+        static final BlockStore.Factory FACTORY = type -> new TestBlock(null);
+
+        private String value;
+
+        TestBlock(String value) {
+            this.value = value;
+        }
+
+        @Override
+        protected int getSize() {
+            return Block.INT_SIZE + value.getBytes(StandardCharsets.UTF_8).length;
+        }
+
+        @Override
+        protected byte getType() {
+            return 0x7f;
+        }
+
+        @Override
+        protected void read(DataInputStream inputStream) throws Exception {
+            byte[] bytes = new byte[inputStream.readInt()];
+            inputStream.readFully(bytes);
+            value = new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        @Override
+        protected void write(DataOutputStream outputStream) throws Exception {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            outputStream.writeInt(bytes.length);
+            outputStream.write(bytes);
+        }
+    }
+}
@@ -53,7 +53,9 @@ class ClassBucket(val bucketGroup: ClassBucketGroup, val bucketNumber: Int) :
             // package into the same bucket, so that their corresponding dex files are put in the
             // same output jar. This is not required, but it makes the downstream DexMergingTask
             // more efficient (see `getBucketNumber` in DexMergingTask).
-            File(relativePath).parent ?: ""
+            val packagePath = getPackagePath(relativePath)
+            (bucketGroup as JarBucketGroup).getBucketOfPackage(packagePath)?.let { return it }
+            packagePath
         } else {
             // For an input directory, all buckets share the same output directory, so grouping
             // classes by package has no effect on the output. We use relative paths instead to
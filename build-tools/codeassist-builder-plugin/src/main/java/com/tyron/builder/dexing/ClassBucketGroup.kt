@@ -1,7 +1,9 @@
 package com.tyron.builder.dexing
 
 import java.io.File
+import java.io.IOException
 import java.io.Serializable
+import java.util.zip.ZipFile
 
 /** A group of class files, which is split into a number of [ClassBucket]'s. */
 sealed class ClassBucketGroup(val numOfBuckets: Int) : Serializable {
@@ -32,14 +34,26 @@ class DirectoryBucketGroup(
     }
 }
 
-/** A group of all class files in a jar. */
+/**
+ * A group of all class files in a jar.
+ *
+ * Classes of the same package are always put in the same bucket. If [packageBuckets] is set,
+ * packages are assigned to the buckets it specifies, usually computed by [partitionBySize],
+ * otherwise they are distributed by the hash of their path.
+ */
 class JarBucketGroup(
 
     /** The jar file. It may have been removed. */
     val jarFile: File,
 
     /** The number of buckets that this group is split into. */
-    numOfBuckets: Int
+    numOfBuckets: Int,
+
+    /** The bucket of each package path of the jar, `null` to distribute packages by hash. */
+    private val packageBuckets: HashMap<String, Int>? = null,
+
+    /** The total size of the class files of each bucket, `null` if unknown. */
+    private val bucketSizes: LongArray? = null
 
 ) : ClassBucketGroup(numOfBuckets), Serializable {
 
@@ -49,7 +63,86 @@ class JarBucketGroup(
 
     override fun getRoots() = listOf(jarFile)
 
+    /** Returns the bucket of the given package path, or `null` if it is distributed by hash. */
+    fun getBucketOfPackage(packagePath: String): Int? = packageBuckets?.get(packagePath)
+
+    /**
+     * Returns whether the bucket may contain classes. This is always true when the group was not
+     * partitioned by size.
+     */
+    fun hasClasses(bucketNumber: Int): Boolean =
+        bucketSizes == null || bucketSizes[bucketNumber] > 0
+
+    /** Returns the estimated size in bytes of the class files of the bucket. */
+    fun getEstimatedSize(bucketNumber: Int): Long =
+        bucketSizes?.get(bucketNumber) ?: (jarFile.length() / numOfBuckets)
+
     companion object {
         private const val serialVersionUID = 1L
+
+        /**
+         * Buckets smaller than this are not worth a separate D8 invocation, as the cost of
+         * reading the jar and starting D8 outweighs dexing the classes in parallel.
+         */
+        private const val MIN_BUCKET_SIZE = 512 * 1024L
+
+        /**
+         * Splits the classes of a jar into at most [maxNumOfBuckets] buckets of similar size,
+         * keeping the classes of a package in the same bucket. Small jars use fewer buckets so
+         * that no D8 invocation is spent on a handful of classes, the remaining buckets are
+         * left empty.
+         *
+         * The result only depends on the content of the jar, so the classes of an unchanged
+         * jar are assigned to the same buckets in every build.
+         */
+        fun partitionBySize(
+            jarFile: File,
+            maxNumOfBuckets: Int,
+            minBucketSize: Long = MIN_BUCKET_SIZE
+        ): JarBucketGroup {
+            val packageSizes = try {
+                getPackageSizes(jarFile)
+            } catch (e: IOException) {
+                return JarBucketGroup(jarFile, maxNumOfBuckets)
+            }
+
+            val totalSize = packageSizes.values.sum()
+            val numOfUsedBuckets =
+                ((totalSize + minBucketSize - 1) / minBucketSize)
+                    .coerceIn(1, maxNumOfBuckets.toLong())
+                    .toInt()
+
+            // Assign the largest packages first, each to the bucket with the smallest size so far
+            val bucketSizes = LongArray(maxNumOfBuckets)
+            val packageBuckets = HashMap<String, Int>(packageSizes.size)
+            packageSizes.entries
+                .sortedWith(compareByDescending<Map.Entry<String, Long>> { it.value }
+                    .thenBy { it.key })
+                .forEach { (packagePath, size) ->
+                    val bucket = (0 until numOfUsedBuckets).minByOrNull { bucketSizes[it] }!!
+                    bucketSizes[bucket] += size
+                    packageBuckets[packagePath] = bucket
+                }
+            return JarBucketGroup(jarFile, maxNumOfBuckets, packageBuckets, bucketSizes)
+        }
+
+        private fun getPackageSizes(jarFile: File): Map<String, Long> {
+            val packageSizes = mutableMapOf<String, Long>()
+            ZipFile(jarFile).use { zip ->
+                for (entry in zip.entries()) {
+                    if (entry.isDirectory || !ClassFileInput.CLASS_MATCHER.test(entry.name)) {
+                        continue
+                    }
+                    // the uncompressed size is a good estimate of the work needed to dex a class
+                    val size = entry.size.takeIf { it >= 0 } ?: entry.compressedSize
+                    packageSizes.merge(getPackagePath(entry.name), size.coerceAtLeast(1), Long::plus)
+                }
+            }
+            return packageSizes
+        }
     }
-}
\ No newline at end of file
+}
+
+/** Returns the normalized path of the package of a class file or jar entry. */
+internal fun getPackagePath(relativePath: String): String =
+    File(File(relativePath).parent ?: "").invariantSeparatorsPath
\ No newline at end of file
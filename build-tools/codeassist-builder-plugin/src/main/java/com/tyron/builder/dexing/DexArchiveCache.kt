@@ -0,0 +1,142 @@
+package com.tyron.builder.dexing
+
+import com.google.common.hash.Hashing
+import com.tyron.builder.utils.SynchronizedFile
+import org.gradle.api.logging.Logging
+import org.gradle.util.internal.GFileUtils
+import java.io.File
+import java.nio.file.Files
+import java.nio.file.StandardCopyOption
+
+/**
+ * A store of dex archives shared by all the projects that use the same cache directory, usually
+ * one per Gradle user home. Entries are keyed by the content hash of the dexed jar along with
+ * the dexing configuration, so a library that has been dexed once with the same configuration
+ * is reused by every project and variant instead of being dexed again.
+ *
+ * Each entry is a directory containing the dex archives of the buckets of the jar, buckets without
+ * classes have no dex archive. Access to an entry is synchronized across processes, and entries
+ * are written to a temporary directory first so a partially written entry is never visible.
+ * When the total size of the cache exceeds [maxSizeBytes], the least recently used entries
+ * are removed.
+ */
+class DexArchiveCache(private val directory: File, private val maxSizeBytes: Long) {
+
+    init {
+        GFileUtils.mkdirs(directory)
+    }
+
+    /**
+     * Copies the cached dex archives of the entry to the given outputs.
+     *
+     * @param outputs the output file of each bucket, indexed by bucket id
+     * @return false if the entry is not in the cache, in which case nothing is copied
+     */
+    fun copyTo(key: String, outputs: List<File>): Boolean {
+        val entry = directory.resolve(key)
+        return SynchronizedFile.getInstanceWithMultiProcessLocking(entry).read { dir ->
+            if (!dir.isDirectory) {
+                return@read false
+            }
+            outputs.forEachIndexed { bucketId, output ->
+                val cached = dir.resolve(bucketFileName(bucketId))
+                if (cached.isFile) {
+                    GFileUtils.mkdirs(output.parentFile)
+                    Files.copy(cached.toPath(), output.toPath(), StandardCopyOption.REPLACE_EXISTING)
+                } else {
+                    GFileUtils.deleteIfExists(output)
+                }
+            }
+            // the modification time of the entry is used as its last access time
+            dir.setLastModified(System.currentTimeMillis())
+            true
+        }
+    }
+
+    /**
+     * Stores the dex archives of a jar in the cache, does nothing if the entry already exists.
+     *
+     * @param outputs the output file of each bucket, indexed by bucket id, the outputs of
+     * buckets without classes do not exist
+     */
+    fun put(key: String, outputs: List<File>) {
+        val entry = directory.resolve(key)
+        SynchronizedFile.getInstanceWithMultiProcessLocking(entry).write { dir ->
+            if (!dir.isDirectory) {
+                val tempDir = directory.resolve("$key.tmp")
+                GFileUtils.deleteQuietly(tempDir)
+                GFileUtils.mkdirs(tempDir)
+                outputs.forEachIndexed { bucketId, output ->
+                    if (output.isFile) {
+                        Files.copy(
+                            output.toPath(),
+                            tempDir.resolve(bucketFileName(bucketId)).toPath()
+                        )
+                    }
+                }
+                Files.move(tempDir.toPath(), dir.toPath(), StandardCopyOption.ATOMIC_MOVE)
+            }
+        }
+    }
+
+    /** Removes the least recently used entries until the cache fits in [maxSizeBytes]. */
+    fun trim() {
+        val entries = directory.listFiles { file -> file.isDirectory && !file.name.endsWith(".tmp") }
+            ?: return
+        val sizes = entries.associateWith { entry ->
+            entry.listFiles()?.sumOf { it.length() } ?: 0L
+        }
+        var totalSize = sizes.values.sum()
+        if (totalSize <= maxSizeBytes) {
+            return
+        }
+
+        for (entry in entries.sortedBy { it.lastModified() }) {
+            if (totalSize <= maxSizeBytes) {
+                break
+            }
+            SynchronizedFile.getInstanceWithMultiProcessLocking(entry).write { dir ->
+                GFileUtils.deleteQuietly(dir)
+            }
+            GFileUtils.deleteQuietly(SynchronizedFile.getLockFile(entry))
+            totalSize -= sizes.getValue(entry)
+            logger.debug("Removed dex archive cache entry %s", entry.name)
+        }
+    }
+
+    private fun bucketFileName(bucketId: Int) = "$bucketId.jar"
+
+    companion object {
+
+        /**
+         * Version of the layout and contents of the entries, change this when the dex archives
+         * produced for the same inputs change, e.g. when D8 is updated.
+         */
+        private const val CACHE_VERSION = 2
+
+        private val logger = Logging.getLogger(DexArchiveCache::class.java)
+
+        /**
+         * Computes the key of a jar dexed with the given configuration. Only options that affect
+         * the dex output should be part of the key.
+         */
+        fun computeKey(
+            jarHash: String,
+            minSdkVersion: Int,
+            debuggable: Boolean,
+            withDesugaring: Boolean,
+            numberOfBuckets: Int
+        ): String {
+            return Hashing.sha256()
+                .newHasher()
+                .putInt(CACHE_VERSION)
+                .putUnencodedChars(jarHash)
+                .putInt(minSdkVersion)
+                .putBoolean(debuggable)
+                .putBoolean(withDesugaring)
+                .putInt(numberOfBuckets)
+                .hash()
+                .toString()
+        }
+    }
+}
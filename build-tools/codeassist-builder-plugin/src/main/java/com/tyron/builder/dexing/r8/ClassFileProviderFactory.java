@@ -14,7 +14,10 @@ import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
 import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -24,6 +27,12 @@ import java.util.function.Supplier;
 /**
  * Provides {@link ClassFileResourceProvider} suitable for D8/R8 classpath and bootclasspath
  * entries. Some of those may be shared.
+ *
+ * <p>Providers of archives are shared by all the factories of the process and are reference
+ * counted. Archives are memory mapped once and indexed by {@link MappedArchiveClassFileProvider},
+ * so the android.jar and the libraries of the classpath are not read again for every build or
+ * dexing worker. A few unused archives are kept after their last factory is closed, as long as
+ * they are not modified, so the next build in the same daemon can reuse them.
  */
 public class ClassFileProviderFactory implements Closeable {
 
@@ -65,10 +74,40 @@ public class ClassFileProviderFactory implements Closeable {
         }
     }
 
+    /** An archive provider shared by the factories of this process. */
+    private static final class SharedArchive {
+        @NotNull final Path path;
+        @NotNull final ClassFileResourceProvider provider;
+        @NotNull final FileTime lastModified;
+        final long size;
+        int refCount;
+
+        SharedArchive(
+                @NotNull Path path,
+                @NotNull ClassFileResourceProvider provider,
+                @NotNull FileTime lastModified,
+                long size) {
+            this.path = path;
+            this.provider = provider;
+            this.lastModified = lastModified;
+            this.size = size;
+        }
+    }
+
+    /** Maximum number of archives kept while no factory uses them. */
+    private static final int MAX_IDLE_ARCHIVES = 16;
+
+    /** Shared archives by path, guarded by itself. */
+    private static final Map<Path, SharedArchive> sharedArchives = Maps.newHashMap();
+
+    /** Paths of the shared archives that are not used, least recently released first. */
+    private static final Set<Path> idleArchives = new LinkedHashSet<>();
+
     @NotNull
     private static final AtomicLong nextId = new AtomicLong();
 
     @NotNull private List<ClassFileResourceProvider> providers;
+    @NotNull private final List<SharedArchive> acquiredArchives = Lists.newArrayList();
     @NotNull private final OrderedClassFileResourceProvider orderedClassFileResourceProvider;
     private final long id;
 
@@ -77,7 +116,11 @@ public class ClassFileProviderFactory implements Closeable {
 
         providers = Lists.newArrayListWithExpectedSize(paths.size());
         for (Path path : paths) {
-            if (path.toFile().exists()) {
+            if (Files.isRegularFile(path)) {
+                SharedArchive archive = acquireArchive(path);
+                acquiredArchives.add(archive);
+                providers.add(archive.provider);
+            } else if (path.toFile().exists()) {
                 providers.add(createProvider(path));
             }
         }
@@ -93,11 +136,17 @@ public class ClassFileProviderFactory implements Closeable {
     public void close() throws IOException {
         // Close providers and clear
         for (ClassFileResourceProvider provider : providers) {
-            if (provider instanceof Closeable) {
+            if (provider instanceof Closeable
+                    && acquiredArchives.stream().noneMatch(it -> it.provider == provider)) {
                 ((Closeable) provider).close();
             }
         }
         providers.clear();
+
+        for (SharedArchive archive : acquiredArchives) {
+            releaseArchive(archive);
+        }
+        acquiredArchives.clear();
     }
 
     @NotNull
@@ -105,6 +154,74 @@ public class ClassFileProviderFactory implements Closeable {
         return orderedClassFileResourceProvider;
     }
 
+    /**
+     * Returns the shared provider of an archive, creating it if there is none or if the archive
+     * was modified since it was created.
+     */
+    @NotNull
+    private static SharedArchive acquireArchive(@NotNull Path path) throws IOException {
+        Path key = path.toAbsolutePath().normalize();
+        FileTime lastModified = Files.getLastModifiedTime(key);
+        long size = Files.size(key);
+
+        synchronized (sharedArchives) {
+            SharedArchive archive = sharedArchives.get(key);
+            if (archive != null
+                    && archive.lastModified.equals(lastModified)
+                    && archive.size == size) {
+                archive.refCount++;
+                idleArchives.remove(key);
+                return archive;
+            }
+            if (archive != null && archive.refCount == 0) {
+                // the archive was modified while no one used it
+                idleArchives.remove(key);
+                closeQuietly(archive);
+            }
+            // the previous archive, if still in use, is closed when it is released
+
+            ClassFileResourceProvider provider = MappedArchiveClassFileProvider.create(key);
+            if (provider == null) {
+                provider = new CachingArchiveClassFileProvider(key);
+            }
+            archive = new SharedArchive(key, provider, lastModified, size);
+            archive.refCount = 1;
+            sharedArchives.put(key, archive);
+            return archive;
+        }
+    }
+
+    private static void releaseArchive(@NotNull SharedArchive archive) {
+        synchronized (sharedArchives) {
+            if (--archive.refCount > 0) {
+                return;
+            }
+            if (sharedArchives.get(archive.path) != archive) {
+                // replaced by a newer version of the archive
+                closeQuietly(archive);
+                return;
+            }
+
+            idleArchives.add(archive.path);
+            Iterator<Path> iterator = idleArchives.iterator();
+            while (idleArchives.size() > MAX_IDLE_ARCHIVES) {
+                Path eldest = iterator.next();
+                iterator.remove();
+                closeQuietly(sharedArchives.remove(eldest));
+            }
+        }
+    }
+
+    private static void closeQuietly(@NotNull SharedArchive archive) {
+        if (archive.provider instanceof Closeable) {
+            try {
+                ((Closeable) archive.provider).close();
+            } catch (IOException ignored) {
+                // the archive is no longer used
+            }
+        }
+    }
+
     @NotNull
     private static ClassFileResourceProvider createProvider(@NotNull Path entry)
             throws IOException {
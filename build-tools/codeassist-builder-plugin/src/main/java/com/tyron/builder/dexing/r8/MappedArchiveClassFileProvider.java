@@ -0,0 +1,361 @@
+package com.tyron.builder.dexing.r8;
+
+import com.android.tools.r8.ClassFileResourceProvider;
+import com.android.tools.r8.ProgramResource;
+import com.android.tools.r8.ResourceException;
+import com.android.tools.r8.origin.ArchiveEntryOrigin;
+import com.android.tools.r8.origin.Origin;
+import com.android.tools.r8.origin.PathOrigin;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * A {@link ClassFileResourceProvider} that memory maps an archive and reads its central
+ * directory once, so the class files are read directly from the mapping instead of through a
+ * zip stream.
+ *
+ * <p>The provider does not hold any file handle once it is created. The mapping is released when
+ * the provider is closed, which {@link ClassFileProviderFactory} does once the last factory that
+ * uses the archive releases it. The bytes of a class are copied out of the mapping before they
+ * are returned, so no stream refers to the mapping after it is released.
+ */
+final class MappedArchiveClassFileProvider implements ClassFileResourceProvider, Closeable {
+
+    private static final int LOCAL_HEADER_SIGNATURE = 0x04034b50;
+    private static final int CENTRAL_HEADER_SIGNATURE = 0x02014b50;
+    private static final int END_OF_CENTRAL_DIRECTORY_SIGNATURE = 0x06054b50;
+    private static final int END_OF_CENTRAL_DIRECTORY_SIZE = 22;
+    private static final int LOCAL_HEADER_SIZE = 30;
+    private static final int CENTRAL_HEADER_SIZE = 46;
+    private static final int MAX_COMMENT_SIZE = 0xFFFF;
+
+    private static final int METHOD_STORED = 0;
+    private static final int METHOD_DEFLATED = 8;
+
+    private static final String CLASS_EXTENSION = ".class";
+
+    /** Location of a class file in the archive. */
+    private static final class Entry {
+        final String name;
+        final int localHeaderOffset;
+        final int compressedSize;
+        final int uncompressedSize;
+        final int method;
+
+        Entry(String name, int localHeaderOffset, int compressedSize, int uncompressedSize,
+                int method) {
+            this.name = name;
+            this.localHeaderOffset = localHeaderOffset;
+            this.compressedSize = compressedSize;
+            this.uncompressedSize = uncompressedSize;
+            this.method = method;
+        }
+    }
+
+    @NotNull private final Path archive;
+    @NotNull private final Origin origin;
+    @NotNull private final MappedByteBuffer buffer;
+    @NotNull private final Map<String, Entry> entries;
+
+    /** Classes are read under the read lock, the mapping is released under the write lock. */
+    @NotNull private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private boolean closed;
+
+    private MappedArchiveClassFileProvider(
+            @NotNull Path archive,
+            @NotNull MappedByteBuffer buffer,
+            @NotNull Map<String, Entry> entries) {
+        this.archive = archive;
+        this.origin = new PathOrigin(archive);
+        this.buffer = buffer;
+        this.entries = entries;
+    }
+
+    /**
+     * Maps the archive and indexes its class files.
+     *
+     * @return the provider, or {@code null} if the archive can not be mapped, e.g. zip64
+     *     archives or archives larger than 2GB, in which case a zip based provider should be used
+     */
+    @Nullable
+    static MappedArchiveClassFileProvider create(@NotNull Path archive) throws IOException {
+        MappedByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(archive, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                return null;
+            }
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+
+        Map<String, Entry> entries;
+        try {
+            entries = readCentralDirectory(buffer);
+        } catch (IOException | RuntimeException e) {
+            unmap(buffer);
+            throw e;
+        }
+        if (entries == null) {
+            unmap(buffer);
+            return null;
+        }
+        return new MappedArchiveClassFileProvider(archive, buffer, entries);
+    }
+
+    /**
+     * Releases the mapping of the archive. The classes of the archive can not be read anymore
+     * once the provider is closed.
+     */
+    @Override
+    public void close() {
+        lock.writeLock().lock();
+        try {
+            if (!closed) {
+                closed = true;
+                unmap(buffer);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public Set<String> getClassDescriptors() {
+        return Collections.unmodifiableSet(entries.keySet());
+    }
+
+    @Override
+    public ProgramResource getProgramResource(String descriptor) {
+        Entry entry = entries.get(descriptor);
+        if (entry == null) {
+            return null;
+        }
+        return new MappedProgramResource(descriptor, entry);
+    }
+
+    private final class MappedProgramResource implements ProgramResource {
+        @NotNull private final String descriptor;
+        @NotNull private final Entry entry;
+
+        MappedProgramResource(@NotNull String descriptor, @NotNull Entry entry) {
+            this.descriptor = descriptor;
+            this.entry = entry;
+        }
+
+        @Override
+        public Kind getKind() {
+            return Kind.CF;
+        }
+
+        @Override
+        public Origin getOrigin() {
+            return new ArchiveEntryOrigin(entry.name, origin);
+        }
+
+        @Override
+        public Set<String> getClassDescriptors() {
+            return Collections.singleton(descriptor);
+        }
+
+        @Override
+        public InputStream getByteStream() throws ResourceException {
+            try {
+                return openEntry(entry);
+            } catch (IOException | DataFormatException | RuntimeException e) {
+                throw new ResourceException(getOrigin(), e);
+            }
+        }
+    }
+
+    @NotNull
+    private InputStream openEntry(@NotNull Entry entry) throws IOException, DataFormatException {
+        lock.readLock().lock();
+        try {
+            if (closed) {
+                throw new IOException(archive + " is closed");
+            }
+            return new ByteArrayInputStream(readEntry(entry));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @NotNull
+    private byte[] readEntry(@NotNull Entry entry) throws IOException, DataFormatException {
+        // the local header may have a different extra field than the central directory
+        ByteBuffer view = buffer.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        if (view.getInt(entry.localHeaderOffset) != LOCAL_HEADER_SIGNATURE) {
+            throw new IOException("Invalid local header for " + entry.name + " in " + archive);
+        }
+        int nameLength = Short.toUnsignedInt(view.getShort(entry.localHeaderOffset + 26));
+        int extraLength = Short.toUnsignedInt(view.getShort(entry.localHeaderOffset + 28));
+        int dataOffset = entry.localHeaderOffset + LOCAL_HEADER_SIZE + nameLength + extraLength;
+
+        view.position(dataOffset);
+        view.limit(dataOffset + entry.compressedSize);
+        ByteBuffer data = view.slice();
+
+        switch (entry.method) {
+            case METHOD_STORED:
+                byte[] stored = new byte[entry.compressedSize];
+                data.get(stored);
+                return stored;
+            case METHOD_DEFLATED:
+                byte[] compressed = new byte[entry.compressedSize];
+                data.get(compressed);
+                byte[] bytes = new byte[entry.uncompressedSize];
+                Inflater inflater = new Inflater(true);
+                try {
+                    inflater.setInput(compressed);
+                    int length = 0;
+                    while (length < bytes.length && !inflater.finished()) {
+                        int read = inflater.inflate(bytes, length, bytes.length - length);
+                        if (read == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                            break;
+                        }
+                        length += read;
+                    }
+                    if (length != bytes.length) {
+                        throw new IOException("Truncated entry " + entry.name + " in " + archive);
+                    }
+                } finally {
+                    inflater.end();
+                }
+                return bytes;
+            default:
+                throw new IOException("Unsupported compression method " + entry.method
+                        + " for " + entry.name + " in " + archive);
+        }
+    }
+
+    /**
+     * Reads the class file entries of the central directory.
+     *
+     * @return the entries by class descriptor, or {@code null} if the archive is a zip64 archive
+     */
+    @Nullable
+    private static Map<String, Entry> readCentralDirectory(@NotNull ByteBuffer buffer) throws IOException {
+        int end = findEndOfCentralDirectory(buffer);
+        if (end < 0) {
+            throw new IOException("Not a zip archive");
+        }
+        int entryCount = Short.toUnsignedInt(buffer.getShort(end + 10));
+        long directorySize = Integer.toUnsignedLong(buffer.getInt(end + 12));
+        long directoryOffset = Integer.toUnsignedLong(buffer.getInt(end + 16));
+        if (entryCount == 0xFFFF || directorySize == 0xFFFFFFFFL
+                || directoryOffset == 0xFFFFFFFFL) {
+            return null;
+        }
+
+        Map<String, Entry> entries = new HashMap<>(entryCount * 2);
+        int offset = (int) directoryOffset;
+        for (int i = 0; i < entryCount; i++) {
+            if (buffer.getInt(offset) != CENTRAL_HEADER_SIGNATURE) {
+                throw new IOException("Invalid central directory");
+            }
+            int method = Short.toUnsignedInt(buffer.getShort(offset + 10));
+            long compressedSize = Integer.toUnsignedLong(buffer.getInt(offset + 20));
+            long uncompressedSize = Integer.toUnsignedLong(buffer.getInt(offset + 24));
+            int nameLength = Short.toUnsignedInt(buffer.getShort(offset + 28));
+            int extraLength = Short.toUnsignedInt(buffer.getShort(offset + 30));
+            int commentLength = Short.toUnsignedInt(buffer.getShort(offset + 32));
+            long localHeaderOffset = Integer.toUnsignedLong(buffer.getInt(offset + 42));
+            if (compressedSize == 0xFFFFFFFFL || uncompressedSize == 0xFFFFFFFFL
+                    || localHeaderOffset == 0xFFFFFFFFL) {
+                return null;
+            }
+
+            byte[] nameBytes = new byte[nameLength];
+            ByteBuffer name = buffer.duplicate();
+            name.position(offset + CENTRAL_HEADER_SIZE);
+            name.get(nameBytes);
+            String entryName = new String(nameBytes, StandardCharsets.UTF_8);
+
+            if (isClassFile(entryName)) {
+                String descriptor = getDescriptor(entryName);
+                // like ZipFile, the first entry wins when an archive has duplicate entries
+                entries.putIfAbsent(descriptor, new Entry(entryName, (int) localHeaderOffset,
+                        (int) compressedSize, (int) uncompressedSize, method));
+            }
+            offset += CENTRAL_HEADER_SIZE + nameLength + extraLength + commentLength;
+        }
+        return entries;
+    }
+
+    private static int findEndOfCentralDirectory(@NotNull ByteBuffer buffer) {
+        int last = buffer.limit() - END_OF_CENTRAL_DIRECTORY_SIZE;
+        int first = Math.max(0, last - MAX_COMMENT_SIZE);
+        for (int i = last; i >= first; i--) {
+            if (buffer.getInt(i) == END_OF_CENTRAL_DIRECTORY_SIGNATURE) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /** Same selection of class files as {@code ArchiveClassFileProvider}. */
+    private static boolean isClassFile(@NotNull String entryName) {
+        if (!entryName.endsWith(CLASS_EXTENSION) || entryName.endsWith("/")) {
+            return false;
+        }
+        String lowerCase = entryName.toLowerCase(Locale.US);
+        return !lowerCase.startsWith("meta-inf/") && !lowerCase.equals("module-info.class");
+    }
+
+    @NotNull
+    private static String getDescriptor(@NotNull String entryName) {
+        return "L" + entryName.substring(0, entryName.length() - CLASS_EXTENSION.length()) + ";";
+    }
+
+    /**
+     * Releases a mapping without waiting for the buffer to be garbage collected, when the
+     * runtime allows it. The buffer must not be used afterwards.
+     */
+    private static void unmap(@NotNull MappedByteBuffer buffer) {
+        try {
+            // Android and Java 8
+            Method cleaner = buffer.getClass().getMethod("cleaner");
+            cleaner.setAccessible(true);
+            Object instance = cleaner.invoke(buffer);
+            if (instance != null) {
+                instance.getClass().getMethod("clean").invoke(instance);
+            }
+            return;
+        } catch (ReflectiveOperationException | RuntimeException ignored) {
+            // not accessible on Java 9 and later
+        }
+        try {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+            theUnsafe.setAccessible(true);
+            Method invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+            invokeCleaner.invoke(theUnsafe.get(null), buffer);
+        } catch (ReflectiveOperationException | RuntimeException ignored) {
+            // the mapping is released when the buffer is garbage collected
+        }
+    }
+}
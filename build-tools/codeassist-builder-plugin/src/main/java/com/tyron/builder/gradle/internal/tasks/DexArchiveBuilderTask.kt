@@ -3,6 +3,7 @@ package com.tyron.builder.gradle.internal.tasks
 import com.android.SdkConstants
 import com.android.sdklib.AndroidVersion
 import com.tyron.builder.api.variant.impl.getFeatureLevel
+import com.tyron.builder.dexing.DexArchiveCache
 import com.tyron.builder.gradle.internal.component.ApkCreationConfig
 import com.tyron.builder.gradle.internal.dependency.BaseDexingTransform
 import com.tyron.builder.gradle.internal.scope.InternalArtifactType
@@ -98,6 +99,18 @@ abstract class DexArchiveBuilderTask : IncrementalTask() {
     @get:LocalState
     abstract val previousRunNumberOfBucketsFile: RegularFileProperty
 
+    /**
+     * Directory of the dex archives of external libraries shared between projects, not set if
+     * the cache is disabled. It is [Internal] as it does not affect the outputs of this task.
+     */
+    @get:Internal
+    @get:Optional
+    abstract val dexArchiveCacheDir: DirectoryProperty
+
+    /** Maximum size in bytes of the [dexArchiveCacheDir]. */
+    @get:Internal
+    abstract val dexArchiveCacheSize: Property<Long>
+
     @get:Incremental
     @get:PathSensitive(PathSensitivity.NONE)
     @get:InputFiles
@@ -182,6 +195,9 @@ abstract class DexArchiveBuilderTask : IncrementalTask() {
             inputJarHashesFile = inputJarHashesFile.get().asFile,
             numberOfBuckets = numberOfBuckets.get(),
             workerExecutor = workerExecutor,
+            dexArchiveCache = dexArchiveCacheDir.orNull?.let {
+                DexArchiveCache(it.asFile, dexArchiveCacheSize.get())
+            },
             projectPath = project.provider { project.projectPath.toString() },
             taskPath = path,
         ).doProcess()
@@ -328,6 +344,15 @@ abstract class DexArchiveBuilderTask : IncrementalTask() {
                         ?: DEFAULT_NUM_BUCKETS
                 }
             )
+            val dexArchiveCacheSizeMb =
+                projectOptions.get(IntegerOption.DEX_ARCHIVE_CACHE_SIZE_MB)
+                    ?: DEFAULT_DEX_ARCHIVE_CACHE_SIZE_MB
+            if (dexArchiveCacheSizeMb > 0) {
+                task.dexArchiveCacheDir.set(
+                    task.project.gradle.gradleUserHomeDir.resolve(DEX_ARCHIVE_CACHE_DIR)
+                )
+            }
+            task.dexArchiveCacheSize.set(dexArchiveCacheSizeMb * 1024L * 1024L)
             if (libraryDesugaring) {
                 task.dexParams.coreLibDesugarConfig.set(getDesugarLibConfig(creationConfig.services))
             }
@@ -422,6 +447,11 @@ abstract class DexArchiveBuilderTask : IncrementalTask() {
 
 val DEFAULT_NUM_BUCKETS = (Runtime.getRuntime().availableProcessors() / 2).coerceAtLeast(1)
 
+const val DEFAULT_DEX_ARCHIVE_CACHE_SIZE_MB = 512
+
+/** Location of the dex archive cache, relative to the Gradle user home. */
+private const val DEX_ARCHIVE_CACHE_DIR = "caches/codeassist/dex-archives"
+
 /** Parameters required for dexing (with D8). */
 abstract class DexParameterInputs {
 
@@ -11,6 +11,7 @@ import com.tyron.builder.internal.dexing.DexWorkAction
 import com.tyron.builder.internal.dexing.IncrementalDexSpec
 import com.tyron.builder.gradle.internal.workeractions.WorkerActionServiceRegistry
 import com.android.SdkConstants
+import com.android.sdklib.AndroidVersion
 import org.gradle.api.file.FileType
 import org.gradle.api.logging.Logging
 import org.gradle.api.provider.Provider
@@ -67,6 +68,8 @@ class DexArchiveBuilderTaskDelegate(
     private val inputJarHashesFile: File,
     private val numberOfBuckets: Int,
     private val workerExecutor: WorkerExecutor,
+    /** Dex archives of external libraries shared between projects, `null` if disabled. */
+    private val dexArchiveCache: DexArchiveCache? = null,
     private val projectPath: Provider<String>,
     private val taskPath: String,
 ) {
@@ -97,6 +100,15 @@ class DexArchiveBuilderTaskDelegate(
             this
         }
 
+    /** Cache keys and outputs of the jars that were dexed in this run and should be cached. */
+    private val pendingCacheEntries = mutableListOf<Pair<String, List<File>>>()
+
+    /**
+     * Buckets of jars waiting to be submitted, with the estimated size of their class files.
+     * They are submitted once all inputs have been processed, see [submitJarBuckets].
+     */
+    private val pendingJarBuckets = mutableListOf<Pair<Long, () -> Unit>>()
+
     init {
         check(dexParams.withDesugaring xor (desugarGraphDir == null))
     }
@@ -114,6 +126,9 @@ class DexArchiveBuilderTaskDelegate(
     companion object {
         // Shared state used by worker actions.
         internal val sharedState = WorkerActionServiceRegistry()
+
+        /** Rough estimate of the heap used by D8 per byte of input class files. */
+        private const val MEMORY_PER_CLASS_BYTE = 8L
     }
 
     fun doProcess() {
@@ -146,7 +161,8 @@ class DexArchiveBuilderTaskDelegate(
                                          outputDir: File,
                                          outputKeepRules: File?,
                     // Not null iff desugaring is enabled
-                                         desugarGraphDir: File? ->
+                                         desugarGraphDir: File?,
+                                         isCacheable: Boolean ->
                     processClassFromInput(
                         inputFiles = classes,
                         inputFileChanges = changedClasses,
@@ -154,7 +170,8 @@ class DexArchiveBuilderTaskDelegate(
                         outputKeepRules = outputKeepRules,
                         desugarGraphDir = desugarGraphDir,
                         bootClasspathKey = bootclasspathServiceKey,
-                        classpathKey = classpathServiceKey
+                        classpathKey = classpathServiceKey,
+                        isCacheable = isCacheable
                     )
                 }
 
@@ -163,7 +180,8 @@ class DexArchiveBuilderTaskDelegate(
                     projectChangedClasses,
                     projectOutputs.dex,
                     projectOutputs.keepRules,
-                    desugarGraphDir?.resolve("currentProject")
+                    desugarGraphDir?.resolve("currentProject"),
+                        false
                 )
                 subProjectOutputs?.let {
                     processInputType(
@@ -171,7 +189,8 @@ class DexArchiveBuilderTaskDelegate(
                         subProjectChangedClasses,
                         subProjectOutputs.dex,
                         subProjectOutputs.keepRules,
-                        desugarGraphDir?.resolve("otherProjects")
+                        desugarGraphDir?.resolve("otherProjects"),
+                        false
                     )
                 }
                 mixedScopeOutputs?.let {
@@ -180,7 +199,8 @@ class DexArchiveBuilderTaskDelegate(
                         mixedScopeChangedClasses,
                         mixedScopeOutputs.dex,
                         mixedScopeOutputs.keepRules,
-                        desugarGraphDir?.resolve("mixedScopes")
+                        desugarGraphDir?.resolve("mixedScopes"),
+                        false
                     )
                 }
                 externalLibsOutputs?.let {
@@ -189,15 +209,23 @@ class DexArchiveBuilderTaskDelegate(
                         externalLibChangedClasses,
                         externalLibsOutputs.dex,
                         externalLibsOutputs.keepRules,
-                        desugarGraphDir?.resolve("externalLibs")
+                        desugarGraphDir?.resolve("externalLibs"),
+                        true
                     )
                 }
 
+                submitJarBuckets()
+
                 // all work items have been submitted, now wait for completion.
                 // TODO (gavra): use build services in worker actions so ClassFileProviderFactory are not closed too early
                 workerExecutor.await()
 
                 loggerWrapper.debug("Done with all dex archive conversions")
+
+                dexArchiveCache?.let { cache ->
+                    pendingCacheEntries.forEach { (key, outputs) -> cache.put(key, outputs) }
+                    cache.trim()
+                }
             }
         } catch (e: Exception) {
             loggerWrapper.error(Throwables.getStackTraceAsString(e))
@@ -212,7 +240,8 @@ class DexArchiveBuilderTaskDelegate(
         outputKeepRules: File?,
         desugarGraphDir: File?, // Not null iff desugaring is enabled
         bootClasspathKey: ClasspathServiceKey,
-        classpathKey: ClasspathServiceKey
+        classpathKey: ClasspathServiceKey,
+        isCacheable: Boolean
     ) {
         if (!isIncremental) {
             GFileUtils.cleanOutputDir(outputDir)
@@ -254,7 +283,8 @@ class DexArchiveBuilderTaskDelegate(
                 classpath = classpathKey,
                 changedFiles = changedFiles,
                 desugarGraphDir = desugarGraphDir,
-                outputKeepRulesDir = outputKeepRules
+                outputKeepRulesDir = outputKeepRules,
+                isCacheable = isCacheable
             )
         }
     }
@@ -267,11 +297,22 @@ class DexArchiveBuilderTaskDelegate(
         classpath: ClasspathServiceKey,
         changedFiles: Set<File>,
         desugarGraphDir: File?, // Not null iff desugaring is enabled
-        outputKeepRulesDir: File?
+        outputKeepRulesDir: File?,
+        isCacheable: Boolean
     ) {
+        if (isCacheable && canUseDexArchiveCache(outputKeepRulesDir)) {
+            if (isIncremental && jarInput !in changedFiles) {
+                return
+            }
+            if (copyFromDexArchiveCache(jarInput, outputDir)) {
+                loggerWrapper.debug("Restored dex archives of %s from the cache", jarInput)
+                return
+            }
+        }
+
         if (dexParams.withDesugaring) {
             convertToDexArchive(
-                inputs = JarBucketGroup(jarInput, numberOfBuckets),
+                inputs = JarBucketGroup.partitionBySize(jarInput, numberOfBuckets),
                 outputDir = outputDir,
                 isIncremental = isIncremental,
                 bootClasspath = bootclasspath,
@@ -286,7 +327,7 @@ class DexArchiveBuilderTaskDelegate(
             }
 
             convertToDexArchive(
-                inputs = JarBucketGroup(jarInput, numberOfBuckets),
+                inputs = JarBucketGroup.partitionBySize(jarInput, numberOfBuckets),
                 outputDir = outputDir,
                 isIncremental = false,
                 bootClasspath = bootclasspath,
@@ -298,6 +339,41 @@ class DexArchiveBuilderTaskDelegate(
         }
     }
 
+    /**
+     * Dex archives can only be shared between projects if they do not depend on the classpath of
+     * the project, which is the case when desugaring does not need the classpath (min sdk 24 or
+     * above) and when no core library desugaring keep rules are generated.
+     */
+    private fun canUseDexArchiveCache(outputKeepRulesDir: File?): Boolean {
+        return dexArchiveCache != null
+                && outputKeepRulesDir == null
+                && dexParams.coreLibDesugarConfig == null
+                && (!dexParams.withDesugaring
+                || dexParams.minSdkVersion >= AndroidVersion.VersionCodes.N)
+    }
+
+    /**
+     * Copies the cached dex archives of the jar to the output directory. If they are not cached,
+     * the jar is recorded so its dex archives are cached once they are produced.
+     */
+    private fun copyFromDexArchiveCache(jarInput: File, outputDir: File): Boolean {
+        val key = DexArchiveCache.computeKey(
+            outputMapping.getCurrentHash(jarInput),
+            dexParams.minSdkVersion,
+            dexParams.debuggable,
+            dexParams.withDesugaring,
+            numberOfBuckets
+        )
+        val outputs = (0 until numberOfBuckets).map {
+            outputMapping.getDexOutputForJar(jarInput, outputDir, it)
+        }
+        if (dexArchiveCache!!.copyTo(key, outputs)) {
+            return true
+        }
+        pendingCacheEntries.add(key to outputs)
+        return false
+    }
+
     @Suppress("UnstableApiUsage")
     private fun deletePreviousOutputsFromDirs(inputFileChanges: Set<FileChange>, output: File) {
         // Handle dir/file deletions only. We rewrite modified files, so no need to delete those.
@@ -347,6 +423,11 @@ class DexArchiveBuilderTaskDelegate(
         inputs.getRoots().forEach { loggerWrapper.debug("Dexing ${it.absolutePath}") }
 
         for (bucketId in 0 until numberOfBuckets) {
+            if (inputs is JarBucketGroup && !inputs.hasClasses(bucketId)) {
+                // nothing to dex, D8 would not produce an output for this bucket anyway
+                continue
+            }
+
             // For directory inputs, we prefer dexPerClass mode to support incremental dexing per
             // class, but dexPerClass mode is not supported by D8 when generating keep rules for
             // core library desugaring
@@ -380,26 +461,84 @@ class DexArchiveBuilderTaskDelegate(
             }
 
             val classBucket = ClassBucket(inputs, bucketId)
-            workerExecutor.noIsolation().submit(DexWorkAction::class.java) { params ->
+            val submit = {
+                submitDexWork(
+                    classBucket,
+                    preDexOutputFile,
+                    dexPerClass,
+                    bootClasspath,
+                    classpath,
+                    outputKeepRuleFile,
+                    isIncremental,
+                    changedFiles,
+                    desugarGraphDir
+                )
+            }
+            when (inputs) {
+                // the classes of directories are usually few and are the ones that changed, so
+                // they are dexed first
+                is DirectoryBucketGroup -> submit()
+                is JarBucketGroup -> pendingJarBuckets.add(inputs.getEstimatedSize(bucketId) to submit)
+            }
+        }
+    }
+
+    private fun submitDexWork(
+        classBucket: ClassBucket,
+        preDexOutputFile: File,
+        dexPerClass: Boolean,
+        bootClasspath: ClasspathServiceKey,
+        classpath: ClasspathServiceKey,
+        outputKeepRuleFile: File?,
+        isIncremental: Boolean,
+        changedFiles: Set<File>,
+        desugarGraphDir: File?
+    ) {
+        workerExecutor.noIsolation().submit(DexWorkAction::class.java) { params ->
 //                params.initializeWith(projectPath, taskPath, analyticsService)
-                params.dexSpec.set(
-                    IncrementalDexSpec(
-                        inputClassFiles = classBucket,
-                        outputPath = preDexOutputFile,
-                        dexParams = dexParams.toDexParametersForWorkers(
-                            dexPerClass,
-                            bootClasspath,
-                            classpath,
-                            outputKeepRuleFile
-                        ),
-                        isIncremental = isIncremental,
-                        changedFiles = changedFiles,
-                        desugarGraphFile = desugarGraphDir?.let {
-                            getDesugarGraphFile(it, classBucket)
-                        }
-                    ))
+            params.dexSpec.set(
+                IncrementalDexSpec(
+                    inputClassFiles = classBucket,
+                    outputPath = preDexOutputFile,
+                    dexParams = dexParams.toDexParametersForWorkers(
+                        dexPerClass,
+                        bootClasspath,
+                        classpath,
+                        outputKeepRuleFile
+                    ),
+                    isIncremental = isIncremental,
+                    changedFiles = changedFiles,
+                    desugarGraphFile = desugarGraphDir?.let {
+                        getDesugarGraphFile(it, classBucket)
+                    }
+                ))
+        }
+    }
+
+    /**
+     * Submits the buckets of jars, largest first so that the workers are not left waiting on a
+     * large bucket at the end of the build. The number of buckets in flight is bounded by the
+     * free heap: when the estimated memory of the submitted buckets exceeds it, the submitted
+     * buckets are awaited before submitting more.
+     */
+    private fun submitJarBuckets() {
+        val runtime = Runtime.getRuntime()
+        val heapBudget =
+            (runtime.maxMemory() - (runtime.totalMemory() - runtime.freeMemory())) / 2
+        var inFlight = 0L
+
+        pendingJarBuckets.sortByDescending { it.first }
+        for ((size, submit) in pendingJarBuckets) {
+            val estimatedMemory = size * MEMORY_PER_CLASS_BYTE
+            if (inFlight > 0 && inFlight + estimatedMemory > heapBudget) {
+                loggerWrapper.debug("Waiting for dexing workers, low free heap")
+                workerExecutor.await()
+                inFlight = 0
             }
+            submit()
+            inFlight += estimatedMemory
         }
+        pendingJarBuckets.clear()
     }
 
     private fun getClasspath(withDesugaring: Boolean): List<Path> {
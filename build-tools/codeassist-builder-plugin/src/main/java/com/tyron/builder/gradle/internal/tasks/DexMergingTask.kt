@@ -40,6 +40,9 @@ import org.gradle.workers.WorkAction
 import org.gradle.workers.WorkParameters
 import org.gradle.workers.WorkerExecutor
 import java.io.File
+import java.io.ObjectInputStream
+import java.io.ObjectOutputStream
+import java.io.Serializable
 import java.lang.Integer.max
 import java.lang.Integer.min
 import java.nio.file.Path
@@ -145,6 +148,13 @@ abstract class DexMergingTask : IncrementalTask() {
     @get:OutputFile
     abstract val mainDexListOutput: RegularFileProperty
 
+    /**
+     * The buckets of the dex files of each input jar in the previous run, used to find the buckets
+     * impacted by a modified or removed jar.
+     */
+    @get:LocalState
+    abstract val jarBucketsFile: RegularFileProperty
+
     override fun doTaskAction(inputChanges: InputChanges) {
         // There are two sources of input dex files:
         //   - dexDirs: These directories contain dex files and possibly also jars of dex files
@@ -177,7 +187,8 @@ abstract class DexMergingTask : IncrementalTask() {
             it.initialize(
                 sharedParams, numberOfBuckets.get(), dexDirsOrJars, outputDir, inputChanges.isIncremental,
                 fileChanges?.toSerializable(),
-                mainDexListOutput = mainDexListOutput
+                mainDexListOutput = mainDexListOutput,
+                jarBucketsFile = jarBucketsFile.get().asFile
             )
         }
     }
@@ -265,6 +276,10 @@ abstract class DexMergingTask : IncrementalTask() {
                     .from(bootClasspath, libraryClasses).disallowChanges()
             }
 
+            task.jarBucketsFile.set(
+                creationConfig.paths.getIncrementalDir(name).resolve("jar-buckets.bin")
+            )
+
             // Input properties
             task.numberOfBuckets.setDisallowChanges(
                 task.project.providers.provider { getNumberOfBuckets(projectOptions) }
@@ -510,6 +525,7 @@ abstract class DexMergingTaskDelegate : WorkAction<DexMergingTaskDelegate.Params
 
         abstract val incremental: Property<Boolean>
         abstract val fileChanges: Property<SerializableFileChanges>
+        abstract val jarBucketsFile: RegularFileProperty
 
         fun initialize(
             sharedParams: DexMergingTask.SharedParams,
@@ -518,7 +534,8 @@ abstract class DexMergingTaskDelegate : WorkAction<DexMergingTaskDelegate.Params
             outputDir: DirectoryProperty,
             incremental: Boolean,
             fileChanges: SerializableFileChanges?,
-            mainDexListOutput: RegularFileProperty?
+            mainDexListOutput: RegularFileProperty?,
+            jarBucketsFile: File
         ) {
             this.sharedParams.set(sharedParams)
             this.numberOfBuckets.set(numberOfBuckets)
@@ -527,6 +544,7 @@ abstract class DexMergingTaskDelegate : WorkAction<DexMergingTaskDelegate.Params
             this.incremental.set(incremental)
             this.fileChanges.set(fileChanges)
             mainDexListOutput?.let { this.mainDexListOutput.set(it) }
+            this.jarBucketsFile.set(jarBucketsFile)
         }
     }
 
@@ -536,11 +554,13 @@ abstract class DexMergingTaskDelegate : WorkAction<DexMergingTaskDelegate.Params
     override fun execute() {
         @Suppress("UnstableApiUsage")
         with(parameters) {
+            val jarBucketsFile = jarBucketsFile.get().asFile
             val buckets =
                 getBucketsToMerge(dexDirsOrJars.get(),
                     numberOfBuckets.get(),
                     incremental.get(),
-                    fileChanges.orNull)
+                    fileChanges.orNull,
+                    jarBucketsFile)
 
             val workQueue = workerExecutor.noIsolation()
             for ((bucketNumber, bucket) in buckets) {
@@ -587,16 +607,24 @@ abstract class DexMergingTaskDelegate : WorkAction<DexMergingTaskDelegate.Params
          * In an incremental build, this method returns only the buckets that are impacted by the
          * file changes.
          *
+         * The buckets of the dex files of each jar are recorded in [jarBucketsFile], so that the
+         * next incremental build knows which buckets a modified or removed jar impacts.
+         *
          * @return a map from bucket numbers to [DexEntryBucket]'s.
          */
         private fun getBucketsToMerge(
             dexDirsOrJars: List<File>,
             numberOfBuckets: Int,
             incremental: Boolean,
-            fileChanges: SerializableFileChanges?
+            fileChanges: SerializableFileChanges?,
+            jarBucketsFile: File
         ): Map<Int, DexEntryBucket> {
             val bucketsToMerge = if (incremental) {
-                getImpactedBuckets(fileChanges!!, numberOfBuckets)
+                getImpactedBuckets(
+                    fileChanges!!,
+                    numberOfBuckets,
+                    readJarBuckets(jarBucketsFile, numberOfBuckets)
+                )
             } else {
                 (0 until numberOfBuckets).toSet()
             }
@@ -606,21 +634,30 @@ abstract class DexMergingTaskDelegate : WorkAction<DexMergingTaskDelegate.Params
                 bucketMap[bucketNumber] = mutableListOf()
             }
 
+            val jarBuckets = JarBuckets(numberOfBuckets)
             for (dexDirOrJar in dexDirsOrJars) {
-                val dexEntryRelativePaths = if (dexDirOrJar.isDirectory) {
+                val isJar = !dexDirOrJar.isDirectory
+                val dexEntryRelativePaths = if (!isJar) {
                     getSortedFilesInDir(dexDirOrJar.toPath(), isDexFile).map {
                         dexDirOrJar.toPath().relativize(it).toString()
                     }
                 } else {
                     getSortedRelativePathsInJar(dexDirOrJar, isDexFile)
                 }
+                val bucketsOfJar = if (isJar) {
+                    jarBuckets.buckets.getOrPut(dexDirOrJar) { HashSet() }
+                } else {
+                    null
+                }
                 for (relativePath in dexEntryRelativePaths) {
                     val bucketNumber = getBucketNumber(relativePath, numberOfBuckets)
+                    bucketsOfJar?.add(bucketNumber)
                     if (bucketNumber in bucketsToMerge) {
                         bucketMap[bucketNumber]!!.add(DexEntry(dexDirOrJar, relativePath))
                     }
                 }
             }
+            writeJarBuckets(jarBucketsFile, jarBuckets)
 
             return bucketMap.map { it.key to DexEntryBucket(it.value) }.toMap()
         }
@@ -628,28 +665,68 @@ abstract class DexMergingTaskDelegate : WorkAction<DexMergingTaskDelegate.Params
         /** Returns the buckets that are impacted by the file changes in an incremental build. */
         private fun getImpactedBuckets(
             fileChanges: SerializableFileChanges,
-            numberOfBuckets: Int
+            numberOfBuckets: Int,
+            previousJarBuckets: JarBuckets?
         ): Set<Int> {
-            val hasModifiedRemovedJars =
+            val modifiedOrRemovedJars =
                 (fileChanges.modifiedFiles + fileChanges.removedFiles)
-                    .find { isJarFile(it.file) } != null
-            if (hasModifiedRemovedJars) {
-                // We don't know if/what dex files were removed in the modified/removed jars, so we
-                // don't know exactly which buckets are impacted and have to consider all buckets to
-                // be impacted.
-                return (0 until numberOfBuckets).toSet()
+                    .map { it.file }
+                    .filter { isJarFile(it) }
+            val bucketsOfModifiedOrRemovedJars = mutableSetOf<Int>()
+            for (jar in modifiedOrRemovedJars) {
+                // The dex files that were in the jar are only known if they were recorded in the
+                // previous build, otherwise we have to consider all buckets to be impacted.
+                val previousBuckets = previousJarBuckets?.buckets?.get(jar)
+                    ?: return (0 until numberOfBuckets).toSet()
+                bucketsOfModifiedOrRemovedJars.addAll(previousBuckets)
             }
 
-            // For dex files in added jars and added/modified/removed dex files in directories,
-            // compute their bucket numbers, those are impacted buckets.
-            val addedJars = (fileChanges.addedFiles).map { it.file }.filter { isJarFile(it) }
-            val relativePathsOfDexFilesInAddedJars =
-                addedJars.flatMap { getSortedRelativePathsInJar(it, isDexFile) }
+            // For dex files in added/modified jars and added/modified/removed dex files in
+            // directories, compute their bucket numbers, those are impacted buckets.
+            val addedOrModifiedJars = (fileChanges.addedFiles + fileChanges.modifiedFiles)
+                .map { it.file }
+                .filter { isJarFile(it) }
+            val relativePathsOfDexFilesInJars =
+                addedOrModifiedJars.flatMap { getSortedRelativePathsInJar(it, isDexFile) }
             val relativePathsOfChangedDexFilesInDirs =
                 fileChanges.fileChanges.map { it.normalizedPath }.filter { isDexFile(it) }
 
-            return (relativePathsOfDexFilesInAddedJars + relativePathsOfChangedDexFilesInDirs)
-                .map { getBucketNumber(it, numberOfBuckets) }.toSet()
+            return (relativePathsOfDexFilesInJars + relativePathsOfChangedDexFilesInDirs)
+                .map { getBucketNumber(it, numberOfBuckets) }
+                .toSet() + bucketsOfModifiedOrRemovedJars
+        }
+
+        /** The buckets of the dex files of each input jar. */
+        private class JarBuckets(val numberOfBuckets: Int) : Serializable {
+            val buckets = HashMap<File, MutableSet<Int>>()
+
+            companion object {
+                private const val serialVersionUID = 1L
+            }
+        }
+
+        private fun readJarBuckets(jarBucketsFile: File, numberOfBuckets: Int): JarBuckets? {
+            if (!jarBucketsFile.isFile) {
+                return null
+            }
+            return try {
+                ObjectInputStream(jarBucketsFile.inputStream().buffered()).use {
+                    (it.readObject() as JarBuckets).takeIf { jarBuckets ->
+                        jarBuckets.numberOfBuckets == numberOfBuckets
+                    }
+                }
+            } catch (e: Exception) {
+                Logging.getLogger(DexMergingTask::class.java)
+                    .warn("Reading $jarBucketsFile failed. Exception: ${e.message}")
+                null
+            }
+        }
+
+        private fun writeJarBuckets(jarBucketsFile: File, jarBuckets: JarBuckets) {
+            GFileUtils.mkdirs(jarBucketsFile.parentFile)
+            ObjectOutputStream(jarBucketsFile.outputStream().buffered()).use {
+                it.writeObject(jarBuckets)
+            }
         }
 
         /**
@@ -42,6 +42,12 @@ enum class IntegerOption(
     /** Number of buckets used by `DexArchiveBuilderTask` and `DexMergingTask`. */
     DEXING_NUMBER_OF_BUCKETS("android.dexingNumberOfBuckets", ApiStage.Experimental),
 
+    /**
+     * Maximum size in megabytes of the dex archives of external libraries shared between
+     * projects, a value of 0 or less disables the cache.
+     */
+    DEX_ARCHIVE_CACHE_SIZE_MB("android.dexArchiveCache.maxSizeMb", ApiStage.Experimental),
+
     /**
      * Maximum number of dynamic features that can be allocated before Oreo platforms.
      */
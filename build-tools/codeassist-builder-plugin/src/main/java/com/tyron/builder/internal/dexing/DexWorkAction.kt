@@ -1,5 +1,6 @@
 package com.tyron.builder.internal.dexing
 
+import com.google.common.base.Stopwatch
 import com.google.common.io.Closer
 import com.android.ide.common.blame.MessageReceiver
 import com.tyron.builder.dexing.*
@@ -149,12 +150,19 @@ private fun process(
 ) {
     val inputRoots = inputClassFiles.bucketGroup.getRoots()
     inputRoots.forEach { loggerWrapper.debug("Dexing '${it.path}' to '${outputPath.path}'") }
+    val stopwatch = Stopwatch.createStarted()
     try {
         Closer.create().use { closer ->
             inputClassFiles.getClassFiles(filter = inputFilter, closer = closer).use {
                 dexArchiveBuilder.convert(it, outputPath.toPath(), desugarGraphUpdater)
             }
         }
+        loggerWrapper.info(
+            "Dexing bucket {} of {} took {}",
+            inputClassFiles.bucketNumber,
+            inputRoots.joinToString(", ") { it.name },
+            stopwatch.elapsed()
+        )
     } catch (ex: DexArchiveBuilderException) {
         throw DexArchiveBuilderException(
             "Failed to process: ${inputRoots.joinToString(", ") { it.path }}",
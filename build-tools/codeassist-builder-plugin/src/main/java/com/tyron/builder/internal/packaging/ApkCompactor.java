@@ -0,0 +1,374 @@
+package com.tyron.builder.internal.packaging;
+
+import com.android.SdkConstants;
+import com.android.annotations.NonNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Removes the space left by deleted and replaced entries of an APK that is updated
+ * incrementally.
+ *
+ * <p>Incremental updates leave the existing entries in place and append the new versions of
+ * changed entries, so the APK keeps growing with every build. Once the unused space exceeds a
+ * threshold, the live entries are moved next to each other with file channel transfers, without
+ * decompressing or recompressing them, and a new central directory is written. The data of
+ * uncompressed entries is aligned with the same rule as {@link ApkFlinger}: native libraries are
+ * page aligned when they are packaged uncompressed, other entries are aligned at 4 bytes.
+ *
+ * <p>The APK signing block is dropped, so the APK must be signed again after it is compacted.
+ */
+public final class ApkCompactor {
+
+    private static final int LOCAL_HEADER_SIGNATURE = 0x04034b50;
+    private static final int CENTRAL_HEADER_SIGNATURE = 0x02014b50;
+    private static final int END_OF_CENTRAL_DIRECTORY_SIGNATURE = 0x06054b50;
+    private static final int LOCAL_HEADER_SIZE = 30;
+    private static final int CENTRAL_HEADER_SIZE = 46;
+    private static final int END_OF_CENTRAL_DIRECTORY_SIZE = 22;
+    private static final int MAX_COMMENT_SIZE = 0xFFFF;
+
+    /** Flag of entries whose sizes are stored in a data descriptor after their data. */
+    private static final int DATA_DESCRIPTOR_FLAG = 1 << 3;
+
+    /**
+     * Extra field used to pad uncompressed entries, the same as the one used by zipflinger and
+     * apksig. It holds the alignment in its first two bytes, followed by the padding.
+     */
+    private static final int ALIGNMENT_EXTRA_ID = 0xD935;
+    private static final int ALIGNMENT_EXTRA_MIN_SIZE = 6;
+    private static final int EXTRA_HEADER_SIZE = 4;
+    private static final int MAX_EXTRA_SIZE = 0xFFFF;
+
+    private static final long PAGE_ALIGNMENT = 4096;
+    private static final long DEFAULT_ALIGNMENT = 4;
+
+    /** APKs with less unused space than this are not compacted. */
+    private static final long MIN_WASTED_BYTES = 1024 * 1024;
+
+    /** Minimum fraction of the APK that must be unused for it to be compacted. */
+    private static final double MIN_WASTED_RATIO = 0.25;
+
+    private ApkCompactor() {}
+
+    /** An entry of the central directory. */
+    private static final class Entry {
+        final String name;
+        final ByteBuffer centralHeader;
+        final long localHeaderOffset;
+        final long compressedSize;
+        final int method;
+        int localNameLength;
+        int localExtraLength;
+
+        Entry(String name,
+                ByteBuffer centralHeader,
+                long localHeaderOffset,
+                long compressedSize,
+                int method) {
+            this.name = name;
+            this.centralHeader = centralHeader;
+            this.localHeaderOffset = localHeaderOffset;
+            this.compressedSize = compressedSize;
+            this.method = method;
+        }
+
+        long dataOffset() {
+            return localHeaderOffset + LOCAL_HEADER_SIZE + localNameLength + localExtraLength;
+        }
+    }
+
+    /**
+     * Compacts the APK if enough of it is unused.
+     *
+     * @param pageAlignNativeLibraries whether uncompressed native libraries are page aligned,
+     *     which is the case when they are packaged with
+     *     {@code NativeLibrariesPackagingMode.UNCOMPRESSED_AND_ALIGNED}
+     * @return whether the APK was compacted, archives that can not be compacted in place, such
+     *     as zip64 archives or archives with data descriptors, are left untouched
+     */
+    public static boolean compactIfNeeded(@NonNull File apk, boolean pageAlignNativeLibraries)
+            throws IOException {
+        if (!apk.isFile()) {
+            return false;
+        }
+        List<Entry> entries;
+        long liveBytes = 0;
+        try (FileChannel channel = FileChannel.open(apk.toPath(), StandardOpenOption.READ)) {
+            entries = readEntries(channel);
+            if (entries == null) {
+                return false;
+            }
+            for (Entry entry : entries) {
+                liveBytes += entry.dataOffset() - entry.localHeaderOffset + entry.compressedSize;
+            }
+            long wasted = channel.size() - liveBytes - centralDirectorySize(entries)
+                    - END_OF_CENTRAL_DIRECTORY_SIZE;
+            if (wasted < MIN_WASTED_BYTES || wasted < channel.size() * MIN_WASTED_RATIO) {
+                return false;
+            }
+        }
+        compact(apk.toPath(), entries, pageAlignNativeLibraries);
+        return true;
+    }
+
+    private static void compact(@NonNull Path apk,
+            @NonNull List<Entry> entries,
+            boolean pageAlignNativeLibraries) throws IOException {
+        Path temp = apk.resolveSibling(apk.getFileName() + ".compact");
+        try (FileChannel in = FileChannel.open(apk, StandardOpenOption.READ);
+                FileChannel out = FileChannel.open(temp,
+                        StandardOpenOption.CREATE,
+                        StandardOpenOption.TRUNCATE_EXISTING,
+                        StandardOpenOption.WRITE)) {
+            List<Entry> sorted = new ArrayList<>(entries);
+            sorted.sort(Comparator.comparingLong(e -> e.localHeaderOffset));
+
+            long[] newOffsets = new long[sorted.size()];
+            for (int i = 0; i < sorted.size(); i++) {
+                Entry entry = sorted.get(i);
+                newOffsets[i] = out.position();
+                writeEntry(in, out, entry, getAlignment(entry, pageAlignNativeLibraries));
+            }
+
+            long centralDirectoryOffset = out.position();
+            for (int i = 0; i < sorted.size(); i++) {
+                ByteBuffer header = sorted.get(i).centralHeader.duplicate()
+                        .order(ByteOrder.LITTLE_ENDIAN);
+                header.putInt(42, (int) newOffsets[i]);
+                header.rewind();
+                writeFully(out, header);
+            }
+            long centralDirectorySize = out.position() - centralDirectoryOffset;
+
+            ByteBuffer end = ByteBuffer.allocate(END_OF_CENTRAL_DIRECTORY_SIZE)
+                    .order(ByteOrder.LITTLE_ENDIAN);
+            end.putInt(END_OF_CENTRAL_DIRECTORY_SIGNATURE);
+            end.putShort((short) 0); // number of this disk
+            end.putShort((short) 0); // disk of the central directory
+            end.putShort((short) sorted.size());
+            end.putShort((short) sorted.size());
+            end.putInt((int) centralDirectorySize);
+            end.putInt((int) centralDirectoryOffset);
+            end.putShort((short) 0); // comment length
+            end.flip();
+            writeFully(out, end);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(temp);
+            throw e;
+        }
+        Files.move(temp, apk, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * Writes the local header of the entry followed by its data. The extra field of entries that
+     * need to be aligned is padded, keeping the fields other than the previous padding.
+     */
+    private static void writeEntry(FileChannel in, FileChannel out, Entry entry, long alignment)
+            throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(LOCAL_HEADER_SIZE + entry.localNameLength)
+                .order(ByteOrder.LITTLE_ENDIAN);
+        readFully(in, header, entry.localHeaderOffset);
+
+        ByteBuffer extra = ByteBuffer.allocate(entry.localExtraLength)
+                .order(ByteOrder.LITTLE_ENDIAN);
+        readFully(in, extra, entry.localHeaderOffset + LOCAL_HEADER_SIZE + entry.localNameLength);
+        if (alignment > 1) {
+            ByteBuffer fields = removeAlignmentFields(extra);
+            long dataOffset = out.position() + header.capacity() + fields.remaining();
+            long padding = (alignment - dataOffset % alignment) % alignment;
+            while (padding != 0 && padding < ALIGNMENT_EXTRA_MIN_SIZE) {
+                padding += alignment;
+            }
+            extra = ByteBuffer.allocate(fields.remaining() + (int) padding)
+                    .order(ByteOrder.LITTLE_ENDIAN);
+            extra.put(fields);
+            if (padding > 0) {
+                extra.putShort((short) ALIGNMENT_EXTRA_ID);
+                extra.putShort((short) (padding - EXTRA_HEADER_SIZE));
+                extra.putShort((short) alignment);
+            }
+            extra.rewind();
+        }
+        header.putShort(28, (short) extra.remaining());
+
+        header.rewind();
+        writeFully(out, header);
+        writeFully(out, extra);
+
+        long position = entry.dataOffset();
+        long remaining = entry.compressedSize;
+        while (remaining > 0) {
+            long transferred = in.transferTo(position, remaining, out);
+            if (transferred <= 0) {
+                throw new IOException("Unexpected end of archive");
+            }
+            position += transferred;
+            remaining -= transferred;
+        }
+    }
+
+    /**
+     * Returns the extra fields other than the alignment padding. Trailing bytes that are too
+     * short to be a field are padding as well and are dropped.
+     */
+    private static ByteBuffer removeAlignmentFields(ByteBuffer extra) {
+        ByteBuffer fields = ByteBuffer.allocate(extra.remaining());
+        int offset = 0;
+        while (offset + EXTRA_HEADER_SIZE <= extra.limit()) {
+            int id = Short.toUnsignedInt(extra.getShort(offset));
+            int size = EXTRA_HEADER_SIZE + Short.toUnsignedInt(extra.getShort(offset + 2));
+            if (offset + size > extra.limit()) {
+                break;
+            }
+            if (id != ALIGNMENT_EXTRA_ID) {
+                ByteBuffer field = extra.duplicate();
+                field.position(offset).limit(offset + size);
+                fields.put(field);
+            }
+            offset += size;
+        }
+        fields.flip();
+        return fields;
+    }
+
+    /**
+     * Returns the alignment of the data of an entry, following the rule of {@link ApkFlinger},
+     * or 1 if the entry is compressed and does not need to be aligned.
+     */
+    private static long getAlignment(Entry entry, boolean pageAlignNativeLibraries) {
+        if (entry.method != 0) {
+            return 1;
+        }
+        if (pageAlignNativeLibraries && entry.name.endsWith(SdkConstants.DOT_NATIVE_LIBS)) {
+            return PAGE_ALIGNMENT;
+        }
+        return DEFAULT_ALIGNMENT;
+    }
+
+    /**
+     * Reads the entries of the central directory along with the sizes of their local headers.
+     *
+     * @return the entries, or {@code null} if the archive can not be compacted
+     */
+    private static List<Entry> readEntries(FileChannel channel) throws IOException {
+        long size = channel.size();
+        if (size < END_OF_CENTRAL_DIRECTORY_SIZE || size > 0xFFFFFFFFL) {
+            return null;
+        }
+        int tailSize = (int) Math.min(size, MAX_COMMENT_SIZE + END_OF_CENTRAL_DIRECTORY_SIZE);
+        ByteBuffer tail = ByteBuffer.allocate(tailSize).order(ByteOrder.LITTLE_ENDIAN);
+        readFully(channel, tail, size - tailSize);
+        int end = -1;
+        for (int i = tailSize - END_OF_CENTRAL_DIRECTORY_SIZE; i >= 0; i--) {
+            if (tail.getInt(i) == END_OF_CENTRAL_DIRECTORY_SIGNATURE) {
+                end = i;
+                break;
+            }
+        }
+        if (end < 0) {
+            return null;
+        }
+        int entryCount = Short.toUnsignedInt(tail.getShort(end + 10));
+        long directorySize = Integer.toUnsignedLong(tail.getInt(end + 12));
+        long directoryOffset = Integer.toUnsignedLong(tail.getInt(end + 16));
+        if (entryCount == 0xFFFF || directorySize == 0xFFFFFFFFL
+                || directoryOffset == 0xFFFFFFFFL) {
+            return null;
+        }
+
+        ByteBuffer directory = ByteBuffer.allocate((int) directorySize)
+                .order(ByteOrder.LITTLE_ENDIAN);
+        readFully(channel, directory, directoryOffset);
+
+        List<Entry> entries = new ArrayList<>(entryCount);
+        ByteBuffer localHeader = ByteBuffer.allocate(LOCAL_HEADER_SIZE)
+                .order(ByteOrder.LITTLE_ENDIAN);
+        int offset = 0;
+        for (int i = 0; i < entryCount; i++) {
+            if (directory.getInt(offset) != CENTRAL_HEADER_SIGNATURE) {
+                return null;
+            }
+            int flags = Short.toUnsignedInt(directory.getShort(offset + 8));
+            int method = Short.toUnsignedInt(directory.getShort(offset + 10));
+            long compressedSize = Integer.toUnsignedLong(directory.getInt(offset + 20));
+            int nameLength = Short.toUnsignedInt(directory.getShort(offset + 28));
+            int extraLength = Short.toUnsignedInt(directory.getShort(offset + 30));
+            int commentLength = Short.toUnsignedInt(directory.getShort(offset + 32));
+            long localHeaderOffset = Integer.toUnsignedLong(directory.getInt(offset + 42));
+            if ((flags & DATA_DESCRIPTOR_FLAG) != 0 || compressedSize == 0xFFFFFFFFL
+                    || localHeaderOffset == 0xFFFFFFFFL) {
+                return null;
+            }
+
+            int recordSize = CENTRAL_HEADER_SIZE + nameLength + extraLength + commentLength;
+            ByteBuffer record = ByteBuffer.allocate(recordSize).order(ByteOrder.LITTLE_ENDIAN);
+            ByteBuffer source = directory.duplicate();
+            source.position(offset).limit(offset + recordSize);
+            record.put(source);
+            record.rewind();
+
+            byte[] name = new byte[nameLength];
+            ByteBuffer nameSource = record.duplicate();
+            nameSource.position(CENTRAL_HEADER_SIZE);
+            nameSource.get(name);
+
+            Entry entry = new Entry(new String(name, StandardCharsets.UTF_8), record,
+                    localHeaderOffset, compressedSize, method);
+            localHeader.clear();
+            readFully(channel, localHeader, localHeaderOffset);
+            if (localHeader.getInt(0) != LOCAL_HEADER_SIGNATURE) {
+                return null;
+            }
+            entry.localNameLength = Short.toUnsignedInt(localHeader.getShort(26));
+            entry.localExtraLength = Short.toUnsignedInt(localHeader.getShort(28));
+            if (method == 0 && entry.localExtraLength
+                    > MAX_EXTRA_SIZE - PAGE_ALIGNMENT - ALIGNMENT_EXTRA_MIN_SIZE) {
+                // there may be no room left in the extra field to align the data
+                return null;
+            }
+            entries.add(entry);
+
+            offset += recordSize;
+        }
+        return entries;
+    }
+
+    private static long centralDirectorySize(List<Entry> entries) {
+        long size = 0;
+        for (Entry entry : entries) {
+            size += entry.centralHeader.capacity();
+        }
+        return size;
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position)
+            throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position);
+            if (read < 0) {
+                throw new IOException("Unexpected end of archive");
+            }
+            position += read;
+        }
+        buffer.flip();
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+}
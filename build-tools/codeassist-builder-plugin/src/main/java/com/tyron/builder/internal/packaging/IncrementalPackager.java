@@ -14,6 +14,7 @@ import com.tyron.builder.files.SerializableChange;
 import com.android.ide.common.resources.FileStatus;
 import com.android.tools.build.apkzlib.zfile.ApkCreator;
 import com.android.tools.build.apkzlib.zfile.ApkCreatorFactory;
+import com.android.tools.build.apkzlib.zfile.NativeLibrariesPackagingMode;
 import com.android.zipflinger.ZipArchive;
 import com.google.common.base.Preconditions;
 import com.google.common.collect.Iterables;
@@ -277,6 +278,18 @@ public class IncrementalPackager implements Closeable {
         packagedFileUpdates.addAll(getArtProfileUpdates(mChangedArtProfile));
         packagedFileUpdates.addAll(getArtProfileMetadataUpdates(mChangedArtProfileMetadata));
 
+        // Entries replaced by previous incremental builds leave unused space in the archive,
+        // reclaim it once there is enough of it. The compacted archive is not signed anymore, so
+        // force the initialization of mApkCreator in order to sign it again when it's closed.
+        if (mApkCreatorType == ApkCreatorType.APK_FLINGER
+                && mCreationData.isIncremental()
+                && ApkCompactor.compactIfNeeded(
+                        mCreationData.getApkPath(),
+                        mCreationData.getNativeLibrariesPackagingMode()
+                                == NativeLibrariesPackagingMode.UNCOMPRESSED_AND_ALIGNED)) {
+            getApkCreator();
+        }
+
         // First delete all REMOVED (and maybe CHANGED) files, then add all NEW or CHANGED files.
         deleteFiles(packagedFileUpdates);
         updateSingleEntryJars(mChangedAssets);
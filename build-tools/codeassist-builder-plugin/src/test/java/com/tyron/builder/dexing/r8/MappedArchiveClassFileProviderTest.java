@@ -0,0 +1,199 @@
+package com.tyron.builder.dexing.r8;
+
+import com.android.tools.r8.ProgramResource;
+import com.android.tools.r8.ResourceException;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+public class MappedArchiveClassFileProviderTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void testMatchesZipFile() throws Exception {
+        File jar = temporaryFolder.newFile("classes.jar");
+        Random random = new Random(0);
+        try (ZipOutputStream out = new ZipOutputStream(new FileOutputStream(jar))) {
+            putEntry(out, "com/test/", new byte[0], ZipEntry.STORED);
+            putEntry(out, "com/test/Stored.class", randomBytes(random, 1_000), ZipEntry.STORED);
+            putEntry(out, "com/test/Deflated.class", compressibleBytes(random, 50_000),
+                    ZipEntry.DEFLATED);
+            putEntry(out, "com/test/Empty.class", new byte[0], ZipEntry.DEFLATED);
+            putEntry(out, "com/test/Outer$Inner.class", compressibleBytes(random, 300),
+                    ZipEntry.STORED);
+            putEntry(out, "com/test/resource.txt", compressibleBytes(random, 100),
+                    ZipEntry.DEFLATED);
+            putEntry(out, "META-INF/versions/9/com/test/Stored.class", randomBytes(random, 10),
+                    ZipEntry.DEFLATED);
+            putEntry(out, "module-info.class", randomBytes(random, 10), ZipEntry.STORED);
+        }
+
+        assertMatchesZipFile(jar.toPath());
+    }
+
+    @Test
+    public void testLargeArchive() throws Exception {
+        File jar = temporaryFolder.newFile("large.jar");
+        Random random = new Random(0);
+        try (ZipOutputStream out = new ZipOutputStream(new FileOutputStream(jar))) {
+            for (int i = 0; i < 60_000; i++) {
+                int method = i % 2 == 0 ? ZipEntry.STORED : ZipEntry.DEFLATED;
+                putEntry(out, "com/test/p" + (i % 100) + "/Class" + i + ".class",
+                        compressibleBytes(random, 100 + random.nextInt(400)), method);
+            }
+            // entries larger than 64KB
+            putEntry(out, "com/test/LargeStored.class", randomBytes(random, 200_000),
+                    ZipEntry.STORED);
+            putEntry(out, "com/test/LargeDeflated.class", compressibleBytes(random, 500_000),
+                    ZipEntry.DEFLATED);
+        }
+
+        assertMatchesZipFile(jar.toPath());
+    }
+
+    @Test
+    public void testZip64FallsBack() throws Exception {
+        File jar = temporaryFolder.newFile("zip64.jar");
+        try (ZipOutputStream out = new ZipOutputStream(new FileOutputStream(jar))) {
+            // the entry count does not fit in the end of central directory record
+            for (int i = 0; i < 0x10000; i++) {
+                putEntry(out, "com/test/Class" + i + ".class", new byte[] {1}, ZipEntry.STORED);
+            }
+        }
+
+        assert MappedArchiveClassFileProvider.create(jar.toPath()) == null;
+    }
+
+    @Test
+    public void testClose() throws Exception {
+        File jar = temporaryFolder.newFile("classes.jar");
+        byte[] bytes = compressibleBytes(new Random(0), 1_000);
+        try (ZipOutputStream out = new ZipOutputStream(new FileOutputStream(jar))) {
+            putEntry(out, "com/test/Stored.class", bytes, ZipEntry.STORED);
+        }
+
+        MappedArchiveClassFileProvider provider =
+                MappedArchiveClassFileProvider.create(jar.toPath());
+        assert provider != null;
+        ProgramResource resource = provider.getProgramResource("Lcom/test/Stored;");
+        InputStream openedBeforeClose = resource.getByteStream();
+        assert isMapped(jar) != Boolean.FALSE;
+
+        provider.close();
+        // closing twice is allowed
+        provider.close();
+
+        // the streams are not backed by the mapping
+        assert Arrays.equals(openedBeforeClose.readAllBytes(), bytes);
+        try {
+            resource.getByteStream();
+            assert false : "Expected the closed provider to fail";
+        } catch (ResourceException expected) {
+            // the archive is closed
+        }
+        assert isMapped(jar) != Boolean.TRUE;
+    }
+
+    private static void assertMatchesZipFile(Path jar) throws Exception {
+        MappedArchiveClassFileProvider provider = MappedArchiveClassFileProvider.create(jar);
+        assert provider != null;
+        try (ZipFile zipFile = new ZipFile(jar.toFile())) {
+            Map<String, ZipEntry> expected = new HashMap<>();
+            Enumeration<? extends ZipEntry> entries = zipFile.entries();
+            while (entries.hasMoreElements()) {
+                ZipEntry entry = entries.nextElement();
+                String name = entry.getName();
+                String lowerCase = name.toLowerCase(Locale.US);
+                if (entry.isDirectory() || !name.endsWith(".class")
+                        || lowerCase.startsWith("meta-inf/")
+                        || lowerCase.equals("module-info.class")) {
+                    continue;
+                }
+                String descriptor = "L" + name.substring(0, name.length() - 6) + ";";
+                expected.put(descriptor, entry);
+            }
+
+            assert provider.getClassDescriptors().equals(expected.keySet());
+            for (Map.Entry<String, ZipEntry> entry : expected.entrySet()) {
+                byte[] expectedBytes;
+                try (InputStream inputStream = zipFile.getInputStream(entry.getValue())) {
+                    expectedBytes = inputStream.readAllBytes();
+                }
+                ProgramResource resource = provider.getProgramResource(entry.getKey());
+                assert resource.getClassDescriptors().contains(entry.getKey());
+                try (InputStream inputStream = resource.getByteStream()) {
+                    assert Arrays.equals(inputStream.readAllBytes(), expectedBytes)
+                            : entry.getKey();
+                }
+            }
+            assert provider.getProgramResource("Lcom/test/Missing;") == null;
+        } finally {
+            provider.close();
+        }
+    }
+
+    /**
+     * Returns whether the archive is mapped by this process, or {@code null} if the mappings
+     * of the process can not be read.
+     */
+    private static Boolean isMapped(File file) throws IOException {
+        Path maps = Paths.get("/proc/self/maps");
+        if (!Files.isReadable(maps)) {
+            return null;
+        }
+        String contents = new String(Files.readAllBytes(maps), StandardCharsets.UTF_8);
+        return contents.contains(file.getCanonicalPath());
+    }
+
+    private static void putEntry(ZipOutputStream out, String name, byte[] data, int method)
+            throws IOException {
+        ZipEntry entry = new ZipEntry(name);
+        entry.setMethod(method);
+        if (method == ZipEntry.STORED) {
+            CRC32 crc = new CRC32();
+            crc.update(data);
+            entry.setSize(data.length);
+            entry.setCompressedSize(data.length);
+            entry.setCrc(crc.getValue());
+        }
+        out.putNextEntry(entry);
+        out.write(data);
+        out.closeEntry();
+    }
+
+    private static byte[] randomBytes(Random random, int size) {
+        byte[] bytes = new byte[size];
+        random.nextBytes(bytes);
+        return bytes;
+    }
+
+    private static byte[] compressibleBytes(Random random, int size) {
+        byte[] bytes = new byte[size];
+        for (int i = 0; i < size; i++) {
+            bytes[i] = (byte) ('a' + random.nextInt(4));
+        }
+        return bytes;
+    }
+}
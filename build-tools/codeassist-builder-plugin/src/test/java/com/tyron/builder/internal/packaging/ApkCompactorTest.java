@@ -0,0 +1,341 @@
+package com.tyron.builder.internal.packaging;
+
+import com.android.apksig.ApkVerifier;
+import com.android.signflinger.SignedApk;
+import com.android.signflinger.SignedApkOptions;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.KeyStore;
+import java.security.PrivateKey;
+import java.security.cert.X509Certificate;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+public class ApkCompactorTest {
+
+    private static final String REMOVED = "res/raw/removed.bin";
+    private static final String NATIVE_LIBRARY = "lib/arm64-v8a/libfoo.so";
+    private static final String RESOURCES = "resources.arsc";
+    private static final int CUSTOM_EXTRA_ID = 0xCAFE;
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void testCompactKeepsEntries() throws IOException {
+        File apk = createApkWithUnusedSpace(3 * 1024 * 1024);
+        Map<String, Long> crcs = readCrcs(apk);
+        Map<String, byte[]> contents = readContents(apk);
+        long length = apk.length();
+
+        assert ApkCompactor.compactIfNeeded(apk, true);
+
+        // the unused space is reclaimed, less the padding that aligns the native library
+        assert apk.length() < length - 3 * 1024 * 1024 + 4096;
+        assert readCrcs(apk).equals(crcs);
+        Map<String, byte[]> compactedContents = readContents(apk);
+        assert compactedContents.keySet().equals(contents.keySet());
+        for (Map.Entry<String, byte[]> entry : contents.entrySet()) {
+            assert Arrays.equals(compactedContents.get(entry.getKey()), entry.getValue());
+        }
+
+        // the extra fields other than the alignment padding are kept
+        Map<String, LocalEntry> localEntries = readLocalEntries(apk);
+        assert localEntries.get(NATIVE_LIBRARY).hasCustomExtra;
+        assert localEntries.get(RESOURCES).hasCustomExtra;
+    }
+
+    @Test
+    public void testStoredEntriesAligned() throws IOException {
+        File apk = createApkWithUnusedSpace(3 * 1024 * 1024);
+        assert ApkCompactor.compactIfNeeded(apk, true);
+
+        Map<String, LocalEntry> localEntries = readLocalEntries(apk);
+        assert localEntries.size() == readCrcs(apk).size();
+        for (LocalEntry entry : localEntries.values()) {
+            if (entry.method != ZipEntry.STORED) {
+                continue;
+            }
+            long alignment = entry.name.endsWith(".so") ? 4096 : 4;
+            assert entry.dataOffset % alignment == 0 : entry.name + " " + entry.dataOffset;
+        }
+    }
+
+    @Test
+    public void testNativeLibrariesNotPageAligned() throws IOException {
+        File apk = createApkWithUnusedSpace(3 * 1024 * 1024);
+        assert ApkCompactor.compactIfNeeded(apk, false);
+
+        // without page alignment the library only needs the default alignment, so the extra
+        // field holds the custom field of 6 bytes and at most 9 bytes of padding
+        LocalEntry library = readLocalEntries(apk).get(NATIVE_LIBRARY);
+        assert library.dataOffset % 4 == 0;
+        assert library.hasCustomExtra;
+        assert library.extraLength <= 6 + 9;
+    }
+
+    @Test
+    public void testNotCompactedBelowThreshold() throws IOException {
+        File apk = createApkWithUnusedSpace(100 * 1024);
+        byte[] before = Files.readAllBytes(apk.toPath());
+
+        assert !ApkCompactor.compactIfNeeded(apk, true);
+        assert Arrays.equals(Files.readAllBytes(apk.toPath()), before);
+    }
+
+    @Test
+    public void testSignatureAfterResigning() throws Exception {
+        File apk = createApkWithUnusedSpace(3 * 1024 * 1024);
+        Map<String, Long> crcs = readCrcs(apk);
+        assert ApkCompactor.compactIfNeeded(apk, true);
+
+        KeyStore keyStore = KeyStore.getInstance("PKCS12");
+        try (InputStream inputStream = getClass().getResourceAsStream("/signing-test.p12")) {
+            keyStore.load(inputStream, "android".toCharArray());
+        }
+        PrivateKey key = (PrivateKey) keyStore.getKey("test", "android".toCharArray());
+        X509Certificate certificate = (X509Certificate) keyStore.getCertificate("test");
+
+        // sign the compacted APK in place, the same way ApkFlinger does when it is closed
+        SignedApkOptions options = new SignedApkOptions.Builder()
+                .setCertificates(Collections.singletonList(certificate))
+                .setPrivateKey(key)
+                .setMinSdkVersion(24)
+                .setV1Enabled(true)
+                .setV2Enabled(true)
+                .setV3Enabled(false)
+                .setV4Enabled(false)
+                .setV1CreatedBy("test")
+                .build();
+        new SignedApk(apk, options).close();
+
+        ApkVerifier.Result result = new ApkVerifier.Builder(apk)
+                .setMinCheckedPlatformVersion(24)
+                .setMaxCheckedPlatformVersion(25)
+                .build()
+                .verify();
+        assert result.isVerified() : result.getErrors();
+        assert result.isVerifiedUsingV2Scheme();
+        assert readCrcs(apk).equals(crcs);
+    }
+
+    /**
+     * Creates an APK in the same state as one that was updated incrementally: an entry in the
+     * middle of the archive is not referenced by the central directory anymore.
+     */
+    private File createApkWithUnusedSpace(int unusedSize) throws IOException {
+        Random random = new Random(0);
+        File full = temporaryFolder.newFile("full.apk");
+        try (ZipOutputStream out = new ZipOutputStream(new FileOutputStream(full))) {
+            // ApkVerifier requires a manifest to be present, its contents are not checked for
+            // the platform versions that are verified
+            putDeflated(out, "AndroidManifest.xml", compressibleBytes(random, 1_000));
+            putDeflated(out, "classes.dex", compressibleBytes(random, 200_000));
+            putStored(out, "assets/odd.txt", randomBytes(random, 3), false);
+            putStored(out, REMOVED, randomBytes(random, unusedSize), false);
+            putStored(out, NATIVE_LIBRARY, randomBytes(random, 10_001), true);
+            putDeflated(out, "res/layout/main.xml", compressibleBytes(random, 5_000));
+            putStored(out, RESOURCES, randomBytes(random, 1_001), true);
+            putDeflated(out, "classes2.dex", compressibleBytes(random, 100_000));
+        }
+
+        File apk = temporaryFolder.newFile("app.apk");
+        removeFromCentralDirectory(full, apk, REMOVED);
+        return apk;
+    }
+
+    private static void putStored(ZipOutputStream out, String name, byte[] data,
+                                  boolean customExtra) throws IOException {
+        ZipEntry entry = new ZipEntry(name);
+        entry.setMethod(ZipEntry.STORED);
+        entry.setSize(data.length);
+        entry.setCompressedSize(data.length);
+        entry.setCrc(crc(data));
+        if (customExtra) {
+            entry.setExtra(new byte[] {(byte) 0xFE, (byte) 0xCA, 2, 0, 1, 2});
+        }
+        out.putNextEntry(entry);
+        out.write(data);
+        out.closeEntry();
+    }
+
+    /**
+     * Writes a deflated entry with its sizes known in advance, so that it does not use a data
+     * descriptor like the entries written by zipflinger.
+     */
+    private static void putDeflated(ZipOutputStream out, String name, byte[] data)
+            throws IOException {
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        deflater.setInput(data);
+        deflater.finish();
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        while (!deflater.finished()) {
+            compressed.write(buffer, 0, deflater.deflate(buffer));
+        }
+        deflater.end();
+
+        ZipEntry entry = new ZipEntry(name);
+        entry.setMethod(ZipEntry.DEFLATED);
+        entry.setSize(data.length);
+        entry.setCompressedSize(compressed.size());
+        entry.setCrc(crc(data));
+        out.putNextEntry(entry);
+        out.write(data);
+        out.closeEntry();
+    }
+
+    /**
+     * Copies the archive, leaving out the central directory record of the given entry while
+     * keeping its local header and data in place.
+     */
+    private static void removeFromCentralDirectory(File source, File destination, String name)
+            throws IOException {
+        ByteBuffer zip = ByteBuffer.wrap(Files.readAllBytes(source.toPath()))
+                .order(ByteOrder.LITTLE_ENDIAN);
+        int end = zip.capacity() - 22;
+        assert zip.getInt(end) == 0x06054b50;
+        int entryCount = Short.toUnsignedInt(zip.getShort(end + 10));
+        int directoryOffset = zip.getInt(end + 16);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(zip.array(), 0, directoryOffset);
+        int offset = directoryOffset;
+        int kept = 0;
+        for (int i = 0; i < entryCount; i++) {
+            int nameLength = Short.toUnsignedInt(zip.getShort(offset + 28));
+            int size = 46 + nameLength
+                    + Short.toUnsignedInt(zip.getShort(offset + 30))
+                    + Short.toUnsignedInt(zip.getShort(offset + 32));
+            String entryName = new String(zip.array(), offset + 46, nameLength,
+                    StandardCharsets.UTF_8);
+            if (!entryName.equals(name)) {
+                out.write(zip.array(), offset, size);
+                kept++;
+            }
+            offset += size;
+        }
+        int directorySize = out.size() - directoryOffset;
+
+        ByteBuffer endRecord = ByteBuffer.allocate(22).order(ByteOrder.LITTLE_ENDIAN);
+        endRecord.putInt(0x06054b50);
+        endRecord.putShort((short) 0);
+        endRecord.putShort((short) 0);
+        endRecord.putShort((short) kept);
+        endRecord.putShort((short) kept);
+        endRecord.putInt(directorySize);
+        endRecord.putInt(directoryOffset);
+        endRecord.putShort((short) 0);
+        out.write(endRecord.array());
+        Files.write(destination.toPath(), out.toByteArray());
+    }
+
+    /** A local header of the archive. */
+    private static final class LocalEntry {
+        String name;
+        int method;
+        int extraLength;
+        long dataOffset;
+        boolean hasCustomExtra;
+    }
+
+    /**
+     * Reads the local headers from the start of the archive. A compacted archive has its entries
+     * next to each other, followed by the central directory.
+     */
+    private static Map<String, LocalEntry> readLocalEntries(File apk) throws IOException {
+        ByteBuffer zip = ByteBuffer.wrap(Files.readAllBytes(apk.toPath()))
+                .order(ByteOrder.LITTLE_ENDIAN);
+        Map<String, LocalEntry> entries = new HashMap<>();
+        int offset = 0;
+        while (zip.getInt(offset) == 0x04034b50) {
+            LocalEntry entry = new LocalEntry();
+            entry.method = Short.toUnsignedInt(zip.getShort(offset + 8));
+            int compressedSize = zip.getInt(offset + 18);
+            int nameLength = Short.toUnsignedInt(zip.getShort(offset + 26));
+            entry.extraLength = Short.toUnsignedInt(zip.getShort(offset + 28));
+            entry.name = new String(zip.array(), offset + 30, nameLength, StandardCharsets.UTF_8);
+            int extraOffset = offset + 30 + nameLength;
+            int extraEnd = extraOffset + entry.extraLength;
+            while (extraOffset + 4 <= extraEnd) {
+                if (Short.toUnsignedInt(zip.getShort(extraOffset)) == CUSTOM_EXTRA_ID) {
+                    entry.hasCustomExtra = true;
+                }
+                extraOffset += 4 + Short.toUnsignedInt(zip.getShort(extraOffset + 2));
+            }
+            entry.dataOffset = extraEnd;
+            entries.put(entry.name, entry);
+            offset = extraEnd + compressedSize;
+        }
+        return entries;
+    }
+
+    private static Map<String, Long> readCrcs(File apk) throws IOException {
+        Map<String, Long> crcs = new HashMap<>();
+        try (ZipFile zipFile = new ZipFile(apk)) {
+            Enumeration<? extends ZipEntry> entries = zipFile.entries();
+            while (entries.hasMoreElements()) {
+                ZipEntry entry = entries.nextElement();
+                if (!entry.getName().startsWith("META-INF/")) {
+                    crcs.put(entry.getName(), entry.getCrc());
+                }
+            }
+        }
+        return crcs;
+    }
+
+    private static Map<String, byte[]> readContents(File apk) throws IOException {
+        Map<String, byte[]> contents = new HashMap<>();
+        try (ZipFile zipFile = new ZipFile(apk)) {
+            Enumeration<? extends ZipEntry> entries = zipFile.entries();
+            while (entries.hasMoreElements()) {
+                ZipEntry entry = entries.nextElement();
+                try (InputStream inputStream = zipFile.getInputStream(entry)) {
+                    contents.put(entry.getName(), inputStream.readAllBytes());
+                }
+            }
+        }
+        return contents;
+    }
+
+    private static long crc(byte[] data) {
+        CRC32 crc = new CRC32();
+        crc.update(data);
+        return crc.getValue();
+    }
+
+    private static byte[] randomBytes(Random random, int size) {
+        byte[] bytes = new byte[size];
+        random.nextBytes(bytes);
+        return bytes;
+    }
+
+    private static byte[] compressibleBytes(Random random, int size) {
+        byte[] bytes = new byte[size];
+        for (int i = 0; i < size; i++) {
+            bytes[i] = (byte) ('a' + random.nextInt(4));
+        }
+        return bytes;
+    }
+}
@@ -1,9 +1,13 @@
 package org.gradle.internal.watch.registry.impl;
 
+import static org.gradle.internal.watch.registry.impl.HierarchicalFileWatcherUpdater.FileSystemLocationToWatchValidator.NO_VALIDATION;
 import static net.rubygrapefruit.platform.internal.jni.LinuxFileEventFunctions.*;
 
-import org.gradle.internal.file.FileType;
-import org.gradle.internal.snapshot.SnapshotHierarchy;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+
 import org.gradle.internal.watch.registry.FileWatcherProbeRegistry;
 import org.gradle.internal.watch.registry.FileWatcherUpdater;
 
@@ -13,96 +17,371 @@ import net.rubygrapefruit.platform.file.FileWatcher;
 import net.rubygrapefruit.platform.internal.jni.AbstractFileEventFunctions;
 import net.rubygrapefruit.platform.internal.jni.InsufficientResourcesForWatchingException;
 
-import org.apache.commons.vfs2.FileChangeEvent;
-import org.apache.commons.vfs2.FileListener;
-import org.apache.commons.vfs2.FileObject;
-import org.apache.commons.vfs2.FileSystemException;
-import org.apache.commons.vfs2.FileSystemManager;
-import org.apache.commons.vfs2.VFS;
-import org.apache.commons.vfs2.impl.DefaultFileMonitor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
 import java.util.Collection;
-import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
-import java.util.Objects;
-import java.util.concurrent.ArrayBlockingQueue;
+import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.TimeUnit;
 import java.util.function.Predicate;
-import java.util.stream.Collectors;
 
 public class LinuxFileWatcherRegistryFactory extends AbstractFileWatcherRegistryFactory<LinuxFileWatcherRegistryFactory.LinuxFileEventFunctions, LinuxFileWatcherRegistryFactory.LinuxFileWatcher> {
 
-    private final BlockingQueue<FileWatchEvent> queue = new ArrayBlockingQueue<>(10);
-
+    /**
+     * Watches directory hierarchies with a {@link WatchService}, which is backed by inotify on
+     * Linux and Android.
+     *
+     * Inotify watches are not recursive, so every directory in a watched hierarchy is registered,
+     * including the directories that are created after the hierarchy started being watched.
+     * Events that arrive close to each other are coalesced by path before they are reported, and
+     * events inside a directory that was itself created or removed are dropped since the whole
+     * subtree is invalidated anyway.
+     *
+     * When the inotify queue overflows, the watch service signals an overflow on every registered
+     * key, not only on the directories that lost events, and a single key also overflows when too
+     * many of its events are pending. The overflowing directories are collapsed to their topmost
+     * ancestors, so each watched hierarchy is registered again and reported as overflown once per
+     * batch of events instead of once per directory.
+     */
     protected static class LinuxFileWatcher implements FileWatcher {
-
-        private final FileSystemManager manager;
-        private DefaultFileMonitor fileMonitor;
-        private final FileListener fileListener;
-
-        public LinuxFileWatcher(FileListener fileListener) {
+        private static final Logger LOGGER = LoggerFactory.getLogger(LinuxFileWatcher.class);
+
+        /**
+         * How long to wait for more events before reporting the ones received, saving a file
+         * usually produces a burst of events for the same path.
+         */
+        private static final long COALESCING_WINDOW_MILLIS = 20;
+        private static final int MAX_COALESCED_EVENTS = 1024;
+
+        private final WatchService watchService;
+        private final AbstractFileEventFunctions.NativeFileWatcherCallback callback;
+        private final Thread eventThread;
+
+        private final Object lock = new Object();
+        private final Map<WatchKey, Path> watchedDirectories = new HashMap<>();
+        private final Map<Path, WatchKey> watchKeys = new HashMap<>();
+        /** The watched hierarchies and their file keys, used to detect when they have been moved. */
+        private final Map<Path, Object> watchedHierarchies = new HashMap<>();
+
+        public LinuxFileWatcher(AbstractFileEventFunctions.NativeFileWatcherCallback callback) {
             try {
-                manager = VFS.getManager();
-            } catch (FileSystemException e) {
-                throw new RuntimeException(e);
+                watchService = FileSystems.getDefault().newWatchService();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
             }
-            this.fileListener = fileListener;
+            this.callback = callback;
+
+            eventThread = new Thread(this::processEvents);
+            eventThread.setDaemon(true);
+            eventThread.setName("File watcher");
+            eventThread.start();
         }
 
         @Override
         public void startWatching(Collection<File> collection) throws InsufficientResourcesForWatchingException {
-            if (fileMonitor != null) {
-                return;
+            synchronized (lock) {
+                for (File file : collection) {
+                    Path hierarchy = file.toPath().toAbsolutePath();
+                    if (watchedHierarchies.containsKey(hierarchy)) {
+                        continue;
+                    }
+                    watchedHierarchies.put(hierarchy, getFileKey(hierarchy));
+                    try {
+                        registerRecursively(hierarchy);
+                    } catch (IOException e) {
+                        if (isWatchLimitReached(e)) {
+                            throw new InsufficientResourcesForWatchingException(
+                                    "Unable to watch " + hierarchy + ": " + e.getMessage());
+                        }
+                        LOGGER.warn("Unable to watch {}", hierarchy, e);
+                    }
+                }
             }
-
-            List<FileObject> files = resolveFileObjects(collection);
-            fileMonitor = new DefaultFileMonitor(fileListener);
-            fileMonitor.setRecursive(true);
-            files.forEach(fileMonitor::addFile);
-            fileMonitor.start();
         }
 
         @Override
         public boolean stopWatching(Collection<File> collection) {
-            if (fileMonitor == null) {
-                return false;
-            }
-            List<FileObject> fileObjects = resolveFileObjects(collection);
-            fileObjects.forEach(fileMonitor::removeFile);
-            return true;
-        }
-
-        private List<FileObject> resolveFileObjects(Collection<File> collection) {
-            return collection.stream()
-                    .map(File::toString)
-                    .map(path -> {
-                        try {
-                            return manager.resolveFile(path);
-                        } catch (FileSystemException e) {
-                            return null;
+            boolean stopped = false;
+            synchronized (lock) {
+                for (File file : collection) {
+                    Path hierarchy = file.toPath().toAbsolutePath();
+                    if (!watchedHierarchies.containsKey(hierarchy)) {
+                        continue;
+                    }
+                    watchedHierarchies.remove(hierarchy);
+                    stopped = true;
+
+                    Iterator<Map.Entry<Path, WatchKey>> iterator = watchKeys.entrySet().iterator();
+                    while (iterator.hasNext()) {
+                        Map.Entry<Path, WatchKey> entry = iterator.next();
+                        Path directory = entry.getKey();
+                        if (directory.startsWith(hierarchy) && !isInWatchedHierarchy(directory)) {
+                            entry.getValue().cancel();
+                            watchedDirectories.remove(entry.getValue());
+                            iterator.remove();
                         }
-                    })
-                    .filter(Objects::nonNull)
-                    .collect(Collectors.toList());
+                    }
+                }
+            }
+            return stopped;
+        }
+
+        /**
+         * Stops watching the hierarchies that have been moved or deleted. Inotify keeps watching a
+         * directory after it is moved, so its events would be reported for the old path.
+         *
+         * @return the hierarchies that are no longer watched
+         */
+        public Collection<File> stopWatchingMovedPaths() {
+            List<File> moved = new ArrayList<>();
+            synchronized (lock) {
+                watchedHierarchies.forEach((hierarchy, fileKey) -> {
+                    Object currentFileKey = getFileKey(hierarchy);
+                    if (currentFileKey == null || !currentFileKey.equals(fileKey)) {
+                        moved.add(hierarchy.toFile());
+                    }
+                });
+                if (!moved.isEmpty()) {
+                    stopWatching(moved);
+                }
+            }
+            return moved;
         }
 
         @Override
         public void shutdown() {
-            if (fileMonitor != null) {
-                fileMonitor.stop();
+            try {
+                watchService.close();
+            } catch (IOException e) {
+                LOGGER.debug("Unable to close the watch service", e);
             }
         }
 
         @Override
         public boolean awaitTermination(long l, TimeUnit timeUnit) throws InterruptedException {
-            shutdown();
-            return true;
+            eventThread.join(timeUnit.toMillis(l));
+            return !eventThread.isAlive();
+        }
+
+        private void processEvents() {
+            try {
+                //noinspection InfiniteLoopStatement
+                while (true) {
+                    WatchKey key = watchService.take();
+                    Map<Path, FileWatchEvent.ChangeType> changes = new LinkedHashMap<>();
+                    Set<Path> overflows = new LinkedHashSet<>();
+                    do {
+                        handleEvents(key, changes, overflows);
+                        key = watchService.poll(COALESCING_WINDOW_MILLIS, TimeUnit.MILLISECONDS);
+                    } while (key != null && changes.size() < MAX_COALESCED_EVENTS);
+                    if (key != null) {
+                        handleEvents(key, changes, overflows);
+                    }
+                    report(changes, overflows);
+                }
+            } catch (ClosedWatchServiceException | InterruptedException e) {
+                // the watcher has been shut down
+            } catch (RuntimeException e) {
+                callback.reportFailure(e);
+            }
+            callback.reportTermination();
+        }
+
+        private void handleEvents(WatchKey key, Map<Path, FileWatchEvent.ChangeType> changes, Set<Path> overflows) {
+            Path directory;
+            synchronized (lock) {
+                directory = watchedDirectories.get(key);
+            }
+            if (directory == null) {
+                // no longer watched
+                key.pollEvents();
+                return;
+            }
+
+            for (WatchEvent<?> event : key.pollEvents()) {
+                WatchEvent.Kind<?> kind = event.kind();
+                if (kind == OVERFLOW) {
+                    overflows.add(directory);
+                    continue;
+                }
+
+                Path path = directory.resolve((Path) event.context());
+                if (kind == ENTRY_CREATE) {
+                    addChange(changes, path, FileWatchEvent.ChangeType.CREATED);
+                    if (Files.isDirectory(path, LinkOption.NOFOLLOW_LINKS)) {
+                        watchNewDirectory(path, overflows);
+                    }
+                } else if (kind == ENTRY_DELETE) {
+                    addChange(changes, path, FileWatchEvent.ChangeType.REMOVED);
+                } else if (kind == ENTRY_MODIFY) {
+                    addChange(changes, path, FileWatchEvent.ChangeType.MODIFIED);
+                }
+            }
+
+            if (!key.reset()) {
+                // the directory has been deleted or is no longer accessible
+                synchronized (lock) {
+                    watchedDirectories.remove(key);
+                    watchKeys.remove(directory);
+                }
+            }
         }
 
-        public Collection<File> stopWatchingMovedPaths(Collection<File> directoriesToCheck) {
-            return Collections.emptyList();
+        private void watchNewDirectory(Path directory, Set<Path> overflows) {
+            synchronized (lock) {
+                if (!isInWatchedHierarchy(directory)) {
+                    return;
+                }
+                try {
+                    registerRecursively(directory);
+                } catch (IOException e) {
+                    LOGGER.debug("Unable to watch new directory {}", directory, e);
+                    // changes inside it will be missed, so it can not be trusted
+                    overflows.add(directory);
+                }
+            }
+        }
+
+        private static void addChange(Map<Path, FileWatchEvent.ChangeType> changes, Path path, FileWatchEvent.ChangeType type) {
+            FileWatchEvent.ChangeType previous = changes.get(path);
+            if (previous == FileWatchEvent.ChangeType.CREATED && type == FileWatchEvent.ChangeType.MODIFIED) {
+                return;
+            }
+            changes.put(path, type);
+        }
+
+        private void report(Map<Path, FileWatchEvent.ChangeType> changes, Set<Path> overflows) {
+            Set<Path> overflowRoots = getTopmostPaths(overflows);
+            Set<Path> invalidatedSubtrees = new LinkedHashSet<>(overflowRoots);
+            changes.forEach((path, type) -> {
+                if (type != FileWatchEvent.ChangeType.MODIFIED) {
+                    invalidatedSubtrees.add(path);
+                }
+            });
+
+            for (Path overflow : overflowRoots) {
+                watchOverflownDirectory(overflow);
+                callback.reportOverflow(overflow.toString());
+            }
+            changes.forEach((path, type) -> {
+                if (overflowRoots.contains(path) || hasInvalidatedAncestor(path, invalidatedSubtrees)) {
+                    return;
+                }
+                callback.reportChangeEvent(type.ordinal(), path.toString());
+            });
+        }
+
+        /**
+         * Registers the directories that were created while the events of the given directory
+         * were lost, the ones that are already watched are skipped.
+         */
+        private void watchOverflownDirectory(Path directory) {
+            synchronized (lock) {
+                if (!isInWatchedHierarchy(directory)) {
+                    return;
+                }
+                try {
+                    registerRecursively(directory);
+                } catch (IOException e) {
+                    LOGGER.debug("Unable to watch overflown directory {}", directory, e);
+                }
+            }
+        }
+
+        /**
+         * Returns the paths that have no ancestor in the given set, in their original order.
+         */
+        static Set<Path> getTopmostPaths(Set<Path> paths) {
+            Set<Path> topmost = new LinkedHashSet<>();
+            for (Path path : paths) {
+                if (!hasInvalidatedAncestor(path, paths)) {
+                    topmost.add(path);
+                }
+            }
+            return topmost;
+        }
+
+        private static boolean hasInvalidatedAncestor(Path path, Set<Path> invalidatedSubtrees) {
+            for (Path parent = path.getParent(); parent != null; parent = parent.getParent()) {
+                if (invalidatedSubtrees.contains(parent)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private void registerRecursively(Path start) throws IOException {
+            if (!Files.isDirectory(start, LinkOption.NOFOLLOW_LINKS)) {
+                return;
+            }
+            Files.walkFileTree(start, new SimpleFileVisitor<Path>() {
+                @Override
+                public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+                    register(dir);
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFileFailed(Path file, IOException exc) {
+                    // the file was removed while walking, or is not readable
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        }
+
+        private void register(Path directory) throws IOException {
+            if (watchKeys.containsKey(directory)) {
+                return;
+            }
+            WatchKey key = directory.register(watchService, ENTRY_CREATE, ENTRY_DELETE, ENTRY_MODIFY);
+            watchKeys.put(directory, key);
+            watchedDirectories.put(key, directory);
+        }
+
+        private boolean isInWatchedHierarchy(Path path) {
+            for (Path hierarchy : watchedHierarchies.keySet()) {
+                if (path.startsWith(hierarchy)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private static boolean isWatchLimitReached(IOException e) {
+            String message = e.getMessage();
+            return message != null && (message.contains("inotify") || message.contains("No space left"));
+        }
+
+        private static Object getFileKey(Path path) {
+            try {
+                BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+                Object fileKey = attributes.fileKey();
+                return fileKey != null ? fileKey : path;
+            } catch (IOException e) {
+                return null;
+            }
         }
     }
 
@@ -126,40 +405,12 @@ public class LinuxFileWatcherRegistryFactory extends AbstractFileWatcherRegistry
                                                          long l,
                                                          TimeUnit timeUnit,
                                                          NativeFileWatcherCallback nativeFileWatcherCallback) throws InterruptedException {
-                    return new LinuxFileWatcher(new FileListener() {
-                        @Override
-                        public void fileCreated(FileChangeEvent event) throws Exception {
-                            FileObject fileObject = event.getFileObject();
-                            nativeFileWatcherCallback.reportChangeEvent(FileWatchEvent.ChangeType.CREATED.ordinal(), fileObject.getPath().toString());
-                        }
-
-                        @Override
-                        public void fileDeleted(FileChangeEvent event) throws Exception {
-                            FileObject fileObject = event.getFileObject();
-                            nativeFileWatcherCallback.reportChangeEvent(
-                                    FileWatchEvent.ChangeType.REMOVED.ordinal(),
-                                    fileObject.getPath().toString()
-                            );
-                        }
-
-                        @Override
-                        public void fileChanged(FileChangeEvent event) throws Exception {
-                            FileObject fileObject = event.getFileObject();
-                            nativeFileWatcherCallback.reportChangeEvent(
-                                    FileWatchEvent.ChangeType.MODIFIED.ordinal(),
-                                    fileObject.getPath().toString()
-                            );
-                        }
-                    });
+                    return new LinuxFileWatcher(nativeFileWatcherCallback);
                 }
             };
         }
     }
 
-    private int getChangeTypeIndex(FileWatchEvent.ChangeType event) {
-        return event.ordinal();
-    }
-
     public LinuxFileWatcherRegistryFactory(Predicate<String> watchFilter) throws NativeIntegrationUnavailableException {
         super(new LinuxFileEventFunctions(), watchFilter);
     }
@@ -173,36 +424,6 @@ public class LinuxFileWatcherRegistryFactory extends AbstractFileWatcherRegistry
 
     @Override
     protected FileWatcherUpdater createFileWatcherUpdater(LinuxFileWatcher watcher, FileWatcherProbeRegistry probeRegistry, WatchableHierarchies watchableHierarchies) {
-        return new NonHierarchicalFileWatcherUpdater(watcher, probeRegistry, watchableHierarchies, new LinuxMovedDirectoryHandler(watcher, watchableHierarchies));
-    }
-
-    private static class LinuxMovedDirectoryHandler implements AbstractFileWatcherUpdater.MovedDirectoryHandler {
-        private final LinuxFileWatcher watcher;
-        private final WatchableHierarchies watchableHierarchies;
-
-        public LinuxMovedDirectoryHandler(LinuxFileWatcher watcher, WatchableHierarchies watchableHierarchies) {
-            this.watcher = watcher;
-            this.watchableHierarchies = watchableHierarchies;
-        }
-
-        @Override
-        public Collection<File> stopWatchingMovedDirectories(SnapshotHierarchy vfsRoot) {
-            Collection<File> directoriesToCheck = vfsRoot.rootSnapshots()
-                    .filter(snapshot -> snapshot.getType() != FileType.Missing)
-                    .filter(watchableHierarchies::shouldWatch)
-                    .map(snapshot -> {
-                        switch (snapshot.getType()) {
-                            case RegularFile:
-                                return new File(snapshot.getAbsolutePath()).getParentFile();
-                            case Directory:
-                                return new File(snapshot.getAbsolutePath());
-                            default:
-                                throw new IllegalArgumentException("Unexpected file type:" + snapshot.getType());
-                        }
-                    })
-                    .collect(Collectors.toList());
-            return watcher.stopWatchingMovedPaths(directoriesToCheck);
-        }
+        return new HierarchicalFileWatcherUpdater(watcher, NO_VALIDATION, probeRegistry, watchableHierarchies, root -> watcher.stopWatchingMovedPaths());
     }
 }
-
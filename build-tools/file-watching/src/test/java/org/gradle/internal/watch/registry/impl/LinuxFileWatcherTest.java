@@ -0,0 +1,195 @@
+package org.gradle.internal.watch.registry.impl;
+
+import net.rubygrapefruit.platform.file.FileWatchEvent;
+import net.rubygrapefruit.platform.internal.jni.AbstractFileEventFunctions;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+public class LinuxFileWatcherTest {
+
+    private static final long TIMEOUT_MILLIS = 5000;
+    /** How long to wait for events that are not expected to arrive. */
+    private static final long QUIET_PERIOD_MILLIS = 500;
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private final BlockingQueue<FileWatchEvent> events = new LinkedBlockingQueue<>();
+    private LinuxFileWatcherRegistryFactory.LinuxFileWatcher watcher;
+    private File root;
+
+    @Before
+    public void setUp() throws Exception {
+        root = temporaryFolder.newFolder("root").getCanonicalFile();
+        watcher = new LinuxFileWatcherRegistryFactory.LinuxFileWatcher(
+                new AbstractFileEventFunctions.NativeFileWatcherCallback(events));
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        watcher.shutdown();
+        assert watcher.awaitTermination(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    @Test
+    public void testCreateModifyAndDelete() throws Exception {
+        Path file = root.toPath().resolve("file.txt");
+        Files.write(file, Collections.singletonList("existing"));
+        watcher.startWatching(Collections.singletonList(root));
+
+        Path created = root.toPath().resolve("created.txt");
+        Files.write(created, Collections.singletonList("created"));
+        awaitEvent(FileWatchEvent.ChangeType.CREATED, created);
+
+        Files.write(file, Collections.singletonList("modified"));
+        awaitEvent(FileWatchEvent.ChangeType.MODIFIED, file);
+
+        Files.delete(file);
+        awaitEvent(FileWatchEvent.ChangeType.REMOVED, file);
+    }
+
+    @Test
+    public void testNewSubdirectoriesAreWatched() throws Exception {
+        File existing = new File(root, "existing");
+        assert existing.mkdir();
+        watcher.startWatching(Collections.singletonList(root));
+
+        Path fileInExisting = existing.toPath().resolve("file.txt");
+        Files.write(fileInExisting, Collections.singletonList("created"));
+        awaitEvent(FileWatchEvent.ChangeType.CREATED, fileInExisting);
+
+        Path directory = root.toPath().resolve("new");
+        Files.createDirectory(directory);
+        awaitEvent(FileWatchEvent.ChangeType.CREATED, directory);
+
+        Path nested = Files.createDirectory(directory.resolve("nested"));
+        awaitEvent(FileWatchEvent.ChangeType.CREATED, nested);
+
+        Path file = nested.resolve("file.txt");
+        Files.write(file, Collections.singletonList("created"));
+        awaitEvent(FileWatchEvent.ChangeType.CREATED, file);
+
+        Files.write(file, Collections.singletonList("modified"));
+        awaitEvent(FileWatchEvent.ChangeType.MODIFIED, file);
+    }
+
+    @Test
+    public void testStopWatching() throws Exception {
+        File other = temporaryFolder.newFolder("other").getCanonicalFile();
+        File subdirectory = new File(root, "subdirectory");
+        assert subdirectory.mkdir();
+        watcher.startWatching(Arrays.asList(root, other));
+
+        assert watcher.stopWatching(Collections.singletonList(root));
+        // not watched anymore
+        assert !watcher.stopWatching(Collections.singletonList(root));
+
+        Files.write(root.toPath().resolve("file.txt"), Collections.singletonList("created"));
+        Files.write(subdirectory.toPath().resolve("file.txt"), Collections.singletonList("created"));
+        Path otherFile = other.toPath().resolve("file.txt");
+        Files.write(otherFile, Collections.singletonList("created"));
+
+        // the hierarchy that is still watched keeps reporting its changes
+        List<String> received = awaitEvent(FileWatchEvent.ChangeType.CREATED, otherFile);
+        received.addAll(drainEvents(QUIET_PERIOD_MILLIS));
+        assert received.equals(Collections.singletonList(
+                describe(FileWatchEvent.ChangeType.CREATED, otherFile))) : received;
+    }
+
+    @Test
+    public void testOverflowsAreCollapsedToTopmostDirectories() {
+        Set<Path> overflows = new LinkedHashSet<>(Arrays.asList(
+                Paths.get("/root/a/b"),
+                Paths.get("/root/a"),
+                Paths.get("/root/a/b/c"),
+                Paths.get("/root/ab"),
+                Paths.get("/other"),
+                Paths.get("/other/d")));
+
+        Set<Path> topmost = LinuxFileWatcherRegistryFactory.LinuxFileWatcher.getTopmostPaths(overflows);
+
+        assert new ArrayList<>(topmost).equals(Arrays.asList(
+                Paths.get("/root/a"),
+                Paths.get("/root/ab"),
+                Paths.get("/other"))) : topmost;
+    }
+
+    /**
+     * Waits until the given event is received and returns the events that were received,
+     * including the given one.
+     */
+    private List<String> awaitEvent(FileWatchEvent.ChangeType type, Path path) throws InterruptedException {
+        String expected = describe(type, path);
+        List<String> received = new ArrayList<>();
+        long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+        while (!received.contains(expected)) {
+            long remaining = deadline - System.currentTimeMillis();
+            FileWatchEvent event = remaining > 0 ? events.poll(remaining, TimeUnit.MILLISECONDS) : null;
+            assert event != null : "Expected " + expected + " but received " + received;
+            received.add(describe(event));
+        }
+        return received;
+    }
+
+    private List<String> drainEvents(long timeoutMillis) throws InterruptedException {
+        List<String> received = new ArrayList<>();
+        FileWatchEvent event;
+        while ((event = events.poll(timeoutMillis, TimeUnit.MILLISECONDS)) != null) {
+            received.add(describe(event));
+        }
+        return received;
+    }
+
+    private static String describe(FileWatchEvent.ChangeType type, Path path) {
+        return type + " " + path;
+    }
+
+    private static String describe(FileWatchEvent event) {
+        StringBuilder builder = new StringBuilder();
+        event.handleEvent(new FileWatchEvent.Handler() {
+            @Override
+            public void handleChangeEvent(FileWatchEvent.ChangeType type, String absolutePath) {
+                builder.append(describe(type, Paths.get(absolutePath)));
+            }
+
+            @Override
+            public void handleUnknownEvent(String absolutePath) {
+                builder.append("UNKNOWN ").append(absolutePath);
+            }
+
+            @Override
+            public void handleOverflow(FileWatchEvent.OverflowType type, String absolutePath) {
+                builder.append("OVERFLOW ").append(absolutePath);
+            }
+
+            @Override
+            public void handleFailure(Throwable failure) {
+                builder.append("FAILURE ").append(failure);
+            }
+
+            @Override
+            public void handleTerminated() {
+                builder.append("TERMINATED");
+            }
+        });
+        return builder.toString();
+    }
+}
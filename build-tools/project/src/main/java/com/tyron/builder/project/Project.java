@@ -40,7 +40,7 @@ public class Project {
 
     private final Module EMPTY = new MockAndroidModule(null, null);
 
-    private final Map<String, Module> mModules;
+    private volatile Map<String, Module> mModules;
     private final File mRoot;
 
     private final ProjectSettings mSettings;
@@ -57,17 +57,32 @@ public class Project {
         eventManager = new EventManager();
     }
 
-    public void clear() {
-        mModules.clear();
+    public synchronized void clear() {
+        mModules = new LinkedHashMap<>();
     }
 
-    public void addModule(Module module) {
+    public synchronized void addModule(Module module) {
         assert module.getProject() == null;
         module.setProject(this);
 
         mModules.put(module.getName(), module);
     }
 
+    /**
+     * Replaces all the modules of this project at once, so the project is never observed
+     * without modules. The modules may already have been assigned to this project so they
+     * can be indexed before they are swapped in.
+     */
+    public synchronized void replaceModules(@NonNull Collection<Module> modules) {
+        Map<String, Module> newModules = new LinkedHashMap<>();
+        for (Module module : modules) {
+            assert module.getProject() == null || module.getProject() == this;
+            module.setProject(this);
+            newModules.put(module.getName(), module);
+        }
+        mModules = newModules;
+    }
+
     public boolean isCompiling() {
         return mCompiling;
     }
@@ -161,6 +161,10 @@ public class FileManagerImpl implements FileManager {
                 }
             }
             mSnapshots.remove(file);
+
+            for (FileListener listener : mListeners) {
+                listener.onSnapshotClosed(file);
+            }
         }
     }
 
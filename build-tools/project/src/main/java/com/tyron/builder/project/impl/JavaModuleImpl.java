@@ -7,6 +7,8 @@ import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.tyron.builder.model.CodeAssistLibrary;
 import com.tyron.builder.project.api.JavaModule;
+import com.tyron.builder.project.util.LazyPackageTrie;
+import com.tyron.builder.project.util.LibraryClassIndex;
 import com.tyron.builder.project.util.PackageTrie;
 import com.tyron.common.util.StringSearch;
 
@@ -18,34 +20,40 @@ import org.jetbrains.kotlin.com.intellij.util.ReflectionUtil;
 import java.io.File;
 import java.io.IOException;
 import java.lang.reflect.Method;
-import java.util.Enumeration;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.jar.JarEntry;
 import java.util.jar.JarFile;
 
 public class JavaModuleImpl extends ModuleImpl implements JavaModule {
 
-    // Map of fully qualified names and the jar they are contained in
-    private final Map<String, File> mClassFiles;
+    // Map of jar files and the index of the classes they contain
+    private final Map<File, LibraryClassIndex> mClassFiles;
     private final Map<String, File> mJavaFiles;
     private final Map<String, CodeAssistLibrary> mLibraryHashMap;
+    // Map of library source files and their hash, used to find its persisted index
+    private final Map<File, String> mLibraryFileHashes;
+    // Map of jar files and the file their class index was loaded from
+    private final Map<File, File> mLibraryIndexFiles;
     private final Map<String, File> mInjectedClassesMap;
     private final Set<File> mLibraries;
 
-    // the index of all the class files in this module
-    private final PackageTrie mClassIndex = new PackageTrie();
+    // the index of all the class files in this module, library classes are only
+    // decoded once a query needs them
+    private final LazyPackageTrie mClassIndex = new LazyPackageTrie();
 
     public JavaModuleImpl(File root) {
         super(root);
         mJavaFiles = new HashMap<>();
-        mClassFiles = new HashMap<>();
+        mClassFiles = new LinkedHashMap<>();
         mLibraries = new HashSet<>();
         mInjectedClassesMap = new HashMap<>();
         mLibraryHashMap = new HashMap<>();
+        mLibraryFileHashes = new HashMap<>();
+        mLibraryIndexFiles = new HashMap<>();
     }
 
     @NonNull
@@ -85,6 +93,22 @@ public class JavaModuleImpl extends ModuleImpl implements JavaModule {
     @Override
     public void putLibraryHashes(Map<String, CodeAssistLibrary> hashes) {
         mLibraryHashMap.putAll(hashes);
+        hashes.forEach((hash, library) -> {
+            File jar = library.getSourceFile();
+            String previous = mLibraryFileHashes.put(jar, hash);
+            if (previous == null || previous.equals(hash)) {
+                return;
+            }
+            // the contents of the jar have changed, the index of its old contents is no
+            // longer needed unless it is the one currently loaded
+            File cacheDir = getClassIndexDirectory();
+            if (cacheDir != null) {
+                File stale = LibraryClassIndex.getIndexFile(cacheDir, jar, previous);
+                if (!stale.equals(mLibraryIndexFiles.get(jar))) {
+                    stale.delete();
+                }
+            }
+        });
     }
 
     @Nullable
@@ -97,7 +121,9 @@ public class JavaModuleImpl extends ModuleImpl implements JavaModule {
     public Set<String> getAllClasses() {
         Set<String> classes = new HashSet<>();
         classes.addAll(mJavaFiles.keySet());
-        classes.addAll(mClassFiles.keySet());
+        for (LibraryClassIndex index : mClassFiles.values()) {
+            index.forEach(classes::add);
+        }
         classes.addAll(mInjectedClassesMap.keySet());
         return classes;
     }
@@ -130,28 +156,51 @@ public class JavaModuleImpl extends ModuleImpl implements JavaModule {
         if (file == null) {
             return;
         }
-        try (JarFile jar = new JarFile(file)) {
-            Enumeration<JarEntry> entries = jar.entries();
-            while (entries.hasMoreElements()) {
-                JarEntry entry = entries.nextElement();
-
-                if (!entry.getName().endsWith(".class")) {
-                    continue;
-                }
+        if (mClassFiles.containsKey(file)) {
+            return;
+        }
 
-                // We only want top level classes, if it contains $ then
-                // its an inner class, we ignore it
-                if (entry.getName().contains("$")) {
-                    continue;
-                }
+        File indexFile = getLibraryIndexFile(file);
+        LibraryClassIndex index = LibraryClassIndex.loadOrCreate(file, indexFile);
+        if (indexFile != null) {
+            // indexes of previous contents of the jar are keyed by a different hash
+            LibraryClassIndex.deleteStaleIndexFiles(indexFile);
+            mLibraryIndexFiles.put(file, indexFile);
+        }
+        mClassFiles.put(file, index);
+        mClassIndex.addLibrary(index);
+    }
 
-                String packageName = entry.getName().replace("/", ".")
-                        .substring(0, entry.getName().length() - ".class".length());
+    /**
+     * @return the file where the class index of the given jar is persisted, or null if
+     * this module has no build directory to store it in
+     */
+    @Nullable
+    private File getLibraryIndexFile(File jar) {
+        File cacheDir = getClassIndexDirectory();
+        if (cacheDir == null) {
+            return null;
+        }
+        String hash = mLibraryFileHashes.get(jar);
+        if (hash == null) {
+            hash = LibraryClassIndex.fingerprint(jar);
+        }
+        return LibraryClassIndex.getIndexFile(cacheDir, jar, hash);
+    }
 
-                mClassFiles.put(packageName, file);
-                mClassIndex.add(packageName);
-            }
+    /**
+     * @return the directory where the class indexes of libraries are stored. Libraries may
+     * be added before the module is opened, the default build directory is used then.
+     */
+    @Nullable
+    protected File getClassIndexDirectory() {
+        if (getRootFile() == null) {
+            return null;
         }
+        File buildDir = getSettings() == null
+                ? new File(getRootFile(), "build")
+                : getBuildDirectory();
+        return new File(buildDir, "intermediates/class_index");
     }
 
     @NonNull
@@ -255,5 +304,9 @@ public class JavaModuleImpl extends ModuleImpl implements JavaModule {
         mJavaFiles.clear();
         mLibraries.clear();
         mLibraryHashMap.clear();
+        mLibraryFileHashes.clear();
+        mLibraryIndexFiles.clear();
+        mClassFiles.clear();
+        mClassIndex.clear();
     }
 }
@@ -5,4 +5,12 @@ import java.io.File;
 public interface FileListener {
 
     void onSnapshotChanged(File file, CharSequence contents);
+
+    /**
+     * Called when the snapshot of the file is closed, its contents are read from the disk
+     * from now on.
+     */
+    default void onSnapshotClosed(File file) {
+
+    }
 }
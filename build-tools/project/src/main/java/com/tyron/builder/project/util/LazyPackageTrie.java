@@ -0,0 +1,132 @@
+package com.tyron.builder.project.util;
+
+import androidx.annotation.NonNull;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Predicate;
+
+/**
+ * A {@link PackageTrie} whose library classes are only added once a query needs them.
+ * <p>
+ * Opening a project should not decode every class name of every library, so the
+ * {@link LibraryClassIndex} of a library is kept pending until a query could match one of
+ * its classes. Queries by package only decode the libraries that contain that package and
+ * queries by simple name only decode the libraries that have a matching simple name,
+ * which is a binary search over the index. Queries over every leaf decode all the libraries.
+ * <p>
+ * The pending libraries are guarded by the lock of this trie, a visitor that queries the
+ * trie again while it is being visited can not deadlock.
+ */
+public class LazyPackageTrie extends PackageTrie {
+
+    private static class PendingLibrary {
+
+        private final LibraryClassIndex mIndex;
+        private Set<String> mPackages;
+
+        private PendingLibrary(LibraryClassIndex index) {
+            mIndex = index;
+        }
+
+        private Set<String> getPackages() {
+            if (mPackages == null) {
+                mPackages = new HashSet<>(mIndex.getPackages());
+            }
+            return mPackages;
+        }
+    }
+
+    private final List<PendingLibrary> mPendingLibraries = new ArrayList<>();
+
+    /**
+     * Adds the classes of the library to this trie, they are decoded once a query needs them.
+     */
+    public synchronized void addLibrary(@NonNull LibraryClassIndex index) {
+        mPendingLibraries.add(new PendingLibrary(index));
+    }
+
+    /**
+     * @return the number of libraries whose classes are not yet decoded
+     */
+    public synchronized int getPendingLibraryCount() {
+        return mPendingLibraries.size();
+    }
+
+    @Override
+    public synchronized void clear() {
+        mPendingLibraries.clear();
+        super.clear();
+    }
+
+    @Override
+    public synchronized boolean contains(@NonNull String fqn) {
+        int index = fqn.lastIndexOf('.');
+        String packageName = index == -1 ? "" : fqn.substring(0, index);
+        addLibraries(library -> library.getPackages().contains(packageName));
+        return super.contains(fqn);
+    }
+
+    @Override
+    public synchronized int size() {
+        addLibraries(library -> true);
+        return super.size();
+    }
+
+    @Override
+    public synchronized List<String> getMatchingPackages(String packageQuery) {
+        String prefix = packageQuery + '.';
+        addLibraries(library -> {
+            for (String packageName : library.getPackages()) {
+                if (packageName.equals(packageQuery) || packageName.startsWith(prefix)) {
+                    return true;
+                }
+            }
+            return false;
+        });
+        return super.getMatchingPackages(packageQuery);
+    }
+
+    @Override
+    public synchronized Set<String> getTopLevelNonLeafNodes() {
+        // classes in the default package are top level nodes too, they need to be decoded
+        addLibraries(library -> library.getPackages().contains(""));
+
+        Set<String> nodes = new HashSet<>(super.getTopLevelNonLeafNodes());
+        for (PendingLibrary library : mPendingLibraries) {
+            for (String packageName : library.getPackages()) {
+                int index = packageName.indexOf('.');
+                nodes.add(index == -1 ? packageName : packageName.substring(0, index));
+            }
+        }
+        return nodes;
+    }
+
+    @Override
+    public synchronized void forEachLeaf(@NonNull LeafVisitor visitor) {
+        addLibraries(library -> true);
+        super.forEachLeaf(visitor);
+    }
+
+    @Override
+    public synchronized void forEachSimpleNameWithPrefix(@NonNull String prefix,
+                                                         boolean caseSensitive,
+                                                         @NonNull LeafVisitor visitor) {
+        addLibraries(library -> library.mIndex.hasSimpleNameWithPrefix(prefix, caseSensitive));
+        super.forEachSimpleNameWithPrefix(prefix, caseSensitive, visitor);
+    }
+
+    private void addLibraries(Predicate<PendingLibrary> predicate) {
+        Iterator<PendingLibrary> iterator = mPendingLibraries.iterator();
+        while (iterator.hasNext()) {
+            PendingLibrary library = iterator.next();
+            if (predicate.test(library)) {
+                library.mIndex.forEach(this::add);
+                iterator.remove();
+            }
+        }
+    }
+}
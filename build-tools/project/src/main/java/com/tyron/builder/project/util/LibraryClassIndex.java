@@ -0,0 +1,408 @@
+package com.tyron.builder.project.util;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.google.common.hash.Hashing;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.function.Consumer;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+
+/**
+ * An immutable list of the top level class names contained in a library jar, backed by
+ * a memory mapped file so that re-opening a project does not need to walk the jar again.
+ * <p>
+ * Index files are keyed by the hash of the library they describe, a library whose contents
+ * did not change will always resolve to the same index file.
+ * <p>
+ * The names are sorted by their simple name in the order of {@link PackageTrie}, so whether
+ * the library has a class with a given simple name prefix is a binary search over the mapped
+ * file. The packages of the library are stored separately so they can be read without
+ * decoding every class name.
+ * <p>
+ * File layout, all values are big endian:
+ * <pre>
+ *     int    magic
+ *     int    version
+ *     int    count
+ *     int    package count
+ *     int[]  offsets of each class name relative to the start of the data section
+ *     int[]  offsets of each package name relative to the start of the data section
+ *     data   for each class name, then each package name: unsigned short length followed
+ *            by the UTF-8 bytes of the name
+ * </pre>
+ * The offsets are checked against the size of the file when it is opened, an index with an
+ * offset out of range is treated as stale.
+ */
+public class LibraryClassIndex {
+
+    private static final int MAGIC = 0x43414958; // CAIX
+    private static final int VERSION = 2;
+    private static final int HEADER_SIZE = 4 * Integer.BYTES;
+
+    /**
+     * The order of the class names, by simple name like {@link PackageTrie} and then by
+     * fully qualified name.
+     */
+    private static final Comparator<String> NAME_ORDER = Comparator
+            .comparing(LibraryClassIndex::getSimpleName, String.CASE_INSENSITIVE_ORDER)
+            .thenComparing(LibraryClassIndex::getSimpleName)
+            .thenComparing(Comparator.naturalOrder());
+
+    private static final String INDEX_EXTENSION = ".idx";
+
+    /**
+     * Returns the file where the index of the library with the given hash is stored
+     *
+     * @param cacheDir the directory where all the indexes are stored
+     * @param hash the content hash of the library
+     */
+    @NonNull
+    public static File getIndexFile(@NonNull File cacheDir, @NonNull String hash) {
+        return new File(cacheDir, hash + INDEX_EXTENSION);
+    }
+
+    /**
+     * Returns the file where the index of the given jar is stored. The indexes of a jar are
+     * kept in a directory of their own so the indexes of its previous contents can be found
+     * through {@link #deleteStaleIndexFiles(File)}.
+     *
+     * @param cacheDir the directory where all the indexes are stored
+     * @param jar the library jar
+     * @param hash the content hash of the library
+     */
+    @NonNull
+    public static File getIndexFile(@NonNull File cacheDir, @NonNull File jar, @NonNull String hash) {
+        String pathHash = Hashing.murmur3_128()
+                .hashString(jar.getAbsolutePath(), StandardCharsets.UTF_8)
+                .toString();
+        return getIndexFile(new File(cacheDir, jar.getName() + '-' + pathHash), hash);
+    }
+
+    /**
+     * Deletes the other index files stored next to the given one, these were written for
+     * previous contents of the same jar.
+     */
+    public static void deleteStaleIndexFiles(@NonNull File indexFile) {
+        File[] files = indexFile.getParentFile() == null
+                ? null
+                : indexFile.getParentFile().listFiles((dir, name) -> name.endsWith(INDEX_EXTENSION));
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            if (!file.equals(indexFile)) {
+                // ignored if it fails, it will be tried again the next time the jar is indexed
+                file.delete();
+            }
+        }
+    }
+
+    /**
+     * Computes a key for jars whose content hash is not known, this is based on the
+     * path, size and modification time of the jar so it is cheap to compute.
+     */
+    @NonNull
+    public static String fingerprint(@NonNull File jar) {
+        String key = jar.getAbsolutePath() + ':' + jar.length() + ':' + jar.lastModified();
+        return Hashing.murmur3_128().hashString(key, StandardCharsets.UTF_8).toString();
+    }
+
+    /**
+     * Loads the index from the given index file, or creates it by scanning the jar
+     * if the index does not exist yet or is corrupt.
+     *
+     * @param jar the jar file to index
+     * @param indexFile the file where the index is persisted, may be null if the index
+     *                  should not be persisted
+     */
+    @NonNull
+    public static LibraryClassIndex loadOrCreate(@NonNull File jar,
+                                                 @Nullable File indexFile) throws IOException {
+        if (indexFile != null && indexFile.exists()) {
+            LibraryClassIndex index = open(indexFile);
+            if (index != null) {
+                return index;
+            }
+        }
+
+        List<String> classNames = scanJar(jar);
+        if (indexFile != null) {
+            try {
+                write(indexFile, classNames);
+                LibraryClassIndex index = open(indexFile);
+                if (index != null) {
+                    return index;
+                }
+            } catch (IOException e) {
+                // the cache directory may not be writable, use the scanned names directly
+            }
+        }
+        return new LibraryClassIndex(classNames);
+    }
+
+    /**
+     * Memory maps an existing index file.
+     *
+     * @return the index, or null if the file is not a valid index file
+     */
+    @Nullable
+    public static LibraryClassIndex open(@NonNull File indexFile) throws IOException {
+        try (FileChannel channel = FileChannel.open(indexFile.toPath(), StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < HEADER_SIZE || size > Integer.MAX_VALUE) {
+                return null;
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            if (buffer.getInt(0) != MAGIC || buffer.getInt(Integer.BYTES) != VERSION) {
+                return null;
+            }
+            int count = buffer.getInt(2 * Integer.BYTES);
+            int packageCount = buffer.getInt(3 * Integer.BYTES);
+            if (count < 0 || packageCount < 0
+                || HEADER_SIZE + ((long) count + packageCount) * Integer.BYTES > size) {
+                return null;
+            }
+            if (!hasValidOffsets(buffer, count + packageCount)) {
+                return null;
+            }
+            return new LibraryClassIndex(buffer, count, packageCount);
+        }
+    }
+
+    /**
+     * Checks that every entry lies within the file, the offsets of a file that was truncated
+     * or overwritten by something else would otherwise be read past its end.
+     */
+    private static boolean hasValidOffsets(ByteBuffer buffer, int entryCount) {
+        long dataStart = HEADER_SIZE + (long) entryCount * Integer.BYTES;
+        long size = buffer.limit();
+        for (int i = 0; i < entryCount; i++) {
+            int offset = buffer.getInt(HEADER_SIZE + i * Integer.BYTES);
+            long position = dataStart + offset;
+            if (offset < 0 || position + Short.BYTES > size) {
+                return false;
+            }
+            int length = buffer.getShort((int) position) & 0xFFFF;
+            if (position + Short.BYTES + length > size) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Writes the class names to the given index file. The index is first written to a
+     * temporary file and then moved so readers never observe a partially written index.
+     */
+    public static void write(@NonNull File indexFile, @NonNull List<String> classNames) throws IOException {
+        File parent = indexFile.getParentFile();
+        if (parent != null && !parent.exists() && !parent.mkdirs()) {
+            throw new IOException("Unable to create directory " + parent);
+        }
+
+        List<String> sortedNames = new ArrayList<>(classNames);
+        sortedNames.sort(NAME_ORDER);
+        List<byte[]> encoded = new ArrayList<>(sortedNames.size());
+        for (String className : sortedNames) {
+            encoded.add(className.getBytes(StandardCharsets.UTF_8));
+        }
+        List<byte[]> encodedPackages = new ArrayList<>();
+        for (String packageName : getPackages(sortedNames)) {
+            encodedPackages.add(packageName.getBytes(StandardCharsets.UTF_8));
+        }
+
+        File tempFile = new File(parent, indexFile.getName() + ".tmp");
+        try (OutputStream os = new BufferedOutputStream(new FileOutputStream(tempFile));
+             DataOutputStream out = new DataOutputStream(os)) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(encoded.size());
+            out.writeInt(encodedPackages.size());
+
+            int offset = 0;
+            for (byte[] bytes : encoded) {
+                out.writeInt(offset);
+                offset += Short.BYTES + bytes.length;
+            }
+            for (byte[] bytes : encodedPackages) {
+                out.writeInt(offset);
+                offset += Short.BYTES + bytes.length;
+            }
+            for (byte[] bytes : encoded) {
+                out.writeShort(bytes.length);
+                out.write(bytes);
+            }
+            for (byte[] bytes : encodedPackages) {
+                out.writeShort(bytes.length);
+                out.write(bytes);
+            }
+        }
+        Files.move(tempFile.toPath(), indexFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * Walks the jar and returns the fully qualified names of its top level classes.
+     */
+    @NonNull
+    public static List<String> scanJar(@NonNull File file) throws IOException {
+        List<String> classNames = new ArrayList<>();
+        try (JarFile jar = new JarFile(file)) {
+            Enumeration<JarEntry> entries = jar.entries();
+            while (entries.hasMoreElements()) {
+                JarEntry entry = entries.nextElement();
+
+                if (!entry.getName().endsWith(".class")) {
+                    continue;
+                }
+
+                // We only want top level classes, if it contains $ then
+                // its an inner class, we ignore it
+                if (entry.getName().contains("$")) {
+                    continue;
+                }
+
+                String packageName = entry.getName().replace("/", ".")
+                        .substring(0, entry.getName().length() - ".class".length());
+                classNames.add(packageName);
+            }
+        }
+        return classNames;
+    }
+
+    private final ByteBuffer mBuffer;
+    private final int mCount;
+    private final int mPackageCount;
+    private final List<String> mNames;
+    private final List<String> mPackages;
+
+    private LibraryClassIndex(ByteBuffer buffer, int count, int packageCount) {
+        mBuffer = buffer;
+        mCount = count;
+        mPackageCount = packageCount;
+        mNames = null;
+        mPackages = null;
+    }
+
+    private LibraryClassIndex(List<String> names) {
+        List<String> sortedNames = new ArrayList<>(names);
+        sortedNames.sort(NAME_ORDER);
+        mBuffer = null;
+        mCount = sortedNames.size();
+        mNames = sortedNames;
+        mPackages = getPackages(sortedNames);
+        mPackageCount = mPackages.size();
+    }
+
+    public int size() {
+        return mCount;
+    }
+
+    /**
+     * @return the fully qualified name of the class at the given index, the classes are
+     * sorted by their simple name
+     */
+    @NonNull
+    public String get(int index) {
+        if (index < 0 || index >= mCount) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + mCount);
+        }
+        if (mNames != null) {
+            return mNames.get(index);
+        }
+        return readEntry(index);
+    }
+
+    public void forEach(@NonNull Consumer<String> consumer) {
+        for (int i = 0; i < mCount; i++) {
+            consumer.accept(get(i));
+        }
+    }
+
+    /**
+     * @return the names of the packages that contain the classes of this library, the
+     * default package is the empty string
+     */
+    @NonNull
+    public List<String> getPackages() {
+        if (mPackages != null) {
+            return mPackages;
+        }
+        List<String> packages = new ArrayList<>(mPackageCount);
+        for (int i = 0; i < mPackageCount; i++) {
+            packages.add(readEntry(mCount + i));
+        }
+        return packages;
+    }
+
+    /**
+     * Whether a class of this library has a simple name that starts with the given prefix,
+     * only the names compared by the binary search are decoded.
+     */
+    public boolean hasSimpleNameWithPrefix(@NonNull String prefix, boolean caseSensitive) {
+        int low = 0;
+        int high = mCount;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (PackageTrie.comparePrefixIgnoreCase(getSimpleName(get(mid)), prefix) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        for (int i = low; i < mCount; i++) {
+            String simpleName = getSimpleName(get(i));
+            if (PackageTrie.comparePrefixIgnoreCase(simpleName, prefix) != 0) {
+                return false;
+            }
+            if (!caseSensitive || simpleName.startsWith(prefix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private String readEntry(int index) {
+        int dataStart = HEADER_SIZE + (mCount + mPackageCount) * Integer.BYTES;
+        int position = dataStart + mBuffer.getInt(HEADER_SIZE + index * Integer.BYTES);
+        int length = mBuffer.getShort(position) & 0xFFFF;
+        byte[] bytes = new byte[length];
+        ByteBuffer slice = mBuffer.duplicate();
+        slice.position(position + Short.BYTES);
+        slice.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static String getSimpleName(String className) {
+        return className.substring(className.lastIndexOf('.') + 1);
+    }
+
+    private static List<String> getPackages(List<String> classNames) {
+        Set<String> packages = new TreeSet<>();
+        for (String className : classNames) {
+            int index = className.lastIndexOf('.');
+            packages.add(index == -1 ? "" : className.substring(0, index));
+        }
+        return new ArrayList<>(packages);
+    }
+}
@@ -3,13 +3,13 @@ package com.tyron.builder.project.util;
 import androidx.annotation.NonNull;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.function.Function;
 
 /**
  * A trie that stores package segments to a node.
@@ -22,13 +22,80 @@ import java.util.function.Function;
  *     /  \
  * String Object
  * </p>
+ *
+ * Nodes are not objects, they are indices into parallel arrays and each segment string is
+ * interned once for the whole trie. Children of a node are kept in an array sorted by the
+ * id of their segment so lookups are a binary search. Leaves can be visited with a
+ * {@link LeafVisitor} which does not allocate, the name of a leaf is only built when
+ * {@link #getQualifiedName(int)} is called.
  */
 public class PackageTrie {
 
-    private final Node mRoot;
+    /**
+     * Visitor of the leaf nodes of this trie.
+     */
+    public interface LeafVisitor {
+
+        /**
+         * @param trie the trie that contains the node
+         * @param node the id of the leaf node, use {@link PackageTrie#getSimpleName(int)} or
+         * {@link PackageTrie#getQualifiedName(int)} to get its name
+         * @return false to stop visiting
+         */
+        boolean visit(@NonNull PackageTrie trie, int node);
+    }
+
+    private static final int ROOT = 0;
+    private static final int NO_SEGMENT = -1;
+    private static final int[] EMPTY_CHILDREN = new int[0];
+
+    private static final byte FLAG_LEAF = 1;
+    private static final byte FLAG_FREE = 1 << 1;
+
+    // interned segments
+    private final Map<String, Integer> mSegmentIds = new HashMap<>();
+    private String[] mSegments = new String[64];
+    private int mSegmentCount;
+
+    // node storage
+    private int[] mNodeSegments = new int[64];
+    private int[] mNodeParents = new int[64];
+    private byte[] mNodeFlags = new byte[64];
+    private int[][] mNodeChildren = new int[64][];
+    private int[] mNodeChildCounts = new int[64];
+    private int mNodeCount;
+
+    // ids of removed nodes which can be reused
+    private int[] mFreeNodes = new int[16];
+    private int mFreeNodeCount;
+
+    private int mLeafCount;
+
+    // leaves sorted by their simple name, rebuilt lazily after the trie is modified
+    private int[] mSortedLeaves;
 
     public PackageTrie() {
-        mRoot = new Node();
+        int root = newNode(NO_SEGMENT, -1);
+        assert root == ROOT;
+    }
+
+    /**
+     * Removes all the names from this trie.
+     */
+    public synchronized void clear() {
+        mSegmentIds.clear();
+        mSegments = new String[64];
+        mSegmentCount = 0;
+        mNodeSegments = new int[64];
+        mNodeParents = new int[64];
+        mNodeFlags = new byte[64];
+        mNodeChildren = new int[64][];
+        mNodeChildCounts = new int[64];
+        mNodeCount = 0;
+        mFreeNodeCount = 0;
+        mLeafCount = 0;
+        mSortedLeaves = null;
+        newNode(NO_SEGMENT, -1);
     }
 
     /**
@@ -36,14 +103,21 @@ public class PackageTrie {
      *
      * @param fqn The fully qualified name of a class, including its name
      */
-    public void add(@NonNull String fqn) {
-        String[] parts = getParts(fqn);
-        Node current = mRoot;
-        for (String part : parts) {
-            current = current.getOrCreateChild(part);
+    public synchronized void add(@NonNull String fqn) {
+        int current = ROOT;
+        int start = 0;
+        while (start <= fqn.length()) {
+            int end = nextSeparator(fqn, start);
+            int segment = internSegment(fqn.substring(start, end));
+            current = getOrCreateChild(current, segment);
+            start = end + 1;
         }
         // this is the end node, so mark it as a leaf
-        current.isLeaf = true;
+        if ((mNodeFlags[current] & FLAG_LEAF) == 0) {
+            mNodeFlags[current] |= FLAG_LEAF;
+            mLeafCount++;
+            mSortedLeaves = null;
+        }
     }
 
     public void remove(@NonNull String fqn) {
@@ -62,155 +136,437 @@ public class PackageTrie {
      * @param fqn The package name
      * @param leafOnly Whether to delete the leaf only
      */
-    public void remove(@NonNull String fqn, boolean leafOnly) {
-        String[] parts = getParts(fqn);
-        Node current = mRoot;
-        for (int i = 0; i < parts.length; i++) {
-            String part = parts[i];
-            boolean isLeaf = i == parts.length - 1;
-
-            if (current == null) {
-                break;
-            }
-            if (current.getChildren() == null) {
-                current = null;
-            } else {
-                Node next = current.getChildren().get(part);
-                if (next != null && (isLeaf || !leafOnly)) {
-                    current.getChildren().remove(next.getValue());
-                }
-                current = next;
+    public synchronized void remove(@NonNull String fqn, boolean leafOnly) {
+        int node = findNode(fqn);
+        if (node == -1 || node == ROOT) {
+            return;
+        }
+
+        if (leafOnly) {
+            if ((mNodeFlags[node] & FLAG_LEAF) == 0) {
+                return;
+            }
+            mNodeFlags[node] &= ~FLAG_LEAF;
+            mLeafCount--;
+            mSortedLeaves = null;
+
+            // prune the nodes that no longer lead to any leaf
+            while (node != ROOT && mNodeFlags[node] == 0 && mNodeChildCounts[node] == 0) {
+                int parent = mNodeParents[node];
+                detach(parent, node);
+                freeNode(node);
+                node = parent;
             }
+        } else {
+            detach(mNodeParents[node], node);
+            freeSubtree(node);
+            mSortedLeaves = null;
         }
     }
 
-    public List<String> getMatchingPackages(String packageQuery) {
-        List<String> result = new ArrayList<>();
-        StringBuilder currentPackage = new StringBuilder();
-        String[] parts = getParts(packageQuery);
-        Node current = mRoot;
-        for (String part : parts) {
-            if (current == null || current.getChildren() == null || !current.getChildren().containsKey(part)) {
-                return result;
-            }
-
-            if (current.isLeaf) {
-                String fqn = currentPackage.length() > 0
-                        ? currentPackage + "." + part
-                        : part;
-                result.add(fqn);
-            } else {
-                boolean insertDot = currentPackage.length() > 0;
-                if (insertDot) {
-                    currentPackage.append('.');
-                }
-                currentPackage.append(part);
-            }
+    /**
+     * @return whether the given fully qualified name is a leaf of this trie
+     */
+    public synchronized boolean contains(@NonNull String fqn) {
+        int node = findNode(fqn);
+        return node > ROOT && (mNodeFlags[node] & FLAG_LEAF) != 0;
+    }
 
-            current = current.getChildren().get(part);
-        }
+    /**
+     * @return The number of leaves in this trie
+     */
+    public synchronized int size() {
+        return mLeafCount;
+    }
 
-        if (current.getChildren() != null) {
-            for (Node node : current.getChildren().values()) {
-                recurse(node, currentPackage.toString(), result);
-            }
+    /**
+     * @return The fully qualified names of all the leaves below the given package
+     */
+    public synchronized List<String> getMatchingPackages(String packageQuery) {
+        List<String> result = new ArrayList<>();
+        int node = findNode(packageQuery);
+        if (node == -1) {
+            return result;
+        }
+        for (int i = 0; i < mNodeChildCounts[node]; i++) {
+            visitLeaves(mNodeChildren[node][i], (trie, leaf) -> {
+                result.add(getQualifiedName(leaf));
+                return true;
+            });
         }
-
         return result;
     }
 
-    public Set<String> getTopLevelNonLeafNodes() {
-        if (mRoot.getChildren() == null) {
+    public synchronized Set<String> getTopLevelNonLeafNodes() {
+        if (mNodeChildCounts[ROOT] == 0) {
             return Collections.emptySet();
         }
 
-        return mRoot.getChildren().keySet();
+        Set<String> nodes = new HashSet<>();
+        for (int i = 0; i < mNodeChildCounts[ROOT]; i++) {
+            nodes.add(mSegments[mNodeSegments[mNodeChildren[ROOT][i]]]);
+        }
+        return nodes;
     }
 
-    public Set<String> getLeafNodes() {
-        return new HashSet<>(getLeafNodes("", mRoot));
+    /**
+     * @return the fully qualified names of all the leaves in this trie. Prefer
+     * {@link #forEachLeaf(LeafVisitor)} or the simple name queries which do not build
+     * the name of every leaf.
+     */
+    public synchronized Set<String> getLeafNodes() {
+        Set<String> leaves = new HashSet<>(mLeafCount);
+        forEachLeaf((trie, node) -> {
+            leaves.add(getQualifiedName(node));
+            return true;
+        });
+        return leaves;
     }
 
-    private Set<String> getLeafNodes(String currentPackage, Node current) {
-        if (current.isLeaf) {
-            return Collections.singleton(currentPackage);
-        } else {
-            if (current.getChildren() == null || current.getChildren().isEmpty()) {
-                return Collections.emptySet();
-            }
-            Set<String> leafNodes = new HashSet<>();
-            for (Node value : current.getChildren().values()) {
-                String newPackage = currentPackage.isEmpty()
-                        ? value.getValue()
-                        : currentPackage + "." + value.getValue();
-                leafNodes.addAll(getLeafNodes(newPackage, value));
+    /**
+     * Visits all the leaves of this trie.
+     */
+    public synchronized void forEachLeaf(@NonNull LeafVisitor visitor) {
+        for (int node = ROOT + 1; node < mNodeCount; node++) {
+            if ((mNodeFlags[node] & FLAG_LEAF) != 0) {
+                if (!visitor.visit(this, node)) {
+                    return;
+                }
             }
-            return leafNodes;
         }
     }
 
-    private void recurse(Node node, String currentPackage, List<String> result) {
-        if (node.isLeaf) {
-            String newResult = currentPackage.length() > 0
-                    ? currentPackage + "." + node.getValue()
-                    : node.getValue();
-            result.add(newResult);
-        } else {
-            currentPackage = currentPackage.isEmpty()
-                    ? node.getValue()
-                    : currentPackage + "." + node.getValue();
+    /**
+     * Visits the leaves whose simple name starts with the given prefix.
+     *
+     * @param prefix the prefix of the simple name
+     * @param caseSensitive whether the case of the prefix should match
+     */
+    public synchronized void forEachSimpleNameWithPrefix(@NonNull String prefix,
+                                                         boolean caseSensitive,
+                                                         @NonNull LeafVisitor visitor) {
+        int[] sorted = getSortedLeaves();
+        int index = lowerBound(sorted, prefix);
+        for (; index < sorted.length; index++) {
+            String simpleName = getSimpleName(sorted[index]);
+            if (comparePrefixIgnoreCase(simpleName, prefix) != 0) {
+                return;
+            }
+            if (caseSensitive && !simpleName.startsWith(prefix)) {
+                continue;
+            }
+            if (!visitor.visit(this, sorted[index])) {
+                return;
+            }
         }
+    }
 
-        if (node.getChildren() == null) {
+    /**
+     * Visits the leaves whose simple name matches the given camel hump pattern, for example
+     * {@code AL} and {@code ArrLi} both match {@code ArrayList}. The first character of the
+     * pattern must match the first character of the name.
+     */
+    public synchronized void forEachCamelHumpMatch(@NonNull String pattern,
+                                                   @NonNull LeafVisitor visitor) {
+        if (pattern.isEmpty()) {
+            forEachSimpleNameWithPrefix(pattern, false, visitor);
             return;
         }
-        for (Node child : node.getChildren().values()) {
-            recurse(child, currentPackage, result);
+        String first = pattern.substring(0, 1);
+        forEachSimpleNameWithPrefix(first, false, (trie, node) -> {
+            if (matchesCamelHump(getSimpleName(node), pattern)) {
+                return visitor.visit(trie, node);
+            }
+            return true;
+        });
+    }
+
+    /**
+     * @return The last segment of the given node
+     */
+    @NonNull
+    public synchronized String getSimpleName(int node) {
+        return mSegments[mNodeSegments[node]];
+    }
+
+    /**
+     * @return The fully qualified name of the given node
+     */
+    @NonNull
+    public synchronized String getQualifiedName(int node) {
+        int length = -1;
+        for (int current = node; current != ROOT; current = mNodeParents[current]) {
+            length += mSegments[mNodeSegments[current]].length() + 1;
+        }
+        char[] chars = new char[Math.max(length, 0)];
+        int end = chars.length;
+        for (int current = node; current != ROOT; current = mNodeParents[current]) {
+            String segment = mSegments[mNodeSegments[current]];
+            int start = end - segment.length();
+            segment.getChars(0, segment.length(), chars, start);
+            if (start > 0) {
+                chars[start - 1] = '.';
+            }
+            end = start - 1;
         }
+        return new String(chars);
     }
 
-    private String[] getParts(String fqn) {
-        if (fqn.contains(".")) {
-            return fqn.split("\\.");
+    static boolean matchesCamelHump(@NonNull String name, @NonNull String pattern) {
+        if (name.isEmpty() || pattern.isEmpty()) {
+            return pattern.isEmpty();
+        }
+        if (Character.toLowerCase(name.charAt(0)) != Character.toLowerCase(pattern.charAt(0))) {
+            return false;
         }
-        return new String[]{fqn};
+        return matchesCamelHump(name, 1, pattern, 1);
     }
 
-    private static class Node {
+    private static boolean matchesCamelHump(String name, int nameIndex,
+                                            String pattern, int patternIndex) {
+        if (patternIndex == pattern.length()) {
+            return true;
+        }
+        char c = pattern.charAt(patternIndex);
+
+        // continue the current hump
+        if (nameIndex < name.length() && !Character.isUpperCase(c)
+            && Character.toLowerCase(name.charAt(nameIndex)) == c
+            && matchesCamelHump(name, nameIndex + 1, pattern, patternIndex + 1)) {
+            return true;
+        }
 
-        private Map<String, Node> mChildren;
+        // or start a new hump
+        for (int i = nameIndex; i < name.length(); i++) {
+            if (isHumpStart(name, i)
+                && Character.toLowerCase(name.charAt(i)) == Character.toLowerCase(c)
+                && matchesCamelHump(name, i + 1, pattern, patternIndex + 1)) {
+                return true;
+            }
+        }
+        return false;
+    }
 
-        private boolean isLeaf;
+    private static boolean isHumpStart(String name, int index) {
+        char c = name.charAt(index);
+        if (Character.isUpperCase(c) || Character.isDigit(c)) {
+            return true;
+        }
+        return index > 0 && name.charAt(index - 1) == '_';
+    }
 
-        private String mValue;
+    private int[] getSortedLeaves() {
+        if (mSortedLeaves != null) {
+            return mSortedLeaves;
+        }
+        Integer[] leaves = new Integer[mLeafCount];
+        int count = 0;
+        for (int node = ROOT + 1; node < mNodeCount; node++) {
+            if ((mNodeFlags[node] & FLAG_LEAF) != 0) {
+                leaves[count++] = node;
+            }
+        }
+        Arrays.sort(leaves, 0, count, (a, b) -> {
+            String first = getSimpleName(a);
+            String second = getSimpleName(b);
+            int result = String.CASE_INSENSITIVE_ORDER.compare(first, second);
+            return result != 0 ? result : first.compareTo(second);
+        });
+        int[] sorted = new int[count];
+        for (int i = 0; i < count; i++) {
+            sorted[i] = leaves[i];
+        }
+        mSortedLeaves = sorted;
+        return sorted;
+    }
+
+    private int lowerBound(int[] sorted, String prefix) {
+        int low = 0;
+        int high = sorted.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (comparePrefixIgnoreCase(getSimpleName(sorted[mid]), prefix) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Compares the name with the prefix using the same ordering as
+     * {@link String#CASE_INSENSITIVE_ORDER}, but treats names that start with the prefix
+     * as equal.
+     */
+    static int comparePrefixIgnoreCase(String name, String prefix) {
+        int length = Math.min(name.length(), prefix.length());
+        for (int i = 0; i < length; i++) {
+            char c1 = name.charAt(i);
+            char c2 = prefix.charAt(i);
+            if (c1 != c2) {
+                c1 = Character.toUpperCase(c1);
+                c2 = Character.toUpperCase(c2);
+                if (c1 != c2) {
+                    c1 = Character.toLowerCase(c1);
+                    c2 = Character.toLowerCase(c2);
+                    if (c1 != c2) {
+                        return c1 - c2;
+                    }
+                }
+            }
+        }
+        return name.length() < prefix.length() ? -1 : 0;
+    }
 
-        public Node() {
+    private boolean visitLeaves(int node, LeafVisitor visitor) {
+        if ((mNodeFlags[node] & FLAG_LEAF) != 0 && !visitor.visit(this, node)) {
+            return false;
+        }
+        for (int i = 0; i < mNodeChildCounts[node]; i++) {
+            if (!visitLeaves(mNodeChildren[node][i], visitor)) {
+                return false;
+            }
+        }
+        return true;
+    }
 
+    /**
+     * @return the node of the given name, or -1 if it does not exist
+     */
+    private int findNode(String fqn) {
+        int current = ROOT;
+        int start = 0;
+        while (start <= fqn.length()) {
+            int end = nextSeparator(fqn, start);
+            Integer segment = mSegmentIds.get(fqn.substring(start, end));
+            if (segment == null) {
+                return -1;
+            }
+            int index = indexOfChild(current, segment);
+            if (index < 0) {
+                return -1;
+            }
+            current = mNodeChildren[current][index];
+            start = end + 1;
         }
+        return current;
+    }
+
+    private static int nextSeparator(String fqn, int start) {
+        int end = fqn.indexOf('.', start);
+        return end == -1 ? fqn.length() : end;
+    }
 
-        public Node(String value) {
-            mValue = value;
+    private int internSegment(String segment) {
+        Integer id = mSegmentIds.get(segment);
+        if (id != null) {
+            return id;
+        }
+        if (mSegmentCount == mSegments.length) {
+            mSegments = Arrays.copyOf(mSegments, mSegmentCount * 2);
         }
+        mSegments[mSegmentCount] = segment;
+        mSegmentIds.put(segment, mSegmentCount);
+        return mSegmentCount++;
+    }
 
-        public Node getOrCreateChild(String part) {
-            if (mChildren == null) {
-                mChildren = new HashMap<>();
+    private int indexOfChild(int node, int segment) {
+        int[] children = mNodeChildren[node];
+        int low = 0;
+        int high = mNodeChildCounts[node] - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int midSegment = mNodeSegments[children[mid]];
+            if (midSegment < segment) {
+                low = mid + 1;
+            } else if (midSegment > segment) {
+                high = mid - 1;
+            } else {
+                return mid;
             }
+        }
+        return -(low + 1);
+    }
 
-            return mChildren.computeIfAbsent(part, Node::new);
+    private int getOrCreateChild(int node, int segment) {
+        int index = indexOfChild(node, segment);
+        if (index >= 0) {
+            return mNodeChildren[node][index];
         }
+        int insertion = -(index + 1);
+        int child = newNode(segment, node);
+
+        int[] children = mNodeChildren[node];
+        int count = mNodeChildCounts[node];
+        if (count == children.length) {
+            children = Arrays.copyOf(children, Math.max(2, count * 2));
+            mNodeChildren[node] = children;
+        }
+        System.arraycopy(children, insertion, children, insertion + 1, count - insertion);
+        children[insertion] = child;
+        mNodeChildCounts[node] = count + 1;
+        return child;
+    }
 
-        public Map<String, Node> getChildren() {
-            return mChildren;
+    private void detach(int parent, int child) {
+        int index = indexOfChild(parent, mNodeSegments[child]);
+        if (index < 0) {
+            return;
         }
+        int[] children = mNodeChildren[parent];
+        int count = mNodeChildCounts[parent];
+        System.arraycopy(children, index + 1, children, index, count - index - 1);
+        mNodeChildCounts[parent] = count - 1;
+    }
 
-        public String getValue() {
-            return mValue;
+    private int newNode(int segment, int parent) {
+        int node;
+        if (mFreeNodeCount > 0) {
+            node = mFreeNodes[--mFreeNodeCount];
+        } else {
+            if (mNodeCount == mNodeSegments.length) {
+                int capacity = mNodeCount * 2;
+                mNodeSegments = Arrays.copyOf(mNodeSegments, capacity);
+                mNodeParents = Arrays.copyOf(mNodeParents, capacity);
+                mNodeFlags = Arrays.copyOf(mNodeFlags, capacity);
+                mNodeChildren = Arrays.copyOf(mNodeChildren, capacity);
+                mNodeChildCounts = Arrays.copyOf(mNodeChildCounts, capacity);
+            }
+            node = mNodeCount++;
         }
+        mNodeSegments[node] = segment;
+        mNodeParents[node] = parent;
+        mNodeFlags[node] = 0;
+        mNodeChildren[node] = EMPTY_CHILDREN;
+        mNodeChildCounts[node] = 0;
+        return node;
+    }
 
-        @Override
-        public String toString() {
-            return "Node{" + "isLeaf=" + isLeaf + ", mValue='" + mValue + '\'' + '}';
+    private void freeSubtree(int node) {
+        for (int i = 0; i < mNodeChildCounts[node]; i++) {
+            freeSubtree(mNodeChildren[node][i]);
+        }
+        if ((mNodeFlags[node] & FLAG_LEAF) != 0) {
+            mLeafCount--;
         }
+        freeNode(node);
+    }
+
+    private void freeNode(int node) {
+        mNodeFlags[node] = FLAG_FREE;
+        mNodeChildren[node] = EMPTY_CHILDREN;
+        mNodeChildCounts[node] = 0;
+        if (mFreeNodeCount == mFreeNodes.length) {
+            mFreeNodes = Arrays.copyOf(mFreeNodes, mFreeNodeCount * 2);
+        }
+        mFreeNodes[mFreeNodeCount++] = node;
+    }
+
+    @NonNull
+    @Override
+    public String toString() {
+        return "PackageTrie{" + "leaves=" + mLeafCount + ", nodes=" + (mNodeCount - mFreeNodeCount) +
+               ", segments=" + mSegmentCount + '}';
     }
 }
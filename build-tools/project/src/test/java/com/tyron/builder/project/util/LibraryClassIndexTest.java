@@ -0,0 +1,168 @@
+package com.tyron.builder.project.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+
+public class LibraryClassIndexTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testPersistedIndex() throws IOException {
+        File jar = createJar("com/test/Main.class", "com/test/Main$Inner.class",
+                "com/test/other/Other.class", "META-INF/MANIFEST.MF");
+        File indexFile = LibraryClassIndex.getIndexFile(folder.newFolder("index"), "hash");
+
+        LibraryClassIndex created = LibraryClassIndex.loadOrCreate(jar, indexFile);
+        assertTrue(indexFile.exists());
+        assertEquals(2, created.size());
+
+        // delete the jar, the index should now be read from the index file only
+        assertTrue(jar.delete());
+        LibraryClassIndex loaded = LibraryClassIndex.loadOrCreate(jar, indexFile);
+
+        Set<String> names = new HashSet<>();
+        loaded.forEach(names::add);
+        assertEquals(2, names.size());
+        assertTrue(names.contains("com.test.Main"));
+        assertTrue(names.contains("com.test.other.Other"));
+    }
+
+    @Test
+    public void testCorruptIndex() throws IOException {
+        File indexFile = folder.newFile("corrupt.idx");
+        Files.write(indexFile.toPath(), "not an index".getBytes(StandardCharsets.UTF_8));
+        assertNull(LibraryClassIndex.open(indexFile));
+
+        File jar = createJar("com/test/Main.class");
+        LibraryClassIndex index = LibraryClassIndex.loadOrCreate(jar, indexFile);
+        assertEquals(1, index.size());
+        assertEquals("com.test.Main", index.get(0));
+    }
+
+    @Test
+    public void testDeleteStaleIndexFiles() throws IOException {
+        File jar = createJar("com/test/Main.class");
+        File cacheDir = folder.newFolder("index");
+        File oldIndex = LibraryClassIndex.getIndexFile(cacheDir, jar, "old");
+        File newIndex = LibraryClassIndex.getIndexFile(cacheDir, jar, "new");
+        LibraryClassIndex.loadOrCreate(jar, oldIndex);
+        LibraryClassIndex.loadOrCreate(jar, newIndex);
+
+        LibraryClassIndex.deleteStaleIndexFiles(newIndex);
+        assertFalse(oldIndex.exists());
+        assertTrue(newIndex.exists());
+    }
+
+    @Test
+    public void testOutOfRangeOffset() throws IOException {
+        File jar = createJar("com/test/Main.class", "com/test/Other.class");
+        File indexFile = LibraryClassIndex.getIndexFile(folder.newFolder("index"), "hash");
+        LibraryClassIndex.loadOrCreate(jar, indexFile);
+        assertNotNull(LibraryClassIndex.open(indexFile));
+
+        // point the offset of the second class name past the end of the file
+        byte[] bytes = Files.readAllBytes(indexFile.toPath());
+        ByteBuffer.wrap(bytes).putInt(5 * Integer.BYTES, bytes.length);
+        Files.write(indexFile.toPath(), bytes);
+        assertNull(LibraryClassIndex.open(indexFile));
+
+        // a stale index is rebuilt from the jar
+        LibraryClassIndex index = LibraryClassIndex.loadOrCreate(jar, indexFile);
+        assertEquals(2, index.size());
+        assertNotNull(LibraryClassIndex.open(indexFile));
+    }
+
+    @Test
+    public void testTruncatedIndex() throws IOException {
+        File jar = createJar("com/test/Main.class");
+        File indexFile = LibraryClassIndex.getIndexFile(folder.newFolder("index"), "hash");
+        LibraryClassIndex.loadOrCreate(jar, indexFile);
+
+        byte[] bytes = Files.readAllBytes(indexFile.toPath());
+        Files.write(indexFile.toPath(), Arrays.copyOf(bytes, bytes.length - 1));
+        assertNull(LibraryClassIndex.open(indexFile));
+    }
+
+    @Test
+    public void testPackagesAndSimpleNamePrefix() throws IOException {
+        File jar = createJar("com/test/Main.class", "com/test/other/Other.class",
+                "com/test/other/main.class", "Default.class");
+        File indexFile = LibraryClassIndex.getIndexFile(folder.newFolder("index"), "hash");
+        LibraryClassIndex.loadOrCreate(jar, indexFile);
+        LibraryClassIndex index = LibraryClassIndex.open(indexFile);
+        assertNotNull(index);
+
+        assertEquals(Arrays.asList("", "com.test", "com.test.other"), index.getPackages());
+
+        assertTrue(index.hasSimpleNameWithPrefix("Ma", true));
+        assertTrue(index.hasSimpleNameWithPrefix("ma", true));
+        assertTrue(index.hasSimpleNameWithPrefix("oth", false));
+        assertFalse(index.hasSimpleNameWithPrefix("oth", true));
+        assertFalse(index.hasSimpleNameWithPrefix("Test", false));
+        assertTrue(index.hasSimpleNameWithPrefix("", true));
+    }
+
+    @Test
+    public void testLazyPackageTrie() throws IOException {
+        LibraryClassIndex first = LibraryClassIndex.loadOrCreate(
+                createJar("com/test/Main.class", "com/test/util/Utils.class"), null);
+        LibraryClassIndex second = LibraryClassIndex.loadOrCreate(
+                createJar("org/other/Other.class"), null);
+
+        LazyPackageTrie trie = new LazyPackageTrie();
+        trie.addLibrary(first);
+        trie.addLibrary(second);
+
+        // the top level packages are known without decoding the libraries
+        assertEquals(new HashSet<>(Arrays.asList("com", "org")), trie.getTopLevelNonLeafNodes());
+        assertEquals(2, trie.getPendingLibraryCount());
+
+        List<String> names = new ArrayList<>();
+        trie.forEachSimpleNameWithPrefix("Oth", true, (t, node) -> {
+            names.add(t.getQualifiedName(node));
+            return true;
+        });
+        assertEquals(Collections.singletonList("org.other.Other"), names);
+        assertEquals(1, trie.getPendingLibraryCount());
+
+        assertEquals(Collections.singletonList("com.test.util.Utils"),
+                trie.getMatchingPackages("com.test.util"));
+        assertEquals(0, trie.getPendingLibraryCount());
+        assertEquals(3, trie.size());
+    }
+
+    private File createJar(String... entries) throws IOException {
+        File jar = folder.newFile();
+        try (JarOutputStream out = new JarOutputStream(new FileOutputStream(jar))) {
+            for (String entry : entries) {
+                out.putNextEntry(new JarEntry(entry));
+                out.closeEntry();
+            }
+        }
+        return jar;
+    }
+}
@@ -2,6 +2,7 @@ package com.tyron.builder.project.util;
 
 import org.junit.Test;
 
+import java.util.ArrayList;
 import java.util.List;
 
 public class PackageTrieTest {
@@ -22,6 +23,20 @@ public class PackageTrieTest {
         assert names.contains("something.another.Class");
     }
 
+    @Test
+    public void testClear() {
+        PackageTrie trie = new PackageTrie();
+        trie.add("java.lang.String");
+        trie.clear();
+
+        assert trie.size() == 0;
+        assert !trie.contains("java.lang.String");
+
+        trie.add("java.util.List");
+        assert trie.contains("java.util.List");
+        assert trie.size() == 1;
+    }
+
     @Test
     public void testDeepTrie() {
         PackageTrie trie = new PackageTrie();
@@ -47,4 +62,66 @@ public class PackageTrieTest {
         List<String> packages = trie.getMatchingPackages("a");
         assert packages.size() == 1;
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testRemoveKeepsSiblings() {
+        PackageTrie trie = new PackageTrie();
+        trie.add("a.b");
+        trie.add("a.b.c");
+        trie.add("a.b.d");
+        trie.remove("a.b");
+
+        assert !trie.contains("a.b");
+        assert trie.contains("a.b.c");
+        assert trie.size() == 2;
+
+        trie.remove("a", false);
+        assert trie.size() == 0;
+        assert trie.getLeafNodes().isEmpty();
+    }
+
+    @Test
+    public void testSimpleNamePrefix() {
+        PackageTrie trie = new PackageTrie();
+        trie.add("java.util.ArrayList");
+        trie.add("java.util.Arrays");
+        trie.add("java.lang.annotation.Annotation");
+        trie.add("java.util.List");
+
+        List<String> names = new ArrayList<>();
+        trie.forEachSimpleNameWithPrefix("arr", false, (t, node) ->
+                names.add(t.getQualifiedName(node)));
+        assert names.size() == 2;
+        assert names.contains("java.util.ArrayList");
+        assert names.contains("java.util.Arrays");
+
+        names.clear();
+        trie.forEachSimpleNameWithPrefix("arr", true, (t, node) ->
+                names.add(t.getQualifiedName(node)));
+        assert names.isEmpty();
+
+        names.clear();
+        trie.forEachSimpleNameWithPrefix("A", true, (t, node) ->
+                names.add(t.getSimpleName(node)));
+        assert names.size() == 3;
+    }
+
+    @Test
+    public void testCamelHump() {
+        PackageTrie trie = new PackageTrie();
+        trie.add("java.util.ArrayList");
+        trie.add("java.util.AbstractList");
+        trie.add("java.util.ArrayDeque");
+
+        List<String> names = new ArrayList<>();
+        trie.forEachCamelHumpMatch("AL", (t, node) -> names.add(t.getSimpleName(node)));
+        assert names.size() == 2;
+        assert names.contains("ArrayList");
+        assert names.contains("AbstractList");
+
+        names.clear();
+        trie.forEachCamelHumpMatch("ArrDe", (t, node) -> names.add(t.getSimpleName(node)));
+        assert names.size() == 1;
+        assert names.contains("ArrayDeque");
+    }
+}
@@ -3,15 +3,37 @@ package com.tyron.common.util;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.nio.file.attribute.FileTime;
 import java.time.Instant;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
+import java.util.function.Supplier;
 
-/** Cache maps a file + an arbitrary key to a value. When the file is modified, the mapping expires. */
+/**
+ * Cache maps a file + an arbitrary key to a value. When the file is modified, the mapping expires.
+ * <p>
+ * The cache is bounded by a maximum weight, when it is exceeded the least recently used
+ * entries are evicted. The modification time of a file can be pushed to the cache through
+ * {@link #setModified(Path, Instant)}, e.g. when its snapshot changes in the editor. While a
+ * time is pushed for a file its entries expire when they are older than that time and the
+ * file system is not queried, once the pushed time is dropped through
+ * {@link #clearModified(Path)} the entries are checked against the time of the file on disk.
+ */
 public class Cache<K, V> {
+
+    /**
+     * Computes the weight of a cache entry.
+     */
+    public interface Weigher<K, V> {
+
+        long weigh(Path file, K key, V value);
+    }
+
     public static class Key<K> {
         public final Path file;
         public final K key;
@@ -36,65 +58,247 @@ public class Cache<K, V> {
 
     private class Value {
         final V value;
+        final long weight;
         final Instant created = Instant.now();
 
-        Value(V value) {
+        Value(V value, long weight) {
             this.value = value;
+            this.weight = weight;
         }
     }
 
-    private final Map<Key<K>, Value> map = new HashMap<>();
+    private final long maximumWeight;
+    private final Weigher<K, V> weigher;
+
+    // access ordered so the first entry is the least recently used one
+    private final LinkedHashMap<Key<K>, Value> map = new LinkedHashMap<>(16, 0.75f, true);
+    // all the keys of a file, used to remove them when the file changes
+    private final Map<Path, Set<Key<K>>> fileKeys = new HashMap<>();
+    // modification times of files that were pushed to this cache
+    private final Map<Path, Instant> modifiedStamps = new HashMap<>();
+
+    private long totalWeight;
+    private long hitCount;
+    private long missCount;
+    private long evictionCount;
+
+    public Cache() {
+        this(Long.MAX_VALUE);
+    }
+
+    /**
+     * Creates a cache where each entry has a weight of one
+     *
+     * @param maximumSize the maximum number of entries in this cache
+     */
+    public Cache(long maximumSize) {
+        this(maximumSize, (file, key, value) -> 1);
+    }
+
+    public Cache(long maximumWeight, Weigher<K, V> weigher) {
+        this.maximumWeight = maximumWeight;
+        this.weigher = weigher;
+    }
 
     public boolean has(Path file, K k) {
         return !needs(file, k);
     }
 
-    public void clear() {
+    public synchronized void clear() {
         map.clear();
+        fileKeys.clear();
+        modifiedStamps.clear();
+        totalWeight = 0;
     }
 
     public boolean needs(Path file, K k) {
-        // If key is not in map, it needs to be loaded
-        Key<K> key = new Key<>(file, k);
-        if (!map.containsKey(key)) return true;
+        synchronized (this) {
+            Value value = map.get(new Key<>(file, k));
+            // If key is not in map, it needs to be loaded
+            if (value == null) {
+                missCount++;
+                return true;
+            }
+            // the file is open, its pushed time is up to date so the disk is not queried
+            Instant modified = modifiedStamps.get(file);
+            if (modified != null) {
+                return isStale(value, modified);
+            }
+        }
 
-        // If key was loaded before file was last modified, it needs to be reloaded
-        Value value = map.get(key);
-        FileTime modified = null;
+        // no time was pushed for the file, query the file system
+        Instant onDisk;
         try {
-            modified = Files.getLastModifiedTime(file);
+            onDisk = Files.getLastModifiedTime(file).toInstant();
         } catch (IOException e) {
-            modified = FileTime.from(Instant.now());
+            onDisk = null;
+        }
+        synchronized (this) {
+            Value value = map.get(new Key<>(file, k));
+            if (value == null) {
+                missCount++;
+                return true;
+            }
+            Instant modified = modifiedStamps.get(file);
+            if (modified == null) {
+                // the file does not exist, its entries can not be trusted
+                modified = onDisk != null ? onDisk : Instant.now();
+            }
+            return isStale(value, modified);
+        }
+    }
+
+    private boolean isStale(Value value, Instant modified) {
+        // If key was loaded before file was last modified, it needs to be reloaded
+        if (value.created.isBefore(modified)) {
+            missCount++;
+            return true;
         }
-        // TODO remove all keys associated with file when file changes
-        boolean before = value.created.isBefore(modified.toInstant());
-        return before;
+        hitCount++;
+        return false;
     }
 
     @SafeVarargs
-    public final void remove(Path file, K... keys) {
+    public final synchronized void remove(Path file, K... keys) {
         for (K k : keys) {
-            Key<K> key = new Key<>(file, k);
-            map.remove(key);
+            removeKey(new Key<>(file, k));
         }
     }
 
-    public Set<Key<K>> getKeys() {
-        return map.keySet();
+    /**
+     * Removes all the keys associated with the given file.
+     */
+    public synchronized void invalidate(Path file) {
+        modifiedStamps.remove(file);
+        Set<Key<K>> keys = fileKeys.remove(file);
+        if (keys == null) {
+            return;
+        }
+        for (Key<K> key : keys) {
+            Value value = map.remove(key);
+            if (value != null) {
+                totalWeight -= value.weight;
+            }
+        }
+    }
+
+    /**
+     * Sets the last modification time of the file, entries of the file that are older than
+     * this are removed. The time is kept until {@link #clearModified(Path)} or
+     * {@link #invalidate(Path)} is called for the file.
+     */
+    public synchronized void setModified(Path file, Instant modified) {
+        modifiedStamps.put(file, modified);
+
+        Set<Key<K>> keys = fileKeys.get(file);
+        if (keys == null) {
+            return;
+        }
+        for (Key<K> key : new HashSet<>(keys)) {
+            Value value = map.get(key);
+            if (value != null && value.created.isBefore(modified)) {
+                removeKey(key);
+            }
+        }
     }
 
-    public void load(Path file, K k, V v) {
-        // TODO limit total size of cache
+    /**
+     * Forgets the modification time pushed through {@link #setModified(Path, Instant)}, e.g.
+     * when the file is closed in the editor. The entries of the file are kept and are checked
+     * against the file system from now on.
+     */
+    public synchronized void clearModified(Path file) {
+        modifiedStamps.remove(file);
+    }
+
+    public synchronized Set<Key<K>> getKeys() {
+        return Collections.unmodifiableSet(new HashSet<>(map.keySet()));
+    }
+
+    public synchronized void load(Path file, K k, V v) {
         Key<K> key = new Key<>(file, k);
-        Value value = new Value(v);
-        map.put(key, value);
+        long weight = weigher.weigh(file, k, v);
+        removeKey(key);
+        if (weight > maximumWeight) {
+            return;
+        }
+
+        map.put(key, new Value(v, weight));
+        fileKeys.computeIfAbsent(file, f -> new HashSet<>()).add(key);
+        totalWeight += weight;
+        evict();
     }
 
-    public V get(Path file, K k) {
+    public synchronized V get(Path file, K k) {
         Key<K> key = new Key<>(file, k);
-        if (!map.containsKey(key)) {
+        Value value = map.get(key);
+        if (value == null) {
             throw new IllegalArgumentException(k + " is not in map " + map);
         }
-        return (V) map.get(key).value;
+        return value.value;
+    }
+
+    /**
+     * Returns the value of the key, loading it first if it is not in the cache or if
+     * the file has been modified since it was loaded. The loader is not called while
+     * holding the lock of this cache.
+     */
+    public V get(Path file, K k, Supplier<V> loader) {
+        if (!needs(file, k)) {
+            synchronized (this) {
+                Value value = map.get(new Key<>(file, k));
+                if (value != null) {
+                    return value.value;
+                }
+            }
+        }
+        V v = loader.get();
+        load(file, k, v);
+        return v;
+    }
+
+    public synchronized long getWeight() {
+        return totalWeight;
+    }
+
+    public synchronized long getHitCount() {
+        return hitCount;
+    }
+
+    public synchronized long getMissCount() {
+        return missCount;
+    }
+
+    public synchronized long getEvictionCount() {
+        return evictionCount;
+    }
+
+    private void evict() {
+        Iterator<Map.Entry<Key<K>, Value>> iterator = map.entrySet().iterator();
+        while (totalWeight > maximumWeight && iterator.hasNext()) {
+            Map.Entry<Key<K>, Value> eldest = iterator.next();
+            iterator.remove();
+            totalWeight -= eldest.getValue().weight;
+            removeFileKey(eldest.getKey());
+            evictionCount++;
+        }
+    }
+
+    private void removeKey(Key<K> key) {
+        Value value = map.remove(key);
+        if (value != null) {
+            totalWeight -= value.weight;
+            removeFileKey(key);
+        }
+    }
+
+    private void removeFileKey(Key<K> key) {
+        Set<Key<K>> keys = fileKeys.get(key.file);
+        if (keys != null) {
+            keys.remove(key);
+            if (keys.isEmpty()) {
+                fileKeys.remove(key.file);
+            }
+        }
     }
-}
\ No newline at end of file
+}
@@ -9,11 +9,20 @@ import java.io.InputStreamReader;
 import java.io.StringReader;
 import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
+import java.util.stream.Collectors;
 
 public class StringSearch {
 
@@ -203,13 +212,7 @@ public class StringSearch {
 //            return search.nextWord(text) != -1;
 //        }
         try (FileChannel channel = FileChannel.open(java)) {
-            // Read up to 1 MB of data from file
-            int limit = Math.min((int) channel.size(), SEARCH_BUFFER.capacity());
-            SEARCH_BUFFER.position(0);
-            SEARCH_BUFFER.limit(limit);
-            channel.read(SEARCH_BUFFER);
-            SEARCH_BUFFER.position(0);
-            return search.nextWord(SEARCH_BUFFER) != -1;
+            return search.nextWord(read(channel)) != -1;
         } catch (NoSuchFileException e) {
             return false;
         } catch (IOException e) {
@@ -217,6 +220,93 @@ public class StringSearch {
         }
     }
 
+    /**
+     * Searches the files for all the words at once, each file is read only once and the files
+     * are searched in parallel.
+     *
+     * @param files the files to search
+     * @param words the words to search for, matches must not be part of a larger identifier
+     * @return the files that contain at least one of the words
+     */
+    public static Set<Path> filesContainingAnyWord(Collection<Path> files,
+                                                   Collection<String> words) {
+        WordAutomaton automaton = new WordAutomaton(words);
+        if (automaton.isEmpty()) {
+            return Collections.emptySet();
+        }
+        return files.parallelStream()
+                .filter(file -> {
+                    boolean[] found = new boolean[1];
+                    search(file, automaton, word -> {
+                        found[0] = true;
+                        return false;
+                    });
+                    return found[0];
+                })
+                .collect(Collectors.toSet());
+    }
+
+    /**
+     * Searches the files for all the words at once, each file is read only once and the files
+     * are searched in parallel.
+     *
+     * @param files the files to search
+     * @param words the words to search for, matches must not be part of a larger identifier
+     * @return the words found in each file, files that contain none of the words are omitted
+     */
+    public static Map<Path, Set<String>> findWords(Collection<Path> files,
+                                                   Collection<String> words) {
+        WordAutomaton automaton = new WordAutomaton(words);
+        Map<Path, Set<String>> result = new ConcurrentHashMap<>();
+        if (automaton.isEmpty()) {
+            return result;
+        }
+        files.parallelStream().forEach(file -> {
+            Set<String> found = new HashSet<>();
+            search(file, automaton, word -> {
+                found.add(automaton.words[word]);
+                // stop once every word has been found
+                return found.size() < automaton.words.length;
+            });
+            if (!found.isEmpty()) {
+                result.put(file, found);
+            }
+        });
+        return result;
+    }
+
+    private static void search(Path file, WordAutomaton automaton, WordAutomaton.Visitor visitor) {
+        try (FileChannel channel = FileChannel.open(file)) {
+            automaton.scan(read(channel), visitor);
+        } catch (NoSuchFileException e) {
+            // the file has been deleted, there is nothing to find
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Reads the contents of the channel, large files are memory mapped while smaller files are
+     * read into a buffer owned by the calling thread. The returned buffer is only valid until
+     * the next read on the same thread.
+     */
+    private static ByteBuffer read(FileChannel channel) throws IOException {
+        long size = channel.size();
+        if (size > MAP_THRESHOLD) {
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        }
+        ByteBuffer buffer = SEARCH_BUFFER.get();
+        buffer.clear();
+        buffer.limit((int) size);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer) == -1) {
+                break;
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+
     public static boolean matchesPartialName(CharSequence candidate, CharSequence partialName) {
         if (partialName.length() == 1 && partialName.equals(".")) {
             return true;
@@ -349,13 +439,7 @@ public class StringSearch {
 //            return search.next(text) != -1;
 //        }
         try (FileChannel channel = FileChannel.open(java)) {
-            // Read up to 1 MB of data from file
-            int limit = Math.min((int) channel.size(), SEARCH_BUFFER.capacity());
-            SEARCH_BUFFER.position(0);
-            SEARCH_BUFFER.limit(limit);
-            channel.read(SEARCH_BUFFER);
-            SEARCH_BUFFER.position(0);
-            return search.next(SEARCH_BUFFER) != -1;
+            return search.next(read(channel)) != -1;
         } catch (NoSuchFileException e) {
             return false;
         } catch (IOException e) {
@@ -416,5 +500,161 @@ public class StringSearch {
         }
     }
 
-    private static final ByteBuffer SEARCH_BUFFER = ByteBuffer.allocateDirect(1024 * 1024);
+    /**
+     * An Aho-Corasick automaton over the UTF-8 bytes of a set of words. The transitions are
+     * stored in a single table indexed by state and byte class, where bytes that do not
+     * occur in any word share one class, so matching is a single table lookup per byte.
+     */
+    private static final class WordAutomaton {
+
+        interface Visitor {
+
+            /**
+             * @param word the index of the word that was found
+             * @return false to stop the search
+             */
+            boolean visit(int word);
+        }
+
+        private static final int[] NO_OUTPUT = new int[0];
+
+        final String[] words;
+        private final int[] wordLengths;
+        private final int[] byteClasses = new int[256];
+        private final int alphabetSize;
+        private final int[] transitions;
+        // the words that end at each state, including the ones reached through failure links
+        private final int[][] outputs;
+
+        WordAutomaton(Collection<String> words) {
+            Set<String> unique = new LinkedHashSet<>();
+            for (String word : words) {
+                if (!word.isEmpty()) {
+                    unique.add(word);
+                }
+            }
+            this.words = unique.toArray(new String[0]);
+            this.wordLengths = new int[this.words.length];
+
+            byte[][] patterns = new byte[this.words.length][];
+            int alphabetSize = 1;
+            int maxStates = 1;
+            for (int i = 0; i < patterns.length; i++) {
+                patterns[i] = this.words[i].getBytes(StandardCharsets.UTF_8);
+                wordLengths[i] = patterns[i].length;
+                maxStates += patterns[i].length;
+                for (byte b : patterns[i]) {
+                    if (byteClasses[b & 0xFF] == 0) {
+                        byteClasses[b & 0xFF] = alphabetSize++;
+                    }
+                }
+            }
+            this.alphabetSize = alphabetSize;
+
+            // build the trie of the words, missing edges are -1
+            int[] trie = new int[maxStates * alphabetSize];
+            Arrays.fill(trie, -1);
+            int[][] outputs = new int[maxStates][];
+            int stateCount = 1;
+            for (int i = 0; i < patterns.length; i++) {
+                int state = 0;
+                for (byte b : patterns[i]) {
+                    int edge = state * alphabetSize + byteClasses[b & 0xFF];
+                    if (trie[edge] == -1) {
+                        trie[edge] = stateCount++;
+                    }
+                    state = trie[edge];
+                }
+                outputs[state] = new int[]{i};
+            }
+
+            // turn the trie into a complete transition table following the failure links
+            int[] failure = new int[stateCount];
+            int[] queue = new int[stateCount];
+            int head = 0;
+            int tail = 0;
+            for (int c = 0; c < alphabetSize; c++) {
+                int next = trie[c];
+                if (next == -1) {
+                    trie[c] = 0;
+                } else {
+                    failure[next] = 0;
+                    queue[tail++] = next;
+                }
+            }
+            while (head < tail) {
+                int state = queue[head++];
+                int[] inherited = outputs[failure[state]];
+                if (inherited != null) {
+                    outputs[state] = concat(outputs[state], inherited);
+                }
+                for (int c = 0; c < alphabetSize; c++) {
+                    int edge = state * alphabetSize + c;
+                    int fallback = trie[failure[state] * alphabetSize + c];
+                    if (trie[edge] == -1) {
+                        trie[edge] = fallback;
+                    } else {
+                        failure[trie[edge]] = fallback;
+                        queue[tail++] = trie[edge];
+                    }
+                }
+            }
+
+            this.transitions = Arrays.copyOf(trie, stateCount * alphabetSize);
+            this.outputs = new int[stateCount][];
+            for (int i = 0; i < stateCount; i++) {
+                this.outputs[i] = outputs[i] == null ? NO_OUTPUT : outputs[i];
+            }
+        }
+
+        boolean isEmpty() {
+            return words.length == 0;
+        }
+
+        void scan(ByteBuffer text, Visitor visitor) {
+            int limit = text.limit();
+            int state = 0;
+            for (int i = text.position(); i < limit; i++) {
+                state = transitions[state * alphabetSize + byteClasses[text.get(i) & 0xFF]];
+                for (int word : outputs[state]) {
+                    int start = i - wordLengths[word] + 1;
+                    if (start > 0 && isIdentifierByte(text.get(start - 1))) {
+                        continue;
+                    }
+                    if (i + 1 < limit && isIdentifierByte(text.get(i + 1))) {
+                        continue;
+                    }
+                    if (!visitor.visit(word)) {
+                        return;
+                    }
+                }
+            }
+        }
+
+        /**
+         * Bytes of multi-byte UTF-8 sequences are treated as identifier characters
+         * since java allows non ASCII letters in identifiers.
+         */
+        private static boolean isIdentifierByte(byte b) {
+            return b < 0 || (b >= 'a' && b <= 'z') || (b >= 'A' && b <= 'Z')
+                   || (b >= '0' && b <= '9') || b == '_' || b == '$';
+        }
+
+        private static int[] concat(int[] first, int[] second) {
+            if (first == null) {
+                return second;
+            }
+            int[] result = Arrays.copyOf(first, first.length + second.length);
+            System.arraycopy(second, 0, result, first.length, second.length);
+            return result;
+        }
+    }
+
+    /**
+     * Files larger than this are memory mapped instead of being copied
+     */
+    private static final int MAP_THRESHOLD = 64 * 1024;
+
+    private static final ThreadLocal<ByteBuffer> SEARCH_BUFFER =
+            ThreadLocal.withInitial(() -> ByteBuffer.allocate(MAP_THRESHOLD));
 }
@@ -0,0 +1,135 @@
+package com.tyron.common.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.nio.file.Paths;
+import java.time.Instant;
+
+public class CacheTest {
+
+    private static final Path FIRST = Paths.get("First.java");
+    private static final Path SECOND = Paths.get("Second.java");
+
+    @Test
+    public void testEvictsLeastRecentlyUsed() {
+        Cache<String, String> cache = new Cache<>(2);
+        cache.setModified(FIRST, Instant.EPOCH);
+        cache.setModified(SECOND, Instant.EPOCH);
+
+        cache.load(FIRST, "a", "a");
+        cache.load(FIRST, "b", "b");
+        // access a so b becomes the least recently used entry
+        assertTrue(cache.has(FIRST, "a"));
+        cache.load(SECOND, "c", "c");
+
+        assertTrue(cache.has(FIRST, "a"));
+        assertFalse(cache.has(FIRST, "b"));
+        assertTrue(cache.has(SECOND, "c"));
+        assertEquals(1, cache.getEvictionCount());
+    }
+
+    @Test
+    public void testWeight() {
+        Cache<String, String> cache = new Cache<>(5, (file, key, value) -> value.length());
+        cache.setModified(FIRST, Instant.EPOCH);
+
+        cache.load(FIRST, "a", "aaa");
+        cache.load(FIRST, "b", "bbb");
+        assertFalse(cache.has(FIRST, "a"));
+        assertEquals(3, cache.getWeight());
+
+        // entries heavier than the cache are not stored
+        cache.load(FIRST, "c", "cccccc");
+        assertFalse(cache.has(FIRST, "c"));
+    }
+
+    @Test
+    public void testInvalidate() {
+        Cache<String, String> cache = new Cache<>();
+        cache.setModified(FIRST, Instant.EPOCH);
+        cache.setModified(SECOND, Instant.EPOCH);
+
+        cache.load(FIRST, "a", "a");
+        cache.load(FIRST, "b", "b");
+        cache.load(SECOND, "a", "a");
+
+        cache.invalidate(FIRST);
+        assertFalse(cache.has(FIRST, "a"));
+        assertFalse(cache.has(FIRST, "b"));
+        assertTrue(cache.has(SECOND, "a"));
+    }
+
+    @Test
+    public void testPushedModification() {
+        Cache<String, String> cache = new Cache<>();
+        cache.setModified(FIRST, Instant.EPOCH);
+
+        assertEquals("a", cache.get(FIRST, "a", () -> "a"));
+        assertEquals("a", cache.get(FIRST, "a", () -> "b"));
+        assertEquals(1, cache.getHitCount());
+
+        cache.setModified(FIRST, Instant.now().plusSeconds(1));
+        assertEquals("b", cache.get(FIRST, "a", () -> "b"));
+    }
+
+    @Test
+    public void testDiskNotQueriedWhileModificationIsPushed() throws IOException {
+        Path file = Files.createTempFile("cache", ".java");
+        try {
+            Cache<String, String> cache = new Cache<>();
+            cache.setModified(file, Instant.EPOCH);
+            Files.setLastModifiedTime(file, FileTime.from(Instant.EPOCH));
+
+            assertEquals("a", cache.get(file, "a", () -> "a"));
+            assertTrue(cache.has(file, "a"));
+
+            // the editor owns the file while it is open, the time on disk is ignored
+            Files.setLastModifiedTime(file, FileTime.from(Instant.now().plusSeconds(1)));
+            assertTrue(cache.has(file, "a"));
+
+            // once it is closed, the file system is queried
+            cache.clearModified(file);
+            assertFalse(cache.has(file, "a"));
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    public void testDiskModificationWithoutPushedModification() throws IOException {
+        Path file = Files.createTempFile("cache", ".java");
+        try {
+            Cache<String, String> cache = new Cache<>();
+            Files.setLastModifiedTime(file, FileTime.from(Instant.EPOCH));
+
+            assertEquals("a", cache.get(file, "a", () -> "a"));
+            assertTrue(cache.has(file, "a"));
+
+            // the file is changed outside of the editor
+            Files.setLastModifiedTime(file, FileTime.from(Instant.now().plusSeconds(1)));
+            assertFalse(cache.has(file, "a"));
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    public void testClearModified() {
+        Cache<String, String> cache = new Cache<>();
+        cache.setModified(FIRST, Instant.EPOCH);
+        cache.load(FIRST, "a", "a");
+        assertTrue(cache.has(FIRST, "a"));
+
+        // FIRST does not exist on disk, without the pushed time its entries expire
+        cache.clearModified(FIRST);
+        assertFalse(cache.has(FIRST, "a"));
+    }
+}
@@ -0,0 +1,61 @@
+package com.tyron.common.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+public class StringSearchTest {
+
+    @Test
+    public void testFindWords() throws IOException {
+        Path first = createFile("class First extends Activity { Fragment fragment; }");
+        Path second = createFile("class Second { MyActivity activity; }");
+        Path third = createFile("class Third { String s; }");
+        List<Path> files = Arrays.asList(first, second, third);
+
+        Map<Path, Set<String>> found = StringSearch.findWords(files,
+                Arrays.asList("Activity", "Fragment", "MyActivity", "String"));
+
+        assertEquals(new HashSet<>(Arrays.asList("Activity", "Fragment")), found.get(first));
+        assertEquals(Collections.singleton("MyActivity"), found.get(second));
+        assertEquals(Collections.singleton("String"), found.get(third));
+    }
+
+    @Test
+    public void testFilesContainingAnyWord() throws IOException {
+        StringBuilder large = new StringBuilder();
+        // larger than the buffer so the file is memory mapped
+        for (int i = 0; i < 10_000; i++) {
+            large.append("int field").append(i).append(";\n");
+        }
+        large.append("Target target;");
+        Path largeFile = createFile(large.toString());
+        Path smallFile = createFile("class Small { TargetType type; }");
+
+        Set<Path> found = StringSearch.filesContainingAnyWord(
+                Arrays.asList(largeFile, smallFile), Collections.singleton("Target"));
+
+        assertTrue(found.contains(largeFile));
+        assertFalse(found.contains(smallFile));
+    }
+
+    private static Path createFile(String contents) throws IOException {
+        Path file = Files.createTempFile("StringSearchTest", ".java");
+        file.toFile().deleteOnExit();
+        Files.write(file, contents.getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+}
@@ -38,6 +38,22 @@ public abstract class CompletionProvider {
 
     public abstract CompletionList complete(CompletionParameters parameters);
 
+    /**
+     * Computes the completions and sends the items to the listener as soon as they are
+     * available. Providers that are able to compute some of their items quickly should
+     * override this, by default the items are published once the whole list is computed.
+     *
+     * @return the complete list of items
+     */
+    public CompletionList complete(CompletionParameters parameters,
+                                   CompletionList.Builder.Listener listener) {
+        CompletionList list = complete(parameters);
+        if (list != null && !list.items.isEmpty()) {
+            listener.onItemsAdded(list.items);
+        }
+        return list;
+    }
+
     @SuppressLint("NewApi")
     public static ImmutableList<CompletionProvider> forParameters(@NotNull CompletionParameters parameters) {
         File file = parameters.getFile();
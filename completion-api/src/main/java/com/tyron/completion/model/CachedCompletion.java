@@ -1,9 +1,14 @@
 package com.tyron.completion.model;
 
+import com.tyron.completion.CompletionPrefixMatcher;
 import com.tyron.completion.model.CompletionList;
 
 import java.io.File;
 
+/**
+ * The result of a previous completion, used to answer the next completion without recomputing
+ * it when the user only typed more characters of the same identifier.
+ */
 public class CachedCompletion {
     private final File file;
     private final int line;
@@ -11,10 +16,24 @@ public class CachedCompletion {
     private final String prefix;
     private final CompletionList completionList;
 
+    private final long index;
+    private final String contents;
+
     public CachedCompletion(File file, int line, int column, String prefix, CompletionList completionList) {
+        this(file, line, column, -1, null, prefix, completionList);
+    }
+
+    /**
+     * @param index    the offset of the cursor in the contents
+     * @param contents the contents of the file when the completion was computed
+     */
+    public CachedCompletion(File file, int line, int column, long index, String contents,
+                            String prefix, CompletionList completionList) {
         this.file = file;
         this.line = line;
         this.column = column;
+        this.index = index;
+        this.contents = contents;
         this.prefix = prefix;
         this.completionList = completionList;
     }
@@ -38,4 +57,57 @@ public class CachedCompletion {
     public CompletionList getCompletionList() {
         return completionList;
     }
-}
\ No newline at end of file
+
+    /**
+     * Checks whether the items of this completion are still valid for a completion at the given
+     * position. This is the case when the new prefix extends the cached one at the same position
+     * and the only edit since then is the characters appended to the prefix. Any other edit,
+     * moving to another identifier or deleting part of the prefix invalidates this completion.
+     * <p>
+     * Incomplete lists can not be refined since the items of the longer prefix may be
+     * among the ones that were left out.
+     *
+     * @param prefix the identifier being completed, without any qualifier
+     */
+    public boolean canRefine(File file, int line, int column, long index, String contents,
+                             String prefix) {
+        if (completionList == null || completionList.isIncomplete()) {
+            return false;
+        }
+        if (line == -1 || column == -1) {
+            return false;
+        }
+        if (!file.equals(this.file) || line != this.line) {
+            return false;
+        }
+        if (!prefix.startsWith(this.prefix)) {
+            return false;
+        }
+
+        int appended = prefix.length() - this.prefix.length();
+        if (column - this.column != appended) {
+            return false;
+        }
+
+        if (this.contents == null || contents == null) {
+            return true;
+        }
+        if (index - this.index != appended
+            || contents.length() - this.contents.length() != appended) {
+            return false;
+        }
+        // everything before and after the appended characters must be unchanged
+        int cachedIndex = (int) this.index;
+        return this.contents.regionMatches(0, contents, 0, cachedIndex)
+               && this.contents.regionMatches(cachedIndex, contents, (int) index,
+                                              this.contents.length() - cachedIndex);
+    }
+
+    /**
+     * Filters the cached items against the longer prefix and ranks them again using
+     * {@link CompletionPrefixMatcher}, without recomputing them.
+     */
+    public CompletionList refine(String prefix) {
+        return CompletionList.copy(completionList, prefix);
+    }
+}
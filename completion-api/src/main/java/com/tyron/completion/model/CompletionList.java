@@ -64,11 +64,27 @@ public class CompletionList {
     }
 
     public static class Builder {
+
+        /**
+         * Receives the items of a completion as they are computed, before the whole list
+         * has been built.
+         */
+        public interface Listener {
+
+            /**
+             * @param items the items that were added since the last call, sorted
+             */
+            void onItemsAdded(List<CompletionItem> items);
+        }
+
         private final List<CompletionItem> items;
         private boolean incomplete;
 
         private final String completionPrefix;
 
+        private Listener listener;
+        private int publishedCount;
+
         public Builder(String completionPrefix) {
             items = new ArrayList<>();
             this.completionPrefix = completionPrefix;
@@ -113,6 +129,26 @@ public class CompletionList {
             return this;
         }
 
+        public Builder setListener(Listener listener) {
+            this.listener = listener;
+            return this;
+        }
+
+        /**
+         * Sends the items that were added since the last call to the listener, if any. Providers
+         * call this after their cheap results are computed so they can be shown while the more
+         * expensive ones are still being computed.
+         */
+        @SuppressWarnings("NewApi")
+        public void publish() {
+            if (listener == null || publishedCount == items.size()) {
+                return;
+            }
+            List<CompletionItem> added = items.subList(publishedCount, items.size());
+            publishedCount = items.size();
+            listener.onItemsAdded(ITEM_ORDERING.immutableSortedCopy(added));
+        }
+
         public int getItemCount() {
             return items.size();
         }
@@ -20,6 +20,7 @@ import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 import java.util.function.Consumer;
+import java.util.function.Supplier;
 
 public class ProgressManager {
 
@@ -42,7 +43,7 @@ public class ProgressManager {
     private final Map<Thread, ProgressIndicator> mThreadToIndicator;
 
     public ProgressManager() {
-        mThreadToIndicator = new WeakHashMap<>();
+        mThreadToIndicator = Collections.synchronizedMap(new WeakHashMap<>());
         if (TestUtil.isDalvik()) {
             mMainHandler = new DefaultHandlerInterface(new Handler(Looper.getMainLooper()));
         } else {
@@ -76,6 +77,30 @@ public class ProgressManager {
         });
     }
 
+    /**
+     * Runs the process on the current thread, {@link #checkCanceled()} calls made by it throw
+     * a {@link ProcessCanceledException} once the indicator is canceled.
+     *
+     * @param process   The code to run
+     * @param indicator The class used to cancel the process from another thread
+     * @return the result of the process
+     */
+    public <T> T runProcess(Supplier<T> process, ProgressIndicator indicator) {
+        Thread currentThread = Thread.currentThread();
+        ProgressIndicator previous = mThreadToIndicator.put(currentThread, indicator);
+        try {
+            indicator.setRunning(true);
+            return process.get();
+        } finally {
+            indicator.setRunning(false);
+            if (previous != null) {
+                mThreadToIndicator.put(currentThread, previous);
+            } else {
+                mThreadToIndicator.remove(currentThread);
+            }
+        }
+    }
+
     public void runAsync(Context uiContext,
                          Runnable runnable,
                          ProgressIndicator indicator) {
@@ -0,0 +1,80 @@
+package com.tyron.completion.model;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.io.File;
+
+public class CachedCompletionTest {
+
+    private static final File FILE = new File("Main.java");
+
+    private static final String CONTENTS = "class Main { void a() { Str } }";
+    private static final int INDEX = CONTENTS.indexOf("Str") + 3;
+
+    private static CachedCompletion create(CompletionList list) {
+        return new CachedCompletion(FILE, 0, INDEX, INDEX, CONTENTS, "Str", list);
+    }
+
+    @Test
+    public void testRefineAppendedPrefix() {
+        CachedCompletion cached = create(new CompletionList());
+        String contents = CONTENTS.replace("Str", "Strin");
+
+        assertTrue(cached.canRefine(FILE, 0, INDEX + 2, INDEX + 2, contents, "Strin"));
+    }
+
+    @Test
+    public void testOtherEditInvalidates() {
+        CachedCompletion cached = create(new CompletionList());
+        String contents = CONTENTS.replace("Str", "Strin").replace("a()", "b()");
+
+        assertFalse(cached.canRefine(FILE, 0, INDEX + 2, INDEX + 2, contents, "Strin"));
+    }
+
+    @Test
+    public void testDeletedPrefixInvalidates() {
+        CachedCompletion cached = create(new CompletionList());
+        String contents = CONTENTS.replace("Str", "St");
+
+        assertFalse(cached.canRefine(FILE, 0, INDEX - 1, INDEX - 1, contents, "St"));
+    }
+
+    @Test
+    public void testExtendedPrefixReusesCachedList() {
+        CompletionList.Builder builder = CompletionList.builder("str");
+        CompletionItem string = new CompletionItem("string");
+        CompletionItem strip = new CompletionItem("strip");
+        CompletionItem stream = new CompletionItem("stream");
+        builder.addItem(string);
+        builder.addItem(strip);
+        builder.addItem(stream);
+        String contents = "class Main { void a() { str } }";
+        int index = contents.indexOf("str") + 3;
+        CachedCompletion cached =
+                new CachedCompletion(FILE, 0, index, index, contents, "str", builder.build());
+
+        String extended = contents.replace("str", "stri");
+        assertTrue(cached.canRefine(FILE, 0, index + 1, index + 1, extended, "stri"));
+
+        // the cached items are filtered again instead of being recomputed
+        CompletionList refined = cached.refine("stri");
+        assertFalse(refined.isIncomplete());
+        assertEquals(2, refined.getItems().size());
+        assertTrue(refined.getItems().stream().anyMatch(item -> item == string));
+        assertTrue(refined.getItems().stream().anyMatch(item -> item == strip));
+    }
+
+    @Test
+    public void testIncompleteListInvalidates() {
+        CompletionList list = new CompletionList();
+        list.setIncomplete(true);
+        CachedCompletion cached = create(list);
+        String contents = CONTENTS.replace("Str", "Stri");
+
+        assertFalse(cached.canRefine(FILE, 0, INDEX + 1, INDEX + 1, contents, "Stri"));
+    }
+}
@@ -2,26 +2,45 @@ package com.tyron.resolver;
 
 import android.text.TextUtils;
 
+import androidx.annotation.Nullable;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.tyron.resolver.model.Dependency;
 import com.tyron.resolver.model.Pom;
 import com.tyron.resolver.repository.RepositoryManager;
 
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 public class DependencyResolver {
 
     private final RepositoryManager repository;
     private final Map<Pom, String> resolvedPoms;
+    private final ExecutorService executor;
 
     private ResolveListener mListener;
 
     public DependencyResolver(RepositoryManager repository) {
+        this(repository, FetchExecutorHolder.EXECUTOR);
+    }
+
+    /**
+     * @param executor the executor used to retrieve the POMs of each level of the dependency
+     *                 graph concurrently
+     */
+    public DependencyResolver(RepositoryManager repository, ExecutorService executor) {
         this.repository = repository;
         this.resolvedPoms = new HashMap<>();
+        this.executor = executor;
     }
 
     public void setResolveListener(ResolveListener listener) {
@@ -35,13 +54,20 @@ public class DependencyResolver {
     }
 
     public List<Pom> resolveDependencies(List<Dependency> declaredDependencies) {
-        List<Pom> poms = new ArrayList<>();
+        List<Future<Pom>> futures = new ArrayList<>();
         for (Dependency dependency : declaredDependencies) {
+            String declaration = dependency.toString();
+            futures.add(executor.submit(() -> repository.getPom(declaration)));
+        }
+
+        List<Pom> poms = new ArrayList<>();
+        for (int i = 0; i < declaredDependencies.size(); i++) {
+            Dependency dependency = declaredDependencies.get(i);
             if (mListener != null) {
                 mListener.onResolve("Getting POM: " + dependency);
             }
 
-            Pom pom = repository.getPom(dependency.toString());
+            Pom pom = getResult(futures.get(i));
             if (pom != null) {
                 pom.setExcludes(dependency.getExcludes());
                 pom.setUserDefined(true);
@@ -60,12 +86,68 @@ public class DependencyResolver {
      * the conflicting libraries
      */
     public List<Pom> resolve(List<Pom> declaredDependencies) {
+        prefetch(declaredDependencies);
+
         for (Pom pom : declaredDependencies) {
             resolve(pom);
         }
         return new ArrayList<>(resolvedPoms.keySet());
     }
 
+    /**
+     * Retrieves the POMs of the dependency graph one level at a time, the POMs of a level are
+     * retrieved concurrently. The repository keeps the POMs it has retrieved, so resolving the
+     * graph afterwards does not wait for the repositories one POM at a time.
+     */
+    private void prefetch(List<Pom> poms) {
+        Set<String> visited = new HashSet<>();
+        for (Pom pom : poms) {
+            visited.add(pom.getDeclarationString());
+        }
+
+        List<Pom> level = poms;
+        while (!level.isEmpty()) {
+            List<Future<Pom>> futures = new ArrayList<>();
+            for (Pom pom : level) {
+                for (Dependency dependency : pom.getDependencies()) {
+                    if ("test".equals(dependency.getScope())) {
+                        continue;
+                    }
+                    if (isExcluded(pom.getExcludes(), dependency)) {
+                        continue;
+                    }
+
+                    String declaration = dependency.toString();
+                    if (visited.add(declaration)) {
+                        futures.add(executor.submit(() -> repository.getPom(declaration)));
+                    }
+                }
+            }
+
+            List<Pom> nextLevel = new ArrayList<>();
+            for (Future<Pom> future : futures) {
+                Pom pom = getResult(future);
+                if (pom != null) {
+                    nextLevel.add(pom);
+                }
+            }
+            level = nextLevel;
+        }
+    }
+
+    @Nullable
+    private Pom getResult(Future<Pom> future) {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            // failures are reported when the dependency is resolved
+            return null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+    }
+
     private void resolve(Pom pom) {
         if (resolvedPoms.containsKey(pom)) {
             if (pom.isUserDefined()) {
@@ -96,31 +178,7 @@ public class DependencyResolver {
                 continue;
             }
 
-            boolean excluded = excludes.stream().filter(Objects::nonNull).anyMatch(ex -> {
-                if (ex == null) {
-                    return false;
-                }
-                if (ex.getGroupId() == null) {
-                    return false;
-                }
-                if (!ex.getGroupId().equals(dependency.getGroupId())) {
-                    return false;
-                }
-
-                if (ex.getArtifactId() == null) {
-                    return false;
-                }
-
-                if (!ex.getArtifactId().equals(dependency.getArtifactId())) {
-                    return false;
-                }
-                if (TextUtils.isEmpty(ex.getVersionName())) {
-                    return true;
-                }
-                return ex.getVersionName().equals(dependency.getVersionName());
-            });
-
-            if (excluded) {
+            if (isExcluded(excludes, dependency)) {
                 continue;
             }
 
@@ -139,9 +197,44 @@ public class DependencyResolver {
         resolvedPoms.put(pom, pom.getVersionName());
     }
 
+    private static boolean isExcluded(List<Dependency> excludes, Dependency dependency) {
+        return excludes.stream().filter(Objects::nonNull).anyMatch(ex -> {
+            if (ex == null) {
+                return false;
+            }
+            if (ex.getGroupId() == null) {
+                return false;
+            }
+            if (!ex.getGroupId().equals(dependency.getGroupId())) {
+                return false;
+            }
+
+            if (ex.getArtifactId() == null) {
+                return false;
+            }
+
+            if (!ex.getArtifactId().equals(dependency.getArtifactId())) {
+                return false;
+            }
+            if (TextUtils.isEmpty(ex.getVersionName())) {
+                return true;
+            }
+            return ex.getVersionName().equals(dependency.getVersionName());
+        });
+    }
+
     private int getHigherVersion(String firstVersion, String secondVersion) {
         ComparableVersion firstComparableVersion = new ComparableVersion(firstVersion);
         ComparableVersion secondComparableVersion = new ComparableVersion(secondVersion);
         return firstComparableVersion.compareTo(secondComparableVersion);
     }
+
+    private static class FetchExecutorHolder {
+        static final ExecutorService EXECUTOR = Executors.newFixedThreadPool(
+                8,
+                new ThreadFactoryBuilder()
+                        .setNameFormat("pom-fetcher-%d")
+                        .setDaemon(true)
+                        .build());
+    }
 }
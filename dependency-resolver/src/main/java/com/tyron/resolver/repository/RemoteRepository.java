@@ -6,6 +6,7 @@ import androidx.annotation.Nullable;
 import org.apache.commons.io.FileUtils;
 
 import java.io.File;
+import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.URL;
@@ -68,6 +69,11 @@ public class RemoteRepository extends DefaultRepository {
         return mLocalRepository.getCachedFile(path);
     }
 
+    /**
+     * @return null if the repository answered that the file does not exist
+     * @throws IOException if the repository could not be reached, in which case it is unknown
+     * whether the file exists
+     */
     private File getFileInternal(String path) throws IOException {
         String downloadUrl = mUrl + path;
         URL url = new URL(downloadUrl);
@@ -77,8 +83,8 @@ public class RemoteRepository extends DefaultRepository {
                 // save the file to cache, and then return the one from there
                 return mLocalRepository.save(path, inputStream);
             }
-        } catch (IOException e) {
-            // ignored, return null
+        } catch (FileNotFoundException e) {
+            // the server responded with 404
         }
         return null;
     }
@@ -4,14 +4,14 @@ import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 
 import com.google.common.io.CharStreams;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.SettableFuture;
 import com.tyron.common.logging.IdeLog;
 import com.tyron.common.util.FileUtilsEx;
 import com.tyron.resolver.model.Pom;
 import com.tyron.resolver.parser.PomParser;
 
 import org.apache.commons.io.FileUtils;
-import org.apache.commons.io.filefilter.SuffixFileFilter;
-import org.apache.commons.io.filefilter.TrueFileFilter;
 import org.xml.sax.SAXException;
 import org.xmlpull.v1.XmlPullParserException;
 
@@ -22,8 +22,12 @@ import java.io.InputStreamReader;
 import java.net.URL;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Iterator;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.jar.JarFile;
 import java.util.logging.Logger;
 import java.util.zip.ZipFile;
@@ -36,13 +40,42 @@ public class RepositoryManagerImpl implements RepositoryManager {
 
     private File cacheDir;
     private final List<Repository> repositories;
-    private final List<Pom> pomFiles;
+
+    /**
+     * The POMs that have been retrieved, keyed by {@code groupId:artifactId:version}
+     */
+    private final Map<String, Pom> pomFiles;
+
+    /**
+     * The POMs that are being retrieved by another thread
+     */
+    private final Map<String, SettableFuture<Pom>> pendingPomFiles;
+
+    /**
+     * The POMs that every repository has answered are not found. POMs that could not be
+     * retrieved because a repository failed are not added here so they are retried.
+     */
+    private final Set<String> missingPomFiles;
+
+    /**
+     * The repository where the POMs of a group have last been found
+     */
+    private final Map<String, Repository> groupRepositories;
 
     public RepositoryManagerImpl() {
-        this.repositories = new ArrayList<>();
-        this.pomFiles = new ArrayList<>();
+        this.repositories = new CopyOnWriteArrayList<>();
+        this.pomFiles = new ConcurrentHashMap<>();
+        this.pendingPomFiles = new ConcurrentHashMap<>();
+        this.missingPomFiles = Collections.newSetFromMap(new ConcurrentHashMap<>());
+        this.groupRepositories = new ConcurrentHashMap<>();
     }
 
+    /**
+     * {@inheritDoc}
+     *
+     * <p>This method can be called from multiple threads, a POM that is being retrieved by
+     * another thread is not retrieved again, instead this waits for the other thread.
+     */
     @Override
     @Nullable
     public Pom getPom(String declaration) {
@@ -50,32 +83,49 @@ public class RepositoryManagerImpl implements RepositoryManager {
         if (pomNames == null) {
             return null;
         }
-        for (Pom pom : pomFiles) {
-            if (!pomNames[0].equals(pom.getGroupId())) {
-                continue;
-            }
-            if (!pomNames[1].equals(pom.getArtifactId())) {
-                continue;
-            }
-            if (!pomNames[2].equals(pom.getVersionName())) {
-                continue;
+        String key = pomNames[0] + ":" + pomNames[1] + ":" + pomNames[2];
+        Pom pom = pomFiles.get(key);
+        if (pom != null || missingPomFiles.contains(key)) {
+            return pom;
+        }
+
+        SettableFuture<Pom> future = SettableFuture.create();
+        SettableFuture<Pom> pending = pendingPomFiles.putIfAbsent(key, future);
+        if (pending != null) {
+            return Futures.getUnchecked(pending);
+        }
+
+        try {
+            // the other thread may have finished before this one started retrieving it
+            pom = pomFiles.get(key);
+            if (pom == null && !missingPomFiles.contains(key)) {
+                pom = getPomFromUrls(pomNames);
+                if (pom != null) {
+                    pomFiles.put(key, pom);
+                } else {
+                    missingPomFiles.add(key);
+                }
             }
             return pom;
+        } catch (IOException e) {
+            sLogger.warning("Failed to retrieve " + key + ": " + e.getMessage());
+            return null;
+        } finally {
+            future.set(pom);
+            pendingPomFiles.remove(key);
         }
-        return getPomFromUrls(pomNames);
     }
 
-    private Pom getPomFromUrls(String[] names) {
-        InputStream is = getFromUrls(getPathFromDeclaration(names) + ".pom");
+    private Pom getPomFromUrls(String[] names) throws IOException {
+        InputStream is = getFromUrls(names[0], getPathFromDeclaration(names) + ".pom");
         if (is != null) {
             String contents;
-            try {
-                contents = CharStreams.toString(new InputStreamReader(is));
+            try (InputStream inputStream = is) {
+                contents = CharStreams.toString(new InputStreamReader(inputStream));
                 Pom parsed = new PomParser(this).parse(contents);
                 parsed.setGroupId(names[0]);
                 parsed.setArtifactId(names[1]);
                 parsed.setVersionName(names[2]);
-                pomFiles.add(parsed);
                 return parsed;
             } catch (IOException | XmlPullParserException | SAXException e) {
                 String message = "Failed to parse input stream.\n" +
@@ -87,20 +137,53 @@ public class RepositoryManagerImpl implements RepositoryManager {
         return null;
     }
 
-    private InputStream getFromUrls(String appendUrl) {
-        for (int i = 0; i < repositories.size(); i++) {
-            Repository repository = repositories.get(i);
+    /**
+     * @return null if every repository answered that the file is not found
+     * @throws IOException if the file is not found and at least one of the repositories failed
+     */
+    private InputStream getFromUrls(String groupId, String appendUrl) throws IOException {
+        // files that have been downloaded before by any of the repositories are preferred
+        // over the network
+        for (Repository repository : repositories) {
+            try {
+                File file = repository.getCachedFile(appendUrl);
+                if (file != null && file.exists()) {
+                    return FileUtils.openInputStream(file);
+                }
+            } catch (IOException e) {
+                // ignored, try the next repository
+            }
+        }
+
+        // artifacts of the same group are usually published to the same repository,
+        // so try the repository where the group was last found first
+        List<Repository> ordered = new ArrayList<>(repositories);
+        Repository groupRepository = groupRepositories.get(groupId);
+        if (groupRepository != null && ordered.remove(groupRepository)) {
+            ordered.add(0, groupRepository);
+        }
+
+        IOException failure = null;
+        for (Repository repository : ordered) {
             try {
                 InputStream is = repository.getInputStream(appendUrl);
                 if (is != null) {
+                    groupRepositories.put(groupId, repository);
                     return is;
                 }
             } catch (IOException e) {
-                if (i == repositories.size() - 1) {
-                    sLogger.warning("Dependency " + appendUrl + " is not found.");
+                // try the next repository, the file may still be there
+                if (failure == null) {
+                    failure = e;
+                } else {
+                    failure.addSuppressed(e);
                 }
             }
         }
+        if (failure != null) {
+            throw failure;
+        }
+        sLogger.warning("Dependency " + appendUrl + " is not found.");
         return null;
     }
 
@@ -149,12 +232,25 @@ public class RepositoryManagerImpl implements RepositoryManager {
         }
 
         // cannot find file from disk, try from network
+        IOException failure = null;
         for (Repository repository : repositories) {
-            File file = repository.getFile(sb.toString());
-            if (file != null && file.exists()) {
-                return file;
+            try {
+                File file = repository.getFile(sb.toString());
+                if (file != null && file.exists()) {
+                    return file;
+                }
+            } catch (IOException e) {
+                // try the next repository, the file may still be there
+                if (failure == null) {
+                    failure = e;
+                } else {
+                    failure.addSuppressed(e);
+                }
             }
         }
+        if (failure != null) {
+            throw failure;
+        }
         return null;
     }
 
@@ -203,30 +299,10 @@ public class RepositoryManagerImpl implements RepositoryManager {
             throw new IllegalStateException("Cache directory is not set.");
         }
 
+        // the POM files saved by the repositories are only parsed when they are requested,
+        // see getFromUrls
         for (Repository repository : repositories) {
             repository.setCacheDirectory(cacheDir);
-
-            File rootDirectory = repository.getRootDirectory();
-            if (rootDirectory == null || !rootDirectory.exists()) {
-                continue;
-            }
-            Iterator<File> pomFiles = FileUtils.iterateFiles(rootDirectory,
-                    new SuffixFileFilter(".pom"), TrueFileFilter.INSTANCE);
-
-            // save pom files for later
-            while (pomFiles.hasNext()) {
-                File pom = pomFiles.next();
-                PomParser parser = new PomParser(this);
-                try {
-                    Pom parsed = parser.parse(pom);
-                    this.pomFiles.add(parsed);
-                } catch (XmlPullParserException | IOException | SAXException e) {
-                    // ignored
-                    // TODO: should the file be deleted if its corrupt?
-                    sLogger.severe("Unable to parse file " + pom + "\n" +
-                                   "Reason: " + e.getMessage());
-                }
-            }
         }
     }
 }
@@ -2,19 +2,31 @@ package com.tyron.resolver;
 
 import com.google.common.collect.ImmutableList;
 import com.tyron.common.TestUtil;
+import com.tyron.resolver.model.Dependency;
 import com.tyron.resolver.model.Pom;
+import com.tyron.resolver.repository.LocalRepository;
 import com.tyron.resolver.repository.RepositoryManager;
 import com.tyron.resolver.repository.RepositoryManagerImpl;
 
 import org.apache.commons.io.FileUtils;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class DependencyResolverTest {
 
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
     private final RepositoryManager repository = new RepositoryManagerImpl();
 
     @Test
@@ -60,4 +72,141 @@ public class DependencyResolverTest {
 
         FileUtils.forceDelete(cacheDir);
     }
+
+    @Test
+    public void testLocalDependencyResolution() throws IOException {
+        File cacheDir = temporaryFolder.newFolder("cache");
+        CountingRepository local = new CountingRepository("local");
+        local.setCacheDirectory(cacheDir);
+
+        // lib-a depends on an older version of lib-c than lib-b and lib-d do
+        writePom(local, "com.test:app:1.0", "com.test:lib-a:1.0", "com.test:lib-b:1.0");
+        writePom(local, "com.test:lib-a:1.0", "com.test:lib-c:1.0");
+        writePom(local, "com.test:lib-b:1.0", "com.test:lib-c:2.0", "com.test:lib-d:1.0");
+        writePom(local, "com.test:lib-c:1.0");
+        writePom(local, "com.test:lib-c:2.0");
+        writePom(local, "com.test:lib-d:1.0", "com.test:lib-c:2.0");
+
+        repository.addRepository(local);
+        repository.setCacheDirectory(cacheDir);
+        repository.initialize();
+
+        DependencyResolver resolver = new DependencyResolver(repository);
+        List<Pom> resolvedPoms = resolver.resolveDependencies(
+                ImmutableList.of(Dependency.valueOf("com.test:app:1.0")));
+
+        assert resolvedPoms.size() == 5;
+        Pom libC = resolvedPoms.get(resolvedPoms.indexOf(Pom.valueOf("com.test:lib-c:0")));
+        assert libC.getVersionName().equals("2.0");
+
+        // lib-c 2.0 is a dependency of both lib-b and lib-d, but it is only read once
+        assert local.getReadCount("com/test/lib-c/2.0/lib-c-2.0.pom") == 1;
+        for (Pom pom : resolvedPoms) {
+            assert local.getReadCount(pom.getPath() + "/" + pom.getFileName() + ".pom") == 1;
+        }
+    }
+
+    @Test
+    public void testMissingDependency() throws IOException {
+        File cacheDir = temporaryFolder.newFolder("cache");
+        CountingRepository local = new CountingRepository("local");
+        local.setCacheDirectory(cacheDir);
+
+        writePom(local, "com.test:app:1.0", "com.test:missing:1.0", "com.test:lib-a:1.0");
+        writePom(local, "com.test:lib-a:1.0", "com.test:missing:1.0");
+
+        repository.addRepository(local);
+        repository.setCacheDirectory(cacheDir);
+        repository.initialize();
+
+        DependencyResolver resolver = new DependencyResolver(repository);
+        List<Pom> resolvedPoms = resolver.resolveDependencies(
+                ImmutableList.of(Dependency.valueOf("com.test:app:1.0")));
+
+        assert resolvedPoms.size() == 2;
+        assert !resolvedPoms.contains(Pom.valueOf("com.test:missing:1.0"));
+        assert local.getReadCount("com/test/missing/1.0/missing-1.0.pom") == 1;
+    }
+
+    @Test
+    public void testFailedRepositoryIsRetried() throws IOException {
+        File cacheDir = temporaryFolder.newFolder("cache");
+        FailingRepository local = new FailingRepository("local");
+        local.setCacheDirectory(cacheDir);
+
+        repository.addRepository(local);
+        repository.setCacheDirectory(cacheDir);
+        repository.initialize();
+
+        // the repository could not be reached, so the POM is not known to be missing
+        assert repository.getPom("com.test:lib-a:1.0") == null;
+
+        writePom(local, "com.test:lib-a:1.0");
+        assert repository.getPom("com.test:lib-a:1.0") != null;
+    }
+
+    private static void writePom(LocalRepository repository,
+                                 String declaration,
+                                 String... dependencies) throws IOException {
+        Pom pom = Pom.valueOf(declaration);
+        StringBuilder sb = new StringBuilder();
+        sb.append("<project>\n");
+        sb.append("  <groupId>").append(pom.getGroupId()).append("</groupId>\n");
+        sb.append("  <artifactId>").append(pom.getArtifactId()).append("</artifactId>\n");
+        sb.append("  <version>").append(pom.getVersionName()).append("</version>\n");
+        sb.append("  <dependencies>\n");
+        for (String dependency : dependencies) {
+            Pom dependencyPom = Pom.valueOf(dependency);
+            sb.append("    <dependency>\n");
+            sb.append("      <groupId>").append(dependencyPom.getGroupId()).append("</groupId>\n");
+            sb.append("      <artifactId>").append(dependencyPom.getArtifactId()).append("</artifactId>\n");
+            sb.append("      <version>").append(dependencyPom.getVersionName()).append("</version>\n");
+            sb.append("    </dependency>\n");
+        }
+        sb.append("  </dependencies>\n");
+        sb.append("</project>\n");
+
+        File file = new File(repository.getRootDirectory(),
+                pom.getPath() + "/" + pom.getFileName() + ".pom");
+        FileUtils.writeStringToFile(file, sb.toString(), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * A local repository standing in for a remote one, counting how many times each file is
+     * requested from it.
+     */
+    private static class CountingRepository extends LocalRepository {
+
+        private final Map<String, AtomicInteger> readCounts = new ConcurrentHashMap<>();
+
+        public CountingRepository(String name) {
+            super(name);
+        }
+
+        @Override
+        public File getCachedFile(String path) throws IOException {
+            readCounts.computeIfAbsent(path, it -> new AtomicInteger()).incrementAndGet();
+            return super.getCachedFile(path);
+        }
+
+        public int getReadCount(String path) {
+            AtomicInteger count = readCounts.get(path);
+            return count == null ? 0 : count.get();
+        }
+    }
+
+    /**
+     * A local repository standing in for a remote one that cannot be reached.
+     */
+    private static class FailingRepository extends LocalRepository {
+
+        public FailingRepository(String name) {
+            super(name);
+        }
+
+        @Override
+        public InputStream getInputStream(String path) throws IOException {
+            throw new IOException("Unable to reach " + getName());
+        }
+    }
 }
@@ -50,7 +50,7 @@ public class JavaCompilerProvider extends CompilerProvider<JavaCompilerService>
 
     public void destroy() {
         mCachedPaths.clear();
-        mProvider = null;
+        clear();
     }
 
     public synchronized JavaCompilerService getCompiler(Project project, JavaModule module) {
@@ -71,6 +71,9 @@ public class JavaCompilerProvider extends CompilerProvider<JavaCompilerService>
         }
 
         if (mProvider == null || changed(mCachedPaths, paths)) {
+            if (mProvider != null) {
+                mProvider.dispose();
+            }
             mProvider = new JavaCompilerService(project, paths, Collections.emptySet(),
                                                 Collections.emptySet());
 
@@ -116,6 +119,9 @@ public class JavaCompilerProvider extends CompilerProvider<JavaCompilerService>
     }
 
     public void clear() {
+        if (mProvider != null) {
+            mProvider.dispose();
+        }
         mProvider = null;
     }
 }
@@ -66,7 +66,7 @@ import javax.tools.SimpleJavaFileObject;
 
 public class JavaCompletionProvider extends CompletionProvider {
 
-    private CachedCompletion mCachedCompletion;
+    private volatile CachedCompletion mCachedCompletion;
 
     @SuppressWarnings("ALL")
     public JavaCompletionProvider() {
@@ -80,27 +80,44 @@ public class JavaCompletionProvider extends CompletionProvider {
 
     @Override
     public CompletionList complete(CompletionParameters params) {
+        return complete(params, null);
+    }
+
+    /**
+     * Computes the completions, local symbols and keywords are sent to the listener first
+     * while the class names and members are still being computed.
+     */
+    @Override
+    public CompletionList complete(CompletionParameters params,
+                                   CompletionList.Builder.Listener listener) {
         if (!(params.getModule() instanceof JavaModule)) {
             return CompletionList.EMPTY;
         }
         checkCanceled();
 
-        if (isIncrementalCompletion(mCachedCompletion, params)) {
-            String partial = partialIdentifier(params.getPrefix(), params.getPrefix().length());
-            CompletionList cachedList = mCachedCompletion.getCompletionList();
-            CompletionList copy = CompletionList.copy(cachedList, partial);
-
-            // if the cached completion is incomplete,
-            // chances are there will be new items that are not in the cache
-            // so don't return the cached items
-            if (!copy.isIncomplete && !copy.items.isEmpty()) {
-                return copy;
+        String partial = partialIdentifier(params.getPrefix(), params.getPrefix().length());
+        CachedCompletion cachedCompletion = mCachedCompletion;
+        if (cachedCompletion != null && cachedCompletion.canRefine(params.getFile(),
+                params.getLine(), params.getColumn(), params.getIndex(), params.getContents(),
+                partial)) {
+            // the user only typed more of the same identifier, skip parsing and attribution
+            CompletionList refined = cachedCompletion.refine(partial);
+
+            // the longer prefix may fuzzy match items that were not cached,
+            // so only use the cache if it still has results
+            if (!refined.items.isEmpty()) {
+                if (listener != null) {
+                    listener.onItemsAdded(refined.items);
+                }
+                return refined;
             }
         }
 
         CompletionList.Builder complete = null;
         try {
-            complete = completeV2(params);
+            complete = completeV2(params, listener);
+        } catch (ProcessCanceledException e) {
+            throw e;
         } catch (Throwable t) {
             IdeLog.getCurrentLogger(getClass()).severe("Failed to complete: " +
                                                        Throwables.getStackTraceAsString(t));
@@ -108,20 +125,21 @@ public class JavaCompletionProvider extends CompletionProvider {
         if (complete == null) {
             return CompletionList.EMPTY;
         }
+        complete.publish();
         CompletionList list = complete.build();
 
-        String newPrefix = params.getPrefix();
-        if (params.getPrefix().contains(".")) {
-            newPrefix = partialIdentifier(params.getPrefix(), params.getPrefix().length());
-        }
-
         mCachedCompletion =
                 new CachedCompletion(params.getFile(), params.getLine(), params.getColumn(),
-                        newPrefix, list);
+                        params.getIndex(), params.getContents(), partial, list);
         return list;
     }
 
     public CompletionList.Builder completeV2(CompletionParameters parameters) {
+        return completeV2(parameters, null);
+    }
+
+    public CompletionList.Builder completeV2(CompletionParameters parameters,
+                                             CompletionList.Builder.Listener listener) {
         CompilationInfo compilationInfo = CompilationInfo.get(parameters.getProject(), parameters.getFile());
         if (compilationInfo == null) {
             return null;
@@ -150,6 +168,7 @@ public class JavaCompletionProvider extends CompletionProvider {
             return null;
         }
         CompletionList.Builder builder = CompletionList.builder(parameters.getPrefix());
+        builder.setListener(listener);
 
         switch (scanned.getLeaf().getKind()) {
             case IDENTIFIER:
@@ -197,48 +216,4 @@ public class JavaCompletionProvider extends CompletionProvider {
         }
         return contents.substring(start, end);
     }
-
-    private boolean isIncrementalCompletion(CachedCompletion cachedCompletion,
-                                            CompletionParameters params) {
-        String prefix = params.getPrefix();
-        File file = params.getFile();
-        int line = params.getLine();
-        int column = params.getColumn();
-        prefix = partialIdentifier(prefix, prefix.length());
-
-        if (line == -1) {
-            return false;
-        }
-
-        if (column == -1) {
-            return false;
-        }
-
-        if (cachedCompletion == null) {
-            return false;
-        }
-
-        if (!file.equals(cachedCompletion.getFile())) {
-            return false;
-        }
-
-        if (prefix.endsWith(".")) {
-            return false;
-        }
-
-        if (cachedCompletion.getLine() != line) {
-            return false;
-        }
-
-        if (cachedCompletion.getColumn() > column) {
-            return false;
-        }
-
-        if (!prefix.startsWith(cachedCompletion.getPrefix())) {
-            return false;
-        }
-
-        return prefix.length() - cachedCompletion.getPrefix().length() ==
-               column - cachedCompletion.getColumn();
-    }
 }
@@ -1,13 +1,18 @@
 package com.tyron.completion.java;
 
+import androidx.annotation.NonNull;
+
 import com.tyron.builder.model.CodeAssistLibrary;
 import com.tyron.builder.project.api.JavaModule;
 import com.tyron.builder.project.api.Module;
 import com.tyron.builder.project.impl.JavaModuleImpl;
+import com.tyron.builder.project.util.PackageTrie;
 
+import java.util.ArrayList;
 import java.util.Deque;
 import java.util.HashSet;
 import java.util.LinkedList;
+import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
@@ -15,11 +20,27 @@ import java.util.WeakHashMap;
 
 /**
  * Allows to retrieve java classes in a project by non-qualified names
+ * <p>
+ * Each module maintains its own class index as its files and libraries change, this class
+ * only provides a merged view of the indexes of a module, its dependencies and the JDK.
+ * The leaves of a {@link PackageTrie} are sorted by their simple name so queries only visit
+ * the classes that match.
  */
 public class ShortNamesCache {
 
+    /**
+     * Processes the fully qualified name of a class.
+     */
+    public interface Processor {
+
+        /**
+         * @return false to stop processing
+         */
+        boolean process(@NonNull String fqn);
+    }
+
     private static final Map<Module, ShortNamesCache> map = new WeakHashMap<>();
-    public static ShortNamesCache getInstance(Module module) {
+    public static synchronized ShortNamesCache getInstance(Module module) {
         ShortNamesCache cache = map.get(module);
         if (cache == null) {
             cache = new ShortNamesCache(module);
@@ -46,13 +67,106 @@ public class ShortNamesCache {
     /**
      * Returns the list of fully qualified names of all classes in the project and (optionally)
      * libraries.
+     *
+     * @deprecated This copies the name of every class, use
+     * {@link #processClassesWithPrefix(String, boolean, Processor)} instead.
      */
+    @Deprecated
     public String[] getAllClassNames() {
-        if (!(module instanceof JavaModule)) {
-            return new String[0];
+        Set<String> classNames = new HashSet<>();
+        processClassesWithPrefix("", false, fqn -> {
+            classNames.add(fqn);
+            return true;
+        });
+        return classNames.toArray(new String[0]);
+    }
+
+    /**
+     * Processes the fully qualified names of the classes whose simple name starts with the
+     * given prefix. Each class is only processed once even if it is present in
+     * more than one module.
+     *
+     * @param prefix the prefix of the simple name, an empty prefix matches all classes
+     * @param caseSensitive whether the case of the prefix should match
+     */
+    public void processClassesWithPrefix(@NonNull String prefix,
+                                         boolean caseSensitive,
+                                         @NonNull Processor processor) {
+        Set<String> processed = new HashSet<>();
+        boolean[] stopped = new boolean[1];
+        for (PackageTrie index : getIndexes()) {
+            index.forEachSimpleNameWithPrefix(prefix, caseSensitive, (trie, node) -> {
+                String fqn = trie.getQualifiedName(node);
+                if (!processed.add(fqn)) {
+                    return true;
+                }
+                stopped[0] = !processor.process(fqn);
+                return !stopped[0];
+            });
+            if (stopped[0]) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Processes the fully qualified names of the classes whose simple name matches the given
+     * camel hump pattern, for example {@code AL} matches {@code ArrayList}. Each class is only
+     * processed once even if it is present in more than one module.
+     *
+     * @param pattern the camel hump pattern
+     * @param caseSensitive whether the first character of the pattern should match the case
+     *                      of the first character of the simple name
+     */
+    public void processClassesMatching(@NonNull String pattern,
+                                       boolean caseSensitive,
+                                       @NonNull Processor processor) {
+        Set<String> processed = new HashSet<>();
+        boolean[] stopped = new boolean[1];
+        for (PackageTrie index : getIndexes()) {
+            index.forEachCamelHumpMatch(pattern, (trie, node) -> {
+                if (caseSensitive && !pattern.isEmpty()
+                    && trie.getSimpleName(node).charAt(0) != pattern.charAt(0)) {
+                    return true;
+                }
+                String fqn = trie.getQualifiedName(node);
+                if (!processed.add(fqn)) {
+                    return true;
+                }
+                stopped[0] = !processor.process(fqn);
+                return !stopped[0];
+            });
+            if (stopped[0]) {
+                return;
+            }
         }
+    }
 
+    /**
+     * @return The fully qualified names of the classes with the given simple name
+     */
+    @NonNull
+    public List<String> getClassesBySimpleName(@NonNull String simpleName) {
         Set<String> classNames = new HashSet<>();
+        for (PackageTrie index : getIndexes()) {
+            index.forEachSimpleNameWithPrefix(simpleName, true, (trie, node) -> {
+                if (trie.getSimpleName(node).equals(simpleName)) {
+                    classNames.add(trie.getQualifiedName(node));
+                }
+                return true;
+            });
+        }
+        return new ArrayList<>(classNames);
+    }
+
+    /**
+     * @return the indexes of this module, its dependencies and the JDK
+     */
+    private List<PackageTrie> getIndexes() {
+        List<PackageTrie> indexes = new ArrayList<>();
+        if (!(module instanceof JavaModule)) {
+            return indexes;
+        }
 
         Deque<Module> queue = new LinkedList<>();
         Set<Module> visitedModules = new HashSet<>();
@@ -63,10 +177,13 @@ public class ShortNamesCache {
 
             if (current instanceof JavaModule) {
                 JavaModule javaModule = (JavaModule) current;
-                classNames.addAll(javaModule.getClassIndex().getLeafNodes());
+                indexes.add(javaModule.getClassIndex());
             }
 
             visitedModules.add(current);
+            if (current.getProject() == null) {
+                continue;
+            }
             for (String path : current.getModuleDependencies()) {
                 Module dependingModule = current.getProject().getModuleByName(path);
                 if (dependingModule != null && !visitedModules.contains(dependingModule)) {
@@ -75,7 +192,7 @@ public class ShortNamesCache {
             }
         }
 
-        classNames.addAll(JDK_MODULE.getClassIndex().getLeafNodes());
-        return classNames.toArray(new String[0]);
+        indexes.add(JDK_MODULE.getClassIndex());
+        return indexes;
     }
 }
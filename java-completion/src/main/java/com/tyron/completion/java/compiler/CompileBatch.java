@@ -50,6 +50,11 @@ public class CompileBatch implements AutoCloseable {
     public final Elements elements;
     public final Types types;
     public final List<CompilationUnitTree> roots;
+    /**
+     * The diagnostics reported while compiling this batch, kept since the batch
+     * may be reused after other batches have been compiled.
+     */
+    public final List<Diagnostic<? extends JavaFileObject>> diagnostics;
 
     public CompileBatch(JavaCompilerService parent, Collection<? extends JavaFileObject> files) {
         this.parent = parent;
@@ -71,6 +76,7 @@ public class CompileBatch implements AutoCloseable {
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
+        this.diagnostics = parent.getDiagnostics();
     }
 
     /**
@@ -85,7 +91,7 @@ public class CompileBatch implements AutoCloseable {
         JavaModule module = parent.getCurrentModule();
         // Check for "class not found errors" that refer to package private classes
         Set<Path> addFiles = new HashSet<>();
-        for (Diagnostic<? extends JavaFileObject> err : parent.getDiagnostics()) {
+        for (Diagnostic<? extends JavaFileObject> err : diagnostics) {
             if (!err.getCode().equals("compiler.err.cant.resolve.location")) {
                 continue;
             }
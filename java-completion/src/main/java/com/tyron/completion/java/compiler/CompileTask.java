@@ -32,7 +32,7 @@ public class CompileTask implements AutoCloseable {
         this.trees = JavacTrees.instance(task);
 
         this.roots = batch.roots;
-        this.diagnostics = batch.parent.getDiagnostics();
+        this.diagnostics = batch.diagnostics;
     }
 
     public Trees getTrees() {
@@ -2,8 +2,6 @@ package com.tyron.completion.java.compiler;
 
 import android.util.Log;
 
-import androidx.annotation.GuardedBy;
-
 import com.sun.source.util.JavacTask;
 import com.sun.tools.javac.api.JavacTaskImpl;
 import com.sun.tools.javac.util.Context;
@@ -15,7 +13,8 @@ import com.tyron.completion.progress.ProgressManager;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
-import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.function.Consumer;
 
 import kotlin.jvm.functions.Function1;
@@ -26,20 +25,19 @@ import kotlin.jvm.functions.Function1;
  * A read is when the {@link CompileTask} is being accessed to get information about the parse tree.
  * A write is when the {@link CompileTask} is being changed from a compile call
  *
- * Any threads are allowed to read only if there is no thread that is currently writing.
- * If there is a thread that is currently writing, all other threads that attempts to read
- * will be blocked until the write thread has finished.
- *
- * Only one thread is allowed to write at a time, during a write operation all threads that
- * attempts to read will be blocked until the thread writing has finished.
+ * javac is not thread safe, so only one thread may access the {@link CompileTask} at a time,
+ * whether it is reading or writing. The lock is per container and fair, so a thread that is
+ * waiting to write is not starved by threads that keep reading. The compile task is closed
+ * once the outermost read of the thread holding the lock has finished.
  */
 public class CompilerContainer {
 
     private static final String TAG = CompilerContainer.class.getSimpleName();
 
-    private volatile boolean mIsWriting;
+    private final ReentrantLock mLock = new ReentrantLock(true);
 
-    private static final Semaphore semaphore = new Semaphore(1);
+    // the number of threads that are writing or waiting to write
+    private final AtomicInteger mPendingWrites = new AtomicInteger();
 
     private volatile CompileTask mCompileTask;
 
@@ -74,70 +72,82 @@ public class CompilerContainer {
      */
     public void run(Consumer<CompileTask> consumer) {
         cancel();
-        semaphore.acquireUninterruptibly();
+        acquire(false);
         try {
             consumer.accept(mCompileTask);
         } finally {
-            mCompileTask.close();
-            semaphore.release();
+            releaseRead();
         }
     }
 
     public <T> T get(Function1<CompileTask, T> fun) {
         cancel();
-        try {
-            semaphore.acquire();
-        } catch (InterruptedException e) {
-            throw new ProcessCanceledException();
-        }
-
+        acquire(true);
         try {
             return fun.invoke(mCompileTask);
         } finally {
-            mCompileTask.close();
-            semaphore.release();
+            releaseRead();
         }
     }
 
     public <T> T getWithLock(Function1<CompileTask, T> fun) {
-        try {
-            semaphore.acquire();
-        } catch (InterruptedException e) {
-            throw new ProcessCanceledException();
-        }
-
+        acquire(true);
         try {
             return fun.invoke(mCompileTask);
         } finally {
-            mCompileTask.close();
-            semaphore.release();
+            releaseRead();
         }
-
     }
 
-    public synchronized boolean isWriting() {
-        return mIsWriting || semaphore.hasQueuedThreads();
+    /**
+     * @return whether a thread is currently compiling or waiting to compile, readers that are
+     * waiting for the lock are not counted
+     */
+    public boolean isWriting() {
+        return mPendingWrites.get() > 0;
     }
 
-    void initialize(Runnable runnable) {
-        try {
-            semaphore.acquire();
-        } catch (InterruptedException e) {
-            throw new ProcessCanceledException();
+    private void acquire(boolean interruptibly) {
+        if (interruptibly) {
+            try {
+                mLock.lockInterruptibly();
+            } catch (InterruptedException e) {
+                throw new ProcessCanceledException();
+            }
+        } else {
+            mLock.lock();
         }
-        mIsWriting = true;
+    }
+
+    private void releaseRead() {
         try {
-            // ensure that compile task is closed
-            if (mCompileTask != null) {
+            // the outermost read releases the compiler so it can be borrowed again
+            if (mLock.getHoldCount() == 1 && mCompileTask != null) {
                 mCompileTask.close();
             }
+        } finally {
+            mLock.unlock();
+        }
+    }
 
-            cancel();
-
-            runnable.run();
+    void initialize(Runnable runnable) {
+        mPendingWrites.incrementAndGet();
+        try {
+            acquire(true);
+            try {
+                // ensure that compile task is closed
+                if (mCompileTask != null) {
+                    mCompileTask.close();
+                }
+
+                cancel();
+
+                runnable.run();
+            } finally {
+                mLock.unlock();
+            }
         } finally {
-            mIsWriting = false;
-            semaphore.release();
+            mPendingWrites.decrementAndGet();
         }
     }
 
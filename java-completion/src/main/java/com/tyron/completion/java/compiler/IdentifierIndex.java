@@ -0,0 +1,417 @@
+package com.tyron.completion.java.compiler;
+
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.tyron.builder.project.Project;
+import com.tyron.builder.project.api.FileManager;
+import com.tyron.builder.project.api.JavaModule;
+import com.tyron.builder.project.api.Module;
+import com.tyron.builder.project.listener.FileListener;
+
+import org.apache.commons.io.FileUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.ref.WeakReference;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * An inverted index of the identifiers used in the java files of a project to the files and
+ * offsets where they occur. It is used to find the candidate files of find usages and rename
+ * without parsing every file.
+ * <p>
+ * The index is built in the background when it is first requested, and files are re-indexed
+ * when their snapshot changes in the editor or when the set of java files of a module changes.
+ * All updates run on a single thread in the order they were requested, each update is given a
+ * version so callers can wait until the updates they requested have been applied. Comments,
+ * string and character literals and keywords are not indexed.
+ * <p>
+ * The index only holds a weak reference to its project, {@link #dispose(Project)} must be
+ * called when the project is closed to release the listeners and the indexing thread.
+ */
+public class IdentifierIndex {
+
+    private static final String TAG = IdentifierIndex.class.getSimpleName();
+
+    private static final Map<Project, IdentifierIndex> sInstances = new WeakHashMap<>();
+
+    public static synchronized IdentifierIndex getInstance(@NonNull Project project) {
+        IdentifierIndex index = sInstances.get(project);
+        if (index == null) {
+            index = new IdentifierIndex(project);
+            sInstances.put(project, index);
+            index.rebuild();
+        }
+        return index;
+    }
+
+    /**
+     * Releases the index of the project, if there is one.
+     */
+    public static synchronized void dispose(@NonNull Project project) {
+        IdentifierIndex index = sInstances.remove(project);
+        if (index != null) {
+            index.dispose();
+        }
+    }
+
+    private static final Set<String> KEYWORDS = new HashSet<>(Arrays.asList(
+            "abstract", "assert", "boolean", "break", "byte", "case", "catch", "char", "class",
+            "const", "continue", "default", "do", "double", "else", "enum", "extends", "final",
+            "finally", "float", "for", "goto", "if", "implements", "import", "instanceof", "int",
+            "interface", "long", "native", "new", "package", "private", "protected", "public",
+            "return", "short", "static", "strictfp", "super", "switch", "synchronized", "this",
+            "throw", "throws", "transient", "try", "void", "volatile", "while", "true", "false",
+            "null"));
+
+    private static final int[] EMPTY_OFFSETS = new int[0];
+
+    private final WeakReference<Project> mProject;
+    // the modules whose snapshots are listened to
+    private final List<Module> mModules = new ArrayList<>();
+    private final ExecutorService mExecutor = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, TAG);
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MIN_PRIORITY);
+        return thread;
+    });
+    private final FileListener mSnapshotListener = this::onSnapshotChanged;
+
+    // identifier to the files that contain it
+    private final Map<String, Set<Path>> mFiles = new HashMap<>();
+    // file to the offsets of each identifier in it
+    private final Map<Path, Map<String, int[]>> mOccurrences = new HashMap<>();
+
+    private volatile boolean mReady;
+
+    // the version of the last requested update and of the last applied update
+    private final AtomicLong mRequestedVersion = new AtomicLong();
+    private volatile long mAppliedVersion;
+    // the version of the last requested rebuild, updates requested before it are skipped
+    private final AtomicLong mRebuildVersion = new AtomicLong();
+
+    private IdentifierIndex(Project project) {
+        mProject = new WeakReference<>(project);
+        for (Module module : project.getModules()) {
+            FileManager fileManager = module.getFileManager();
+            if (fileManager != null) {
+                fileManager.addSnapshotListener(mSnapshotListener);
+                mModules.add(module);
+            }
+        }
+    }
+
+    private void dispose() {
+        for (Module module : mModules) {
+            FileManager fileManager = module.getFileManager();
+            if (fileManager != null) {
+                fileManager.removeSnapshotListener(mSnapshotListener);
+            }
+        }
+        mModules.clear();
+        mExecutor.shutdownNow();
+        synchronized (this) {
+            mFiles.clear();
+            mOccurrences.clear();
+        }
+    }
+
+    /**
+     * @return whether the initial indexing has finished, queries made before this may
+     * be incomplete
+     */
+    public boolean isReady() {
+        return mReady;
+    }
+
+    /**
+     * Schedules the indexing of all the java files of the project.
+     */
+    public void rebuild() {
+        mReady = false;
+        long version = schedule(() -> {
+            synchronized (this) {
+                mFiles.clear();
+                mOccurrences.clear();
+            }
+            for (File file : getJavaFiles()) {
+                index(file.toPath(), null);
+            }
+            mReady = true;
+        });
+        mRebuildVersion.accumulateAndGet(version, Math::max);
+    }
+
+    /**
+     * Schedules the indexing of the java files that were added to the project since they were
+     * last indexed and drops the ones that were removed.
+     *
+     * @return the version of this update, see {@link #awaitVersion(long)}
+     */
+    public long refresh() {
+        return schedule(() -> {
+            Set<Path> current = new HashSet<>();
+            for (File file : getJavaFiles()) {
+                current.add(file.toPath());
+            }
+
+            Set<Path> added = new HashSet<>(current);
+            synchronized (this) {
+                Set<Path> removed = new HashSet<>(mOccurrences.keySet());
+                removed.removeAll(current);
+                added.removeAll(mOccurrences.keySet());
+                for (Path path : removed) {
+                    remove(path);
+                }
+            }
+            for (Path path : added) {
+                index(path, null);
+            }
+        });
+    }
+
+    /**
+     * Waits until the update with the given version and all the updates requested before it
+     * have been applied.
+     *
+     * @return false if the index has been disposed or the thread was interrupted
+     */
+    public boolean awaitVersion(long version) {
+        synchronized (mRequestedVersion) {
+            while (mAppliedVersion < version) {
+                if (mExecutor.isShutdown()) {
+                    return false;
+                }
+                try {
+                    mRequestedVersion.wait(100);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Runs the update on the indexing thread, updates that were requested before the last
+     * rebuild are skipped since the rebuild will index every file again.
+     */
+    private long schedule(Runnable update) {
+        // versions are handed out in the order the updates are queued
+        synchronized (mRequestedVersion) {
+            long version = mRequestedVersion.incrementAndGet();
+            try {
+                mExecutor.execute(() -> {
+                    try {
+                        if (version >= mRebuildVersion.get()) {
+                            update.run();
+                        }
+                    } finally {
+                        synchronized (mRequestedVersion) {
+                            mAppliedVersion = version;
+                            mRequestedVersion.notifyAll();
+                        }
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                // the index has been disposed
+            }
+            return version;
+        }
+    }
+
+    /**
+     * @return the files that contain the given identifier
+     */
+    @NonNull
+    public synchronized Set<Path> getFiles(@NonNull String identifier) {
+        Set<Path> files = mFiles.get(identifier);
+        if (files == null) {
+            return Collections.emptySet();
+        }
+        return new HashSet<>(files);
+    }
+
+    /**
+     * @return the start offsets of the given identifier in the file
+     */
+    @NonNull
+    public synchronized int[] getOffsets(@NonNull Path file, @NonNull String identifier) {
+        Map<String, int[]> occurrences = mOccurrences.get(file);
+        if (occurrences == null) {
+            return EMPTY_OFFSETS;
+        }
+        int[] offsets = occurrences.get(identifier);
+        return offsets == null ? EMPTY_OFFSETS : offsets.clone();
+    }
+
+    private void onSnapshotChanged(File file, CharSequence contents) {
+        if (!file.getName().endsWith(".java")) {
+            return;
+        }
+        String snapshot = String.valueOf(contents);
+        schedule(() -> index(file.toPath(), snapshot));
+    }
+
+    private void index(Path file, @Nullable CharSequence contents) {
+        if (contents == null) {
+            contents = readContents(file);
+        }
+        Map<String, int[]> occurrences = contents == null
+                ? Collections.emptyMap()
+                : scan(contents);
+
+        synchronized (this) {
+            remove(file);
+            mOccurrences.put(file, occurrences);
+            for (String identifier : occurrences.keySet()) {
+                mFiles.computeIfAbsent(identifier, k -> new HashSet<>()).add(file);
+            }
+        }
+    }
+
+    private void remove(Path file) {
+        Map<String, int[]> previous = mOccurrences.remove(file);
+        if (previous == null) {
+            return;
+        }
+        for (String identifier : previous.keySet()) {
+            Set<Path> files = mFiles.get(identifier);
+            if (files != null) {
+                files.remove(file);
+                if (files.isEmpty()) {
+                    mFiles.remove(identifier);
+                }
+            }
+        }
+    }
+
+    @Nullable
+    private CharSequence readContents(Path path) {
+        File file = path.toFile();
+        Project project = mProject.get();
+        FileManager fileManager = project == null ? null : project.getModule(file).getFileManager();
+        if (fileManager != null) {
+            Optional<CharSequence> content = fileManager.getFileContent(file);
+            if (content.isPresent()) {
+                return content.get();
+            }
+        }
+        try {
+            return FileUtils.readFileToString(file, StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            Log.w(TAG, "Unable to read " + file, e);
+            return null;
+        }
+    }
+
+    private Set<File> getJavaFiles() {
+        Set<File> files = new HashSet<>();
+        Project project = mProject.get();
+        if (project == null) {
+            return files;
+        }
+        for (Module module : project.getModules()) {
+            if (module instanceof JavaModule) {
+                files.addAll(((JavaModule) module).getJavaFiles().values());
+            }
+        }
+        return files;
+    }
+
+    /**
+     * Lexes the contents and returns the offsets of each identifier, skipping comments,
+     * literals and keywords.
+     */
+    @NonNull
+    static Map<String, int[]> scan(@NonNull CharSequence contents) {
+        Map<String, int[]> occurrences = new HashMap<>();
+        Map<String, Integer> counts = new HashMap<>();
+        int length = contents.length();
+        int i = 0;
+        while (i < length) {
+            char c = contents.charAt(i);
+            if (c == '/' && i + 1 < length && contents.charAt(i + 1) == '/') {
+                while (i < length && contents.charAt(i) != '\n') {
+                    i++;
+                }
+            } else if (c == '/' && i + 1 < length && contents.charAt(i + 1) == '*') {
+                i += 2;
+                while (i < length && !(contents.charAt(i) == '*' && i + 1 < length
+                                       && contents.charAt(i + 1) == '/')) {
+                    i++;
+                }
+                i += 2;
+            } else if (c == '"' || c == '\'') {
+                i++;
+                while (i < length && contents.charAt(i) != c && contents.charAt(i) != '\n') {
+                    if (contents.charAt(i) == '\\') {
+                        i++;
+                    }
+                    i++;
+                }
+                i++;
+            } else if (Character.isJavaIdentifierStart(c)) {
+                int start = i;
+                while (i < length && Character.isJavaIdentifierPart(contents.charAt(i))) {
+                    i++;
+                }
+                String identifier = contents.subSequence(start, i).toString();
+                if (!KEYWORDS.contains(identifier)) {
+                    addOccurrence(occurrences, counts, identifier, start);
+                }
+            } else if (Character.isDigit(c)) {
+                // skip number literals such as 0xFFL
+                while (i < length && Character.isJavaIdentifierPart(contents.charAt(i))) {
+                    i++;
+                }
+            } else {
+                i++;
+            }
+        }
+
+        // trim the offset arrays to their actual size
+        for (Map.Entry<String, int[]> entry : occurrences.entrySet()) {
+            int count = counts.get(entry.getKey());
+            if (entry.getValue().length != count) {
+                entry.setValue(Arrays.copyOf(entry.getValue(), count));
+            }
+        }
+        return occurrences;
+    }
+
+    private static void addOccurrence(Map<String, int[]> occurrences,
+                                      Map<String, Integer> counts,
+                                      String identifier,
+                                      int offset) {
+        int[] offsets = occurrences.get(identifier);
+        int count = counts.getOrDefault(identifier, 0);
+        if (offsets == null) {
+            offsets = new int[2];
+        } else if (count == offsets.length) {
+            offsets = Arrays.copyOf(offsets, count * 2);
+        }
+        offsets[count] = offset;
+        occurrences.put(identifier, offsets);
+        counts.put(identifier, count + 1);
+    }
+}
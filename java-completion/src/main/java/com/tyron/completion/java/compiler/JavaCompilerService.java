@@ -7,11 +7,12 @@ import androidx.annotation.NonNull;
 
 import com.google.common.base.Throwables;
 import com.google.common.collect.ImmutableList;
-import com.sun.tools.javac.api.JavacTaskImpl;
 import com.tyron.builder.model.SourceFileObject;
 import com.tyron.builder.project.Project;
+import com.tyron.builder.project.api.FileManager;
 import com.tyron.builder.project.api.JavaModule;
 import com.tyron.builder.project.api.Module;
+import com.tyron.builder.project.listener.FileListener;
 import com.tyron.builder.project.util.PackageTrie;
 import com.tyron.common.util.Cache;
 import com.tyron.common.util.StringSearch;
@@ -35,11 +36,14 @@ import java.net.URI;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.time.Instant;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Deque;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
@@ -53,6 +57,22 @@ import java.util.regex.Pattern;
 
 public class JavaCompilerService implements CompilerProvider {
 
+    /**
+     * The maximum number of parsed files to keep in memory
+     */
+    private static final int MAX_PARSE_CACHE_SIZE = 64;
+
+    /**
+     * The maximum number of compile batches that are kept warm, each retained batch
+     * holds its own javac context.
+     */
+    private static final int MAX_CACHED_BATCHES = 3;
+
+    /**
+     * When the available heap is below this, only the most recent batch is kept.
+     */
+    private static final long LOW_MEMORY_THRESHOLD = 64 * 1024 * 1024;
+
     private DiagnosticListener<? super JavaFileObject> mDiagnosticListener;
     public final SourceFileManager mSourceFileManager;
 
@@ -66,11 +86,89 @@ public class JavaCompilerService implements CompilerProvider {
     private final Docs docs;
 
     private final CompilerContainer mContainer = new CompilerContainer();
+    // retained batches, the most recently used batch is first
+    private final LinkedList<CachedBatch> mCachedBatches = new LinkedList<>();
+    // compilers that are not used by any retained batch
+    private final Deque<ReusableCompiler> mIdleCompilers = new ArrayDeque<>();
     private CompileBatch cachedCompile;
-    private final Map<JavaFileObject, Long> cachedModified = new HashMap<>();
+
+    /**
+     * A compile batch along with the compiler that owns its context and the
+     * modification time of its sources when it was compiled.
+     */
+    private static class CachedBatch {
+        static final long INVALIDATED = Long.MIN_VALUE;
+
+        final ReusableCompiler compiler;
+        final Map<JavaFileObject, Long> modified = new HashMap<>();
+        CompileBatch batch;
+
+        CachedBatch(ReusableCompiler compiler) {
+            this.compiler = compiler;
+        }
+
+        boolean hasSameSources(Collection<? extends JavaFileObject> sources) {
+            if (modified.size() != sources.size()) {
+                return false;
+            }
+            for (JavaFileObject source : sources) {
+                if (!modified.containsKey(source)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * Checks whether this batch has been compiled with the given sources
+         *
+         * @param sources list of java files to compile
+         * @return true if this batch is a valid cache for it, false otherwise
+         */
+        boolean isUpToDate(Collection<? extends JavaFileObject> sources) {
+            if (batch == null || !hasSameSources(sources)) {
+                return false;
+            }
+            for (JavaFileObject f : sources) {
+                Long cached = modified.get(f);
+                if (cached == null) {
+                    return false;
+                }
+                if (f.getLastModified() != cached) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        void release() {
+            if (batch != null && batch.borrow != null) {
+                batch.borrow.close();
+            }
+            batch = null;
+            modified.clear();
+        }
+    }
 
     public final ReentrantLock mLock = new ReentrantLock();
 
+    // pushes the modification time of edited files to the caches, which trust it instead of
+    // querying the disk until the snapshot is closed
+    private final FileListener mSnapshotListener = new FileListener() {
+        @Override
+        public void onSnapshotChanged(File file, CharSequence contents) {
+            JavaCompilerService.this.onSnapshotChanged(file, contents);
+        }
+
+        @Override
+        public void onSnapshotClosed(File file) {
+            Path path = file.toPath();
+            parseCache.clearModified(path);
+            cacheContainsWord.clearModified(path);
+            cacheContainsType.clearModified(path);
+        }
+    };
+
     public JavaCompilerService(Project project,
                                Set<File> classPath,
                                Set<File> docPath,
@@ -81,6 +179,42 @@ public class JavaCompilerService implements CompilerProvider {
         this.addExports = Collections.unmodifiableSet(addExports);
         this.mSourceFileManager = new SourceFileManager(project);
         this.docs = new Docs(project, docPath);
+
+        if (project != null) {
+            for (Module module : project.getModules()) {
+                FileManager fileManager = module.getFileManager();
+                if (fileManager != null) {
+                    fileManager.addSnapshotListener(mSnapshotListener);
+                }
+            }
+        }
+    }
+
+    /**
+     * Releases the listeners registered by this service, called when this service
+     * is replaced by a new one.
+     */
+    public void dispose() {
+        if (mProject != null) {
+            for (Module module : mProject.getModules()) {
+                FileManager fileManager = module.getFileManager();
+                if (fileManager != null) {
+                    fileManager.removeSnapshotListener(mSnapshotListener);
+                }
+            }
+        }
+    }
+
+    private void onSnapshotChanged(File file, CharSequence contents) {
+        FileManager fileManager = mProject.getModule(file).getFileManager();
+        Instant modified = fileManager != null ? fileManager.getLastModified(file) : null;
+        if (modified == null) {
+            modified = Instant.now();
+        }
+        Path path = file.toPath();
+        parseCache.setModified(path, modified);
+        cacheContainsWord.setModified(path, modified);
+        cacheContainsType.setModified(path, modified);
     }
 
     public Project getProject() {
@@ -93,51 +227,92 @@ public class JavaCompilerService implements CompilerProvider {
     }
 
     /**
-     * Checks whether this list has been compiled before
-     *
-     * @param sources list of java files to compile
-     * @return true if there's a valid cache for it, false otherwise
+     * Returns the retained batch compiled with exactly these sources, compiling them if
+     * there is none or if one of the sources has been modified since. The batch is moved
+     * to the front of the cache.
      */
-    private boolean needsCompile(Collection<? extends JavaFileObject> sources) {
-        if (cachedModified.size() != sources.size()) {
-            return true;
+    private synchronized CompileBatch loadCompile(Collection<? extends JavaFileObject> sources) {
+        CachedBatch cached = null;
+        for (CachedBatch candidate : mCachedBatches) {
+            if (candidate.hasSameSources(sources)) {
+                cached = candidate;
+                break;
+            }
         }
+
+        if (cached != null && cached.isUpToDate(sources)) {
+            mCachedBatches.remove(cached);
+            mCachedBatches.addFirst(cached);
+            compiler = cached.compiler;
+            return cached.batch;
+        }
+
+        if (cached != null) {
+            // the sources are the same but have been modified, reuse the context of this batch
+            mCachedBatches.remove(cached);
+            releaseBatch(cached);
+        } else {
+            cached = new CachedBatch(obtainCompiler());
+        }
+
+        compiler = cached.compiler;
+        cached.batch = doCompile(sources);
         for (JavaFileObject f : sources) {
-            if (!cachedModified.containsKey(f)) {
-                return true;
-            }
-            Long cached = cachedModified.get(f);
-            if (cached == null) {
-                return true;
-            }
-            if (f.getLastModified() != cached) {
-                return true;
-            }
+            cached.modified.put(f, f.getLastModified());
         }
-        return false;
+        mCachedBatches.addFirst(cached);
+        trimCachedBatches();
+        return cached.batch;
     }
 
-    private synchronized void loadCompile(Collection<? extends JavaFileObject> sources) {
-        if (cachedCompile != null) {
-            if (!cachedCompile.closed) {
-                throw new RuntimeException("Compiler is still in-use!");
-            }
-            cachedCompile.borrow.close();
+    /**
+     * @return a compiler that is not used by any retained batch. If the cache is full, the
+     * least recently used batch is evicted and its compiler is reused so the classes that
+     * are already entered in its context don't have to be read again.
+     */
+    private ReusableCompiler obtainCompiler() {
+        if (mCachedBatches.size() >= getMaxCachedBatches()) {
+            CachedBatch eldest = mCachedBatches.removeLast();
+            releaseBatch(eldest);
+            return eldest.compiler;
         }
-        cachedCompile = doCompile(sources);
-        cachedModified.clear();
-        for (JavaFileObject f : sources) {
-            cachedModified.put(f, f.getLastModified());
+        if (!mIdleCompilers.isEmpty()) {
+            return mIdleCompilers.removeFirst();
+        }
+        return new ReusableCompiler();
+    }
+
+    private void trimCachedBatches() {
+        while (mCachedBatches.size() > getMaxCachedBatches()) {
+            CachedBatch eldest = mCachedBatches.removeLast();
+            releaseBatch(eldest);
+            mIdleCompilers.addLast(eldest.compiler);
+        }
+    }
+
+    private void releaseBatch(CachedBatch cached) {
+        if (cached.batch != null && !cached.batch.closed) {
+            throw new RuntimeException("Compiler is still in-use!");
         }
+        cached.release();
+    }
+
+    private static int getMaxCachedBatches() {
+        Runtime runtime = Runtime.getRuntime();
+        long used = runtime.totalMemory() - runtime.freeMemory();
+        long available = runtime.maxMemory() - used;
+        return available < LOW_MEMORY_THRESHOLD ? 1 : MAX_CACHED_BATCHES;
     }
 
     public void invalidate(Path source) {
         invalidate(Collections.singletonList(new SourceFileObject(source)));
     }
 
-    public void invalidate(Collection<? extends JavaFileObject> sources) {
-        for (JavaFileObject source : sources) {
-            cachedModified.remove(source);
+    public synchronized void invalidate(Collection<? extends JavaFileObject> sources) {
+        for (CachedBatch cached : mCachedBatches) {
+            for (JavaFileObject source : sources) {
+                cached.modified.computeIfPresent(source, (file, modified) -> CachedBatch.INVALIDATED);
+            }
         }
     }
 
@@ -171,12 +346,7 @@ public class JavaCompilerService implements CompilerProvider {
     private CompilerContainer compileBatch(Collection<? extends JavaFileObject> sources) {
         try {
             mContainer.initialize(() -> {
-                if (needsCompile(sources)) {
-                    loadCompile(sources);
-                }
-                if (cachedCompile.task == null || ((JavacTaskImpl) cachedCompile.task).getContext() == null) {
-                    System.out.println();
-                }
+                cachedCompile = loadCompile(sources);
                 CompileTask task = new CompileTask(cachedCompile);
                 mContainer.setCompileTask(task);
             });
@@ -267,7 +437,7 @@ public class JavaCompilerService implements CompilerProvider {
 
     @Override
     public Iterable<Path> search(String query) {
-        return null;
+        return findFilesContaining(query);
     }
 
     /**
@@ -330,25 +500,22 @@ public class JavaCompilerService implements CompilerProvider {
         return "";
     }
 
-    private static final Cache<String, Boolean> cacheContainsWord = new Cache<>();
+    private static final Cache<String, Boolean> cacheContainsWord = new Cache<>(10_000);
 
     private boolean containsWord(Path file, String word) {
-        if (cacheContainsWord.needs(file, word)) {
-            cacheContainsWord.load(file, word, StringSearch.containsWord(file, word));
-        }
-        return cacheContainsWord.get(file, word);
+        return cacheContainsWord.get(file, word, () -> StringSearch.containsWord(file, word));
     }
 
-    private static final Cache<Void, List<String>> cacheContainsType = new Cache<>();
+    private static final Cache<Void, List<String>> cacheContainsType =
+            new Cache<>(50_000, (file, key, types) -> types.size() + 1);
 
     private boolean containsType(Path file, String className) {
-        if (cacheContainsType.needs(file, null)) {
+        return cacheContainsType.get(file, null, () -> {
             CompilationUnitTree root = parse(file).root;
             List<String> types = new ArrayList<>();
             new FindTypeDeclarations().scan(root, types);
-            cacheContainsType.load(file, null, types);
-        }
-        return cacheContainsType.get(file, null).contains(className);
+            return types;
+        }).contains(className);
     }
 
 
@@ -421,24 +588,91 @@ public class JavaCompilerService implements CompilerProvider {
         return Optional.ofNullable(source);
     }
 
+    /**
+     * Finds the files that may reference the given class, these are the files that contain
+     * its simple name and are either in the same package or mention its package, e.g. through
+     * an import. The results may contain false positives and should be confirmed by compiling.
+     */
     @Override
     public Path[] findTypeReferences(String className) {
-        return null;
+        String packageName = packageName(className);
+        String simpleName = simpleName(className);
+        if (simpleName.isEmpty()) {
+            return new Path[0];
+        }
+
+        Set<Path> samePackage = new HashSet<>();
+        for (Module module : mProject.getModules()) {
+            for (File file : SourceFileManager.list(module, packageName)) {
+                samePackage.add(file.toPath());
+            }
+        }
+        String[] packageSegments = packageName.isEmpty()
+                ? new String[0]
+                : packageName.split("\\.");
+
+        IdentifierIndex index = IdentifierIndex.getInstance(mProject);
+        List<Path> references = new ArrayList<>();
+        for (Path file : findFilesContaining(simpleName)) {
+            if (samePackage.contains(file)) {
+                references.add(file);
+            } else if (packageSegments.length > 0 && containsAll(index, file, packageSegments)) {
+                references.add(file);
+            }
+        }
+        return references.toArray(new Path[0]);
     }
 
+    /**
+     * Finds the files that contain the name of the given member, the results may contain
+     * files that reference a different member with the same name.
+     */
     @Override
     public Path[] findMemberReferences(String className, String memberName) {
-        return null;
+        return findFilesContaining(memberName).toArray(new Path[0]);
     }
 
-    private final Cache<String, ParseTask> parseCache = new Cache<>();
+    /**
+     * @return the java files of the project that contain the given identifier
+     */
+    private Set<Path> findFilesContaining(String identifier) {
+        IdentifierIndex index = IdentifierIndex.getInstance(mProject);
+        if (index.isReady() && index.awaitVersion(index.refresh())) {
+            return index.getFiles(identifier);
+        }
+
+        // the index is still being built or has been disposed, scan the files directly
+        List<Path> files = new ArrayList<>();
+        for (Module module : mProject.getModules()) {
+            if (!(module instanceof JavaModule)) {
+                continue;
+            }
+            for (File file : ((JavaModule) module).getJavaFiles().values()) {
+                files.add(file.toPath());
+            }
+        }
+        return StringSearch.filesContainingAnyWord(files, Collections.singleton(identifier));
+    }
+
+    private boolean containsAll(IdentifierIndex index, Path file, String[] identifiers) {
+        for (String identifier : identifiers) {
+            boolean found = index.isReady()
+                    ? index.getOffsets(file, identifier).length > 0
+                    : containsWord(file, identifier);
+            if (!found) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private final Cache<String, ParseTask> parseCache = new Cache<>(MAX_PARSE_CACHE_SIZE);
 
     private ParseTask cachedParse(Path file) {
-        if (parseCache.needs(file, file.toFile().getName())) {
+        return parseCache.get(file, file.toFile().getName(), () -> {
             Parser parser = Parser.parseFile(mProject, file);
-            parseCache.load(file, file.toFile().getName(), new ParseTask(parser.task, parser.root));
-        }
-        return parseCache.get(file, file.toFile().getName());
+            return new ParseTask(parser.task, parser.root);
+        });
     }
 
     private ParseTask cachedParse(JavaFileObject file) {
@@ -448,14 +682,10 @@ public class JavaCompilerService implements CompilerProvider {
                     file.toUri().toString().substring(4, file.toUri().toString().lastIndexOf("!"));
 
             Path parsedPath = new File(URI.create(path)).toPath();
-            if (parseCache.needs(parsedPath, file.getName())) {
+            return parseCache.get(parsedPath, file.getName(), () -> {
                 Parser parser = Parser.parseJavaFileObject(mProject, file);
-                parseCache
-                        .load(parsedPath, file.getName(), new ParseTask(parser.task, parser.root));
-            } else {
-                Log.d("JavaCompilerService", "Using cached parse for " + file.getName());
-            }
-            return parseCache.get(parsedPath, file.getName());
+                return new ParseTask(parser.task, parser.root);
+            });
         } else if (file instanceof SourceFileObject) {
             return cachedParse(((SourceFileObject) file).mFile);
         }
@@ -517,13 +747,15 @@ public class JavaCompilerService implements CompilerProvider {
      * @return a CompileTask for this compilation
      */
     @Override
-    public synchronized CompilerContainer compile(Collection<? extends JavaFileObject> sources) {
+    public CompilerContainer compile(Collection<? extends JavaFileObject> sources) {
         return compileBatch(sources);
     }
 
     public synchronized void close() {
-        if (cachedCompile != null && !cachedCompile.closed) {
-            cachedCompile.close();
+        for (CachedBatch cached : mCachedBatches) {
+            if (cached.batch != null && !cached.batch.closed) {
+                cached.batch.close();
+            }
         }
         if (mLock.isHeldByCurrentThread() && mLock.isLocked()) {
             mLock.unlock();
@@ -537,15 +769,15 @@ public class JavaCompilerService implements CompilerProvider {
     public void destroy() {
         mContainer.initialize(() -> {
             close();
-            if (cachedCompile != null) {
-                final ReusableCompiler.Borrow borrow = cachedCompile.borrow;
-                if (borrow != null) {
-                    borrow.close();
+            synchronized (this) {
+                for (CachedBatch cached : mCachedBatches) {
+                    cached.release();
                 }
+                mCachedBatches.clear();
+                mIdleCompilers.clear();
+                cachedCompile = null;
+                compiler = new ReusableCompiler();
             }
-            cachedCompile = null;
-            cachedModified.clear();
-            compiler = new ReusableCompiler();
         });
     }
 
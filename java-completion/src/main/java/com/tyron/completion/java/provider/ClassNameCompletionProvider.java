@@ -11,11 +11,9 @@ import com.sun.source.util.TreePath;
 import com.tyron.builder.project.api.Module;
 import com.tyron.common.ApplicationProvider;
 import com.tyron.common.SharedPreferenceKeys;
-import com.tyron.common.util.StringSearch;
 import com.tyron.completion.java.ShortNamesCache;
 import com.tyron.completion.java.compiler.JavaCompilerService;
 import com.tyron.completion.java.insert.ClassImportInsertHandler;
-import com.tyron.completion.java.util.ActionUtil;
 import com.tyron.completion.model.CompletionItem;
 import com.tyron.completion.model.CompletionList;
 
@@ -24,7 +22,6 @@ import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
-import java.util.function.Predicate;
 
 public class ClassNameCompletionProvider extends BaseCompletionProvider {
 
@@ -70,29 +67,27 @@ public class ClassNameCompletionProvider extends BaseCompletionProvider {
                                                       boolean caseSensitive) {
         checkCanceled();
 
-        Predicate<String> predicate;
-        if (caseSensitive) {
-            predicate = string -> StringSearch.matchesPartialName(string, partial);
-        } else {
-            predicate = string -> StringSearch.matchesPartialNameLowercase(string, partial);
-        }
+        // a single dot matches every class
+        String prefix = ".".equals(partial) ? "" : partial;
 
         Set<String> uniques = new HashSet<>();
         File fileToComplete = new File(root.getSourceFile().toUri());
         final Module module = task.getProject().getModule(fileToComplete);
         ShortNamesCache cache = ShortNamesCache.getInstance(module);
-
-        for (String className : cache.getAllClassNames()) {
-            // more strict on matching class names
-            String simpleName = ActionUtil.getSimpleName(className);
-            if (!predicate.test(simpleName)) {
-                continue;
-            }
-            if (uniques.contains(className)) {
-                continue;
-            }
-
+        cache.processClassesWithPrefix(prefix, caseSensitive, className -> {
+            checkCanceled();
             uniques.add(className);
+            return true;
+        });
+
+        // camel hump matches such as AL for ArrayList, a single character is already
+        // covered by the prefix matches
+        if (prefix.length() > 1) {
+            cache.processClassesMatching(prefix, caseSensitive, className -> {
+                checkCanceled();
+                uniques.add(className);
+                return true;
+            });
         }
 
         return new ArrayList<>(uniques);
@@ -10,7 +10,6 @@ import com.tyron.builder.log.ILogger;
 import com.tyron.builder.project.Project;
 import com.tyron.builder.project.api.JavaModule;
 import com.tyron.completion.java.compiler.JavaCompilerService;
-import com.tyron.completion.model.CachedCompletion;
 import com.tyron.completion.model.CompletionList;
 
 import javax.tools.DiagnosticListener;
@@ -28,8 +27,6 @@ public class CompletionEngine {
     private final DiagnosticListener<? super JavaFileObject> mInternalListener;
     private final HashSet<Object> mCachedPaths;
 
-    private CachedCompletion cachedCompletion;
-
     public static volatile CompletionEngine Instance = null;
 
     public static synchronized CompletionEngine getInstance() {
@@ -126,14 +123,14 @@ public class CompletionEngine {
 //        }
     }
 
-    public synchronized CompletionList complete(Project project,
-                                                JavaModule module,
-                                                File file,
-                                                String contents,
-                                                String prefix,
-                                                int line,
-                                                int column,
-                                                long index) throws InterruptedException {
+    public CompletionList complete(Project project,
+                                   JavaModule module,
+                                   File file,
+                                   String contents,
+                                   String prefix,
+                                   int line,
+                                   int column,
+                                   long index) throws InterruptedException {
 //        if (mIndexing) {
 //            return CompletionList.EMPTY;
 //        }
@@ -143,11 +140,11 @@ public class CompletionEngine {
     }
 
     @NonNull
-    public synchronized CompletionList complete(Project project,
-                                                JavaModule module,
-                                                File file,
-                                                String contents,
-                                                long cursor) throws InterruptedException {
+    public CompletionList complete(Project project,
+                                   JavaModule module,
+                                   File file,
+                                   String contents,
+                                   long cursor) throws InterruptedException {
         // Do not request for completion if we're indexing
 //        if (mIndexing) {
 //            return CompletionList.EMPTY;
@@ -43,15 +43,30 @@ public class IdentifierCompletionProvider extends BaseCompletionProvider {
                 !preferences.getBoolean(SharedPreferenceKeys.JAVA_CASE_INSENSITIVE_MATCH, false);
 
         ScopeCompletionProvider.addCompletionItems(task, path, partial, endsWithParen, builder);
+        KeywordCompletionProvider.addKeywords(task, path, partial, builder);
+        // locals and keywords are cheap, show them while the rest is being computed
+        builder.publish();
+
         addStaticImports(task, path.getCompilationUnit(), partial, endsWithParen, builder);
         if (!builder.isIncomplete()) {
-            if (!caseSensitiveMatch ||
-                partial.length() > 0 && Character.isUpperCase(partial.charAt(0))) {
+            if (matchesClassNames(partial, caseSensitiveMatch)) {
                 addClassNames(path.getCompilationUnit(), partial, builder, task,
                         caseSensitiveMatch);
+            } else if (partial.isEmpty()) {
+                // the prefix may be extended with an upper case letter which matches class
+                // names, so these results can't be refined
+                builder.incomplete();
             }
         }
+    }
 
-        KeywordCompletionProvider.addKeywords(task, path, partial, builder);
+    /**
+     * Whether class names can match the prefix. With case sensitive matching only a prefix
+     * that starts with an upper case letter matches them, extending a lower case prefix
+     * keeps it lower case so the list is still complete for the longer prefix.
+     */
+    static boolean matchesClassNames(String partial, boolean caseSensitiveMatch) {
+        return !caseSensitiveMatch
+               || !partial.isEmpty() && Character.isUpperCase(partial.charAt(0));
     }
 }
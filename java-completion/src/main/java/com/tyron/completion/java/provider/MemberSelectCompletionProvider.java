@@ -146,11 +146,6 @@ public class MemberSelectCompletionProvider extends BaseCompletionProvider {
             }
         }
 
-        for (List<ExecutableElement> overloads : methods.values()) {
-            builder.addItems(method(task, overloads, endsWithParen, false, type),
-                             JavaSortCategory.ACCESSIBLE_SYMBOL.toString());
-        }
-
         if (isStatic) {
             if (StringSearch.matchesPartialName("class", partial)) {
                 builder.addItem(keyword("class"));
@@ -164,6 +159,14 @@ public class MemberSelectCompletionProvider extends BaseCompletionProvider {
                 builder.addItem(keyword("super"));
             }
         }
+        // show the fields while the method signatures are being rendered
+        builder.publish();
+
+        for (List<ExecutableElement> overloads : methods.values()) {
+            checkCanceled();
+            builder.addItems(method(task, overloads, endsWithParen, false, type),
+                             JavaSortCategory.ACCESSIBLE_SYMBOL.toString());
+        }
     }
 
     public static void putMethod(ExecutableElement method,
@@ -0,0 +1,61 @@
+package com.tyron.completion.java.compiler;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.tyron.builder.project.Project;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.util.Map;
+
+public class IdentifierIndexTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testRefreshAndDispose() throws IOException {
+        Project project = new Project(folder.newFolder("project"));
+        IdentifierIndex index = IdentifierIndex.getInstance(project);
+
+        assertTrue(index.awaitVersion(index.refresh()));
+        assertTrue(index.isReady());
+
+        IdentifierIndex.dispose(project);
+        assertFalse(index.awaitVersion(index.refresh()));
+        assertTrue(index != IdentifierIndex.getInstance(project));
+        IdentifierIndex.dispose(project);
+    }
+
+    @Test
+    public void testScan() {
+        String contents = "package a.b;\n" +
+                "// Foo in a comment\n" +
+                "/* Bar in a block comment */\n" +
+                "class Main extends Foo {\n" +
+                "    String s = \"Bar \\\" Baz\";\n" +
+                "    char c = '\\'';\n" +
+                "    long l = 0xFFL;\n" +
+                "    Foo foo = new Foo();\n" +
+                "}";
+        Map<String, int[]> occurrences = IdentifierIndex.scan(contents);
+
+        assertTrue(occurrences.containsKey("a"));
+        assertTrue(occurrences.containsKey("Main"));
+        assertTrue(occurrences.containsKey("foo"));
+        assertFalse(occurrences.containsKey("Bar"));
+        assertFalse(occurrences.containsKey("Baz"));
+        assertFalse(occurrences.containsKey("FFL"));
+        assertFalse(occurrences.containsKey("class"));
+
+        int first = contents.indexOf("Foo {");
+        int second = contents.indexOf("Foo foo");
+        int third = contents.indexOf("Foo()");
+        assertArrayEquals(new int[]{first, second, third}, occurrences.get("Foo"));
+    }
+}
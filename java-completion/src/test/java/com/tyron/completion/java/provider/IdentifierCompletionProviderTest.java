@@ -0,0 +1,25 @@
+package com.tyron.completion.java.provider;
+
+import static com.tyron.completion.java.provider.IdentifierCompletionProvider.matchesClassNames;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class IdentifierCompletionProviderTest {
+
+    @Test
+    public void testCaseSensitiveClassNames() {
+        assertTrue(matchesClassNames("Str", true));
+        assertFalse(matchesClassNames("str", true));
+        // an empty prefix is completed without class names and marked as incomplete
+        assertFalse(matchesClassNames("", true));
+    }
+
+    @Test
+    public void testCaseInsensitiveClassNames() {
+        assertTrue(matchesClassNames("Str", false));
+        assertTrue(matchesClassNames("str", false));
+        assertTrue(matchesClassNames("", false));
+    }
+}
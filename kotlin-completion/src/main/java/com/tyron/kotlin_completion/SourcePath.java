@@ -2,6 +2,7 @@ package com.tyron.kotlin_completion;
 
 import android.util.Log;
 
+import com.tyron.common.ApplicationPaths;
 import com.tyron.kotlin_completion.compiler.CompletionKind;
 import com.tyron.kotlin_completion.index.SymbolIndex;
 import com.tyron.kotlin_completion.util.AsyncExecutor;
@@ -14,6 +15,7 @@ import org.jetbrains.kotlin.com.intellij.psi.PsiFile;
 import org.jetbrains.kotlin.container.ComponentProvider;
 import org.jetbrains.kotlin.descriptors.ModuleDescriptor;
 import org.jetbrains.kotlin.idea.KotlinLanguage;
+import org.jetbrains.kotlin.name.FqName;
 import org.jetbrains.kotlin.psi.KtFile;
 import org.jetbrains.kotlin.resolve.BindingContext;
 import org.slf4j.Logger;
@@ -21,16 +23,26 @@ import org.slf4j.LoggerFactory;
 
 import java.io.File;
 import java.io.IOException;
+import java.math.BigInteger;
 import java.net.URI;
 import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Enumeration;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.locks.ReentrantLock;
 import java.util.stream.Collectors;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
 
 import kotlin.collections.CollectionsKt;
 import kotlin.sequences.Sequence;
@@ -53,7 +65,7 @@ public class SourcePath {
 
     private final AsyncExecutor indexAsync = new AsyncExecutor();
     private final SymbolIndex index = new SymbolIndex();
-    private boolean indexEnabled = false;
+    private boolean indexEnabled = true;
     private boolean indexInitialized;
 
 
@@ -84,6 +96,11 @@ public class SourcePath {
         private final String extension;
         private final CompletionKind kind = CompletionKind.DEFAULT;
 
+        /**
+         * The package of this file when its symbols were last indexed
+         */
+        private FqName indexedPackage;
+
         public SourceFile(URI uri, String content, Language language, boolean isTemporary) {
             this(uri, content, Paths.get(uri), null, null, null, null, language, isTemporary);
         }
@@ -163,7 +180,7 @@ public class SourcePath {
                     parsedDataWriteLock.unlock();
                 }
             }
-            initializeIndexAsyncIfNeeded(compiledcontainer);
+            refreshIndexAsync(compiledcontainer, Collections.singleton(this));
         }
         public CompiledFile prepareCompiledFile() {
             parseIfChanged();
@@ -229,16 +246,155 @@ public class SourcePath {
         return UtilKt.util(sourcesContext, sources, allChanged);
     }
 
-    private void initializeIndexAsyncIfNeeded(ComponentProvider container) {
+    /**
+     * Refreshes the symbol index in the background. The first refresh restores the packages
+     * saved for each of the current libraries and indexes the rest of the module, the packages
+     * of the libraries that had no saved index are saved afterwards. After that, only the
+     * packages of the files that have been compiled are indexed again.
+     */
+    private void refreshIndexAsync(ComponentProvider container, Collection<SourceFile> changed) {
+        if (!indexEnabled || container == null) {
+            return;
+        }
+        Set<FqName> changedPackages = new HashSet<>();
+        for (SourceFile file : changed) {
+            if (file.indexedPackage != null) {
+                changedPackages.add(file.indexedPackage);
+            }
+            if (file.parsed != null) {
+                file.indexedPackage = file.parsed.getPackageFqName();
+                changedPackages.add(file.indexedPackage);
+            }
+        }
+        Set<FqName> sourcePackages = sourcePackages();
         indexAsync.execute(() -> {
-            if (indexEnabled && !indexInitialized) {
-                ModuleDescriptor module = (ModuleDescriptor) container.resolve(ModuleDescriptor.class).getValue();
-                index.refresh(module, true);
-                indexInitialized = true;
+            ModuleDescriptor module = (ModuleDescriptor) container.resolve(ModuleDescriptor.class).getValue();
+            if (indexInitialized) {
+                index.refresh(module, changedPackages);
+                return;
             }
+
+            Map<File, Set<FqName>> libraryPackages = libraryPackages();
+            // packages that are in several libraries or in the sources are always indexed from
+            // the module, the file of a library only holds the packages that are its own
+            Set<FqName> sharedPackages = new HashSet<>(sourcePackages);
+            Set<FqName> seenPackages = new HashSet<>();
+            for (Set<FqName> packages : libraryPackages.values()) {
+                for (FqName pkg : packages) {
+                    if (!seenPackages.add(pkg)) {
+                        sharedPackages.add(pkg);
+                    }
+                }
+            }
+
+            Set<FqName> loadedPackages = new HashSet<>();
+            Map<File, Set<FqName>> unsavedLibraries = new HashMap<>();
+            libraryPackages.forEach((library, packages) -> {
+                Set<FqName> ownPackages = new HashSet<>(packages);
+                ownPackages.removeAll(sharedPackages);
+                Set<FqName> loaded = index.load(getIndexFile(library));
+                if (loaded != null && ownPackages.containsAll(loaded)) {
+                    loadedPackages.addAll(loaded);
+                } else {
+                    unsavedLibraries.put(library, ownPackages);
+                }
+            });
+            index.refresh(module, true, loadedPackages);
+            indexInitialized = true;
+
+            unsavedLibraries.forEach((library, packages) -> {
+                try {
+                    saveIndex(library, packages);
+                } catch (IOException e) {
+                    LOG.warn("Unable to save the symbol index of " + library, e);
+                }
+            });
         });
     }
 
+    private Set<FqName> sourcePackages() {
+        return files.values().stream()
+                .filter(it -> !it.isTemporary && it.parsed != null)
+                .map(it -> it.parsed.getPackageFqName())
+                .collect(Collectors.toSet());
+    }
+
+    /**
+     * Returns the packages of each library, read from the names of its class files.
+     */
+    private Map<File, Set<FqName>> libraryPackages() {
+        List<File> libraries;
+        synchronized (cp.mClassPath) {
+            libraries = cp.mClassPath.stream()
+                    .map(entry -> entry.getCompiledJar().toFile())
+                    .collect(Collectors.toList());
+        }
+        Map<File, Set<FqName>> libraryPackages = new HashMap<>();
+        for (File library : libraries) {
+            Set<FqName> packages = new HashSet<>();
+            try (ZipFile zipFile = new ZipFile(library)) {
+                Enumeration<? extends ZipEntry> entries = zipFile.entries();
+                while (entries.hasMoreElements()) {
+                    String name = entries.nextElement().getName();
+                    if (!name.endsWith(".class") || name.startsWith("META-INF/")) {
+                        continue;
+                    }
+                    int index = name.lastIndexOf('/');
+                    packages.add(index == -1
+                            ? FqName.ROOT
+                            : new FqName(name.substring(0, index).replace('/', '.')));
+                }
+            } catch (IOException e) {
+                LOG.warn("Unable to read the packages of " + library, e);
+                continue;
+            }
+            libraryPackages.put(library, packages);
+        }
+        return libraryPackages;
+    }
+
+    /**
+     * Saves the given packages as the index of the library, and deletes the index saved for a
+     * previous version of the library and the indexes of whole class paths that older versions
+     * saved.
+     */
+    private void saveIndex(File library, Set<FqName> packages) throws IOException {
+        File indexFile = getIndexFile(library);
+        index.save(indexFile, packages);
+
+        String prefix = indexFile.getName().substring(0, indexFile.getName().indexOf('-') + 1);
+        File[] staleFiles = indexFile.getParentFile().listFiles((dir, name) ->
+                name.endsWith(".bin")
+                && !name.equals(indexFile.getName())
+                && (name.startsWith(prefix) || name.indexOf('-') == -1));
+        if (staleFiles != null) {
+            for (File staleFile : staleFiles) {
+                FileUtils.deleteQuietly(staleFile);
+            }
+        }
+    }
+
+    /**
+     * The index is saved per library, since the symbols of the libraries are the ones that are
+     * expensive to index. The file is named after the path of the library and its stamp.
+     */
+    private static File getIndexFile(File library) {
+        String pathHash = hash(library.getAbsolutePath());
+        String stampHash = hash(library.length() + ":" + library.lastModified());
+        return new File(ApplicationPaths.getCacheDir(),
+                "kotlin/symbolIndex/" + pathHash + "-" + stampHash + ".bin");
+    }
+
+    private static String hash(String value) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return new BigInteger(1, digest.digest(value.getBytes(StandardCharsets.UTF_8)))
+                    .toString(16);
+        } catch (NoSuchAlgorithmException e) {
+            return Integer.toHexString(value.hashCode());
+        }
+    }
+
 
     private BindingContext compileAndUpdate(Set<SourceFile> changed) {
         if (changed.isEmpty()) return null;
@@ -263,7 +419,7 @@ public class SourcePath {
             }
         });
 
-        initializeIndexAsyncIfNeeded(pair.getSecond());
+        refreshIndexAsync(pair.getSecond(), parse.keySet());
         return pair.getFirst();
     }
 
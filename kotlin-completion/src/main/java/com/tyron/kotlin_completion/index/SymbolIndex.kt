@@ -2,129 +2,247 @@ package com.tyron.kotlin_completion.index
 
 import android.util.Log
 import com.tyron.kotlin_completion.util.PsiUtils
-import org.jetbrains.exposed.sql.*
-import org.jetbrains.exposed.sql.transactions.transaction
 import org.jetbrains.kotlin.descriptors.DeclarationDescriptor
 import org.jetbrains.kotlin.descriptors.ModuleDescriptor
 import org.jetbrains.kotlin.name.FqName
 import org.jetbrains.kotlin.resolve.scopes.DescriptorKindFilter
 import org.jetbrains.kotlin.resolve.scopes.MemberScope
+import java.io.BufferedInputStream
+import java.io.BufferedOutputStream
+import java.io.DataInputStream
+import java.io.DataOutputStream
+import java.io.File
+import java.io.IOException
 import java.lang.IllegalStateException
-import java.time.Duration
-import java.time.Instant
+import java.nio.file.Files
+import java.nio.file.StandardCopyOption
+import java.util.concurrent.locks.ReentrantReadWriteLock
+import kotlin.concurrent.read
+import kotlin.concurrent.write
 import kotlin.sequences.Sequence
 
-private const val MAX_FQNAME_LENGTH = 255
-private const val MAX_SHORT_NAME_LENGTH = 80
+private const val INDEX_FILE_VERSION = 2
 
-private object Symbols : Table() {
-    val fqName = varchar("fqname", length = MAX_FQNAME_LENGTH) references FqNames.fqName
-    val kind = integer("kind")
-    val visibility = integer("visibility")
-    val extensionReceiverType = varchar("extensionreceivertype", length = MAX_FQNAME_LENGTH).nullable()
-
-    override val primaryKey = PrimaryKey(fqName)
-}
-
-private object FqNames : Table() {
-    val fqName = varchar("fqname", length = MAX_FQNAME_LENGTH)
-    val shortName = varchar("shortname", length = MAX_SHORT_NAME_LENGTH)
-
-    override val primaryKey = PrimaryKey(fqName)
-}
+/**
+ * An in memory index of the symbols of a module, looked up by the prefix of their short name.
+ *
+ * Symbols are grouped by their package, a package is only re-indexed when its symbols have
+ * changed. Extension symbols are kept in a separate [SymbolTrie] per receiver type, so a query
+ * only visits the symbols that apply to the receiver. The packages of a library can be saved to
+ * a file of their own, the files of several libraries are merged when they are loaded.
+ */
 class SymbolIndex {
-    private val db = Database.connect("jdbc:h2:mem:symbolindex;DB_CLOSE_DELAY=-1", "org.h2.Driver")
 
-    var indexing: Boolean = false
+    private val lock = ReentrantReadWriteLock()
+    private val packages = HashMap<FqName, List<Symbol>>()
+    private val tries = HashMap<FqName?, SymbolTrie>()
 
-    init {
-       transaction (db) {
-           SchemaUtils.create(Symbols, FqNames)
-       }
-    }
+    @Volatile
+    var indexing: Boolean = false
 
-    fun refresh(module: ModuleDescriptor, forced: Boolean = true) {
+    /**
+     * Indexes every package of the module.
+     *
+     * @param forced whether to remove the packages that are no longer in the module
+     * @param skipped the packages whose symbols are already up to date, e.g. because they were
+     * loaded from the file of their library
+     * @return whether the index has changed
+     */
+    fun refresh(
+        module: ModuleDescriptor,
+        forced: Boolean = true,
+        skipped: Set<FqName> = emptySet()
+    ): Boolean {
         val started = System.currentTimeMillis()
-        Log.d("SymbolIndex", "Updating symbol index...");
+        Log.d("SymbolIndex", "Updating symbol index...")
 
         indexing = true
         try {
-            transaction(db) {
-                if (forced) {
-                    Symbols.deleteAll()
+            val seen = HashSet<FqName>()
+            var changed = false
+            for (pkg in allPackages(module)) {
+                seen.add(pkg)
+                if (pkg in skipped) {
+                    continue
                 }
-                for (descriptor in allDescriptors(module)) {
-                    val descriptorFqn = PsiUtils.getFqNameSafe(descriptor)
-                    val extensionReceiverFqn = descriptor.accept(ExtractSymbolExtensionReceiverType, Unit)
-
-                    if (canStoreFqName(descriptorFqn) && (extensionReceiverFqn?.let { canStoreFqName(it) } != false)) {
-
-                        for (fqn in listOfNotNull(descriptorFqn, extensionReceiverFqn)) {
-                            FqNames.replace {
-                                it[fqName] = fqn.toString()
-                                it[shortName] = fqn.shortName().toString()
-                            }
-                        }
-
-
-                        Symbols.replace {
-                            it[fqName] = descriptorFqn.toString()
-                            it[kind] = descriptor.accept(ExtractSymbolKind, Unit).rawValue
-                            it[visibility] = descriptor.accept(ExtractSymbolVisibility, Unit).rawValue
-                            it[extensionReceiverType] = extensionReceiverFqn?.toString()
-                        }
-                    } else {
-                        Log.w("SymbolIndex",
-                            "Excluding symbol $descriptorFqn from index since its name is too long"
-                        );
-                    }
+                changed = updatePackage(pkg, packageSymbols(module, pkg)) or changed
+            }
+            if (forced) {
+                val removed = lock.read { packages.keys.filter { it !in seen } }
+                for (pkg in removed) {
+                    changed = updatePackage(pkg, emptyList()) or changed
                 }
+            }
+            Log.d("SymbolIndex", "Updated symbol index in ${System.currentTimeMillis() - started} ms")
+            return changed
+        } catch (e: Exception) {
+            Log.e("SymbolIndex", "Error while updating symbol index", e)
+            return false
+        } finally {
+            indexing = false
+        }
+    }
 
-                indexing = false
+    /**
+     * Indexes only the given packages of the module, a package that no longer exists is removed
+     * from the index.
+     *
+     * @return whether the index has changed
+     */
+    fun refresh(module: ModuleDescriptor, packageNames: Collection<FqName>): Boolean {
+        var changed = false
+        try {
+            for (pkg in packageNames) {
+                changed = updatePackage(pkg, packageSymbols(module, pkg)) or changed
             }
         } catch (e: Exception) {
-            Log.e("SymbolIndex", "Error while updating symbol index", e);
+            Log.e("SymbolIndex", "Error while updating symbol index", e)
         }
+        return changed
     }
 
     fun query(prefix: String, receiverType: FqName? = null, limit: Int = 20): List<Symbol> {
-        val start = Instant.now()
+        val start = System.nanoTime()
+        try {
+            val result = ArrayList<Symbol>(limit)
+            lock.read {
+                tries[receiverType]?.collect(prefix, limit, result)
+            }
+            return result
+        } finally {
+            Log.d("SymbolIndex", "Query took " + (System.nanoTime() - start) / 1000 + " us")
+        }
+    }
+
+    /**
+     * Writes the given packages to the file, replacing it atomically. The packages that have no
+     * symbols are not written.
+     */
+    @Throws(IOException::class)
+    fun save(file: File, packageNames: Collection<FqName>) {
+        file.parentFile?.mkdirs()
+        val temp = File(file.parentFile, file.name + ".tmp")
+        DataOutputStream(BufferedOutputStream(Files.newOutputStream(temp.toPath()))).use { out ->
+            out.writeInt(INDEX_FILE_VERSION)
+            lock.read {
+                val saved = packageNames.filter { it in packages }
+                out.writeInt(saved.size)
+                for (pkg in saved) {
+                    val symbols = packages.getValue(pkg)
+                    out.writeUTF(pkg.asString())
+                    out.writeInt(symbols.size)
+                    for (symbol in symbols) {
+                        out.writeUTF(symbol.fqName.asString())
+                        out.writeByte(symbol.kind.rawValue)
+                        out.writeByte(symbol.visibility.rawValue)
+                        out.writeUTF(symbol.extensionReceiverType?.asString() ?: "")
+                    }
+                }
+            }
+        }
+        Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+            StandardCopyOption.ATOMIC_MOVE)
+    }
+
+    /**
+     * Adds the packages saved in the given file to the index, replacing the symbols of the
+     * packages that are already indexed.
+     *
+     * @return the packages that were loaded, or null if the file does not exist or can not be
+     * read
+     */
+    fun load(file: File): Set<FqName>? {
+        if (!file.exists()) {
+            return null
+        }
+        val started = System.currentTimeMillis()
         try {
-            return transaction(db) {
-                (Symbols innerJoin FqNames)
-                    .select { FqNames.shortName.like("$prefix%") and (Symbols.extensionReceiverType eq receiverType?.toString()) }
-                    .limit(limit)
-                    .map {
+            DataInputStream(BufferedInputStream(Files.newInputStream(file.toPath()))).use { input ->
+                if (input.readInt() != INDEX_FILE_VERSION) {
+                    return null
+                }
+                val loaded = HashMap<FqName, List<Symbol>>()
+                repeat(input.readInt()) {
+                    val pkg = FqName(input.readUTF())
+                    loaded[pkg] = List(input.readInt()) {
                         Symbol(
-                            fqName = FqName(it[Symbols.fqName]),
-                            kind = Symbol.Kind.fromRaw(it[Symbols.kind]),
-                            visibility = Symbol.Visibility.fromRaw(it[Symbols.visibility]),
-                            extensionReceiverType = it[Symbols.extensionReceiverType]?.let(::FqName)
+                            fqName = FqName(input.readUTF()),
+                            kind = Symbol.Kind.fromRaw(input.readByte().toInt()),
+                            visibility = Symbol.Visibility.fromRaw(input.readByte().toInt()),
+                            extensionReceiverType = input.readUTF().takeIf { it.isNotEmpty() }?.let(::FqName)
                         )
                     }
+                }
+                for ((pkg, symbols) in loaded) {
+                    updatePackage(pkg, symbols)
+                }
+                Log.d("SymbolIndex", "Loaded symbol index in ${System.currentTimeMillis() - started} ms")
+                return loaded.keys
             }
-        } finally {
-            Log.d("SymbolIndex", "Query took " + Duration.between(start, Instant.now()).toMillis() + " ms")
+        } catch (e: IOException) {
+            Log.w("SymbolIndex", "Unable to load the symbol index from $file", e)
+            return null
         }
     }
 
-    private fun canStoreFqName(fqName: FqName) =
-        fqName.toString().length <= MAX_FQNAME_LENGTH
-                && fqName.shortName().toString().length <= MAX_SHORT_NAME_LENGTH
-
-    private fun allDescriptors(module: ModuleDescriptor) : Sequence<DeclarationDescriptor> = allPackages(module)
-        .map(module::getPackage)
-        .flatMap {
-            try {
-                it.memberScope.getContributedDescriptors(DescriptorKindFilter.ALL, MemberScope.ALL_NAME_FILTER)
-            } catch (e: IllegalStateException) {
-                Log.w("SymbolIndex", "Couldn't query descriptors in package $it")
-                emptyList()
+    private fun updatePackage(pkg: FqName, symbols: List<Symbol>): Boolean {
+        lock.write {
+            val old = packages[pkg] ?: emptyList()
+            if (old == symbols) {
+                return false
+            }
+            old.forEach(::removeSymbol)
+            symbols.forEach(::addSymbol)
+            if (symbols.isEmpty()) {
+                packages.remove(pkg)
+            } else {
+                packages[pkg] = symbols
             }
+            return true
+        }
+    }
+
+    private fun addSymbol(symbol: Symbol) {
+        tries.getOrPut(symbol.extensionReceiverType) { SymbolTrie() }.add(symbol)
+    }
+
+    private fun removeSymbol(symbol: Symbol) {
+        val trie = tries[symbol.extensionReceiverType] ?: return
+        trie.remove(symbol)
+        if (trie.size == 0) {
+            tries.remove(symbol.extensionReceiverType)
+        }
+    }
+
+    /**
+     * Returns the symbols declared in the package, symbols with the same fully qualified name
+     * such as overloads are only indexed once.
+     */
+    private fun packageSymbols(module: ModuleDescriptor, pkg: FqName): List<Symbol> {
+        val symbols = LinkedHashMap<FqName, Symbol>()
+        for (descriptor in packageDescriptors(module, pkg)) {
+            val descriptorFqn = PsiUtils.getFqNameSafe(descriptor)
+            symbols[descriptorFqn] = Symbol(
+                fqName = descriptorFqn,
+                kind = descriptor.accept(ExtractSymbolKind, Unit),
+                visibility = descriptor.accept(ExtractSymbolVisibility, Unit),
+                extensionReceiverType = descriptor.accept(ExtractSymbolExtensionReceiverType, Unit)
+            )
+        }
+        return ArrayList(symbols.values)
+    }
+
+    private fun packageDescriptors(module: ModuleDescriptor, pkg: FqName): Collection<DeclarationDescriptor> =
+        try {
+            module.getPackage(pkg).memberScope
+                .getContributedDescriptors(DescriptorKindFilter.ALL, MemberScope.ALL_NAME_FILTER)
+        } catch (e: IllegalStateException) {
+            Log.w("SymbolIndex", "Couldn't query descriptors in package $pkg")
+            emptyList()
         }
 
     private fun allPackages(module: ModuleDescriptor, pkgName: FqName = FqName.ROOT) : Sequence<FqName> = module
         .getSubPackagesOf(pkgName) { it.toString()  != "META-INF"}
         .asSequence()
         .flatMap { sequenceOf(it) + allPackages(module, it) }
-}
\ No newline at end of file
+}
@@ -0,0 +1,146 @@
+package com.tyron.kotlin_completion.index
+
+/**
+ * A prefix tree of symbols keyed by their short name. The children of a node are kept in
+ * sorted arrays, so symbols are collected in the order of their short names and a lookup only
+ * visits the nodes below the prefix.
+ */
+internal class SymbolTrie {
+
+    private val root = Node()
+
+    var size = 0
+        private set
+
+    fun add(symbol: Symbol) {
+        var node = root
+        for (c in symbol.fqName.shortName().asString()) {
+            node = node.getOrCreate(c)
+        }
+        val symbols = node.symbols ?: ArrayList<Symbol>(1).also { node.symbols = it }
+        symbols.add(symbol)
+        size++
+    }
+
+    fun remove(symbol: Symbol): Boolean {
+        val name = symbol.fqName.shortName().asString()
+        // the nodes on the path to the symbol, so the ones left empty can be pruned
+        val path = arrayOfNulls<Node>(name.length + 1)
+        path[0] = root
+        for (i in name.indices) {
+            path[i + 1] = path[i]!!.get(name[i]) ?: return false
+        }
+        val node = path[name.length]!!
+        val symbols = node.symbols ?: return false
+        if (!symbols.remove(symbol)) {
+            return false
+        }
+        size--
+        if (symbols.isNotEmpty()) {
+            return true
+        }
+
+        node.symbols = null
+        for (i in name.length downTo 1) {
+            if (!path[i]!!.isEmpty()) {
+                break
+            }
+            path[i - 1]!!.removeChild(name[i - 1])
+        }
+        return true
+    }
+
+    /** The number of nodes below the root, including the ones without symbols. */
+    val nodeCount: Int
+        get() = root.countDescendants()
+
+    /**
+     * Adds the symbols whose short name starts with the given prefix to the result, until the
+     * result contains [limit] symbols.
+     */
+    fun collect(prefix: String, limit: Int, result: MutableList<Symbol>) {
+        var node = root
+        for (c in prefix) {
+            node = node.get(c) ?: return
+        }
+        node.collect(limit, result)
+    }
+
+    private class Node {
+        var keys = EMPTY_KEYS
+        var children = EMPTY_CHILDREN
+        var symbols: MutableList<Symbol>? = null
+
+        fun get(c: Char): Node? {
+            val index = keys.binarySearch(c)
+            return if (index >= 0) children[index] else null
+        }
+
+        fun getOrCreate(c: Char): Node {
+            val index = keys.binarySearch(c)
+            if (index >= 0) {
+                return children[index]!!
+            }
+
+            val insertAt = -index - 1
+            val node = Node()
+            val newKeys = CharArray(keys.size + 1)
+            val newChildren = arrayOfNulls<Node>(children.size + 1)
+            keys.copyInto(newKeys, 0, 0, insertAt)
+            keys.copyInto(newKeys, insertAt + 1, insertAt)
+            children.copyInto(newChildren, 0, 0, insertAt)
+            children.copyInto(newChildren, insertAt + 1, insertAt)
+            newKeys[insertAt] = c
+            newChildren[insertAt] = node
+            keys = newKeys
+            children = newChildren
+            return node
+        }
+
+        fun removeChild(c: Char) {
+            val index = keys.binarySearch(c)
+            if (index < 0) {
+                return
+            }
+            if (keys.size == 1) {
+                keys = EMPTY_KEYS
+                children = EMPTY_CHILDREN
+                return
+            }
+            val newKeys = CharArray(keys.size - 1)
+            val newChildren = arrayOfNulls<Node>(children.size - 1)
+            keys.copyInto(newKeys, 0, 0, index)
+            keys.copyInto(newKeys, index, index + 1)
+            children.copyInto(newChildren, 0, 0, index)
+            children.copyInto(newChildren, index, index + 1)
+            keys = newKeys
+            children = newChildren
+        }
+
+        fun isEmpty() = symbols == null && keys.isEmpty()
+
+        fun countDescendants(): Int = children.sumOf { 1 + it!!.countDescendants() }
+
+        fun collect(limit: Int, result: MutableList<Symbol>) {
+            symbols?.let {
+                for (symbol in it) {
+                    if (result.size >= limit) {
+                        return
+                    }
+                    result.add(symbol)
+                }
+            }
+            for (child in children) {
+                if (result.size >= limit) {
+                    return
+                }
+                child!!.collect(limit, result)
+            }
+        }
+    }
+
+    private companion object {
+        val EMPTY_KEYS = CharArray(0)
+        val EMPTY_CHILDREN = arrayOfNulls<Node>(0)
+    }
+}
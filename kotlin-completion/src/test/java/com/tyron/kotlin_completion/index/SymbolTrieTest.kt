@@ -0,0 +1,88 @@
+package com.tyron.kotlin_completion.index
+
+import org.jetbrains.kotlin.name.FqName
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertTrue
+import org.junit.Test
+
+class SymbolTrieTest {
+
+    private fun symbol(fqName: String) = Symbol(
+        FqName(fqName),
+        Symbol.Kind.FUNCTION,
+        Symbol.Visibility.PUBLIC,
+        null
+    )
+
+    private fun SymbolTrie.query(prefix: String, limit: Int = 20): List<String> {
+        val result = ArrayList<Symbol>()
+        collect(prefix, limit, result)
+        return result.map { it.fqName.asString() }
+    }
+
+    @Test
+    fun testPrefixQuery() {
+        val trie = SymbolTrie()
+        trie.add(symbol("kotlin.collections.listOf"))
+        trie.add(symbol("kotlin.collections.listOfNotNull"))
+        trie.add(symbol("kotlin.collections.mapOf"))
+        trie.add(symbol("kotlinx.coroutines.launch"))
+
+        assertEquals(listOf("kotlin.collections.listOf", "kotlin.collections.listOfNotNull"),
+            trie.query("list"))
+        assertEquals(listOf("kotlinx.coroutines.launch", "kotlin.collections.listOf",
+            "kotlin.collections.listOfNotNull"), trie.query("l"))
+        assertEquals(4, trie.query("").size)
+        assertTrue(trie.query("set").isEmpty())
+    }
+
+    @Test
+    fun testLimit() {
+        val trie = SymbolTrie()
+        for (i in 0 until 100) {
+            trie.add(symbol("test.name$i"))
+        }
+        assertEquals(10, trie.query("name", limit = 10).size)
+    }
+
+    @Test
+    fun testRemove() {
+        val trie = SymbolTrie()
+        val first = symbol("a.listOf")
+        val second = symbol("b.listOf")
+        trie.add(first)
+        trie.add(second)
+
+        assertTrue(trie.remove(first))
+        assertFalse(trie.remove(first))
+        assertEquals(listOf("b.listOf"), trie.query("list"))
+        assertEquals(1, trie.size)
+    }
+
+    @Test
+    fun testRemovePrunesEmptyNodes() {
+        val trie = SymbolTrie()
+        val list = symbol("a.list")
+        val listOf = symbol("a.listOf")
+        val map = symbol("a.map")
+        trie.add(list)
+        trie.add(listOf)
+        trie.add(map)
+        assertEquals(9, trie.nodeCount)
+
+        // the nodes of "Of" are no longer needed, the ones of "list" still hold a symbol
+        assertTrue(trie.remove(listOf))
+        assertEquals(7, trie.nodeCount)
+        assertEquals(listOf("a.list"), trie.query("list"))
+
+        assertTrue(trie.remove(list))
+        assertTrue(trie.remove(map))
+        assertEquals(0, trie.nodeCount)
+        assertEquals(0, trie.size)
+        assertTrue(trie.query("").isEmpty())
+
+        trie.add(listOf)
+        assertEquals(listOf("a.listOf"), trie.query("li"))
+    }
+}
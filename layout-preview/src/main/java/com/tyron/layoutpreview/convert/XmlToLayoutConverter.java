@@ -0,0 +1,205 @@
+package com.tyron.layoutpreview.convert;
+
+import android.util.LruCache;
+import android.view.View;
+
+import androidx.annotation.NonNull;
+
+import com.flipkart.android.proteus.FunctionManager;
+import com.flipkart.android.proteus.ProteusContext;
+import com.flipkart.android.proteus.ViewTypeParser;
+import com.flipkart.android.proteus.processor.AttributeProcessor;
+import com.flipkart.android.proteus.toolbox.Attributes;
+import com.flipkart.android.proteus.value.Array;
+import com.flipkart.android.proteus.value.Binding;
+import com.flipkart.android.proteus.value.Layout;
+import com.flipkart.android.proteus.value.ObjectValue;
+import com.flipkart.android.proteus.value.Primitive;
+import com.flipkart.android.proteus.value.Value;
+
+import org.xmlpull.v1.XmlPullParser;
+import org.xmlpull.v1.XmlPullParserException;
+import org.xmlpull.v1.XmlPullParserFactory;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Converts XML layouts directly into a Proteus {@link Layout} while reading the pull parser,
+ * without building a {@link com.google.gson.JsonObject} first like {@link XmlToJsonConverter}.
+ *
+ * <p>The compiled values of attributes such as colors, dimensions and resource references are
+ * cached by the attribute processor and the raw attribute value, so converting a layout again
+ * after an edit only compiles the attributes that have changed. The cache is bound to the
+ * {@link ProteusContext} the converter was created with, the same instance should be reused
+ * across conversions.
+ */
+public class XmlToLayoutConverter {
+
+    private static final int VALUE_CACHE_SIZE = 2048;
+
+    private final ProteusContext mContext;
+    private final FunctionManager mFunctionManager;
+    private final LruCache<CacheKey, Value> mValueCache = new LruCache<>(VALUE_CACHE_SIZE);
+
+    public XmlToLayoutConverter(@NonNull ProteusContext context) {
+        mContext = context;
+        mFunctionManager = context.getFunctionManager();
+    }
+
+    /**
+     * Main entry point for the converter
+     * @param contents The xml string to parse
+     * @return The layout parsed from the XML
+     * @throws IOException if an error has occurred while reading the string content
+     * @throws XmlPullParserException if the XML content is malformed
+     * @throws ConvertException if no root element is found
+     */
+    public Layout convert(String contents) throws IOException, XmlPullParserException, ConvertException {
+        XmlPullParser parser = XmlPullParserFactory.newInstance().newPullParser();
+        parser.setInput(new StringReader(contents));
+        advanceToRootNode(parser);
+
+        return convert(parser);
+    }
+
+    /**
+     * Converts the element at the current position of the parser along with its children. The
+     * parser is left at the end tag of the element.
+     */
+    public Layout convert(XmlPullParser parser) throws IOException, XmlPullParserException {
+        String type = parser.getName();
+        ViewTypeParser<View> viewParser = mContext.getParser(type);
+
+        List<Layout.Attribute> attributes = new ArrayList<>(parser.getAttributeCount());
+        ObjectValue extras = new ObjectValue();
+        for (int i = 0; i < parser.getAttributeCount(); i++) {
+            String name = parser.getAttributeName(i);
+            String value = parser.getAttributeValue(i);
+
+            ViewTypeParser.AttributeSet.Attribute attribute = viewParser != null
+                    ? viewParser.getAttributeSet().getAttribute(name)
+                    : null;
+            if (attribute != null) {
+                attributes.add(new Layout.Attribute(attribute.id,
+                        compile(attribute.processor, value)));
+            } else {
+                extras.add(name, compileString(value));
+            }
+        }
+
+        Array children = convertChildren(parser);
+        if (children.size() > 0) {
+            ViewTypeParser.AttributeSet.Attribute attribute = viewParser != null
+                    ? viewParser.getAttributeSet().getAttribute(Attributes.ViewGroup.Children)
+                    : null;
+            if (attribute != null) {
+                Value value = attribute.processor.precompile(children, mContext, mFunctionManager);
+                attributes.add(new Layout.Attribute(attribute.id, value));
+            } else {
+                extras.add(Attributes.ViewGroup.Children, children);
+            }
+        }
+
+        return new Layout(type,
+                attributes.isEmpty() ? null : attributes,
+                null,
+                extras.entrySet().isEmpty() ? null : extras);
+    }
+
+    private Array convertChildren(XmlPullParser parser) throws IOException, XmlPullParserException {
+        Array children = new Array();
+        final int depth = parser.getDepth();
+        int type;
+
+        while (((type = parser.next()) != XmlPullParser.END_TAG ||
+                parser.getDepth() > depth) && type != XmlPullParser.END_DOCUMENT) {
+            if (type != XmlPullParser.START_TAG) {
+                continue;
+            }
+
+            children.add(convert(parser));
+        }
+
+        return children;
+    }
+
+    /**
+     * Compiles the value of an attribute with its processor, the compiled values are immutable
+     * so the same instance is shared by every attribute with the same processor and value.
+     */
+    private Value compile(AttributeProcessor<?> processor, String value) {
+        CacheKey key = new CacheKey(processor, value);
+        Value compiled = mValueCache.get(key);
+        if (compiled == null) {
+            compiled = processor.precompile(compileString(value), mContext, mFunctionManager);
+            if (compiled != null) {
+                mValueCache.put(key, compiled);
+            }
+        }
+        return compiled;
+    }
+
+    private Value compileString(String string) {
+        if (Binding.isBindingValue(string)) {
+            return Binding.valueOf(string, mContext, mFunctionManager);
+        }
+        return new Primitive(string);
+    }
+
+    /**
+     * Removes the cached values, this should be called when the resources that the compiled
+     * values refer to have changed.
+     */
+    public void clearCache() {
+        mValueCache.evictAll();
+    }
+
+    /**
+     * Advances the given parser to the first START_TAG. Throws ConvertException if no start tag is
+     * found.
+     */
+    private void advanceToRootNode(XmlPullParser parser) throws IOException, XmlPullParserException, ConvertException {
+        // Look for the root node
+        int type;
+        while ((type = parser.next()) != XmlPullParser.START_TAG &&
+                type != XmlPullParser.END_DOCUMENT) {
+            // Empty
+        }
+
+        if (type != XmlPullParser.START_TAG) {
+            throw new ConvertException(parser.getPositionDescription()
+                    + ": No start tag found!");
+        }
+    }
+
+    private static final class CacheKey {
+        private final AttributeProcessor<?> processor;
+        private final String value;
+
+        CacheKey(AttributeProcessor<?> processor, String value) {
+            this.processor = processor;
+            this.value = value;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof CacheKey)) {
+                return false;
+            }
+            CacheKey that = (CacheKey) o;
+            return processor == that.processor && value.equals(that.value);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(System.identityHashCode(processor), value);
+        }
+    }
+}
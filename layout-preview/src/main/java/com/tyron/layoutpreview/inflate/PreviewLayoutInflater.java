@@ -33,7 +33,7 @@ import com.tyron.layout.appcompat.AppCompatModule;
 import com.tyron.layout.cardview.CardViewModule;
 import com.tyron.layout.constraintlayout.ConstraintLayoutModule;
 import com.tyron.layoutpreview.ResourceManager;
-import com.tyron.layoutpreview.convert.XmlToJsonConverter;
+import com.tyron.layoutpreview.convert.XmlToLayoutConverter;
 import com.tyron.layoutpreview.convert.adapter.ProteusTypeAdapterFactory;
 import com.tyron.layoutpreview.manager.ResourceDrawableManager;
 import com.tyron.layoutpreview.manager.ResourceLayoutManager;
@@ -54,6 +54,7 @@ public class PreviewLayoutInflater {
     private final Proteus mProteus;
     private final AndroidModule mProject;
     private ProteusContext mContext;
+    private final XmlToLayoutConverter mLayoutConverter;
 
     private final ProteusLayoutInflater.Callback mCallback = new ProteusLayoutInflater.Callback() {
         @Override
@@ -161,6 +162,7 @@ public class PreviewLayoutInflater {
         ProteusTypeAdapterFactory.PROTEUS_INSTANCE_HOLDER.setProteus(mProteus);
 
         mParser.setProteusContext(mContext);
+        mLayoutConverter = new XmlToLayoutConverter(mContext);
     }
 
     public CompletableFuture<PreviewLayoutInflater> parseResources(Executor executor) {
@@ -172,6 +174,8 @@ public class PreviewLayoutInflater {
 
 
             mParser.parse(mProject);
+            // the cached attribute values may refer to resources that have changed
+            mLayoutConverter.clearCache();
 
             File sources = extractAndGetAndroidXml();
             File valuesFile = new File(sources, "android-31/data/res/values");
@@ -216,12 +220,13 @@ public class PreviewLayoutInflater {
                 inflate(name, value));
     }
 
-    @Deprecated
+    /**
+     * Inflates a layout from its XML contents, the XML is converted directly to a {@link Layout}
+     * so this can be called on every edit of the layout.
+     */
     public ProteusView inflate(String xml) throws InflateException {
         try {
-            JsonObject object = new XmlToJsonConverter()
-                    .convert(xml);
-            return inflate(object);
+            return inflate(mLayoutConverter.convert(xml));
         } catch (Exception e) {
             throw new InflateException("Unable to inflate layout: " + e.getMessage());
         }
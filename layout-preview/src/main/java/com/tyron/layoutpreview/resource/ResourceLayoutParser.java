@@ -6,20 +6,15 @@ import androidx.annotation.Nullable;
 
 import com.flipkart.android.proteus.ProteusContext;
 import com.flipkart.android.proteus.value.Layout;
-import com.flipkart.android.proteus.value.Value;
-import com.google.gson.JsonObject;
-import com.google.gson.stream.JsonReader;
 import com.tyron.builder.project.api.FileManager;
 import com.tyron.layoutpreview.BuildConfig;
 import com.tyron.layoutpreview.convert.ConvertException;
-import com.tyron.layoutpreview.convert.XmlToJsonConverter;
-import com.tyron.layoutpreview.convert.adapter.ProteusTypeAdapterFactory;
+import com.tyron.layoutpreview.convert.XmlToLayoutConverter;
 
 import org.xmlpull.v1.XmlPullParserException;
 
 import java.io.File;
 import java.io.IOException;
-import java.io.StringReader;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
@@ -31,6 +26,7 @@ public class ResourceLayoutParser {
     private final ProteusContext mContext;
     private final File mResourceDirectory;
     private final FileManager mFileManager;
+    private final XmlToLayoutConverter mConverter;
 
     private final Map<String, Layout> layoutMap = new HashMap<>();
 
@@ -38,6 +34,7 @@ public class ResourceLayoutParser {
         mContext = context;
         mResourceDirectory = dir;
         mFileManager = fileManager;
+        mConverter = new XmlToLayoutConverter(context);
 
         layoutMap.putAll(getDefaultLayouts());
     }
@@ -57,9 +54,9 @@ public class ResourceLayoutParser {
 
         for (File file : xmlFiles) {
             try {
-                Value layout = parseLayout(file);
-                if (layout != null && layout.isLayout()) {
-                    map.put(getName(file), layout.getAsLayout());
+                Layout layout = parseLayout(file);
+                if (layout != null) {
+                    map.put(getName(file), layout);
                 }
             } catch (IOException | XmlPullParserException | ConvertException e) {
                 if (BuildConfig.DEBUG) {
@@ -72,14 +69,10 @@ public class ResourceLayoutParser {
     }
 
     @Nullable
-    private Value parseLayout(File file) throws ConvertException, XmlPullParserException, IOException {
+    private Layout parseLayout(File file) throws ConvertException, XmlPullParserException, IOException {
         Optional<CharSequence> fileContent = mFileManager.getFileContent(file);
         if (fileContent.isPresent()) {
-            String contents = fileContent.get().toString();
-            JsonObject jsonObject = new XmlToJsonConverter()
-                    .convert(contents);
-            return new ProteusTypeAdapterFactory(mContext).VALUE_TYPE_ADAPTER
-                    .read(new JsonReader(new StringReader(jsonObject.toString())), false);
+            return mConverter.convert(fileContent.get().toString());
         }
         return null;
     }
@@ -21,8 +21,11 @@ import org.eclipse.lemminx.dom.DOMElement;
 import org.eclipse.lemminx.dom.DOMNode;
 
 import java.lang.reflect.Constructor;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Objects;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
 
@@ -33,6 +36,9 @@ public class EditorInflater {
     private static final HashMap<String, Constructor<? extends View>> sConstructorMap =
             new HashMap<String, Constructor<? extends View>>();
 
+    private static final String ID_ATTRIBUTE =
+            SdkConstants.ANDROID_NS_NAME_PREFIX + SdkConstants.ATTR_ID;
+
     static final Class<?>[] mConstructorSignature = new Class[]{Context.class};
     private static final StackTraceElement[] EMPTY_STACK_TRACE = new StackTraceElement[0];
 
@@ -102,39 +108,153 @@ public class EditorInflater {
     }
 
     void rInflate(DOMElement node, View parent, Context context, boolean finishInflate) {
+        for (DOMElement element : getChildElements(node)) {
+            addChild(element, (ViewGroup) parent, context, -1);
+        }
+    }
+
+    /**
+     * Inflates the element along with its children and adds it to the parent.
+     *
+     * @param index the position to add the view at, or -1 to add it at the end
+     */
+    private void addChild(DOMElement element, ViewGroup parent, Context context, int index) {
+        final String tag = element.getTagName();
+
+        if (SdkConstants.REQUEST_FOCUS.equals(tag)) {
+            throw new UnsupportedOperationException("TODO");
+        } else if (SdkConstants.TAG.equals(tag)) {
+            throw new UnsupportedOperationException("TODO");
+        } else if (SdkConstants.FN_FRAMEWORK_INCLUDE.equals(tag)) {
+            throw new UnsupportedOperationException("TODO");
+        } else if (SdkConstants.VIEW_MERGE.equals(tag)) {
+            throw new UnsupportedOperationException("TODO");
+        } else {
+            final EditorView view = createViewFromTag(parent, element, context);
+            final ViewGroup.LayoutParams params = ViewGroupUtils.generateDefaultLayoutParams(parent);
+            rInflateChildren(element, view.getAsView(), true);
+            parent.addView(view.getAsView(), index, params);
+
+            view.getViewManager().updateAttributes(element.getAttributeNodes());
+        }
+    }
+
+    /**
+     * Updates a view tree that was inflated by this inflater so it matches the document, instead
+     * of inflating the whole tree again.
+     *
+     * <p>Elements are matched to the existing views by their tag and {@code android:id}, or by
+     * their tag and position when they have no id. Only the attributes that have changed are
+     * applied to a matched view, the views that can not be matched or that had attributes
+     * removed are inflated again along with their children. Since the other views are kept,
+     * their state such as the scroll position and selection is kept as well.
+     *
+     * @param document the edited document
+     * @param view the root view that was returned by {@link #inflate(DOMDocument, ViewGroup,
+     *             boolean)} with {@code attachToRoot} set to false
+     * @return the given view if it was updated, or a newly inflated view if the root element
+     * has changed. The caller is responsible for replacing the old view with the new one.
+     */
+    public View update(@NonNull DOMDocument document, @NonNull View view) {
+        List<DOMNode> roots = DOMUtils.getRootElements(document);
+        if (roots.size() != 1 || !(roots.get(0) instanceof DOMElement)) {
+            return inflate(document, null, false);
+        }
+        DOMElement rootElement = ((DOMElement) roots.get(0));
+        if (!canUpdate(view, rootElement)) {
+            return inflate(document, null, false);
+        }
+
+        ViewManager viewManager = ((EditorView) view).getViewManager();
+        if (!viewManager.updateChangedAttributes(rootElement.getAttributeNodes())) {
+            return inflate(document, null, false);
+        }
+        if (view instanceof ViewGroup) {
+            updateChildren(rootElement, (ViewGroup) view);
+        }
+        return view;
+    }
+
+    private void updateChildren(DOMElement node, ViewGroup parent) {
+        List<DOMElement> elements = getChildElements(node);
+
+        List<View> unmatched = new ArrayList<>(parent.getChildCount());
+        for (int i = 0; i < parent.getChildCount(); i++) {
+            unmatched.add(parent.getChildAt(i));
+        }
+        View[] matched = new View[elements.size()];
+        for (int i = 0; i < elements.size(); i++) {
+            matched[i] = findMatchingView(unmatched, elements.get(i));
+            if (matched[i] != null) {
+                unmatched.remove(matched[i]);
+            }
+        }
+        for (View view : unmatched) {
+            parent.removeView(view);
+        }
+
+        // the views before the index are already in place, so a matched view can only be after it
+        for (int i = 0; i < elements.size(); i++) {
+            DOMElement element = elements.get(i);
+            View view = matched[i];
+            if (view == null) {
+                addChild(element, parent, parent.getContext(), i);
+                continue;
+            }
+
+            int currentIndex = parent.indexOfChild(view);
+            if (currentIndex != i) {
+                parent.removeViewAt(currentIndex);
+                parent.addView(view, i, view.getLayoutParams());
+            }
+
+            ViewManager viewManager = ((EditorView) view).getViewManager();
+            if (!viewManager.updateChangedAttributes(element.getAttributeNodes())) {
+                parent.removeViewAt(i);
+                addChild(element, parent, parent.getContext(), i);
+                continue;
+            }
+            if (view instanceof ViewGroup) {
+                updateChildren(element, (ViewGroup) view);
+            }
+        }
+    }
+
+    @Nullable
+    private View findMatchingView(List<View> views, DOMElement element) {
+        String id = element.getAttribute(ID_ATTRIBUTE);
+        for (View view : views) {
+            if (!canUpdate(view, element)) {
+                continue;
+            }
+            String viewId = ((EditorView) view).getViewManager().getAttributeValue(ID_ATTRIBUTE);
+            if (Objects.equals(id, viewId)) {
+                return view;
+            }
+        }
+        return null;
+    }
+
+    private boolean canUpdate(View view, DOMElement element) {
+        if (!(view instanceof EditorView)) {
+            return false;
+        }
+        String tagName = ((EditorView) view).getViewManager().getTagName();
+        return element.getTagName().equals(tagName);
+    }
+
+    private static List<DOMElement> getChildElements(DOMElement node) {
         List<DOMNode> children = node.getChildren();
         if (children == null || children.isEmpty()) {
-            return;
+            return Collections.emptyList();
         }
 
-        List<DOMElement> elements = children.stream()
+        return children.stream()
                 .filter(it -> it instanceof DOMElement)
                 .map(it -> (DOMElement) it)
                 .collect(Collectors.toList());
-        for (DOMElement element : elements) {
-            final String tag = element.getTagName();
-
-            if (SdkConstants.REQUEST_FOCUS.equals(tag)) {
-                throw new UnsupportedOperationException("TODO");
-            } else if (SdkConstants.TAG.equals(tag)) {
-                throw new UnsupportedOperationException("TODO");
-            } else if (SdkConstants.FN_FRAMEWORK_INCLUDE.equals(tag)) {
-                throw new UnsupportedOperationException("TODO");
-            } else if (SdkConstants.VIEW_MERGE.equals(tag)) {
-                throw new UnsupportedOperationException("TODO");
-            } else {
-                final EditorView view = createViewFromTag(parent, element, context);
-                final ViewGroup viewGroup = (ViewGroup) parent;
-                final ViewGroup.LayoutParams params = ViewGroupUtils.generateDefaultLayoutParams(viewGroup);
-                rInflateChildren(element, view.getAsView(), true);
-                viewGroup.addView(view.getAsView(), params);
-
-                view.getViewManager().updateAttributes(element.getAttributeNodes());
-            }
-        }
     }
 
-
     public EditorView createViewFromTag(@Nullable View parent,
                                   @NonNull DOMElement element,
                                   @NonNull Context context) {
@@ -168,6 +288,7 @@ public class EditorInflater {
             } finally {
                 mConstructorArgs[0] = lastContext;
             }
+            view.getViewManager().setTagName(element.getTagName());
             return view;
         } catch (ClassNotFoundException e) {
             final InflateException exception = new InflateException(e);
@@ -3,6 +3,7 @@ package com.tyron.layoutpreview2;
 import android.view.View;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 
 import org.eclipse.lemminx.dom.DOMAttr;
 
@@ -26,4 +27,31 @@ public interface ViewManager {
      * @param attrs the attributes
      */
     void updateAttributes(@NonNull List<DOMAttr> attrs);
+
+    /**
+     * Applies only the attributes whose values have changed since they were last applied.
+     * Attributes can not be reverted once applied, so nothing is applied if an attribute has been
+     * removed and the view has to be inflated again.
+     *
+     * @param attrs the new attributes of the view
+     * @return false if an attribute has been removed and the attributes were not applied
+     */
+    boolean updateChangedAttributes(@NonNull List<DOMAttr> attrs);
+
+    /**
+     * Return the value of the attribute when it was last applied.
+     *
+     * @param name the qualified name of the attribute, e.g. {@code android:id}
+     * @return the value, or null if the attribute has not been applied
+     */
+    @Nullable
+    String getAttributeValue(@NonNull String name);
+
+    /**
+     * Return the XML tag that this view was inflated from.
+     */
+    @Nullable
+    String getTagName();
+
+    void setTagName(@NonNull String tagName);
 }
@@ -3,6 +3,7 @@ package com.tyron.layoutpreview2.manager;
 import android.view.View;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 import androidx.annotation.VisibleForTesting;
 
 import com.google.common.collect.ImmutableSet;
@@ -12,8 +13,12 @@ import com.tyron.layoutpreview2.attr.AttributeApplier;
 
 import org.eclipse.lemminx.dom.DOMAttr;
 
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
 
 public class ViewManagerImpl implements ViewManager {
@@ -22,6 +27,14 @@ public class ViewManagerImpl implements ViewManager {
 
     private final Set<DOMAttr> mAppliedAttrs = new HashSet<>();
 
+    /**
+     * The values of the attributes when they were last applied, keyed by their qualified name.
+     * The DOM is parsed again on every edit so the {@link DOMAttr} instances can not be compared.
+     */
+    private Map<String, String> mAttributeValues = new HashMap<>();
+
+    private String mTagName;
+
     public ViewManagerImpl(@NonNull View view) {
         mView = view;
     }
@@ -35,7 +48,36 @@ public class ViewManagerImpl implements ViewManager {
     @Override
     public void updateAttributes(@NonNull List<DOMAttr> attrs) {
         mAppliedAttrs.clear();
+        mAttributeValues = getAttributeValues(attrs);
+
+        applyAttributes(attrs);
+    }
+
+    @Override
+    public boolean updateChangedAttributes(@NonNull List<DOMAttr> attrs) {
+        Map<String, String> values = getAttributeValues(attrs);
+        if (!values.keySet().containsAll(mAttributeValues.keySet())) {
+            return false;
+        }
+
+        List<DOMAttr> changed = new ArrayList<>();
+        for (DOMAttr attr : attrs) {
+            if (!Objects.equals(mAttributeValues.get(attr.getName()), attr.getValue())) {
+                changed.add(attr);
+            }
+        }
+        mAppliedAttrs.clear();
+        mAppliedAttrs.addAll(attrs);
+        mAttributeValues = values;
+
+        if (!changed.isEmpty()) {
+            applyAttributes(changed);
+            mView.requestLayout();
+        }
+        return true;
+    }
 
+    private void applyAttributes(@NonNull List<DOMAttr> attrs) {
         final EditorContext editorContext = EditorContext.getEditorContext(mView.getContext());
         final ImmutableSet<AttributeApplier> attributeAppliers =
                 editorContext.getAttributeAppliers();
@@ -47,6 +89,31 @@ public class ViewManagerImpl implements ViewManager {
         });
     }
 
+    @Nullable
+    @Override
+    public String getAttributeValue(@NonNull String name) {
+        return mAttributeValues.get(name);
+    }
+
+    @Nullable
+    @Override
+    public String getTagName() {
+        return mTagName;
+    }
+
+    @Override
+    public void setTagName(@NonNull String tagName) {
+        mTagName = tagName;
+    }
+
+    private static Map<String, String> getAttributeValues(@NonNull List<DOMAttr> attrs) {
+        Map<String, String> values = new HashMap<>(attrs.size());
+        for (DOMAttr attr : attrs) {
+            values.put(attr.getName(), attr.getValue());
+        }
+        return values;
+    }
+
     @VisibleForTesting
     public Set<DOMAttr> getAppliedAttrs() {
         return mAppliedAttrs;
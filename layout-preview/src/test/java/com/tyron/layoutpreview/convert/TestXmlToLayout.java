@@ -0,0 +1,103 @@
+package com.tyron.layoutpreview.convert;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import androidx.test.core.app.ApplicationProvider;
+
+import com.flipkart.android.proteus.Proteus;
+import com.flipkart.android.proteus.ProteusBuilder;
+import com.flipkart.android.proteus.ProteusContext;
+import com.flipkart.android.proteus.value.Layout;
+import com.flipkart.android.proteus.value.Value;
+import com.google.gson.JsonObject;
+import com.google.gson.stream.JsonReader;
+import com.tyron.layoutpreview.convert.adapter.ProteusTypeAdapterFactory;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.io.StringReader;
+
+@RunWith(RobolectricTestRunner.class)
+public class TestXmlToLayout {
+
+    private static final String TEST_LAYOUT = "<?xml version=\"1.0\" encoding=\"utf-8\"?>\n" +
+            "<LinearLayout xmlns:android=\"http://schemas.android.com/apk/res/android\"\n" +
+            "    android:layout_width=\"match_parent\"\n" +
+            "    android:layout_height=\"match_parent\"\n" +
+            "    android:orientation=\"vertical\">\n" +
+            "\n" +
+            "    <TextView\n" +
+            "        android:id=\"@+id/first\"\n" +
+            "        android:layout_width=\"wrap_content\"\n" +
+            "        android:layout_height=\"wrap_content\"\n" +
+            "        android:padding=\"16dp\"\n" +
+            "        android:textColor=\"#ff0000\"\n" +
+            "        android:text=\"First\" />\n" +
+            "\n" +
+            "    <TextView\n" +
+            "        android:id=\"@+id/second\"\n" +
+            "        android:layout_width=\"wrap_content\"\n" +
+            "        android:layout_height=\"wrap_content\"\n" +
+            "        android:padding=\"16dp\"\n" +
+            "        android:textColor=\"#ff0000\"\n" +
+            "        android:text=\"Second\" />\n" +
+            "\n" +
+            "    <com.example.UnknownView\n" +
+            "        android:layout_width=\"match_parent\"\n" +
+            "        android:layout_height=\"wrap_content\" />\n" +
+            "</LinearLayout>";
+
+    private ProteusContext mContext;
+
+    @Before
+    public void setup() {
+        Proteus proteus = new ProteusBuilder().build();
+        mContext = proteus.createContextBuilder(ApplicationProvider.getApplicationContext())
+                .build();
+        ProteusTypeAdapterFactory.PROTEUS_INSTANCE_HOLDER.setProteus(proteus);
+    }
+
+    @Test
+    public void testSameAsJsonConversion() throws Exception {
+        Layout layout = new XmlToLayoutConverter(mContext).convert(TEST_LAYOUT);
+
+        JsonObject object = new XmlToJsonConverter().convert(TEST_LAYOUT);
+        Value read = new ProteusTypeAdapterFactory(mContext).VALUE_TYPE_ADAPTER
+                .read(new JsonReader(new StringReader(object.toString())), false);
+
+        LayoutToXmlConverter converter = new LayoutToXmlConverter(mContext);
+        assertThat(converter.convert(layout))
+                .isEqualTo(converter.convert(read.getAsLayout()));
+    }
+
+    @Test
+    public void testCompiledValuesAreShared() throws Exception {
+        XmlToLayoutConverter converter = new XmlToLayoutConverter(mContext);
+        Layout first = getChild(converter.convert(TEST_LAYOUT), 0);
+        Layout second = getChild(converter.convert(TEST_LAYOUT), 1);
+
+        assertThat(first.attributes).isNotNull();
+        assertThat(second.attributes).isNotNull();
+        for (int i = 0; i < first.attributes.size(); i++) {
+            Layout.Attribute attribute = first.attributes.get(i);
+            Layout.Attribute other = second.attributes.get(i);
+            assertThat(other.id).isEqualTo(attribute.id);
+            if (attribute.value.toString().equals(other.value.toString())) {
+                assertThat(other.value).isSameInstanceAs(attribute.value);
+            }
+        }
+    }
+
+    private static Layout getChild(Layout layout, int index) {
+        assertThat(layout.attributes).isNotNull();
+        for (Layout.Attribute attribute : layout.attributes) {
+            if (attribute.value.isArray()) {
+                return attribute.value.getAsArray().get(index).getAsLayout();
+            }
+        }
+        throw new AssertionError("Layout has no children");
+    }
+}
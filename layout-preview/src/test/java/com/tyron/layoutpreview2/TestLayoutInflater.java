@@ -102,4 +102,42 @@ public class TestLayoutInflater {
         TextView textView = ((TextView) child);
         assert "TEST".equals(textView.getText().toString()) : textView.getText().toString();
     }
+
+    @Language("XML")
+    private static final String TEST_UPDATED_LAYOUT = "<LinearLayout\n" +
+                                                      "    xmlns:android=\"http://schemas.android" +
+                                                      ".com/apk/res/android\"\n" +
+                                                      "    android:layout_width=\"match_parent\"\n" +
+                                                      "    android:layout_height=\"100dp\">\n" +
+                                                      "    <TextView\n" +
+                                                      "        android:layout_height=\"wrap_content\"\n" +
+                                                      "        android:layout_width=\"match_parent\"\n" +
+                                                      "        android:text=\"Updated\"/>\n" +
+                                                      "    <TextView\n" +
+                                                      "        android:layout_height=\"wrap_content\"\n" +
+                                                      "        android:layout_width=\"match_parent\"\n" +
+                                                      "        android:text=\"Added\"/>\n" +
+                                                      "</LinearLayout>";
+
+    @Test
+    public void testUpdate() {
+        DOMDocument document = DOMParser.getInstance().parse(TEST_LAYOUT, "", null);
+        DOMUtils.setNamespace(document, ResourceNamespace.fromPackageName("com.tyron.test"));
+        LinearLayout root = (LinearLayout) mInflater.inflate(document, null, false);
+        View firstChild = root.getChildAt(0);
+
+        DOMDocument updated = DOMParser.getInstance().parse(TEST_UPDATED_LAYOUT, "", null);
+        DOMUtils.setNamespace(updated, ResourceNamespace.fromPackageName("com.tyron.test"));
+        View result = mInflater.update(updated, root);
+
+        // the existing views should be kept and only be updated
+        assert result == root;
+        assert root.getChildCount() == 2;
+        assert root.getChildAt(0) == firstChild;
+
+        TextView first = (TextView) root.getChildAt(0);
+        assert "Updated".equals(first.getText().toString()) : first.getText().toString();
+        TextView second = (TextView) root.getChildAt(1);
+        assert "Added".equals(second.getText().toString()) : second.getText().toString();
+    }
 }
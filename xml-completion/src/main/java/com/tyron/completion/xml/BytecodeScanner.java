@@ -1,25 +1,36 @@
 package com.tyron.completion.xml;
 
 import android.content.Context;
-import android.util.AttributeSet;
 import android.view.View;
 import android.view.ViewGroup;
 
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
 import com.google.common.collect.ImmutableSet;
+import com.google.common.hash.Hashing;
 import com.tyron.builder.BuildModule;
-import com.tyron.completion.xml.util.PartialClassParser;
-
-import org.apache.bcel.Repository;
-import org.apache.bcel.classfile.JavaClass;
-import org.apache.bcel.classfile.Method;
-import org.apache.bcel.generic.Type;
+import com.tyron.completion.xml.model.ViewClass;
+import com.tyron.completion.xml.util.ClassHeaderReader;
+import com.tyron.completion.xml.util.ClassHeaderReader.ClassHeader;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
-import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Enumeration;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.function.Consumer;
 import java.util.function.Predicate;
@@ -27,13 +38,24 @@ import java.util.jar.JarEntry;
 import java.util.jar.JarFile;
 
 /**
- * Scans jar files and saves all the class files that extends {@link View} and has the
- * appropriate constructors to be inflated in XML.
+ * Scans jar files and finds all the classes that extends {@link View}.
+ *
+ * <p>Only the header of each class file is read, the name of the class, its super class and
+ * whether it has a view constructor. The headers of a jar are saved in an index file named
+ * after the path and the stamp of the jar so they are only read again when the jar changes,
+ * the index of the previous stamp is deleted at that point. Classes that directly extend
+ * {@link Object} are not indexed since they can not be the super class of a view.
  */
 public class BytecodeScanner {
 
     private static final Predicate<String> CLASS_NAME_FILTER = s -> s.endsWith(".class");
 
+    private static final String INDEX_DIRECTORY = "view-class-index";
+    private static final String INDEX_EXTENSION = ".idx";
+    /** Separates the hash of the path of a jar from the hash of its stamp in index names. */
+    private static final char INDEX_STAMP_SEPARATOR = '-';
+    private static final int INDEX_VERSION = 1;
+
     private static final Set<String> sIgnoredPaths;
 
     static {
@@ -56,43 +78,82 @@ public class BytecodeScanner {
         sIgnoredPaths = builder.build();
     }
 
-    public static void loadJar(File jar) throws IOException {
+    /**
+     * The view classes of the android jar, these are kept since every view class of a library
+     * eventually extends one of them.
+     */
+    private static volatile Map<String, ClassHeader> sBootstrapClasses;
+
+    /**
+     * Returns the headers of the classes in the jar that may be part of a view hierarchy,
+     * using the index of the jar if it is up to date.
+     */
+    @NonNull
+    public static Map<String, ClassHeader> loadJar(File jar) throws IOException {
+        File indexFile = getIndexFile(jar);
+        if (indexFile != null && indexFile.exists()) {
+            try {
+                return readIndex(indexFile);
+            } catch (IOException e) {
+                // the index is corrupted, scan the jar again
+            }
+        }
+
+        Map<String, ClassHeader> classes = new HashMap<>();
         try (JarFile jarFile = new JarFile(jar)) {
             iterateClasses(jarFile, element -> {
-                PartialClassParser classParser =
-                        new PartialClassParser(jar.getAbsolutePath(), element.getName());
-                try {
-                    Repository.addClass(classParser.parse());
-                } catch (IOException e) {
-                    // ignored, keep parsing other classes
+                ClassHeader header = readHeader(jarFile, element);
+                if (header != null && !Object.class.getName().equals(header.getSuperClassName())) {
+                    classes.put(header.getClassName(), header);
                 }
             });
         }
+        writeIndexQuietly(indexFile, classes.values());
+        return classes;
     }
 
-    public static List<JavaClass> scan(File file) throws IOException {
-        List<JavaClass> viewClasses = new ArrayList<>();
-        try (JarFile jarFile = new JarFile(file)) {
-            iterateClasses(jarFile, element -> {
-                String fqn = element.getName().replace('/', '.')
-                        .substring(0, element.getName().length() - ".class".length());
-                try {
-                    JavaClass javaClass = Repository.lookupClass(fqn);
-                    if (isViewClass(javaClass)) {
-                        viewClasses.add(javaClass);
-                    }
-                } catch (ClassNotFoundException e) {
-                    // should not happen, the class should already be loaded here.
-                }
+    /**
+     * Finds the view classes of the jar.
+     *
+     * @param file the jar to scan
+     * @param classes the classes of the jars that the jar depends on, used to look up the
+     *                super classes that are not in the jar itself
+     */
+    public static List<ViewClass> scan(File file,
+                                       Map<String, ClassHeader> classes) throws IOException {
+        Map<String, ClassHeader> jarClasses = loadJar(file);
+        List<ViewClass> viewClasses = new ArrayList<>();
+        for (ClassHeader header : jarClasses.values()) {
+            ViewClass viewClass = createViewClass(header, name -> {
+                ClassHeader found = jarClasses.get(name);
+                return found != null ? found : classes.get(name);
             });
+            if (viewClass != null) {
+                viewClasses.add(viewClass);
+            }
         }
         return viewClasses;
     }
 
-    public static boolean isViewGroup(JavaClass javaClass) {
-        JavaClass[] superClasses = getSuperClasses(javaClass);
-        return Arrays.stream(superClasses)
-                .anyMatch(it -> ViewGroup.class.getName().equals(it.getClassName()));
+    /**
+     * Returns a view class of the android jar, or {@code null} if it is not a view class or the
+     * android jar has not been scanned.
+     */
+    @Nullable
+    public static ViewClass getBootstrapViewClass(String className) {
+        Map<String, ClassHeader> bootstrapClasses = sBootstrapClasses;
+        if (bootstrapClasses == null) {
+            return null;
+        }
+        ClassHeader header = bootstrapClasses.get(className);
+        if (header == null) {
+            return null;
+        }
+        return createViewClass(header, name -> null);
+    }
+
+    public static boolean isViewGroup(ViewClass viewClass) {
+        return viewClass.getSuperClasses().contains(ViewGroup.class.getName());
     }
 
     public static void scanBootstrapIfNeeded() {
@@ -101,88 +162,211 @@ public class BytecodeScanner {
         }
 
         File androidJar = BuildModule.getAndroidJar();
-        if (androidJar != null && androidJar.exists()) {
-            try (JarFile jarFile = new JarFile(androidJar)) {
-                iterateClasses(jarFile, element -> {
-                    String name = element.getName();
-                    String packagePath = name.substring(0, name.lastIndexOf('/'));
-                    if (sIgnoredPaths.contains(packagePath)) {
-                        return;
-                    }
-                    if (packagePath.startsWith("java/")) {
-                        return;
-                    }
-                    PartialClassParser classParser =
-                            new PartialClassParser(androidJar.getAbsolutePath(), name);
-                    try {
-                        Repository.addClass(classParser.parse());
-                    } catch (IOException e) {
-                        // ignored, keep parsing other classes
-                    }
-
-                });
+        if (androidJar == null || !androidJar.exists()) {
+            return;
+        }
+
+        File indexFile = getIndexFile(androidJar);
+        if (indexFile != null && indexFile.exists()) {
+            try {
+                sBootstrapClasses = readIndex(indexFile);
+                return;
             } catch (IOException e) {
-                // ignored
+                // the index is corrupted, scan the jar again
             }
         }
-    }
 
-    private static boolean needScanBootstrap() {
-        try {
-            Repository.getRepository().loadClass(View.class);
-            return false;
-        } catch (ClassNotFoundException e) {
-            return true;
+        Map<String, ClassHeader> classes = new HashMap<>();
+        try (JarFile jarFile = new JarFile(androidJar)) {
+            iterateClasses(jarFile, element -> {
+                String name = element.getName();
+                int index = name.lastIndexOf('/');
+                String packagePath = index == -1 ? "" : name.substring(0, index);
+                if (sIgnoredPaths.contains(packagePath)) {
+                    return;
+                }
+                if (packagePath.startsWith("java/")) {
+                    return;
+                }
+                ClassHeader header = readHeader(jarFile, element);
+                if (header != null) {
+                    classes.put(header.getClassName(), header);
+                }
+            });
+        } catch (IOException e) {
+            return;
+        }
+
+        // only keep the view classes, the rest are not needed to resolve library views
+        Map<String, ClassHeader> viewClasses = new HashMap<>();
+        for (ClassHeader header : classes.values()) {
+            if (createViewClass(header, classes::get) != null) {
+                viewClasses.put(header.getClassName(), header);
+            }
         }
+        writeIndexQuietly(indexFile, viewClasses.values());
+        sBootstrapClasses = viewClasses;
     }
 
-    private static boolean isViewClass(JavaClass javaClass) {
-        JavaClass[] superClasses = getSuperClasses(javaClass);
-        return Arrays.stream(superClasses)
-                .anyMatch(it -> View.class.getName().equals(it.getClassName()));
+    private static boolean needScanBootstrap() {
+        return sBootstrapClasses == null;
     }
 
     /**
-     * Get the array of java classes even if the root class does not exist
+     * Resolves the super classes of the class, looking them up in the given function and then
+     * in the android jar.
      *
-     * @param javaClass The java class
-     * @return array of super classes
+     * @return the view class, or {@code null} if the class does not extend {@link View}
      */
-    public static JavaClass[] getSuperClasses(JavaClass javaClass) {
-        List<JavaClass> superClasses = new ArrayList<>();
-        JavaClass current = javaClass;
-        while (current != null && current.getSuperclassName() != null) {
-            JavaClass lookupClass;
-            try {
-                lookupClass = Repository.lookupClass(current.getSuperclassName());
-            } catch (ClassNotFoundException e) {
-                lookupClass = null;
+    @Nullable
+    private static ViewClass createViewClass(ClassHeader header, LookupFunction lookup) {
+        if (View.class.getName().equals(header.getClassName())) {
+            return new ViewClass(header.getClassName(), Collections.singletonList(
+                    Object.class.getName()), header.hasViewConstructor());
+        }
+
+        Map<String, ClassHeader> bootstrapClasses = sBootstrapClasses;
+        List<String> superClasses = new ArrayList<>();
+        String superClassName = header.getSuperClassName();
+        while (superClassName != null) {
+            if (superClasses.contains(superClassName)) {
+                // malformed hierarchy
+                return null;
+            }
+            superClasses.add(superClassName);
+            if (View.class.getName().equals(superClassName)) {
+                superClasses.add(Object.class.getName());
+                return new ViewClass(header.getClassName(), superClasses,
+                        header.hasViewConstructor());
             }
 
-            if (lookupClass != null) {
-                superClasses.add(lookupClass);
+            ClassHeader superClass = lookup.lookup(superClassName);
+            if (superClass == null && bootstrapClasses != null) {
+                superClass = bootstrapClasses.get(superClassName);
             }
-            current = lookupClass;
+            superClassName = superClass != null ? superClass.getSuperClassName() : null;
+        }
+        return null;
+    }
+
+    private interface LookupFunction {
+        @Nullable
+        ClassHeader lookup(String className);
+    }
+
+    /**
+     * Get the names of the super classes of the view class
+     *
+     * @param viewClass The view class
+     * @return list of super classes, starting from the direct super class
+     */
+    public static List<String> getSuperClasses(ViewClass viewClass) {
+        return viewClass.getSuperClasses();
+    }
+
+    @Nullable
+    private static ClassHeader readHeader(JarFile jarFile, JarEntry entry) {
+        try (InputStream inputStream = new BufferedInputStream(jarFile.getInputStream(entry))) {
+            return ClassHeaderReader.read(inputStream);
+        } catch (IOException e) {
+            // ignored, keep reading other classes
+            return null;
+        }
+    }
+
+    @Nullable
+    private static File getIndexFile(File jar) {
+        Context context = BuildModule.getContext();
+        if (context == null) {
+            return null;
+        }
+        String pathHash = Hashing.sha256()
+                .hashString(jar.getAbsolutePath(), StandardCharsets.UTF_8)
+                .toString();
+        String stampHash = Hashing.sha256().newHasher()
+                .putLong(jar.length())
+                .putLong(jar.lastModified())
+                .hash()
+                .toString();
+        return new File(new File(context.getCacheDir(), INDEX_DIRECTORY),
+                pathHash + INDEX_STAMP_SEPARATOR + stampHash + INDEX_EXTENSION);
+    }
+
+    /**
+     * Deletes the indexes of the same jar that were written for a previous stamp, and the
+     * indexes of older versions that were not named after the path of the jar.
+     */
+    private static void deleteStaleIndexes(File indexFile) {
+        String name = indexFile.getName();
+        String pathPrefix = name.substring(0, name.indexOf(INDEX_STAMP_SEPARATOR) + 1);
+        File[] files = indexFile.getParentFile().listFiles((dir, fileName) ->
+                fileName.endsWith(INDEX_EXTENSION)
+                && !fileName.equals(name)
+                && (fileName.startsWith(pathPrefix)
+                    || fileName.indexOf(INDEX_STAMP_SEPARATOR) == -1));
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            //noinspection ResultOfMethodCallIgnored
+            file.delete();
         }
-        return superClasses.toArray(new JavaClass[0]);
     }
 
-    private static boolean containsViewConstructors(Method[] methods) {
-        for (Method method : methods) {
-            if (!"<init>".equals(method.getName())) {
-                continue;
+    private static Map<String, ClassHeader> readIndex(File indexFile) throws IOException {
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(indexFile)))) {
+            if (in.readInt() != INDEX_VERSION) {
+                throw new IOException("Unsupported index version");
             }
+            int count = in.readInt();
+            Map<String, ClassHeader> classes = new HashMap<>(count);
+            for (int i = 0; i < count; i++) {
+                String className = in.readUTF();
+                String superClassName = in.readBoolean() ? in.readUTF() : null;
+                boolean hasViewConstructor = in.readBoolean();
+                classes.put(className,
+                        new ClassHeader(className, superClassName, hasViewConstructor));
+            }
+            return classes;
+        }
+    }
 
-            Type[] argumentTypes = method.getArgumentTypes();
-            if (argumentTypes.length == 2) {
-                if (Context.class.getName().equals(argumentTypes[0].toString())) {
-                    if (AttributeSet.class.getName().equals(argumentTypes[1].toString())) {
-                        return true;
-                    }
+    private static void writeIndexQuietly(@Nullable File indexFile,
+                                          Collection<ClassHeader> classes) {
+        if (indexFile == null) {
+            return;
+        }
+        File parent = indexFile.getParentFile();
+        if (parent == null || (!parent.exists() && !parent.mkdirs())) {
+            return;
+        }
+
+        File tempFile = new File(parent, indexFile.getName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(tempFile)))) {
+            out.writeInt(INDEX_VERSION);
+            out.writeInt(classes.size());
+            for (ClassHeader header : classes) {
+                out.writeUTF(header.getClassName());
+                String superClassName = header.getSuperClassName();
+                out.writeBoolean(superClassName != null);
+                if (superClassName != null) {
+                    out.writeUTF(superClassName);
                 }
+                out.writeBoolean(header.hasViewConstructor());
             }
+        } catch (IOException e) {
+            //noinspection ResultOfMethodCallIgnored
+            tempFile.delete();
+            return;
+        }
+        if (!tempFile.renameTo(indexFile)) {
+            //noinspection ResultOfMethodCallIgnored
+            tempFile.delete();
+            return;
         }
-        return false;
+        deleteStaleIndexes(indexFile);
     }
 
     public static void iterateClasses(JarFile jarFile, Consumer<JarEntry> consumer) {
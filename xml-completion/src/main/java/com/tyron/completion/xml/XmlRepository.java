@@ -28,11 +28,11 @@ import com.tyron.completion.index.CompilerService;
 import com.tyron.completion.xml.model.AttributeInfo;
 import com.tyron.completion.xml.model.DeclareStyleable;
 import com.tyron.completion.xml.model.Format;
+import com.tyron.completion.xml.model.ViewClass;
+import com.tyron.completion.xml.util.ClassHeaderReader.ClassHeader;
 import com.tyron.completion.xml.util.StyleUtils;
 import com.tyron.xml.completion.repository.ResourceRepository;
 
-import org.apache.bcel.Repository;
-import org.apache.bcel.classfile.JavaClass;
 import org.xmlpull.v1.XmlPullParser;
 import org.xmlpull.v1.XmlPullParserException;
 import org.xmlpull.v1.XmlPullParserFactory;
@@ -42,6 +42,7 @@ import java.io.FileReader;
 import java.io.IOException;
 import java.io.Reader;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -52,7 +53,7 @@ public class XmlRepository {
     private final Map<String, DeclareStyleable> mDeclareStyleables = new TreeMap<>();
     private final Map<String, DeclareStyleable> mManifestAttrs = new TreeMap<>();
     private final Map<String, AttributeInfo> mExtraAttributes = new TreeMap<>();
-    private final Map<String, JavaClass> mJavaViewClasses = new TreeMap<>();
+    private final Map<String, ViewClass> mJavaViewClasses = new TreeMap<>();
 
     private boolean mInitialized = false;
     private ResourceRepository mRepository;
@@ -71,7 +72,7 @@ public class XmlRepository {
         return mDeclareStyleables;
     }
 
-    public Map<String, JavaClass> getJavaViewClasses() {
+    public Map<String, ViewClass> getJavaViewClasses() {
         return mJavaViewClasses;
     }
 
@@ -89,6 +90,8 @@ public class XmlRepository {
         mRepository = new ResourceRepository(module);
         mRepository.initialize();
 
+        // the headers of the library classes are only needed while the libraries are scanned
+        Map<String, ClassHeader> libraryClasses = new HashMap<>();
         for (File library : module.getLibraries()) {
             File parent = library.getParentFile();
             if (parent == null) {
@@ -97,7 +100,7 @@ public class XmlRepository {
             File classesFile = new File(parent, "classes.jar");
             if (classesFile.exists()) {
                 try {
-                    BytecodeScanner.loadJar(classesFile);
+                    libraryClasses.putAll(BytecodeScanner.loadJar(classesFile));
                 } catch (IOException ignored) {
 
                 }
@@ -106,11 +109,11 @@ public class XmlRepository {
 
         for (File library : module.getLibraries()) {
             try {
-                List<JavaClass> scan =
-                        BytecodeScanner.scan(library);
-                for (JavaClass javaClass : scan) {
-                    StyleUtils.putStyles(javaClass);
-                    mJavaViewClasses.put(javaClass.getClassName(), javaClass);
+                List<ViewClass> scan =
+                        BytecodeScanner.scan(library, libraryClasses);
+                for (ViewClass viewClass : scan) {
+                    StyleUtils.putStyles(viewClass);
+                    mJavaViewClasses.put(viewClass.getClassName(), viewClass);
                 }
             } catch (IOException e) {
                 e.printStackTrace();
@@ -119,8 +122,6 @@ public class XmlRepository {
 
         addFrameworkViews();
 
-        Repository.clearCache();
-
         mInitialized = true;
     }
 
@@ -148,14 +149,9 @@ public class XmlRepository {
     }
 
     private void addFrameworkView(Class<? extends View> viewClass) {
-        org.apache.bcel.util.Repository repository = Repository.getRepository();
-        try {
-            JavaClass javaClass = repository.loadClass(viewClass);
-            if (javaClass != null) {
-                mJavaViewClasses.put(javaClass.getClassName(), javaClass);
-            }
-        } catch (ClassNotFoundException e) {
-            // ignored
+        ViewClass bootstrapClass = BytecodeScanner.getBootstrapViewClass(viewClass.getName());
+        if (bootstrapClass != null) {
+            mJavaViewClasses.put(bootstrapClass.getClassName(), bootstrapClass);
         }
     }
 
@@ -0,0 +1,54 @@
+package com.tyron.completion.xml.model;
+
+import androidx.annotation.NonNull;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A class that extends {@link android.view.View}, along with the names of its super classes
+ * starting from its direct super class.
+ */
+public class ViewClass {
+
+    private final String className;
+    private final List<String> superClasses;
+    private final boolean hasViewConstructor;
+
+    public ViewClass(@NonNull String className,
+                     @NonNull List<String> superClasses,
+                     boolean hasViewConstructor) {
+        this.className = className;
+        this.superClasses = Collections.unmodifiableList(superClasses);
+        this.hasViewConstructor = hasViewConstructor;
+    }
+
+    @NonNull
+    public String getClassName() {
+        return className;
+    }
+
+    @NonNull
+    public String getPackageName() {
+        int index = className.lastIndexOf('.');
+        return index == -1 ? "" : className.substring(0, index);
+    }
+
+    @NonNull
+    public List<String> getSuperClasses() {
+        return superClasses;
+    }
+
+    /**
+     * @return whether the class declares a {@code (Context, AttributeSet)} constructor, which is
+     * needed for the view to be inflated from XML
+     */
+    public boolean hasViewConstructor() {
+        return hasViewConstructor;
+    }
+
+    @Override
+    public String toString() {
+        return className;
+    }
+}
@@ -21,24 +21,40 @@ import com.tyron.completion.xml.v2.project.LocalResourceRepository;
 import com.tyron.completion.xml.v2.project.ResourceRepositoryManager;
 
 import org.apache.commons.io.FileUtils;
+import org.jetbrains.kotlin.com.intellij.openapi.util.Key;
 
 import java.io.File;
 import java.io.IOException;
 import java.io.UncheckedIOException;
 import java.nio.charset.StandardCharsets;
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.function.Consumer;
+import java.util.function.BiPredicate;
 
 /**
  * Used to create fake R.java files from the project resources for it to
  * show up on code completion. Files generated from this task should not
  * be included in the compilation process as the values of the fields are
  * not accurate from what AAPT2 generates.
+ *
+ * <p>The R class is only generated again when the resource repository has changed, and only the
+ * nested classes whose resources were added or removed are rendered again. The ids are assigned
+ * per resource type so a change in one type does not change the ids of the other types. When the
+ * generated class is the same as before, it is neither written nor passed to the compiler.
  */
 public class InjectResourcesTask {
 
+    private static final Key<ResourceClassState> RESOURCE_CLASS_STATE_KEY =
+            Key.create("injectedResourceClassState");
+
+    /** The first fake id, the resource types are given ranges of ids after it. */
+    private static final int FIRST_ID = 0x7f000000;
+
     public static void inject(@NonNull Project project) {
         try {
             inject(project, (AndroidModule) project.getMainModule());
@@ -55,13 +71,16 @@ public class InjectResourcesTask {
         }
 
         InjectResourcesTask task = new InjectResourcesTask(project, module);
-        task.inject(resourceFile -> {
+        task.inject((resourceFile, contents) -> {
             if (project.isCompiling() || project.isIndexing()) {
-                return;
+                // not applied, the class is passed again on the next call
+                return false;
             }
+            // pass the contents directly so the compiler does not read the file again
             SourceFileObject sourceFileObject =
-                    new SourceFileObject(resourceFile.toPath(), module, Instant.now());
+                    new SourceFileObject(resourceFile.toPath(), contents, Instant.now(), module);
             compilationInfo.update(sourceFileObject);
+            return true;
         });
     }
 
@@ -73,27 +92,59 @@ public class InjectResourcesTask {
         mModule = module;
     }
 
-    public void inject(Consumer<File> consumer) throws IOException {
+    /**
+     * Generates the R class if the resources have changed.
+     *
+     * @param consumer receives the R class file and its contents and returns whether it has
+     *                 applied them. It is not called if the generated class is the same as the
+     *                 last applied one, a class that was not applied is passed again on the
+     *                 next call even if the resources have not changed since.
+     */
+    public void inject(BiPredicate<File, String> consumer) throws IOException {
         ResourceRepositoryManager instance = ResourceRepositoryManager.getInstance(mModule);
         LocalResourceRepository appResources = instance.getAppResources();
 
-        String classContents = createSymbols(appResources);
-
-        File classFile = getOrCreateResourceClass(mModule);
+        ResourceClassState state = getState(mModule);
+        synchronized (state) {
+            long modificationCount = appResources.getModificationCount();
+            if (modificationCount == state.appliedModificationCount) {
+                return;
+            }
 
-        FileUtils.writeStringToFile(classFile, classContents, StandardCharsets.UTF_8);
+            String classContents =
+                    state.update(mModule.getPackageName(), createSymbols(appResources));
+            if (!classContents.equals(state.appliedContents)) {
+                File classFile = getOrCreateResourceClass(mModule);
+                String oldContents = FileUtils.readFileToString(classFile, StandardCharsets.UTF_8);
+                if (!classContents.equals(oldContents)) {
+                    FileUtils.writeStringToFile(classFile, classContents, StandardCharsets.UTF_8);
+                }
 
-        consumer.accept(classFile);
+                if (!consumer.test(classFile, classContents)) {
+                    return;
+                }
+                state.appliedContents = classContents;
+            }
+            // only recorded once the contents for this count have been applied
+            state.appliedModificationCount = modificationCount;
+        }
     }
 
+    @NonNull
+    private static ResourceClassState getState(@NonNull AndroidModule module) {
+        synchronized (RESOURCE_CLASS_STATE_KEY) {
+            ResourceClassState state = module.getUserData(RESOURCE_CLASS_STATE_KEY);
+            if (state == null) {
+                state = new ResourceClassState();
+                module.putUserData(RESOURCE_CLASS_STATE_KEY, state);
+            }
+            return state;
+        }
+    }
 
-    private String createSymbols(LocalResourceRepository repository) throws IOException {
-
-        int id = 0;
-
+    private Table<String, String, SymbolLoader.SymbolEntry> createSymbols(LocalResourceRepository repository) {
         Table<String, String, SymbolLoader.SymbolEntry> symbols = HashBasedTable.create();
 
-
         Set<com.android.ide.common.rendering.api.ResourceNamespace> namespaces =
                 repository.getNamespaces();
         for (com.android.ide.common.rendering.api.ResourceNamespace namespace : namespaces) {
@@ -110,43 +161,37 @@ public class InjectResourcesTask {
                     continue;
                 }
                 for (Map.Entry<String, ResourceItem> resourceItemEntry : resources.entries()) {
-                    addResource(id,
-                            namespace,
+                    addResource(namespace,
                             symbols,
                             resourceType,
                             resourceItemEntry);
-                    id++;
                 }
 
             }
 
         }
 
-        SymbolLoader loader = new SymbolLoader(symbols);
-        SymbolWriter symbolWriter = new SymbolWriter(null, mModule.getPackageName(), loader, null);
-        symbolWriter.addSymbolsToWrite(loader);
-        return symbolWriter.getString();
+        return symbols;
     }
 
-    private void addResource(int id,
-                             ResourceNamespace namespace,
+    private void addResource(ResourceNamespace namespace,
                              Table<String, String, SymbolLoader.SymbolEntry> symbols,
                              ResourceType resourceType,
                              Map.Entry<String, ResourceItem> resourceItemEntry) {
         if (resourceType == ResourceType.STYLEABLE) {
-            addStyleableResource(id, namespace, symbols, resourceItemEntry);
+            addStyleableResource(namespace, symbols, resourceItemEntry);
             return;
         }
         ResourceItem value = resourceItemEntry.getValue();
         String replacedName = convertName(value.getName());
+        // the id is assigned when the class is rendered
         SymbolLoader.SymbolEntry entry = new SymbolLoader.SymbolEntry(replacedName,
                 getType(resourceType),
-                String.valueOf(id));
+                null);
         symbols.put(resourceType.getName(), replacedName, entry);
     }
 
-    private void addStyleableResource(int id,
-                                      ResourceNamespace namespace,
+    private void addStyleableResource(ResourceNamespace namespace,
                                       Table<String, String, SymbolLoader.SymbolEntry> symbols,
                                       Map.Entry<String, ResourceItem> resourceItemEntry) {
         ResourceItem value = resourceItemEntry.getValue();
@@ -184,6 +229,94 @@ public class InjectResourcesTask {
         return name.replace('.', '_');
     }
 
+    /**
+     * The last generated R class of a module, along with the signature and rendered source of
+     * each of its nested classes.
+     */
+    private static class ResourceClassState {
+        // the modification count and the R class that were last applied by the consumer
+        private long appliedModificationCount = -1;
+        private String appliedContents;
+
+        private final Map<String, String> mSignatures = new HashMap<>();
+        private final Map<String, String> mRenderedClasses = new HashMap<>();
+
+        /**
+         * Renders the nested classes that have changed and assembles the R class.
+         *
+         * @return the contents of the R class
+         */
+        @NonNull
+        String update(String packageName,
+                      Table<String, String, SymbolLoader.SymbolEntry> symbols) {
+            List<String> rows = new ArrayList<>(symbols.rowKeySet());
+            Collections.sort(rows);
+
+            if (mSignatures.keySet().retainAll(symbols.rowKeySet())) {
+                mRenderedClasses.keySet().retainAll(symbols.rowKeySet());
+            }
+
+            for (String row : rows) {
+                Map<String, SymbolLoader.SymbolEntry> rowMap = symbols.row(row);
+                List<String> symbolNames = new ArrayList<>(rowMap.keySet());
+                Collections.sort(symbolNames);
+
+                String signature = getSignature(symbolNames, rowMap);
+                if (signature.equals(mSignatures.get(row))) {
+                    continue;
+                }
+                mSignatures.put(row, signature);
+                mRenderedClasses.put(row, renderClass(row, symbolNames, rowMap));
+            }
+
+            StringBuilder builder = new StringBuilder(SymbolWriter.getHeader(packageName));
+            for (String row : rows) {
+                builder.append(mRenderedClasses.get(row));
+            }
+            builder.append(SymbolWriter.getFooter());
+            return builder.toString();
+        }
+
+        private static String getSignature(List<String> symbolNames,
+                                           Map<String, SymbolLoader.SymbolEntry> rowMap) {
+            StringBuilder builder = new StringBuilder();
+            for (String symbolName : symbolNames) {
+                SymbolLoader.SymbolEntry entry = rowMap.get(symbolName);
+                builder.append(entry.getType())
+                        .append(' ')
+                        .append(entry.getName())
+                        .append('=')
+                        .append(entry.getValue())
+                        .append('\n');
+            }
+            return builder.toString();
+        }
+
+        /**
+         * Assigns the ids of the symbols that have none, by their position in the sorted
+         * symbol names, and renders the class with {@link SymbolWriter}.
+         */
+        private static String renderClass(String row,
+                                          List<String> symbolNames,
+                                          Map<String, SymbolLoader.SymbolEntry> rowMap) {
+            ResourceType resourceType = ResourceType.fromClassName(row);
+            int typeId = resourceType != null ? resourceType.ordinal() + 1 : 0;
+
+            Map<String, SymbolLoader.SymbolEntry> values = new HashMap<>();
+            int index = 0;
+            for (String symbolName : symbolNames) {
+                SymbolLoader.SymbolEntry value = rowMap.get(symbolName);
+                if (value.getValue() == null) {
+                    String id = String.valueOf(FIRST_ID | (typeId << 16) | index);
+                    value = new SymbolLoader.SymbolEntry(value.getName(), value.getType(), id);
+                }
+                values.put(symbolName, value);
+                index++;
+            }
+            return SymbolWriter.getClassString(row, symbolNames, values);
+        }
+    }
+
     public static File getOrCreateResourceClass(AndroidModule module) throws IOException {
         File outputDirectory = new File(module.getBuildDirectory(), "injected/resource");
         if (!outputDirectory.exists() && !outputDirectory.mkdirs()) {
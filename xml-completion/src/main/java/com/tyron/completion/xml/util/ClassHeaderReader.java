@@ -0,0 +1,187 @@
+package com.tyron.completion.xml.util;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Reads only the parts of a class file needed to build the view hierarchy: the name of the
+ * class, the name of its super class and whether it declares a view constructor.
+ *
+ * <p>Unlike {@link PartialClassParser}, no constant pool or member objects are created, only the
+ * UTF-8 and class constants are kept while the header is read and the rest of the class file is
+ * skipped.
+ */
+public final class ClassHeaderReader {
+
+    private static final int MAGIC = 0xCAFEBABE;
+
+    private static final int CONSTANT_UTF8 = 1;
+    private static final int CONSTANT_INTEGER = 3;
+    private static final int CONSTANT_FLOAT = 4;
+    private static final int CONSTANT_LONG = 5;
+    private static final int CONSTANT_DOUBLE = 6;
+    private static final int CONSTANT_CLASS = 7;
+    private static final int CONSTANT_STRING = 8;
+    private static final int CONSTANT_FIELDREF = 9;
+    private static final int CONSTANT_METHODREF = 10;
+    private static final int CONSTANT_INTERFACE_METHODREF = 11;
+    private static final int CONSTANT_NAME_AND_TYPE = 12;
+    private static final int CONSTANT_METHOD_HANDLE = 15;
+    private static final int CONSTANT_METHOD_TYPE = 16;
+    private static final int CONSTANT_DYNAMIC = 17;
+    private static final int CONSTANT_INVOKE_DYNAMIC = 18;
+    private static final int CONSTANT_MODULE = 19;
+    private static final int CONSTANT_PACKAGE = 20;
+
+    private static final String CONSTRUCTOR_NAME = "<init>";
+    private static final String VIEW_CONSTRUCTOR_DESCRIPTOR =
+            "(Landroid/content/Context;Landroid/util/AttributeSet;)V";
+
+    /** The header of a class file, class names use dots as separators. */
+    public static final class ClassHeader {
+        private final String className;
+        private final String superClassName;
+        private final boolean hasViewConstructor;
+
+        public ClassHeader(@NonNull String className,
+                           @Nullable String superClassName,
+                           boolean hasViewConstructor) {
+            this.className = className;
+            this.superClassName = superClassName;
+            this.hasViewConstructor = hasViewConstructor;
+        }
+
+        @NonNull
+        public String getClassName() {
+            return className;
+        }
+
+        @Nullable
+        public String getSuperClassName() {
+            return superClassName;
+        }
+
+        public boolean hasViewConstructor() {
+            return hasViewConstructor;
+        }
+    }
+
+    private ClassHeaderReader() {
+
+    }
+
+    @NonNull
+    public static ClassHeader read(@NonNull InputStream inputStream) throws IOException {
+        DataInputStream in = new DataInputStream(inputStream);
+        if (in.readInt() != MAGIC) {
+            throw new IOException("Not a class file");
+        }
+        in.readUnsignedShort(); // minor version
+        in.readUnsignedShort(); // major version
+
+        int constantPoolCount = in.readUnsignedShort();
+        String[] utf8 = new String[constantPoolCount];
+        int[] classNameIndices = new int[constantPoolCount];
+        for (int i = 1; i < constantPoolCount; i++) {
+            int tag = in.readUnsignedByte();
+            switch (tag) {
+                case CONSTANT_UTF8:
+                    utf8[i] = in.readUTF();
+                    break;
+                case CONSTANT_CLASS:
+                    classNameIndices[i] = in.readUnsignedShort();
+                    break;
+                case CONSTANT_STRING:
+                case CONSTANT_METHOD_TYPE:
+                case CONSTANT_MODULE:
+                case CONSTANT_PACKAGE:
+                    skipFully(in, 2);
+                    break;
+                case CONSTANT_METHOD_HANDLE:
+                    skipFully(in, 3);
+                    break;
+                case CONSTANT_INTEGER:
+                case CONSTANT_FLOAT:
+                case CONSTANT_FIELDREF:
+                case CONSTANT_METHODREF:
+                case CONSTANT_INTERFACE_METHODREF:
+                case CONSTANT_NAME_AND_TYPE:
+                case CONSTANT_DYNAMIC:
+                case CONSTANT_INVOKE_DYNAMIC:
+                    skipFully(in, 4);
+                    break;
+                case CONSTANT_LONG:
+                case CONSTANT_DOUBLE:
+                    skipFully(in, 8);
+                    // 8 byte constants take two entries
+                    i++;
+                    break;
+                default:
+                    throw new IOException("Unknown constant pool tag " + tag);
+            }
+        }
+
+        in.readUnsignedShort(); // access flags
+        String className = getClassName(utf8, classNameIndices, in.readUnsignedShort());
+        String superClassName = getClassName(utf8, classNameIndices, in.readUnsignedShort());
+        if (className == null) {
+            throw new IOException("Missing class name");
+        }
+
+        int interfaceCount = in.readUnsignedShort();
+        skipFully(in, interfaceCount * 2L);
+
+        int fieldCount = in.readUnsignedShort();
+        for (int i = 0; i < fieldCount; i++) {
+            skipFully(in, 6);
+            skipAttributes(in);
+        }
+
+        boolean hasViewConstructor = false;
+        int methodCount = in.readUnsignedShort();
+        for (int i = 0; i < methodCount && !hasViewConstructor; i++) {
+            in.readUnsignedShort(); // access flags
+            String name = utf8[in.readUnsignedShort()];
+            String descriptor = utf8[in.readUnsignedShort()];
+            hasViewConstructor = CONSTRUCTOR_NAME.equals(name)
+                                 && VIEW_CONSTRUCTOR_DESCRIPTOR.equals(descriptor);
+            skipAttributes(in);
+        }
+
+        return new ClassHeader(className, superClassName, hasViewConstructor);
+    }
+
+    @Nullable
+    private static String getClassName(String[] utf8, int[] classNameIndices, int index) {
+        if (index == 0) {
+            return null;
+        }
+        String internalName = utf8[classNameIndices[index]];
+        return internalName == null ? null : internalName.replace('/', '.');
+    }
+
+    private static void skipAttributes(DataInputStream in) throws IOException {
+        int attributeCount = in.readUnsignedShort();
+        for (int i = 0; i < attributeCount; i++) {
+            in.readUnsignedShort(); // name index
+            skipFully(in, Integer.toUnsignedLong(in.readInt()));
+        }
+    }
+
+    private static void skipFully(DataInputStream in, long count) throws IOException {
+        while (count > 0) {
+            long skipped = in.skip(count);
+            if (skipped <= 0) {
+                if (in.read() == -1) {
+                    throw new IOException("Unexpected end of class file");
+                }
+                skipped = 1;
+            }
+            count -= skipped;
+        }
+    }
+}
@@ -31,13 +31,12 @@ import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Multimap;
 import com.tyron.completion.xml.BytecodeScanner;
 import com.tyron.completion.xml.model.DeclareStyleable;
+import com.tyron.completion.xml.model.ViewClass;
 
-import org.apache.bcel.classfile.JavaClass;
-
-import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeSet;
@@ -99,33 +98,32 @@ public class StyleUtils {
         return classes;
     }
 
-    public static void putStyles(JavaClass javaClass) {
-        JavaClass[] superClasses = BytecodeScanner.getSuperClasses(javaClass);
-        String viewSimpleName = getSimpleName(javaClass.getClassName());
-        for (JavaClass superClass : superClasses) {
-            if (Object.class.getName().equals(superClass.getClassName())) {
+    public static void putStyles(ViewClass viewClass) {
+        List<String> superClasses = BytecodeScanner.getSuperClasses(viewClass);
+        String viewSimpleName = getSimpleName(viewClass.getClassName());
+        for (String superClass : superClasses) {
+            if (Object.class.getName().equals(superClass)) {
                 continue;
             }
-            String simpleName = getSimpleName(superClass.getClassName());
+            String simpleName = getSimpleName(superClass);
             sViewStyleMap.put(viewSimpleName, simpleName);
         }
 
         sViewStyleMap.put(viewSimpleName, viewSimpleName);
 
-        if (BytecodeScanner.isViewGroup(javaClass)) {
-            putLayoutParams(javaClass);
+        if (BytecodeScanner.isViewGroup(viewClass)) {
+            putLayoutParams(viewClass);
         }
     }
 
-    public static void putLayoutParams(JavaClass javaClass) {
+    public static void putLayoutParams(ViewClass viewClass) {
         ImmutableSet.Builder<String> builder = ImmutableSet.builder();
-        JavaClass[] superClasses = BytecodeScanner.getSuperClasses(javaClass);
-        Arrays.stream(superClasses)
-                .map(JavaClass::getClassName)
+        List<String> superClasses = BytecodeScanner.getSuperClasses(viewClass);
+        superClasses.stream()
                 .filter(it -> !Object.class.getName().equals(it))
                 .filter(it -> !View.class.getName().equals(it))
                 .forEach(it -> builder.add(getSimpleName(it) + "_Layout"));
-        sLayoutParamsMap.put(getSimpleName(javaClass.getClassName()) + "_Layout", builder.build());
+        sLayoutParamsMap.put(getSimpleName(viewClass.getClassName()) + "_Layout", builder.build());
     }
 
     public static void putLayoutParams(@NonNull Class<? extends ViewGroup> viewGroup) {
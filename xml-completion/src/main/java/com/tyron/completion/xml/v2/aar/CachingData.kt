@@ -23,4 +23,9 @@ class CachingData(val cacheFile: Path,
 /**
  * Directory for the cache files relative to the system path.
  */
-const val RESOURCE_CACHE_DIRECTORY = "caches/resources"
\ No newline at end of file
+const val RESOURCE_CACHE_DIRECTORY = "caches/resources"
+/**
+ * The code version written to the resource cache files, see [CachingData.codeVersion].
+ * Change it when the repositories start reading the cached resources differently.
+ */
+const val RESOURCE_CACHE_CODE_VERSION = "7.4"
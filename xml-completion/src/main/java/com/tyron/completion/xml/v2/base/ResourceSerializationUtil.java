@@ -70,6 +70,7 @@ public class ResourceSerializationUtil {
     // Write to a temporary file first, then rename it to the final name.
     Path tempFile;
     try {
+      Files.createDirectories(cacheFile.getParent());
       tempFile = FileUtilRt.createTempFile(cacheFile.getParent().toFile(), cacheFile.getFileName().toString(), ".tmp").toPath();
     }
     catch (IOException e) {
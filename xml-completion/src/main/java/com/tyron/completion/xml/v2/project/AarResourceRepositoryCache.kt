@@ -95,7 +95,7 @@ class AarResourceRepositoryCache private constructor() {
         }
         val contentVersion = modificationTime.toString()
 
-        val codeVersion = "7.4"//getAndroidPluginVersion() ?: return null
+        val codeVersion = RESOURCE_CACHE_CODE_VERSION//getAndroidPluginVersion() ?: return null
 
         val path = resFolder.root
         val pathHash = Hashing.farmHashFingerprint64().hashUnencodedChars(path.portablePath).toString()
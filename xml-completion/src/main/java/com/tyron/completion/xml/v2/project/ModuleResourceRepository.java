@@ -7,20 +7,32 @@ import com.android.ide.common.resources.SingleNamespaceResourceRepository;
 import com.android.ide.common.resources.SourceSet;
 import com.android.resources.ResourceType;
 import com.google.common.base.MoreObjects;
+import com.google.common.base.Throwables;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ListMultimap;
+import com.google.common.hash.Hashing;
+import com.google.common.util.concurrent.UncheckedExecutionException;
 import com.tyron.builder.project.api.AndroidContentRoot;
 import com.tyron.builder.project.api.AndroidModule;
+import com.tyron.common.ApplicationPaths;
+import com.tyron.completion.progress.ProcessCanceledException;
+import com.tyron.completion.xml.v2.aar.CachingDataKt;
 import com.tyron.completion.xml.v2.aar.FrameworkResourceRepository;
 
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 import java.io.File;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 import java.util.stream.Collectors;
 
 public class ModuleResourceRepository extends MultiResourceRepository implements SingleNamespaceResourceRepository {
@@ -32,6 +44,8 @@ public class ModuleResourceRepository extends MultiResourceRepository implements
 
     private enum SourceSet { MAIN, TEST }
 
+    private static final String RESOURCE_FOLDER_CACHE_DIRECTORY = "folders";
+
     /**
      * Creates a new resource repository for the given module, <b>not</b> including its dependent
      * modules.
@@ -85,15 +99,58 @@ public class ModuleResourceRepository extends MultiResourceRepository implements
 //                                                             @NotNull ResourceFolderRegistry
 //                                                             resourceFolderRegistry
     ) {
+        ResourceNamespace namespace = ResourceRepositoryManager.getInstance(facet).getNamespace();
+        ExecutorService executor = ResourceRepositoryManager.getLoaderExecutor();
+
+        // Load the resource directories in parallel, each one has its own loader.
+        List<Future<ResourceFolderRepository>> futures = new ArrayList<>(resourceDirectories.size());
         for (int i = resourceDirectories.size(); --i >= 0; ) {
             File resourceDirectory = resourceDirectories.get(i);
-            ResourceFolderRepository resourceFolderRepository = ResourceFolderRepository.create(
+            ResourceFolderRepositoryCachingData cachingData =
+                    createCachingData(resourceDirectory, executor);
+            futures.add(executor.submit(() -> ResourceFolderRepository.create(
                     facet,
                     resourceDirectory,
-                    ResourceRepositoryManager.getInstance(facet).getNamespace(),
-                    null);
-            childRepositories.add(resourceFolderRepository);
+                    namespace,
+                    cachingData)));
         }
+
+        for (Future<ResourceFolderRepository> future : futures) {
+            try {
+                childRepositories.add(future.get());
+            } catch (ExecutionException e) {
+                futures.forEach(f -> f.cancel(true));
+                Throwables.throwIfUnchecked(e.getCause());
+                throw new UncheckedExecutionException(e.getCause());
+            } catch (InterruptedException e) {
+                futures.forEach(f -> f.cancel(true));
+                throw new ProcessCanceledException(e);
+            }
+        }
+    }
+
+    /**
+     * Returns the caching data of the repository of the given resource directory, the cache file
+     * is named after the path of the directory.
+     */
+    @NotNull
+    private static ResourceFolderRepositoryCachingData createCachingData(@NotNull File resourceDirectory,
+                                                                         @NotNull Executor executor) {
+        String pathHash = Hashing.farmHashFingerprint64()
+                .hashUnencodedChars(resourceDirectory.getAbsolutePath())
+                .toString();
+        File parent = resourceDirectory.getAbsoluteFile().getParentFile();
+        String filename = String.format("%s_%s.dat",
+                parent != null ? parent.getName() : resourceDirectory.getName(),
+                pathHash);
+        Path cacheFile = Paths.get(ApplicationPaths.getCacheDir().getAbsolutePath(),
+                CachingDataKt.RESOURCE_CACHE_DIRECTORY,
+                RESOURCE_FOLDER_CACHE_DIRECTORY,
+                filename);
+        return new ResourceFolderRepositoryCachingData(cacheFile,
+                false,
+                CachingDataKt.RESOURCE_CACHE_CODE_VERSION,
+                executor);
     }
 
     private ModuleResourceRepository(@NotNull AndroidModule facet,
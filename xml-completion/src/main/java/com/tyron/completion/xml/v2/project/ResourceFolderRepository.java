@@ -28,9 +28,12 @@ import com.android.resources.FolderTypeRelationship;
 import com.android.resources.ResourceFolderType;
 import com.android.resources.ResourceType;
 import com.android.resources.ResourceVisibility;
+import com.android.utils.Base128InputStream;
+import com.android.utils.Base128InputStream.StreamFormatException;
 import com.android.utils.SdkUtils;
 import com.google.common.collect.LinkedListMultimap;
 import com.google.common.collect.ListMultimap;
+import com.google.common.collect.Maps;
 import com.tyron.builder.project.api.AndroidModule;
 import com.tyron.completion.progress.ProcessCanceledException;
 import com.tyron.completion.progress.ProgressManager;
@@ -40,6 +43,7 @@ import com.tyron.completion.xml.v2.base.BasicValueResourceItemBase;
 import com.tyron.completion.xml.v2.base.LoadableResourceRepository;
 import com.tyron.completion.xml.v2.base.RepositoryConfiguration;
 import com.tyron.completion.xml.v2.base.RepositoryLoader;
+import com.tyron.completion.xml.v2.base.ResourceSerializationUtil;
 import com.tyron.completion.xml.v2.base.ResourceSourceFile;
 import com.tyron.completion.xml.v2.events.XmlReparsedEvent;
 import com.tyron.completion.xml.v2.events.XmlResourceChangeEvent;
@@ -60,6 +64,7 @@ import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
@@ -75,6 +80,7 @@ import java.util.Objects;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
 
 import javax.lang.model.SourceVersion;
 
@@ -83,6 +89,21 @@ import kotlin.io.FilesKt;
 
 public final class ResourceFolderRepository extends LocalResourceRepository implements LoadableResourceRepository {
 
+    /**
+     * Increment when making changes that may affect content of repository cache files.
+     * Used together with CachingData.codeVersion. Important for developer builds.
+     */
+    static final String CACHE_FILE_FORMAT_VERSION = "1";
+    private static final byte[] CACHE_FILE_HEADER = "Resource cache".getBytes(StandardCharsets.UTF_8);
+    /**
+     * Maximum fraction of resources out of date in the cache for the cache to be considered fresh.
+     * <p>
+     * Loading without cache takes approximately twice as long as with the cache. This means that
+     * if x% of all resources are loaded from sources because the cache is not completely up to date,
+     * it's worth updating the cache when x exceeds a certain threshold.
+     */
+    private static final double CACHE_STALENESS_THRESHOLD = 0.1;
+
     @NotNull
     private final ConcurrentMap<File, ResourceItemSource<?>> mySources = new ConcurrentHashMap<>();
     @SuppressWarnings("InstanceGuardedByStatic")
@@ -217,6 +238,79 @@ public final class ResourceFolderRepository extends LocalResourceRepository impl
         return true;
     }
 
+    @Override
+    @NotNull
+    public ResourceSourceFile deserializeResourceSourceFile(@NotNull Base128InputStream stream,
+                                                            @NotNull List<RepositoryConfiguration> configurations) throws IOException {
+        String relativePath = stream.readString();
+        if (relativePath == null) {
+            throw StreamFormatException.invalidFormat();
+        }
+        int configIndex = stream.readInt();
+        RepositoryConfiguration configuration = configurations.get(configIndex);
+        File virtualFile = findFileByRelativePath(relativePath);
+        if (!stream.validateContents(FileTimeStampLengthHasher.hash(virtualFile))) {
+            // the file has changed since the cache was created
+            virtualFile = null;
+        }
+        return new VfsResourceFile(virtualFile, configuration);
+    }
+
+    @Override
+    @NotNull
+    public BasicFileResourceItem deserializeFileResourceItem(@NotNull Base128InputStream stream,
+                                                             @NotNull ResourceType resourceType,
+                                                             @NotNull String name,
+                                                             @NotNull ResourceVisibility visibility,
+                                                             @NotNull List<RepositoryConfiguration> configurations) throws IOException {
+        String relativePath = stream.readString();
+        if (relativePath == null) {
+            throw StreamFormatException.invalidFormat();
+        }
+        int configIndex = stream.readInt();
+        RepositoryConfiguration configuration = configurations.get(configIndex);
+        int encodedDensity = stream.readInt();
+        File virtualFile = findFileByRelativePath(relativePath);
+
+        boolean idGenerating = false;
+        String folderName = new PathString(relativePath).getParentFileName();
+        if (folderName != null) {
+            ResourceFolderType folderType = ResourceFolderType.getFolderType(folderName);
+            idGenerating = folderType != null &&
+                           FolderTypeRelationship.isIdGeneratingFolderType(folderType);
+        }
+        if (idGenerating) {
+            // only the items of id generating files are serialized with the file stamp
+            if (!stream.validateContents(FileTimeStampLengthHasher.hash(virtualFile))) {
+                virtualFile = null;
+            }
+        }
+
+        if (encodedDensity == 0) {
+            return new VfsFileResourceItem(resourceType,
+                    name,
+                    configuration,
+                    visibility,
+                    relativePath,
+                    virtualFile);
+        }
+
+        Density density = Density.values()[encodedDensity - 1];
+        return new VfsDensityBasedFileResourceItem(resourceType,
+                name,
+                configuration,
+                visibility,
+                relativePath,
+                virtualFile,
+                density);
+    }
+
+    @Nullable
+    private File findFileByRelativePath(@NotNull String relativePath) {
+        File file = new File(myResourceDir, relativePath);
+        return file.exists() ? file : null;
+    }
+
     @Override
     public ResourceNamespace getNamespace() {
         return myNamespace;
@@ -732,6 +826,8 @@ public final class ResourceFolderRepository extends LocalResourceRepository impl
         private PathString myLastPathString;
 
         @NotNull Set<File> myFilesToReparseAsPsi = new HashSet<>();
+        @Nullable
+        private final ResourceFolderRepositoryCachingData myCachingData;
         private static final Logger LOG = Logger.getInstance(ResourceFolderRepository.class);
 
         Loader(@NotNull ResourceFolderRepository repository,
@@ -739,6 +835,7 @@ public final class ResourceFolderRepository extends LocalResourceRepository impl
             super(repository.myResourceDir.toPath(), null, repository.getNamespace());
             myRepository = repository;
             myResourceDir = repository.myResourceDir;
+            myCachingData = cachingData;
             myDefaultVisibility = ResourceVisibility.UNDEFINED;
         }
 
@@ -747,11 +844,94 @@ public final class ResourceFolderRepository extends LocalResourceRepository impl
                 return;
             }
 
+            loadFromPersistentCache();
+
+            ProgressManager.checkCanceled();
+
             scanResFolder();
 
             populateRepository();
 
+            ProgressManager.checkCanceled();
+
             scanQueuedPsiResources();
+
+            if (myCachingData != null && !myCachingData.getCacheIsInvalidated()) {
+                Executor executor = myCachingData.getCacheCreationExecutor();
+                if (executor != null && isCacheOutOfDate()) {
+                    executor.execute(this::createCacheFile);
+                }
+            }
+        }
+
+        /**
+         * Loads the resources of the files that have not changed since the cache file was
+         * created. Files that have changed are left out and loaded from sources by
+         * {@link #scanResFolder()}.
+         */
+        private void loadFromPersistentCache() {
+            if (myCachingData == null || myCachingData.getCacheIsInvalidated()) {
+                return;
+            }
+
+            byte[] fileHeader = getCacheFileHeader(myCachingData);
+            try (Base128InputStream stream = new Base128InputStream(myCachingData.getCacheFile())) {
+                if (!stream.validateContents(fileHeader)) {
+                    return; // Cache file header doesn't match.
+                }
+                ResourceSerializationUtil.readResourcesFromStream(stream,
+                        Maps.newHashMapWithExpectedSize(1000),
+                        null,
+                        myRepository,
+                        item -> addResourceItem(item, myRepository));
+            } catch (NoSuchFileException e) {
+                // Cache file does not exist.
+            } catch (ProcessCanceledException e) {
+                cleanupAfterFailedLoadingFromCache();
+                throw e;
+            } catch (Throwable e) {
+                cleanupAfterFailedLoadingFromCache();
+                LOG.warn("Failed to load resources from cache file " +
+                         myCachingData.getCacheFile(), e);
+            }
+        }
+
+        /**
+         * Called when an attempt to load from persistent cache fails after some data may have
+         * already been loaded.
+         */
+        private void cleanupAfterFailedLoadingFromCache() {
+            mySources.clear();
+            myFileResources.clear();
+        }
+
+        private boolean isCacheOutOfDate() {
+            return myRepository.myNumXmlFilesLoadedInitiallyFromSources >
+                   myRepository.myNumXmlFilesLoadedInitially * CACHE_STALENESS_THRESHOLD;
+        }
+
+        private void createCacheFile() {
+            assert myCachingData != null;
+            byte[] header = getCacheFileHeader(myCachingData);
+            try {
+                ResourceSerializationUtil.createPersistentCache(myCachingData.getCacheFile(),
+                        header,
+                        stream -> ResourceSerializationUtil.writeResourcesToStream(myResources,
+                                stream,
+                                config -> true));
+            } catch (Throwable e) {
+                LOG.error("Failed to create cache file " + myCachingData.getCacheFile(), e);
+            }
+        }
+
+        @NotNull
+        private byte[] getCacheFileHeader(@NotNull ResourceFolderRepositoryCachingData cachingData) {
+            return ResourceSerializationUtil.getCacheFileHeader(stream -> {
+                stream.write(CACHE_FILE_HEADER);
+                stream.writeString(CACHE_FILE_FORMAT_VERSION);
+                stream.writeString(myResourceDir.getPath());
+                stream.writeString(cachingData.getCodeVersion());
+            });
         }
 
         /**
@@ -13,6 +13,7 @@ import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSortedSet;
 import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.google.common.util.concurrent.UncheckedExecutionException;
 import com.tyron.builder.model.CodeAssistAndroidLibrary;
 import com.tyron.builder.model.CodeAssistLibrary;
@@ -342,7 +343,7 @@ public class ResourceRepositoryManager {
                 aarResourceRepositoryCache::getSourceRepository :
                 aarResourceRepositoryCache::getProtoRepository;
 
-        ExecutorService executor = Executors.newSingleThreadExecutor();
+        ExecutorService executor = getLoaderExecutor();
 
         // Construct the repositories in parallel.
         Map<ExternalAndroidLibrary, Future<AarResourceRepository>> futures = Maps.newHashMapWithExpectedSize(codeAssistLibraries.size());
@@ -379,6 +380,24 @@ public class ResourceRepositoryManager {
         return map.build();
     }
 
+    /**
+     * Returns the executor used to load resource repositories in parallel. Tasks submitted to
+     * it must not wait for other tasks of the executor.
+     */
+    @NotNull
+    static ExecutorService getLoaderExecutor() {
+        return LoaderExecutorHolder.EXECUTOR;
+    }
+
+    private static class LoaderExecutorHolder {
+        static final ExecutorService EXECUTOR = Executors.newFixedThreadPool(
+                Math.max(1, Runtime.getRuntime().availableProcessors() - 1),
+                new ThreadFactoryBuilder()
+                        .setNameFormat("resource-loader-%d")
+                        .setDaemon(true)
+                        .build());
+    }
+
     private static void cancelPendingTasks(Collection<Future<AarResourceRepository>> futures) {
         futures.forEach(f -> f.cancel(true));
     }
@@ -0,0 +1,205 @@
+package com.tyron.completion.xml.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeNotNull;
+
+import com.tyron.completion.xml.util.ClassHeaderReader.ClassHeader;
+
+import org.apache.bcel.classfile.ClassParser;
+import org.apache.bcel.classfile.Constant;
+import org.apache.bcel.classfile.ConstantDouble;
+import org.apache.bcel.classfile.ConstantDynamic;
+import org.apache.bcel.classfile.ConstantLong;
+import org.apache.bcel.classfile.ConstantModule;
+import org.apache.bcel.classfile.ConstantPackage;
+import org.apache.bcel.classfile.ConstantPool;
+import org.apache.bcel.classfile.ConstantUtf8;
+import org.apache.bcel.classfile.JavaClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import javax.tools.JavaCompiler;
+import javax.tools.ToolProvider;
+
+public class ClassHeaderReaderTest {
+
+    private static final String VIEW_SOURCE = "package com.test;\n"
+            + "import android.content.Context;\n"
+            + "import android.util.AttributeSet;\n"
+            + "public class TestView extends BaseView {\n"
+            + "    static final long LONG_CONSTANT = 0x1234567890L;\n"
+            + "    static final double DOUBLE_CONSTANT = 1.5e300;\n"
+            + "    long longValue = 0x1234567891L;\n"
+            + "    double doubleValue = 2.5e300;\n"
+            + "    Runnable runnable = () -> {};\n"
+            + "    public TestView(Context context) { super(context); }\n"
+            + "    public TestView(Context context, AttributeSet attrs) { super(context); }\n"
+            + "    String describe() { return \"value \" + longValue + doubleValue; }\n"
+            + "}\n";
+    private static final String BASE_VIEW_SOURCE = "package com.test;\n"
+            + "import android.content.Context;\n"
+            + "public abstract class BaseView {\n"
+            + "    static final long LONG_CONSTANT = 0x1234567892L;\n"
+            + "    public BaseView(Context context) {}\n"
+            + "}\n";
+    private static final String CONTEXT_SOURCE =
+            "package android.content;\npublic class Context {}\n";
+    private static final String ATTRIBUTE_SET_SOURCE =
+            "package android.util;\npublic interface AttributeSet {}\n";
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void testJdkClasses() throws IOException {
+        FileSystem fileSystem = FileSystems.getFileSystem(URI.create("jrt:/"));
+        Path javaBase = fileSystem.getPath("/modules", "java.base");
+        List<Path> classFiles;
+        try (Stream<Path> stream = Files.list(javaBase.resolve("java/lang"))) {
+            classFiles = stream.filter(path -> path.toString().endsWith(".class"))
+                    .collect(Collectors.toList());
+        }
+        // java.lang has classes with long and double constants, e.g. Long, Double and Math
+        assertTrue(classFiles.size() > 100);
+
+        for (Path classFile : classFiles) {
+            String relativePath = javaBase.relativize(classFile).toString();
+            String className = relativePath.substring(0, relativePath.length() - 6)
+                    .replace('/', '.');
+            Class<?> type;
+            try {
+                type = Class.forName(className, false, null);
+            } catch (ClassNotFoundException e) {
+                throw new AssertionError(className, e);
+            }
+
+            ClassHeader header = read(Files.readAllBytes(classFile));
+            assertEquals(className, header.getClassName());
+            assertEquals(className, getSuperClassName(type), header.getSuperClassName());
+            assertFalse(header.hasViewConstructor());
+        }
+    }
+
+    @Test
+    public void testModuleInfo() throws IOException {
+        // module-info has Module and Package constants
+        FileSystem fileSystem = FileSystems.getFileSystem(URI.create("jrt:/"));
+        byte[] bytes = Files.readAllBytes(
+                fileSystem.getPath("/modules", "java.base", "module-info.class"));
+
+        ClassHeader header = read(bytes);
+        assertEquals("module-info", header.getClassName());
+        assertNull(header.getSuperClassName());
+        assertFalse(header.hasViewConstructor());
+    }
+
+    @Test
+    public void testViewClass() throws IOException {
+        File classes = compile();
+
+        ClassHeader view = read(classes, "com/test/TestView.class");
+        assertEquals("com.test.TestView", view.getClassName());
+        assertEquals("com.test.BaseView", view.getSuperClassName());
+        assertTrue(view.hasViewConstructor());
+
+        ClassHeader baseView = read(classes, "com/test/BaseView.class");
+        assertEquals("com.test.BaseView", baseView.getClassName());
+        assertEquals("java.lang.Object", baseView.getSuperClassName());
+        assertFalse(baseView.hasViewConstructor());
+    }
+
+    @Test
+    public void testNewConstantPoolTags() throws IOException {
+        File classes = compile();
+        byte[] bytes = Files.readAllBytes(new File(classes, "com/test/TestView.class").toPath());
+
+        // javac does not emit Dynamic constants and only emits Module and Package constants
+        // in module-info, add them to a class that uses its constant pool afterwards
+        JavaClass javaClass = new ClassParser(new ByteArrayInputStream(bytes), "TestView.class")
+                .parse();
+        ConstantPool constantPool = javaClass.getConstantPool();
+        List<Constant> constants = new ArrayList<>(Arrays.asList(constantPool.getConstantPool()));
+        int packageName = constants.size();
+        constants.add(new ConstantUtf8("com/test"));
+        constants.add(new ConstantLong(Long.MAX_VALUE));
+        constants.add(null);
+        constants.add(new ConstantDynamic(0, 1));
+        constants.add(new ConstantDouble(Double.MAX_VALUE));
+        constants.add(null);
+        constants.add(new ConstantModule(packageName));
+        constants.add(new ConstantPackage(packageName));
+        constantPool.setConstantPool(constants.toArray(new Constant[0]));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        javaClass.dump(out);
+
+        ClassHeader header = read(out.toByteArray());
+        assertEquals("com.test.TestView", header.getClassName());
+        assertEquals("com.test.BaseView", header.getSuperClassName());
+        assertTrue(header.hasViewConstructor());
+    }
+
+    private File compile() throws IOException {
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        // the tests may run on a runtime without a compiler
+        assumeNotNull(compiler);
+
+        File sources = temporaryFolder.newFolder("sources");
+        File classes = temporaryFolder.newFolder("classes");
+        List<String> arguments = new ArrayList<>(Arrays.asList(
+                "-d", classes.getPath(), "-g:none", "-nowarn"));
+        arguments.add(write(sources, "com/test/TestView.java", VIEW_SOURCE));
+        arguments.add(write(sources, "com/test/BaseView.java", BASE_VIEW_SOURCE));
+        arguments.add(write(sources, "android/content/Context.java", CONTEXT_SOURCE));
+        arguments.add(write(sources, "android/util/AttributeSet.java", ATTRIBUTE_SET_SOURCE));
+        int result = compiler.run(null, null, null, arguments.toArray(new String[0]));
+        assertEquals(0, result);
+        return classes;
+    }
+
+    private static String write(File directory, String path, String contents)
+            throws IOException {
+        File file = new File(directory, path);
+        Files.createDirectories(file.getParentFile().toPath());
+        Files.write(file.toPath(), contents.getBytes(StandardCharsets.UTF_8));
+        return file.getPath();
+    }
+
+    private static ClassHeader read(File classes, String path) throws IOException {
+        return read(Files.readAllBytes(new File(classes, path).toPath()));
+    }
+
+    private static ClassHeader read(byte[] bytes) throws IOException {
+        try (InputStream inputStream = new ByteArrayInputStream(bytes)) {
+            return ClassHeaderReader.read(inputStream);
+        }
+    }
+
+    private static String getSuperClassName(Class<?> type) {
+        if (type == Object.class) {
+            return null;
+        }
+        // interfaces extend Object in the class file
+        return type.isInterface() ? Object.class.getName() : type.getSuperclass().getName();
+    }
+}